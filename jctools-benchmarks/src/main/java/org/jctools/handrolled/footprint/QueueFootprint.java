@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.handrolled.footprint;
+
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.queues.MpscCompactArrayQueue;
+import org.jctools.queues.MpscCompactLinkedQueue;
+import org.jctools.queues.MpscLinkedQueue8;
+import org.jctools.queues.SpscArrayQueue;
+import org.jctools.queues.SpscCompactArrayQueue;
+import org.jctools.queues.SpscCompactLinkedQueue;
+import org.jctools.queues.SpscLinkedQueue;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Queue;
+
+/**
+ * Prints the per-instance footprint (object header and fields) and the retained footprint (including the buffer or
+ * the stub node) of the padded queues next to their compact counterparts, as reported by JOL.
+ */
+public class QueueFootprint {
+    public static final int CAPACITY = Integer.getInteger("capacity", 32);
+
+    public static void main(final String[] args) throws Exception {
+        System.out.println("capacity:" + CAPACITY);
+        System.out.printf("%-28s %10s %10s%n", "queue", "instance", "retained");
+        print(new SpscArrayQueue<Integer>(CAPACITY));
+        print(new SpscCompactArrayQueue<Integer>(CAPACITY));
+        print(new MpscArrayQueue<Integer>(CAPACITY));
+        print(new MpscCompactArrayQueue<Integer>(CAPACITY));
+        print(new SpscLinkedQueue<Integer>());
+        print(new SpscCompactLinkedQueue<Integer>());
+        print(new MpscLinkedQueue8<Integer>());
+        print(new MpscCompactLinkedQueue<Integer>());
+    }
+
+    private static void print(final Queue<Integer> q) {
+        final long instanceSize = ClassLayout.parseClass(q.getClass()).instanceSize();
+        final long retainedSize = GraphLayout.parseInstance(q).totalSize();
+        System.out.printf("%-28s %10d %10d%n", q.getClass().getSimpleName(), instanceSize, retainedSize);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.throughput;
+
+import org.jctools.queues.MpmcArrayQueue;
+import org.jctools.queues.MpmcKFifoArrayQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MpmcKFifoArrayQueue} throughput for different segment sizes with the strict FIFO
+ * {@link MpmcArrayQueue}, a segment size of 0 stands for the latter. Scale the thread count up with the -tg option to
+ * see the effect of contention on the producer and consumer indices.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class MpmcKFifoThroughput {
+    private static final Integer ONE = 777;
+    @Param(value = { "0", "1", "16", "64" })
+    int segmentSize;
+    @Param(value = { "1024" })
+    int qCapacity;
+    Queue<Integer> q;
+
+    @Setup()
+    public void createQ() {
+        if (segmentSize == 0) {
+            q = new MpmcArrayQueue<Integer>(qCapacity);
+        } else {
+            q = new MpmcKFifoArrayQueue<Integer>(qCapacity, segmentSize);
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class PollCounters {
+        public int pollsFailed;
+        public int pollsMade;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            pollsFailed = pollsMade = 0;
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OfferCounters {
+        public int offersFailed;
+        public int offersMade;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            offersFailed = offersMade = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("tpt")
+    @GroupThreads(2)
+    public void offer(OfferCounters counters) {
+        if (!q.offer(ONE)) {
+            counters.offersFailed++;
+        } else {
+            counters.offersMade++;
+        }
+    }
+
+    @Benchmark
+    @Group("tpt")
+    @GroupThreads(2)
+    public Integer poll(PollCounters counters) {
+        final Integer e = q.poll();
+        if (e == null) {
+            counters.pollsFailed++;
+        } else {
+            counters.pollsMade++;
+        }
+        return e;
+    }
+
+    @TearDown(Level.Iteration)
+    public void emptyQ() {
+        // all threads are done with the queue by now, and it is a multi consumer queue
+        q.clear();
+    }
+}
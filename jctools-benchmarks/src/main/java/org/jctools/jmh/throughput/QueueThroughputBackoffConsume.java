@@ -13,6 +13,7 @@
  */
 package org.jctools.jmh.throughput;
 
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.infra.Blackhole;
 
@@ -22,7 +23,18 @@ public class QueueThroughputBackoffConsume extends QueueThroughputBackoffNone {
     @Param({"1","10","100","1000"})
     private long consumeAmount;
     @Override
-    protected void backoff() {
-        Blackhole.consumeCPU(consumeAmount);
+    protected WaitStrategy createWaitStrategy() {
+        final long amount = consumeAmount;
+        return new WaitStrategy() {
+            @Override
+            public int idle(int idleCounter) {
+                Blackhole.consumeCPU(amount);
+                return idleCounter + 1;
+            }
+
+            @Override
+            public void signal() {
+            }
+        };
     }
 }
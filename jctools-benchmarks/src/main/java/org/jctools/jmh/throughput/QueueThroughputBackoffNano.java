@@ -13,12 +13,14 @@
  */
 package org.jctools.jmh.throughput;
 
-import java.util.concurrent.locks.LockSupport;
+import org.jctools.queues.BackoffWaitStrategy;
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
 
 
 public class QueueThroughputBackoffNano extends QueueThroughputBackoffNone {
     @Override
-    protected void backoff() {
-        LockSupport.parkNanos(1L);
+    protected WaitStrategy createWaitStrategy() {
+        // park for the shortest possible period on every failure
+        return new BackoffWaitStrategy(0, 0, 1L, 1L);
     }
 }
@@ -13,6 +13,8 @@
  */
 package org.jctools.jmh.throughput;
 
+import org.jctools.queues.BusySpinWaitStrategy;
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
 import org.jctools.queues.QueueByTypeFactory;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
@@ -34,10 +36,16 @@ public class QueueThroughputBackoffNone {
     @Param(value = { "132000" })
     int qCapacity;
     Queue<Integer> q;
+    WaitStrategy waitStrategy;
 
     @Setup()
     public void createQ() {
         q = QueueByTypeFactory.createQueue(qType, qCapacity);
+        waitStrategy = createWaitStrategy();
+    }
+
+    protected WaitStrategy createWaitStrategy() {
+        return new BusySpinWaitStrategy();
     }
 
     @AuxCounters
@@ -45,10 +53,11 @@ public class QueueThroughputBackoffNone {
     public static class PollCounters {
         public int pollsFailed;
         public int pollsMade;
+        int idleCounter;
 
         @Setup(Level.Iteration)
         public void clean() {
-            pollsFailed = pollsMade = 0;
+            pollsFailed = pollsMade = idleCounter = 0;
         }
     }
 
@@ -57,10 +66,11 @@ public class QueueThroughputBackoffNone {
     public static class OfferCounters {
         public int offersFailed;
         public int offersMade;
+        int idleCounter;
 
         @Setup(Level.Iteration)
         public void clean() {
-            offersFailed = offersMade = 0;
+            offersFailed = offersMade = idleCounter = 0;
         }
     }
 
@@ -78,29 +88,28 @@ public class QueueThroughputBackoffNone {
     public void offer(OfferCounters counters) {
         if (!q.offer(ONE)) {
             counters.offersFailed++;
-            backoff();
+            counters.idleCounter = waitStrategy.idle(counters.idleCounter);
         }
         else {
             counters.offersMade++;
+            counters.idleCounter = 0;
         }
         if (DELAY_PRODUCER != 0) {
             Blackhole.consumeCPU(DELAY_PRODUCER);
         }
     }
 
-    protected void backoff() {
-    }
-
     @Benchmark
     @Group("tpt")
     public Integer poll(PollCounters counters, ConsumerMarker cm) {
         Integer e = q.poll();
         if (e == null) {
             counters.pollsFailed++;
-            backoff();
+            counters.idleCounter = waitStrategy.idle(counters.idleCounter);
         }
         else {
             counters.pollsMade++;
+            counters.idleCounter = 0;
         }
         if (DELAY_CONSUMER != 0) {
             Blackhole.consumeCPU(DELAY_CONSUMER);
@@ -13,10 +13,13 @@
  */
 package org.jctools.jmh.throughput;
 
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+import org.jctools.queues.SpinYieldWaitStrategy;
+
 
 public class QueueThroughputBackoffYield extends QueueThroughputBackoffNone {
     @Override
-    protected void backoff() {
-        Thread.yield();
+    protected WaitStrategy createWaitStrategy() {
+        return new SpinYieldWaitStrategy(0);
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.throughput.spsc;
+
+import org.jctools.queues.QueueByTypeFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hand written {@link org.jctools.queues.SpscArrayQueue} with the class generated by
+ * {@link org.jctools.queues.SpecializedQueueFactory}, which has the capacity, mask, look ahead step and element shift
+ * baked in as constants. The 'offerAndPoll' group measures the single threaded hot path, the 'tpt' group one producer
+ * and one consumer thread.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class SpecializedQueueThroughput {
+    private static final Integer ONE = 777;
+    @Param(value = { "SpscArrayQueue", "SpscSpecializedArrayQueue" })
+    String qType;
+    @Param(value = { "1024", "132000" })
+    int qCapacity;
+    Queue<Integer> q;
+
+    @Setup()
+    public void createQ() {
+        q = QueueByTypeFactory.createQueue(qType, qCapacity);
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class PollCounters {
+        public int pollsFailed;
+        public int pollsMade;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            pollsFailed = pollsMade = 0;
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OfferCounters {
+        public int offersFailed;
+        public int offersMade;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            offersFailed = offersMade = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("offerAndPoll")
+    public Integer offerAndPoll() {
+        q.offer(ONE);
+        return q.poll();
+    }
+
+    @Benchmark
+    @Group("tpt")
+    public void offer(OfferCounters counters) {
+        if (!q.offer(ONE)) {
+            counters.offersFailed++;
+        } else {
+            counters.offersMade++;
+        }
+    }
+
+    @Benchmark
+    @Group("tpt")
+    public Integer poll(PollCounters counters) {
+        final Integer e = q.poll();
+        if (e == null) {
+            counters.pollsFailed++;
+        } else {
+            counters.pollsMade++;
+        }
+        return e;
+    }
+
+    @TearDown(Level.Iteration)
+    public void emptyQ() {
+        // the iteration tear down runs once the group threads are done with the queue
+        while (q.poll() != null)
+            ;
+    }
+}
@@ -38,6 +38,8 @@ public class QueueByTypeFactory {
             return new SpscArrayQueue<Integer>(queueCapacity);
         case 31:
             return new SpscLinkedQueue<Integer>();
+        case 32:
+            return SpecializedQueueFactory.newSpscArrayQueue(queueCapacity, 0);
         case 40:
             return new FloatingCountersSpscConcurrentArrayQueue<Integer>(queueCapacity);
         case 5:
@@ -50,15 +52,29 @@ public class QueueByTypeFactory {
             return new MpscOnSpscQueue<Integer>(queueCapacity);
         case 63:
             return new MpscLinkedQueue8<Integer>();
+        case 64:
+            return new MpscBiasedArrayQueue<Integer>(queueCapacity);
+        case 65:
+            return new MpscXaddArrayQueue<Integer>(queueCapacity);
         case 7:
             return new MpmcArrayQueue<Integer>(queueCapacity);
         case 71:
             return new MpmcConcurrentQueueStateMarkers<Integer>(queueCapacity);
+        case 72:
+            return new MpmcKFifoArrayQueue<Integer>(queueCapacity);
+        case 73:
+            return new MpmcCompoundQueue<Integer>(queueCapacity);
+        case 74:
+            return new MpmcXaddArrayQueue<Integer>(queueCapacity);
         }
         throw new IllegalArgumentException("Type: " + queueType);
     }
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public static Queue<Integer> createQueue(String queueType, final int queueCapacity) {
+        if ("SpscSpecializedArrayQueue".equals(queueType)) {
+            // generated class, see SpecializedQueueFactory
+            return SpecializedQueueFactory.newSpscArrayQueue(queueCapacity, 0);
+        }
         Class qClass = queueClass(queueType);
         Constructor constructor;
         Exception ex;
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.spElement;
+
+import org.jctools.util.UnsafeAccess;
+
+abstract class ArrayQueueSegmentL0Pad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class ArrayQueueSegmentEnqIndex extends ArrayQueueSegmentL0Pad {
+    protected volatile long enqIndex;
+}
+
+abstract class ArrayQueueSegmentL1Pad extends ArrayQueueSegmentEnqIndex {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class ArrayQueueSegmentDeqIndex extends ArrayQueueSegmentL1Pad {
+    protected volatile long deqIndex;
+}
+
+abstract class ArrayQueueSegmentL2Pad extends ArrayQueueSegmentDeqIndex {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+/**
+ * A fixed size array segment of a {@link BaseSegmentedArrayQueue}. Producers claim slots by incrementing the enqueue
+ * index and consumers by incrementing the dequeue index, each index is only ever incremented so a claimed slot is
+ * never handed out twice. Indices may run past the segment size, any index past the end means the segment is
+ * exhausted for that side.
+ * <p>
+ * A consumer which claims a slot before the producer which claimed it has written the element replaces the
+ * <code>null</code> with {@link #TAKEN}, the producer then fails to CAS the slot and claims a new one. This keeps both
+ * sides lock free.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+final class ArrayQueueSegment<E> extends ArrayQueueSegmentL2Pad {
+    static final Object TAKEN = new Object();
+    private final static long ENQ_INDEX_OFFSET;
+    private final static long DEQ_INDEX_OFFSET;
+    private final static long NEXT_OFFSET;
+    static {
+        try {
+            ENQ_INDEX_OFFSET = UNSAFE.objectFieldOffset(ArrayQueueSegmentEnqIndex.class.getDeclaredField("enqIndex"));
+            DEQ_INDEX_OFFSET = UNSAFE.objectFieldOffset(ArrayQueueSegmentDeqIndex.class.getDeclaredField("deqIndex"));
+            NEXT_OFFSET = UNSAFE.objectFieldOffset(ArrayQueueSegment.class.getDeclaredField("next"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private final Object[] items;
+    private volatile ArrayQueueSegment<E> next;
+
+    ArrayQueueSegment(int size) {
+        items = new Object[size];
+    }
+
+    /**
+     * A segment with the first slot already holding an element, used by producers to append a new tail.
+     */
+    ArrayQueueSegment(int size, E first) {
+        items = new Object[size];
+        spElement(items, calcElementOffset(0), first);
+        enqIndex = 1;
+    }
+
+    int length() {
+        return items.length;
+    }
+
+    long lvEnqIndex() {
+        return enqIndex;
+    }
+
+    long lpEnqIndex() {
+        return UNSAFE.getLong(this, ENQ_INDEX_OFFSET);
+    }
+
+    void soEnqIndex(long v) {
+        UNSAFE.putOrderedLong(this, ENQ_INDEX_OFFSET, v);
+    }
+
+    long getAndAddEnqIndex(long delta) {
+        return getAndAdd(ENQ_INDEX_OFFSET, delta);
+    }
+
+    long lvDeqIndex() {
+        return deqIndex;
+    }
+
+    long getAndAddDeqIndex(long delta) {
+        return getAndAdd(DEQ_INDEX_OFFSET, delta);
+    }
+
+    private long getAndAdd(long offset, long delta) {
+        if (UnsafeAccess.SUPPORTS_GET_AND_ADD) {
+            return UNSAFE.getAndAddLong(this, offset, delta);
+        }
+        long v;
+        do {
+            v = UNSAFE.getLongVolatile(this, offset);
+        } while (!UNSAFE.compareAndSwapLong(this, offset, v, v + delta));
+        return v;
+    }
+
+    ArrayQueueSegment<E> lvNext() {
+        return next;
+    }
+
+    void soNext(ArrayQueueSegment<E> n) {
+        UNSAFE.putOrderedObject(this, NEXT_OFFSET, n);
+    }
+
+    boolean casNext(ArrayQueueSegment<E> expect, ArrayQueueSegment<E> n) {
+        return UNSAFE.compareAndSwapObject(this, NEXT_OFFSET, expect, n);
+    }
+
+    /**
+     * @return the element in the slot, which may be null or {@link #TAKEN}
+     */
+    Object lvItem(long index) {
+        return lvElement(items, calcElementOffset(index));
+    }
+
+    boolean casItem(long index, E e) {
+        return UNSAFE.compareAndSwapObject(items, calcElementOffset(index), null, e);
+    }
+
+    /**
+     * Mark the slot as taken, must only be called by the consumer which claimed the index.
+     *
+     * @return the element in the slot, or null if the producer has not written it yet
+     */
+    @SuppressWarnings("unchecked")
+    E takeItem(long index) {
+        final long offset = calcElementOffset(index);
+        final Object current = lvElement(items, offset);// LoadLoad
+        if (null != current) {
+            // the producer is done with the slot and no one else holds the index, no need for an atomic
+            spElement(items, offset, TAKEN);
+            return (E) current;
+        }
+        if (UnsafeAccess.SUPPORTS_GET_AND_SET) {
+            return (E) UNSAFE.getAndSetObject(items, offset, TAKEN);
+        }
+        Object e;
+        do {
+            e = lvElement(items, offset);
+        } while (!UNSAFE.compareAndSwapObject(items, offset, e, TAKEN));
+        return (E) e;
+    }
+}
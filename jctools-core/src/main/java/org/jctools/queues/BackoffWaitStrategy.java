@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+
+/**
+ * Progressive backoff: spin, then yield, then park for a period doubling from minParkNanos up to maxParkNanos. A
+ * thread which keeps failing ends up costing next to no CPU, but note that on most OSs the shortest park is in the
+ * tens of microseconds whatever minParkNanos is set to, so the park phase adds that much latency to a wakeup.
+ *
+ * @author nitsanw
+ */
+public final class BackoffWaitStrategy implements WaitStrategy {
+    private final int maxSpins;
+    private final int maxYields;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    public BackoffWaitStrategy() {
+        this(10, 5, 1000L, 1000000L);
+    }
+
+    /**
+     * @param maxSpins number of attempts before yielding
+     * @param maxYields number of yielding attempts before parking
+     * @param minParkNanos first park period
+     * @param maxParkNanos longest park period
+     */
+    public BackoffWaitStrategy(final int maxSpins, final int maxYields, final long minParkNanos,
+            final long maxParkNanos) {
+        if (maxSpins < 0 || maxYields < 0) {
+            throw new IllegalArgumentException("maxSpins and maxYields must not be negative");
+        }
+        if (minParkNanos < 1 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("must have 0 < minParkNanos <= maxParkNanos");
+        }
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public int idle(final int idleCounter) {
+        if (idleCounter < maxSpins) {
+            return idleCounter + 1;
+        }
+        final int yields = idleCounter - maxSpins;
+        if (yields < maxYields) {
+            Thread.yield();
+            return idleCounter + 1;
+        }
+        final int parks = yields - maxYields;
+        final long parkNanos = minParkNanos << Math.min(parks, 30);
+        if (parkNanos >= maxParkNanos || parkNanos < minParkNanos) {
+            // stop counting once at the max so the counter can not overflow
+            LockSupport.parkNanos(maxParkNanos);
+            return idleCounter;
+        }
+        LockSupport.parkNanos(parkNanos);
+        return idleCounter + 1;
+    }
+
+    @Override
+    public void signal() {
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The unpadded counterpart of {@link BaseLinkedQueue}, for use cases where a very large number of mostly uncontended
+ * queues is required. The producer and consumer node references may share a cache line.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+abstract class BaseCompactLinkedQueue<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    protected final static long P_NODE_OFFSET;
+    protected final static long C_NODE_OFFSET;
+
+    static {
+        try {
+            P_NODE_OFFSET = UNSAFE.objectFieldOffset(BaseCompactLinkedQueue.class.getDeclaredField("producerNode"));
+            C_NODE_OFFSET = UNSAFE.objectFieldOffset(BaseCompactLinkedQueue.class.getDeclaredField("consumerNode"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected LinkedQueueNode<E> producerNode;
+    protected LinkedQueueNode<E> consumerNode;
+
+    protected final void spProducerNode(LinkedQueueNode<E> node) {
+        producerNode = node;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final LinkedQueueNode<E> lvProducerNode() {
+        return (LinkedQueueNode<E>) UNSAFE.getObjectVolatile(this, P_NODE_OFFSET);
+    }
+
+    protected final void spConsumerNode(LinkedQueueNode<E> node) {
+        consumerNode = node;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final LinkedQueueNode<E> lvConsumerNode() {
+        return (LinkedQueueNode<E>) UNSAFE.getObjectVolatile(this, C_NODE_OFFSET);
+    }
+
+    protected final LinkedQueueNode<E> lpConsumerNode() {
+        return consumerNode;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The iterator is weakly consistent and non-blocking: it follows the links from the consumer node observed when
+     * it was created to the last linked node, skipping nodes consumed along the way, without writing to the queue.
+     * Elements added while iterating may or may not be returned. {@link #toArray()} and friends are implemented on top
+     * of it and provide a snapshot with the same guarantees.<br>
+     * {@link Iterator#remove()} is not supported.
+     */
+    @Override
+    public final Iterator<E> iterator() {
+        return new WeakIterator(lvConsumerNode());
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private LinkedQueueNode<E> node;
+        private E nextElement;
+
+        WeakIterator(LinkedQueueNode<E> node) {
+            this.node = node;
+            nextElement = getNext();
+        }
+
+        private E getNext() {
+            LinkedQueueNode<E> next;
+            while ((next = node.lvNext()) != null) {
+                node = next;
+                // consumed nodes have their value nulled
+                final E e = next.lvValue();
+                if (null != e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Offer never waits on other threads, so this is the same as {@link #offer(Object)}.
+     */
+    @Override
+    public final boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Poll is allowed from a SINGLE thread.<br>
+     * If the next node is not linked yet the queue is reported empty, even if a producer has already swapped in a new
+     * producer node and is yet to link it.
+     */
+    @Override
+    public final E relaxedPoll() {
+        final LinkedQueueNode<E> currConsumerNode = lpConsumerNode();
+        final LinkedQueueNode<E> nextNode = currConsumerNode.lvNext();
+        if (nextNode != null) {
+            // we have to null out the value because we are going to hang on to the node
+            final E nextValue = nextNode.getAndNullValue();
+            spConsumerNode(nextNode);
+            return nextValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Peek is allowed from a SINGLE thread, see {@link #relaxedPoll()}.
+     */
+    @Override
+    public final E relaxedPeek() {
+        final LinkedQueueNode<E> nextNode = lpConsumerNode().lvNext();
+        if (nextNode != null) {
+            return nextNode.lpValue();
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Drain is allowed from a SINGLE thread. Each node is unlinked as for {@link #relaxedPoll()}, there is no index to
+     * publish so nothing is saved by batching.
+     */
+    @Override
+    public final int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = relaxedPoll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The queue is unbounded and a node is allocated per element, so this is the same as offering limit elements.
+     */
+    @Override
+    public final int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            offer(s.get());
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * This is an O(n) operation as we run through all the nodes and count them.<br>
+     * 
+     * @see java.util.Queue#size()
+     */
+    @Override
+    public final int size() {
+        LinkedQueueNode<E> temp = lvConsumerNode();
+        int size = 0;
+        while ((temp = temp.lvNext()) != null && size < Integer.MAX_VALUE) {
+            size++;
+        }
+        return size;
+    }
+    
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Queue is empty when producerNode is the same as consumerNode. An alternative implementation would be to observe
+     * the producerNode.value is null, which also means an empty queue because only the consumerNode.value is allowed to
+     * be null.
+     * 
+     * @see MessagePassingQueue#isEmpty()
+     */
+    @Override
+    public final boolean isEmpty() {
+        return lvConsumerNode() == lvProducerNode();
+    }
+}
@@ -17,8 +17,9 @@ import static org.jctools.util.UnsafeAccess.UNSAFE;
 
 import java.util.AbstractQueue;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-abstract class BaseLinkedQueuePad0<E> extends AbstractQueue<E> {
+abstract class BaseLinkedQueuePad0<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
     long p00, p01, p02, p03, p04, p05, p06, p07;
     long p30, p31, p32, p33, p34, p35, p36, p37;
 }
@@ -90,9 +91,142 @@ abstract class BaseLinkedQueue<E> extends BaseLinkedQueueConsumerNodeRef<E> {
     long p30, p31, p32, p33, p34, p35, p36, p37;
 
 
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The iterator is weakly consistent and non-blocking: it follows the links from the consumer node observed when
+     * it was created to the last linked node, skipping nodes consumed along the way, without writing to the queue.
+     * Elements added while iterating may or may not be returned. {@link #toArray()} and friends are implemented on top
+     * of it and provide a snapshot with the same guarantees.<br>
+     * {@link Iterator#remove()} is not supported.
+     */
     @Override
     public final Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        return new WeakIterator(lvConsumerNode());
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private LinkedQueueNode<E> node;
+        private E nextElement;
+
+        WeakIterator(LinkedQueueNode<E> node) {
+            this.node = node;
+            nextElement = getNext();
+        }
+
+        private E getNext() {
+            LinkedQueueNode<E> next;
+            while ((next = node.lvNext()) != null) {
+                node = next;
+                // consumed nodes have their value nulled
+                final E e = next.lvValue();
+                if (null != e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Offer never waits on other threads, so this is the same as {@link #offer(Object)}.
+     */
+    @Override
+    public final boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Poll is allowed from a SINGLE thread.<br>
+     * If the next node is not linked yet the queue is reported empty, even if a producer has already swapped in a new
+     * producer node and is yet to link it.
+     */
+    @Override
+    public final E relaxedPoll() {
+        final LinkedQueueNode<E> currConsumerNode = lpConsumerNode();
+        final LinkedQueueNode<E> nextNode = currConsumerNode.lvNext();
+        if (nextNode != null) {
+            // we have to null out the value because we are going to hang on to the node
+            final E nextValue = nextNode.getAndNullValue();
+            spConsumerNode(nextNode);
+            return nextValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Peek is allowed from a SINGLE thread, see {@link #relaxedPoll()}.
+     */
+    @Override
+    public final E relaxedPeek() {
+        final LinkedQueueNode<E> nextNode = lpConsumerNode().lvNext();
+        if (nextNode != null) {
+            return nextNode.lpValue();
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Drain is allowed from a SINGLE thread. Each node is unlinked as for {@link #relaxedPoll()}, there is no index to
+     * publish so nothing is saved by batching.
+     */
+    @Override
+    public final int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = relaxedPoll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The queue is unbounded and a node is allocated per element, so this is the same as offering limit elements.
+     */
+    @Override
+    public final int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            offer(s.get());
+        }
+        return limit;
     }
 
     /**
@@ -0,0 +1,361 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+abstract class BaseSegmentedArrayQueuePad0<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class BaseSegmentedArrayQueueProducerSegmentRef<E> extends BaseSegmentedArrayQueuePad0<E> {
+    protected final static long P_SEGMENT_OFFSET;
+
+    static {
+        try {
+            P_SEGMENT_OFFSET = UNSAFE.objectFieldOffset(BaseSegmentedArrayQueueProducerSegmentRef.class
+                    .getDeclaredField("producerSegment"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected ArrayQueueSegment<E> producerSegment;
+
+    protected final void spProducerSegment(ArrayQueueSegment<E> segment) {
+        producerSegment = segment;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final ArrayQueueSegment<E> lvProducerSegment() {
+        return (ArrayQueueSegment<E>) UNSAFE.getObjectVolatile(this, P_SEGMENT_OFFSET);
+    }
+
+    protected final ArrayQueueSegment<E> lpProducerSegment() {
+        return producerSegment;
+    }
+
+    protected final boolean casProducerSegment(ArrayQueueSegment<E> expect, ArrayQueueSegment<E> newValue) {
+        return UNSAFE.compareAndSwapObject(this, P_SEGMENT_OFFSET, expect, newValue);
+    }
+}
+
+abstract class BaseSegmentedArrayQueuePad1<E> extends BaseSegmentedArrayQueueProducerSegmentRef<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class BaseSegmentedArrayQueueConsumerSegmentRef<E> extends BaseSegmentedArrayQueuePad1<E> {
+    protected final static long C_SEGMENT_OFFSET;
+
+    static {
+        try {
+            C_SEGMENT_OFFSET = UNSAFE.objectFieldOffset(BaseSegmentedArrayQueueConsumerSegmentRef.class
+                    .getDeclaredField("consumerSegment"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected ArrayQueueSegment<E> consumerSegment;
+
+    protected final void svConsumerSegment(ArrayQueueSegment<E> segment) {
+        UNSAFE.putObjectVolatile(this, C_SEGMENT_OFFSET, segment);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final ArrayQueueSegment<E> lvConsumerSegment() {
+        return (ArrayQueueSegment<E>) UNSAFE.getObjectVolatile(this, C_SEGMENT_OFFSET);
+    }
+
+    protected final boolean casConsumerSegment(ArrayQueueSegment<E> expect, ArrayQueueSegment<E> newValue) {
+        return UNSAFE.compareAndSwapObject(this, C_SEGMENT_OFFSET, expect, newValue);
+    }
+}
+
+abstract class BaseSegmentedArrayQueuePad2<E> extends BaseSegmentedArrayQueueConsumerSegmentRef<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+/**
+ * A base data structure for unbounded multi-consumer queues made of a linked list of fixed size array segments, after
+ * the FAAArrayQueue by Ramalhete and Correia. Each segment has its own enqueue and dequeue index, and threads claim a
+ * slot by incrementing the index with a fetch-and-add (emulated with a CAS loop where Unsafe.getAndAddLong is not
+ * available). Unlike a CAS based claim the increment always succeeds, so contended threads do not retry on the index.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The consumer side is shared by all sub-classes and is lock free:
+ * <ol>
+ * <li>A consumer which sees the dequeue index has caught up with the enqueue index, and no next segment, reports the
+ * queue as empty. It therefore only claims a slot when an element has at least been claimed by a producer.
+ * <li>A consumer which claims a slot the producer has yet to fill marks it as taken and moves on, the producer will
+ * fail to CAS the slot and claim another. This is the price of never waiting on a producer.
+ * <li>A consumer which claims an index past the end of the segment moves the consumer segment on to the next
+ * segment, if linked.
+ * </ol>
+ * Segments are only reclaimed by the GC, they are never reused as that would re-introduce the ABA problem on the
+ * segment indices. The allocation is one segment per segment size elements rather than a node per element as in
+ * {@link java.util.concurrent.ConcurrentLinkedQueue}.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+abstract class BaseSegmentedArrayQueue<E> extends BaseSegmentedArrayQueuePad2<E> {
+    protected final int segmentSize;
+
+    public BaseSegmentedArrayQueue(final int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        this.segmentSize = segmentSize;
+        final ArrayQueueSegment<E> segment = new ArrayQueueSegment<E>(segmentSize);
+        spProducerSegment(segment);
+        svConsumerSegment(segment); // this ensures correct construction: StoreLoad
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking: it walks the segments from the consumer segment observed
+     * when it was created, skipping slots which are consumed or not yet written, without writing to the queue.
+     * Elements added while iterating may or may not be returned. {@link Iterator#remove()} is not supported.
+     */
+    @Override
+    public final Iterator<E> iterator() {
+        return new WeakIterator(lvConsumerSegment());
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private ArrayQueueSegment<E> segment;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator(ArrayQueueSegment<E> segment) {
+            this.segment = segment;
+            nextElement = getNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        private E getNext() {
+            while (true) {
+                nextIndex = Math.max(nextIndex, segment.lvDeqIndex());
+                final long limit = Math.min(segment.lvEnqIndex(), segmentSize);
+                while (nextIndex < limit) {
+                    final Object e = segment.lvItem(nextIndex++);
+                    if (null != e && ArrayQueueSegment.TAKEN != e) {
+                        return (E) e;
+                    }
+                }
+                final ArrayQueueSegment<E> next;
+                if (limit < segmentSize || null == (next = segment.lvNext())) {
+                    return null;
+                }
+                segment = next;
+                nextIndex = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for multiple consumer threads use. It is lock free, but may return null while a
+     * producer which has claimed the first available slot is yet to write to it.
+     */
+    @Override
+    public final E poll() {
+        while (true) {
+            final ArrayQueueSegment<E> segment = lvConsumerSegment();
+            final long index = segment.lvDeqIndex();
+            if (index >= segment.lvEnqIndex() && null == segment.lvNext()) {
+                return null;
+            }
+            final long claimed = segment.getAndAddDeqIndex(1);
+            if (claimed >= segmentSize) {
+                if (!nextConsumerSegment(segment)) {
+                    return null;
+                }
+                continue;
+            }
+            final E e = segment.takeItem(claimed);
+            if (null != e) {
+                return e;
+            }
+            // beat the producer to the slot, it will claim another
+        }
+    }
+
+    /**
+     * @return false if the segment is the last one
+     */
+    private boolean nextConsumerSegment(final ArrayQueueSegment<E> segment) {
+        final ArrayQueueSegment<E> next = segment.lvNext();
+        if (null == next) {
+            return false;
+        }
+        casConsumerSegment(segment, next);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for multiple consumer threads use. Elements are claimed in runs of up to the
+     * number of elements the segment indices show as available, with a single fetch-and-add per run.
+     */
+    @Override
+    public final int drain(final Consumer<E> c, final int limit) {
+        int i = 0;
+        while (i < limit) {
+            final ArrayQueueSegment<E> segment = lvConsumerSegment();
+            final long index = segment.lvDeqIndex();
+            final long available = Math.min(segment.lvEnqIndex(), segmentSize) - index;
+            if (available <= 0) {
+                if (index >= segmentSize) {
+                    if (!nextConsumerSegment(segment)) {
+                        break;
+                    }
+                } else if (null == segment.lvNext()) {
+                    break;
+                }
+                // a stale enqueue index on a full segment, retry
+                continue;
+            }
+            final int batchSize = (int) Math.min(available, limit - i);
+            final long claimed = segment.getAndAddDeqIndex(batchSize);
+            final long batchLimit = Math.min(claimed + batchSize, segmentSize);
+            for (long j = claimed; j < batchLimit; j++) {
+                final E e = segment.takeItem(j);
+                if (null != e) {
+                    c.accept(e);
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for multiple consumer threads use, but as other consumers may claim the returned
+     * element at any time it is only a hint.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public final E peek() {
+        ArrayQueueSegment<E> segment = lvConsumerSegment();
+        do {
+            final long limit = Math.min(segment.lvEnqIndex(), segmentSize);
+            for (long index = segment.lvDeqIndex(); index < limit; index++) {
+                final Object e = segment.lvItem(index);
+                if (null != e && ArrayQueueSegment.TAKEN != e) {
+                    return (E) e;
+                }
+            }
+            segment = segment.lvNext();
+        } while (null != segment);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the consumers, so it is the same as {@link #offer(Object)}.
+     */
+    @Override
+    public final boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producers, so it is the same as {@link #poll()}.
+     */
+    @Override
+    public final E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producers, so it is the same as {@link #peek()}.
+     */
+    @Override
+    public final E relaxedPeek() {
+        return peek();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The size is summed over the segments from the consumer segment on, claims by producers which are yet to write
+     * their element are counted. Each slot a consumer marked as taken is matched by a failed producer claim, so these
+     * cancel out.
+     */
+    @Override
+    public final int size() {
+        long size = 0;
+        ArrayQueueSegment<E> segment = lvConsumerSegment();
+        do {
+            final long deqIndex = Math.min(segment.lvDeqIndex(), segmentSize);
+            final long enqIndex = Math.min(segment.lvEnqIndex(), segmentSize);
+            if (enqIndex > deqIndex) {
+                size += enqIndex - deqIndex;
+            }
+            segment = segment.lvNext();
+        } while (null != segment && size < Integer.MAX_VALUE);
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        ArrayQueueSegment<E> segment = lvConsumerSegment();
+        do {
+            final long deqIndex = segment.lvDeqIndex();
+            if (Math.min(segment.lvEnqIndex(), segmentSize) > deqIndex) {
+                return false;
+            }
+            segment = segment.lvNext();
+        } while (null != segment);
+        return true;
+    }
+}
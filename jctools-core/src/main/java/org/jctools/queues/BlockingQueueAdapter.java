@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link BlockingQueue} on top of any of the non-blocking queues in this library, see
+ * {@link QueueFactory#newBlockingQueue(org.jctools.queues.spec.ConcurrentQueueSpec)}.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * Operations which succeed on the underlying queue never take the lock, it is only used by threads which found the
+ * queue empty (or full) and have to wait:
+ * <ol>
+ * <li>A waiting consumer announces itself by incrementing the waiting consumers count under the lock, and then polls
+ * the queue once more before awaiting the not empty condition.
+ * <li>A producer makes its element visible and then checks the waiting consumers count, only taking the lock to
+ * signal the condition if a consumer has announced itself. The StoreLoad barrier on either side ensures either the
+ * consumer sees the element or the producer sees the consumer.
+ * <li>The same goes for producers waiting for room in a bounded queue, with consumers checking the waiting producers
+ * count after each successful poll. Consumers of an unbounded queue skip this check.
+ * </ol>
+ * The thread restrictions of the underlying queue apply, e.g. an adapter on a single consumer queue must only be
+ * taken from by one thread.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class BlockingQueueAdapter<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Queue<E> q;
+    private final int capacity;
+    private final boolean bounded;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // only written under the lock
+    private volatile int waitingConsumers;
+    private volatile int waitingProducers;
+    // written by successful producers/consumers for the StoreLoad barrier only
+    private volatile int producerFence;
+    private volatile int consumerFence;
+
+    /**
+     * @param q the underlying queue, must not be used directly once wrapped
+     * @param capacity the capacity of the underlying queue, {@link Integer#MAX_VALUE} if it is unbounded
+     */
+    public BlockingQueueAdapter(final Queue<E> q, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.q = q;
+        this.capacity = capacity;
+        this.bounded = capacity != Integer.MAX_VALUE;
+    }
+
+    private void signalNotEmpty() {
+        producerFence = 0;// StoreLoad
+        if (waitingConsumers > 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signalNotFull(final boolean all) {
+        if (!bounded) {
+            return;
+        }
+        consumerFence = 0;// StoreLoad
+        if (waitingProducers > 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (all) {
+                    notFull.signalAll();
+                } else {
+                    notFull.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (q.offer(e)) {
+            signalNotEmpty();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(final E e) throws InterruptedException {
+        if (!q.offer(e)) {
+            awaitNotFull(e, false, 0L);
+        }
+        signalNotEmpty();
+    }
+
+    @Override
+    public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!q.offer(e) && !awaitNotFull(e, true, unit.toNanos(timeout))) {
+            return false;
+        }
+        signalNotEmpty();
+        return true;
+    }
+
+    private boolean awaitNotFull(final E e, final boolean timed, long nanos) throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            waitingProducers++;// StoreLoad
+            try {
+                while (!q.offer(e)) {
+                    if (!timed) {
+                        notFull.await();
+                    } else if (nanos > 0L) {
+                        nanos = notFull.awaitNanos(nanos);
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException ie) {
+                // the signal may have been meant for us, pass it on
+                notFull.signal();
+                throw ie;
+            } finally {
+                waitingProducers--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        final E e = q.poll();
+        if (null != e) {
+            signalNotFull(false);
+        }
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = q.poll();
+        if (null == e) {
+            e = awaitNotEmpty(false, 0L);
+        }
+        signalNotFull(false);
+        return e;
+    }
+
+    @Override
+    public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        E e = q.poll();
+        if (null == e && null == (e = awaitNotEmpty(true, unit.toNanos(timeout)))) {
+            return null;
+        }
+        signalNotFull(false);
+        return e;
+    }
+
+    private E awaitNotEmpty(final boolean timed, long nanos) throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            waitingConsumers++;// StoreLoad
+            try {
+                E e;
+                while (null == (e = q.poll())) {
+                    if (!timed) {
+                        notEmpty.await();
+                    } else if (nanos > 0L) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } else {
+                        return null;
+                    }
+                }
+                return e;
+            } catch (InterruptedException ie) {
+                // the signal may have been meant for us, pass it on
+                notEmpty.signal();
+                throw ie;
+            } finally {
+                waitingConsumers--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        return q.peek();
+    }
+
+    @Override
+    public int size() {
+        return q.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return q.isEmpty();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return bounded ? Math.max(0, capacity - q.size()) : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> c, final int maxElements) {
+        if (null == c) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int i = 0;
+        E e;
+        while (i < maxElements && null != (e = q.poll())) {
+            c.add(e);
+            i++;
+        }
+        if (i > 0) {
+            signalNotFull(true);
+        }
+        return i;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return q.iterator();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+
+/**
+ * Retry straight away. This gives the lowest latency at the cost of burning a core while waiting, and should only be
+ * used when there are more cores than busy threads.
+ *
+ * @author nitsanw
+ */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public int idle(final int idleCounter) {
+        return idleCounter + 1;
+    }
+
+    @Override
+    public void signal() {
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+
+/**
+ * The unpadded counterpart of {@link ConcurrentCircularArrayQueue}, for use cases where a very large number of
+ * mostly uncontended queues is required and the footprint of the padding (several 128 byte blocks per instance,
+ * plus the 2 * 32 slots padding the buffer) outweighs the cost of false sharing.<br>
+ * There are no padding classes above or below the fields of the subclasses and the buffer is allocated at the
+ * requested capacity (rounded up to the next power of 2) only.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public abstract class CompactCircularArrayQueue<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    protected final int capacity;
+    protected final long mask;
+    protected final E[] buffer;
+
+    @SuppressWarnings("unchecked")
+    public CompactCircularArrayQueue(int capacity) {
+        this.capacity = Pow2.roundToPowerOfTwo(capacity);
+        mask = this.capacity - 1;
+        buffer = (E[]) new Object[this.capacity];
+    }
+
+    /**
+     * @param index desirable element index
+     * @return the offset in bytes within the array for a given index.
+     */
+    protected final long calcOffset(long index) {
+        return calcElementOffset(index, mask);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link CompactCircularArrayQueue#calcOffset(long)}
+     * @param e a kitty
+     */
+    protected final void spElement(E[] buffer, long offset, E e) {
+        UNSAFE.putObject(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link CompactCircularArrayQueue#calcOffset(long)}
+     * @param e an orderly kitty
+     */
+    protected final void soElement(E[] buffer, long offset, E e) {
+        UNSAFE.putOrderedObject(buffer, offset, e);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link CompactCircularArrayQueue#calcOffset(long)}
+     * @return the element at the offset
+     */
+    @SuppressWarnings("unchecked")
+    protected final E lvElement(E[] buffer, long offset) {
+        return (E) UNSAFE.getObjectVolatile(buffer, offset);
+    }
+
+    protected abstract long lvProducerIndex();
+
+    protected abstract long lvConsumerIndex();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #offer(Object)}, subclasses which may wait for other threads on offer
+     * are expected to override it.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #poll()}, subclasses which may wait for other threads on poll are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #peek()}, subclasses which may wait for other threads on peek are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPeek() {
+        return peek();
+    }
+
+    @Override
+    public final int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        // Order matters!
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures the correctness of this method at least for the consumer thread.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking, see {@link ConcurrentCircularArrayQueue#iterator()}.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final long cIndex = lvConsumerIndex();
+        final long pIndex = lvProducerIndex();
+        return new WeakIterator(cIndex, pIndex);
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private final long pIndex;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator(long cIndex, long pIndex) {
+            this.pIndex = pIndex;
+            nextIndex = cIndex;
+            nextElement = getNext();
+        }
+
+        private E getNext() {
+            while (nextIndex < pIndex) {
+                // skip over anything consumed since
+                final long cIndex = lvConsumerIndex();
+                if (nextIndex < cIndex) {
+                    nextIndex = cIndex;
+                    continue;
+                }
+                final E e = lvElement(buffer, calcOffset(nextIndex++));// LoadLoad
+                if (null != e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    @Override
+    public void clear() {
+        // we have to test isEmpty because of the weaker poll() guarantee
+        while (poll() != null || !isEmpty())
+            ;
+    }
+}
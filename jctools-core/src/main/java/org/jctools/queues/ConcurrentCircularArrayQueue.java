@@ -18,6 +18,7 @@ import org.jctools.util.UnsafeAccess;
 
 import java.util.AbstractQueue;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import static org.jctools.util.UnsafeAccess.UNSAFE;
 
@@ -34,9 +35,17 @@ abstract class ConcurrentCircularArrayQueueL0Pad<E> extends AbstractQueue<E> imp
  * <p>
  * Offset calculation is separate from access to enable the reuse of a give compute offset.
  * <p>
+ * The buffer is allocated in full by the constructor and kept for the life of the queue, see
+ * {@link SpscGrowableArrayQueue} for a buffer allocated on the first offer and given back when idle.
+ * <p>
  * Load/Store methods using a <i>buffer</i> parameter are provided to allow the prevention of final field reload after a
  * LoadLoad barrier.
  * <p>
+ * Elements may be spread out in the buffer so that only every 2^sparseShift slot is used, reducing false sharing
+ * between producers and consumers working on neighbouring elements at the cost of a larger buffer. The sparse shift is
+ * the JVM wide "sparse.shift" system property, so the element shift is a static constant. Queues with a shift of their
+ * own are built on {@link SparseCircularArrayQueue} instead, e.g. {@link MpmcSparseArrayQueue}.
+ * <p>
  * 
  * @author nitsanw
  * 
@@ -167,9 +176,145 @@ public abstract class ConcurrentCircularArrayQueue<E> extends ConcurrentCircular
         return (E) UNSAFE.getObjectVolatile(buffer, offset);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #offer(Object)}, subclasses which may wait for other threads on offer
+     * are expected to override it.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #poll()}, subclasses which may wait for other threads on poll are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #peek()}, subclasses which may wait for other threads on peek are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPeek() {
+        return peek();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #poll()}, subclasses are expected to provide a batched
+     * implementation which publishes the consumer index once per batch.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = poll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #offer(Object)}, subclasses are expected to provide a batched
+     * implementation which claims and publishes the producer index once per batch. Note that this implementation
+     * checks for space before calling the supplier, and once it has an element it retries the offer until it succeeds
+     * rather than drop it. With other producers racing for the space the retry waits on the consumer.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (size() >= capacity) {
+                return i;
+            }
+            final E e = s.get();
+            while (!offer(e)) {
+                // another producer took the space seen above, wait for the consumer to make room
+            }
+        }
+        return limit;
+    }
+
+    protected abstract long lvProducerIndex();
+
+    protected abstract long lvConsumerIndex();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking: it walks the slots between the consumer and producer indices
+     * observed when it was created, skipping slots consumed since or not yet written, without writing to the queue.
+     * Elements added after the iterator was created are not returned. {@link #toArray()} and friends are implemented
+     * on top of it and provide a snapshot with the same guarantees.<br>
+     * {@link Iterator#remove()} is not supported.
+     */
     @Override
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        final long cIndex = lvConsumerIndex();
+        final long pIndex = lvProducerIndex();
+        return new WeakIterator(cIndex, pIndex);
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private final long pIndex;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator(long cIndex, long pIndex) {
+            this.pIndex = pIndex;
+            nextIndex = cIndex;
+            nextElement = getNext();
+        }
+
+        private E getNext() {
+            while (nextIndex < pIndex) {
+                // skip over anything consumed since
+                final long cIndex = lvConsumerIndex();
+                if (nextIndex < cIndex) {
+                    nextIndex = cIndex;
+                    continue;
+                }
+                final E e = lvElement(calcElementOffset(nextIndex++));// LoadLoad
+                if (null != e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
     }
     @Override
     public void clear() {
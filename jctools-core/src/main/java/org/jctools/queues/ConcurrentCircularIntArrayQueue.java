@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.UnsafeAccess;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class ConcurrentCircularIntArrayQueueL0Pad implements IntMessagePassingQueue {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+/**
+ * The int[] counterpart of {@link ConcurrentCircularArrayQueue}, exposing an offset computation method along with
+ * differently memory fenced load/store methods into the underlying array. As int elements cannot be null the
+ * subclasses track the occupied slots via the producer/consumer indices or a sequence buffer rather than the
+ * elements.
+ *
+ * @author nitsanw
+ */
+public abstract class ConcurrentCircularIntArrayQueue extends ConcurrentCircularIntArrayQueueL0Pad {
+    protected static final int SPARSE_SHIFT = ConcurrentCircularArrayQueue.SPARSE_SHIFT;
+    protected static final int BUFFER_PAD = ConcurrentCircularArrayQueue.BUFFER_PAD;
+    private static final long ARRAY_BASE;
+    private static final int ELEMENT_SHIFT;
+    static {
+        final int scale = UnsafeAccess.UNSAFE.arrayIndexScale(int[].class);
+        if (4 == scale) {
+            ELEMENT_SHIFT = 2 + SPARSE_SHIFT;
+        } else {
+            throw new IllegalStateException("Unexpected int[] element size");
+        }
+        // Including the buffer pad in the array base offset
+        ARRAY_BASE = UnsafeAccess.UNSAFE.arrayBaseOffset(int[].class) + (BUFFER_PAD << (ELEMENT_SHIFT - SPARSE_SHIFT));
+    }
+    protected final int capacity;
+    protected final long mask;
+    protected final int[] buffer;
+
+    public ConcurrentCircularIntArrayQueue(int capacity) {
+        this.capacity = Pow2.roundToPowerOfTwo(capacity);
+        mask = this.capacity - 1;
+        // pad data on either end with some empty slots.
+        buffer = new int[(this.capacity << SPARSE_SHIFT) + BUFFER_PAD * 2];
+    }
+
+    /**
+     * @param index desirable element index
+     * @return the offset in bytes within the array for a given index.
+     */
+    protected final long calcElementOffset(long index) {
+        return ARRAY_BASE + ((index & mask) << ELEMENT_SHIFT);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link ConcurrentCircularIntArrayQueue#calcElementOffset(long)}
+     * @param e an element
+     */
+    protected final void spElement(int[] buffer, long offset, int e) {
+        UNSAFE.putInt(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link ConcurrentCircularIntArrayQueue#calcElementOffset(long)}
+     * @param e an element
+     */
+    protected final void soElement(int[] buffer, long offset, int e) {
+        UNSAFE.putOrderedInt(buffer, offset, e);
+    }
+
+    /**
+     * A plain load (no ordering/fences) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link ConcurrentCircularIntArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    protected final int lpElement(int[] buffer, long offset) {
+        return UNSAFE.getInt(buffer, offset);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link ConcurrentCircularIntArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    protected final int lvElement(int[] buffer, long offset) {
+        return UNSAFE.getIntVolatile(buffer, offset);
+    }
+
+    protected abstract long lvProducerIndex();
+
+    protected abstract long lvConsumerIndex();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #poll(IntMessagePassingQueue.IntConsumer)}, subclasses are
+     * expected to provide a batched implementation where possible.
+     */
+    @Override
+    public int drain(final IntConsumer c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (!poll(c)) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #offer(int)}, subclasses are expected to provide a batched
+     * implementation where possible. Note that this implementation checks for space before calling the supplier, and
+     * once it has an element it retries the offer until it succeeds rather than drop it. With other producers racing
+     * for the space the retry waits on the consumer.
+     */
+    @Override
+    public int fill(final IntSupplier s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (size() >= capacity) {
+                return i;
+            }
+            final int e = s.get();
+            while (!offer(e)) {
+                // another producer took the space seen above, wait for the consumer to make room
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public final int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        // Order matters!
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures this method is conservative in it's estimate.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+
+    @Override
+    public final int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity + "]";
+    }
+}
@@ -53,4 +53,8 @@ public abstract class ConcurrentSequencedCircularArrayQueue<E> extends Concurren
         return UNSAFE.getLongVolatile(buffer, offset);
     }
 
+    protected final boolean casSequence(long[] buffer, long offset, long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(buffer, offset, expect, newValue);
+    }
+
 }
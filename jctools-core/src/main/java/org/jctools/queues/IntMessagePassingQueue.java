@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * The primitive int counterpart of {@link MessagePassingQueue}, elements are never boxed.<br>
+ * As any int value is a valid element there is no empty sentinel value, the queue is found empty when poll returns
+ * false. Elements are handed out to a {@link IntConsumer} which may be allocated once and reused across calls.
+ *
+ * @author nitsanw
+ */
+public interface IntMessagePassingQueue {
+
+    /**
+     * A source of elements for {@link IntMessagePassingQueue#fill(IntSupplier, int)}.
+     */
+    public interface IntSupplier {
+        /**
+         * This method will be called from the producer thread while it holds claimed slots in the queue, it must
+         * therefore return promptly and never throw.
+         *
+         * @return a new element
+         */
+        int get();
+    }
+
+    /**
+     * A sink of elements for {@link IntMessagePassingQueue#poll(IntConsumer)} and
+     * {@link IntMessagePassingQueue#drain(IntConsumer, int)}.
+     */
+    public interface IntConsumer {
+        /**
+         * This method will be called from the consumer thread for each element removed from the queue. Queue
+         * progress may not be published until the batch is complete, it must therefore return promptly and never
+         * throw.
+         *
+         * @param e an element removed from the queue
+         */
+        void accept(int e);
+    }
+
+    /**
+     * Called from a producer thread subject to the restrictions appropriate to the implementation.
+     *
+     * @param e the element to insert
+     * @return true if element was inserted into the queue, false iff full
+     */
+    boolean offer(int e);
+
+    /**
+     * Called from the consumer thread subject to the restrictions appropriate to the implementation. The element
+     * removed is handed to the consumer before this method returns.
+     *
+     * @param c the consumer to be handed the removed element
+     * @return true if an element was removed and handed to the consumer, false iff empty
+     */
+    boolean poll(IntConsumer c);
+
+    /**
+     * Remove up to limit elements from the queue and hand them to the consumer, see
+     * {@link MessagePassingQueue#drain(MessagePassingQueue.Consumer, int)}.
+     *
+     * @param c the consumer to be handed the removed elements
+     * @param limit the maximum number of elements to remove
+     * @return the number of elements handed to the consumer
+     */
+    int drain(IntConsumer c, int limit);
+
+    /**
+     * Stuff the queue with up to limit elements taken from the supplier, see
+     * {@link MessagePassingQueue#fill(MessagePassingQueue.Supplier, int)}.
+     *
+     * @param s the supplier of the new elements
+     * @param limit the maximum number of elements to insert
+     * @return the number of elements taken from the supplier and inserted
+     */
+    int fill(IntSupplier s, int limit);
+
+    /**
+     * This method's accuracy is subject to concurrent modifications happening as the size is estimated and as such is a
+     * best effort rather than absolute value.
+     *
+     * @return number of elements in the queue, between 0 and queue capacity
+     */
+    int size();
+
+    /**
+     * This method's accuracy is subject to concurrent modifications happening as the observation is carried out.
+     *
+     * @return true if empty, false otherwise
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the capacity of the queue, which may be larger than the capacity requested on construction
+     */
+    int capacity();
+}
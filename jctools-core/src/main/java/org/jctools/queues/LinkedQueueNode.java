@@ -16,9 +16,11 @@ package org.jctools.queues;
 import static org.jctools.util.UnsafeAccess.UNSAFE;
 
 final class LinkedQueueNode<E> {
+    private final static long VALUE_OFFSET;
     private final static long NEXT_OFFSET;
     static {
         try {
+            VALUE_OFFSET = UNSAFE.objectFieldOffset(LinkedQueueNode.class.getDeclaredField("value"));
             NEXT_OFFSET = UNSAFE.objectFieldOffset(LinkedQueueNode.class.getDeclaredField("next"));
         } catch (NoSuchFieldException e) {
             throw new RuntimeException(e);
@@ -50,6 +52,11 @@ final class LinkedQueueNode<E> {
         return value;
     }
 
+    @SuppressWarnings("unchecked")
+    public E lvValue() {
+        return (E) UNSAFE.getObjectVolatile(this, VALUE_OFFSET);
+    }
+
     public void spValue(E newValue) {
         value =  newValue;
     }
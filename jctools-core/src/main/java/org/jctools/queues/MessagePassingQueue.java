@@ -26,8 +26,61 @@ import java.util.Queue;
  * 
  * @param <M> the event/message type
  */
-interface MessagePassingQueue<M> {
-    
+public interface MessagePassingQueue<M> {
+
+    /**
+     * A source of messages for {@link MessagePassingQueue#fill(Supplier, int)}.
+     * 
+     * @param <T> the message type
+     */
+    public interface Supplier<T> {
+        /**
+         * This method will be called from the producer thread while it holds claimed slots in the queue, it must
+         * therefore return promptly, never return null and never throw.
+         * 
+         * @return a new message, not null
+         */
+        T get();
+    }
+
+    /**
+     * A sink of messages for {@link MessagePassingQueue#drain(Consumer, int)}.
+     * 
+     * @param <T> the message type
+     */
+    public interface Consumer<T> {
+        /**
+         * This method will be called from the consumer thread for each message removed from the queue. Queue
+         * progress may not be published until the batch is complete, it must therefore return promptly and never
+         * throw.
+         * 
+         * @param e a message removed from the queue, not null
+         */
+        void accept(T e);
+    }
+
+    /**
+     * A policy for threads which found the queue empty (or full) and have nothing better to do than try again, used
+     * by the blocking helpers in {@link MessagePassingQueues}.
+     */
+    public interface WaitStrategy {
+        /**
+         * Called from a thread which failed to make progress on the queue idleCounter times in a row. The strategy
+         * may return immediately, the caller is expected to try the queue again and call this method again on
+         * failure.
+         *
+         * @param idleCounter 0 on the first failure after progress was made, the returned value after that
+         * @return the idle counter to pass on the next call
+         */
+        int idle(int idleCounter);
+
+        /**
+         * Called from a thread which made progress on the queue, to wake up a thread which may be waiting on the
+         * other side of it. Strategies which never block make this a no-op.
+         */
+        void signal();
+    }
+
     /**
      * Called from a producer thread subject to the restrictions appropriate to the implementation and according to the
      * {@link Queue#offer(Object)} interface.
@@ -53,6 +106,34 @@ interface MessagePassingQueue<M> {
      */
     M peek();
 
+    /**
+     * Called from a producer thread subject to the restrictions appropriate to the implementation. As opposed to
+     * {@link #offer(Object)} this method may return false without the queue being full, where the offer would
+     * otherwise have to wait for another thread to complete its operation.
+     *
+     * @param message
+     * @return true if element was inserted into the queue, false if full or unable to insert without waiting
+     */
+    boolean relaxedOffer(M message);
+
+    /**
+     * Called from the consumer thread subject to the restrictions appropriate to the implementation. As opposed to
+     * {@link #poll()} this method may return null without the queue being empty, e.g. when a producer has claimed the
+     * next slot but the element is not yet visible. This allows the consumer to get on with other work rather than
+     * wait for a descheduled producer.
+     *
+     * @return a message from the queue if one is available, null if empty or the next message is not yet visible
+     */
+    M relaxedPoll();
+
+    /**
+     * Called from the consumer thread subject to the restrictions appropriate to the implementation. As opposed to
+     * {@link #peek()} this method may return null without the queue being empty, see {@link #relaxedPoll()}.
+     *
+     * @return a message from the queue if one is available, null if empty or the next message is not yet visible
+     */
+    M relaxedPeek();
+
     /**
      * This method's accuracy is subject to concurrent modifications happening as the size is estimated and as such is a
      * best effort rather than absolute value. For some implementations this method may be O(n) rather than O(1).
@@ -68,4 +149,29 @@ interface MessagePassingQueue<M> {
      */
     boolean isEmpty();
 
+    /**
+     * Remove up to limit elements from the queue and hand them to the consumer. Called from the consumer thread(s)
+     * subject to the restrictions appropriate to the implementation.<br>
+     * Implementations are expected to amortize the cost of publishing the consumer progress over the batch rather
+     * than pay it per element. This method may return less than limit even when the queue is not empty, e.g. when a
+     * producer has claimed a slot but not yet made the element visible.
+     * 
+     * @param c the consumer to be handed the removed elements
+     * @param limit the maximum number of elements to remove
+     * @return the number of elements handed to the consumer
+     */
+    int drain(Consumer<M> c, int limit);
+
+    /**
+     * Stuff the queue with up to limit elements taken from the supplier. Called from the producer thread(s)
+     * subject to the restrictions appropriate to the implementation.<br>
+     * Implementations are expected to amortize the cost of claiming and publishing slots over the batch rather than
+     * pay it per element. Slots may be claimed before the supplier is called, so the supplier must not return null.
+     * 
+     * @param s the supplier of the new elements
+     * @param limit the maximum number of elements to insert
+     * @return the number of elements taken from the supplier and inserted
+     */
+    int fill(Supplier<M> s, int limit);
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+
+/**
+ * Blocking operations for any {@link MessagePassingQueue}, waiting according to a {@link WaitStrategy}. The same
+ * strategy instance should be used by both sides of a queue so that progress on one side signals threads waiting on
+ * the other, i.e. a successful offer signals a waiting consumer and a successful poll signals a waiting producer.
+ * <p>
+ * The usual thread restrictions of the queue apply, these methods add no synchronization of their own.
+ *
+ * @author nitsanw
+ */
+public final class MessagePassingQueues {
+    private MessagePassingQueues() {
+    }
+
+    /**
+     * Offer the message to the queue, waiting for room to become available.
+     *
+     * @throws InterruptedException if interrupted while waiting, the message is not in the queue
+     */
+    public static <M> void offer(final MessagePassingQueue<M> q, final M message, final WaitStrategy w)
+            throws InterruptedException {
+        int idleCounter = 0;
+        while (!q.offer(message)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            idleCounter = w.idle(idleCounter);
+        }
+        w.signal();
+    }
+
+    /**
+     * Poll a message from the queue, waiting for one to become available.
+     *
+     * @return a message from the queue, not null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static <M> M poll(final MessagePassingQueue<M> q, final WaitStrategy w) throws InterruptedException {
+        int idleCounter = 0;
+        M e;
+        while (null == (e = q.poll())) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            idleCounter = w.idle(idleCounter);
+        }
+        w.signal();
+        return e;
+    }
+}
@@ -107,7 +107,7 @@ abstract class MpmcArrayQueueConsumerField<E> extends MpmcArrayQueueL2Pad<E> {
  * @param <E>
  *            type of the element stored in the {@link java.util.Queue}
  */
-public class MpmcArrayQueue<E> extends MpmcArrayQueueConsumerField<E> {
+public final class MpmcArrayQueue<E> extends MpmcArrayQueueConsumerField<E> {
     long p40, p41, p42, p43, p44, p45, p46;
     long p30, p31, p32, p33, p34, p35, p36, p37;
 
@@ -220,6 +220,218 @@ public class MpmcArrayQueue<E> extends MpmcArrayQueueConsumerField<E> {
         return e;
     }
 
+    /**
+     * A wait free alternative to offer which fails on CAS failure.
+     * 
+     * @param e new element, not null
+     * @return 1 if next element cannot be filled, -1 if CAS failed, 0 if successful
+     */
+    public int weakOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentProducerIndex = lvProducerIndex(); // LoadLoad
+        final long seqOffset = calcSequenceOffset(currentProducerIndex);
+        final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+        if (seq < currentProducerIndex) {
+            return 1; // full, or a consumer is yet to release the slot
+        }
+        if (seq > currentProducerIndex || !casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+            return -1; // another producer got there first
+        }
+        spElement(calcElementOffset(currentProducerIndex), e);
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+        return 0;
+    }
+
+    /**
+     * A wait free alternative to poll which fails on CAS failure.
+     * 
+     * @return the next element, or null if the next element is not visible or another consumer claimed it first
+     */
+    public E weakPoll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentConsumerIndex = lvConsumerIndex();// LoadLoad
+        final long seqOffset = calcSequenceOffset(currentConsumerIndex);
+        final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+        if (seq != currentConsumerIndex + 1 || !casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+            return null;
+        }
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #offer(Object)}, but returns false as soon as the slot is not yet released by the consumer which
+     * claimed it, without checking the queue is actually full.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        long seqOffset;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            seqOffset = calcSequenceOffset(currentProducerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            final long delta = seq - currentProducerIndex;
+            if (delta == 0) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    break;
+                }
+            } else if (delta < 0) {
+                // full, or a consumer is yet to release the slot
+                return false;
+            }
+        }
+        spElement(calcElementOffset(currentProducerIndex), e);
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #poll()}, but returns null as soon as the slot is not yet filled by the producer which claimed it,
+     * without checking the queue is actually empty.
+     */
+    @Override
+    public E relaxedPoll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        long seqOffset;
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            seqOffset = calcSequenceOffset(currentConsumerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+            final long delta = seq - (currentConsumerIndex + 1);
+            if (delta == 0) {
+                if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+                    break;
+                }
+            } else if (delta < 0) {
+                // empty, or a producer is yet to fill the slot
+                return null;
+            }
+        }
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        return e;
+    }
+
+    @Override
+    public E relaxedPeek() {
+        return lvElement(calcElementOffset(lvConsumerIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the consumer
+     * index. The per slot sequence stores are still required to release the slots to the producers.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        int batchSize;
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            batchSize = 0;
+            // count the slots which have been filled by the producers
+            while (batchSize < limit) {
+                final long index = currentConsumerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index));// LoadLoad
+                if (seq != index + 1) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentConsumerIndex));
+                if (limit <= 0 || seq < currentConsumerIndex + 1) {
+                    // slot has not been moved by producer, nothing to drain
+                    return 0;
+                }
+                // another consumer beat us and moved sequence ahead, retry
+                continue;
+            }
+            if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentConsumerIndex + i;
+            final long offset = calcElementOffset(index);
+            final E e = lpElement(offset);
+            spElement(offset, null);
+            // Move sequence ahead by capacity, preparing it for next offer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + capacity);// StoreStore
+            c.accept(e);
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the producer
+     * index. The per slot sequence stores are still required to publish the elements to the consumers.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        int batchSize;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            batchSize = 0;
+            // count the slots which have been released by the consumers
+            while (batchSize < limit) {
+                final long index = currentProducerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+                if (seq != index) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentProducerIndex));
+                if (limit <= 0 || seq < currentProducerIndex) {
+                    // poll has not moved this value forward, queue is full
+                    return 0;
+                }
+                // another producer has moved the sequence by one, retry
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentProducerIndex + i;
+            spElement(calcElementOffset(index), s.get());
+            // increment sequence by 1, the value expected by consumer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + 1); // StoreStore
+        }
+        return batchSize;
+    }
+
     @Override
     public int size() {
         /*
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+
+import static org.jctools.util.Pow2.isPowerOfTwo;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+
+abstract class MpmcCompoundQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpmcCompoundQueueColdFields<E> extends MpmcCompoundQueueL0Pad<E> {
+    // must be power of 2
+    protected final int parallelQueues;
+    protected final int parallelQueuesMask;
+    protected final MpmcArrayQueue<E>[] queues;
+
+    @SuppressWarnings("unchecked")
+    public MpmcCompoundQueueColdFields(int capacity, int queueParallelism) {
+        final int lanes = isPowerOfTwo(queueParallelism) ? queueParallelism
+                : roundToPowerOfTwo(queueParallelism) / 2;
+        // MpmcArrayQueue lanes hold at least 2 elements, more lanes would add to the capacity
+        parallelQueues = Math.max(1, Math.min(lanes, roundToPowerOfTwo(capacity) / 2));
+        parallelQueuesMask = parallelQueues - 1;
+        queues = new MpmcArrayQueue[parallelQueues];
+        for (int i = 0; i < parallelQueues; i++) {
+            queues[i] = new MpmcArrayQueue<E>(roundToPowerOfTwo(capacity) / parallelQueues);
+        }
+    }
+}
+
+/**
+ * A Multi-Producer-Multi-Consumer queue made of a set number of {@link MpmcArrayQueue} lanes, the multi consumer
+ * counterpart of {@link MpscCompoundQueue}. Producers and consumers start from a home lane picked by thread id and
+ * only move on to the other lanes when their home lane is full/empty, using the weak offer/poll of the lanes so that a
+ * contended lane is skipped rather than retried. This spreads the producer and consumer indices over the lanes rather
+ * than have all threads contend on a single pair of indices.
+ * <p>
+ * Elements are not returned in FIFO order, not even for a single producer, so this queue is only a fit for specs with
+ * no ordering requirements.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpmcCompoundQueue<E> extends MpmcCompoundQueueColdFields<E> {
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+    long p00, p01, p02, p03, p04, p05, p06;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcCompoundQueue(int capacity) {
+        this(capacity, CPUS);
+    }
+
+    /**
+     * @param capacity the total capacity, rounded up to the next power of 2 and split evenly between the lanes
+     * @param queueParallelism the number of lanes, rounded down to a power of 2 and capped so that the lanes do not
+     *        hold more than the capacity
+     */
+    public MpmcCompoundQueue(int capacity, int queueParallelism) {
+        super(capacity, queueParallelism);
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        if (queues[start].offer(e)) {
+            return true;
+        }
+        for (;;) {
+            int status = 0;
+            for (int i = start; i < start + parallelQueues; i++) {
+                final int s = queues[i & parallelQueuesMask].weakOffer(e);
+                if (s == 0) {
+                    return true;
+                }
+                status += s;
+            }
+            if (status == parallelQueues) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The home lane is polled first, the other lanes are then tried in turn with a weak poll until an element is found
+     * or all the lanes are found empty.
+     */
+    @Override
+    public E poll() {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        E e = queues[start].poll();
+        if (e != null) {
+            return e;
+        }
+        for (;;) {
+            for (int i = start + 1; i <= start + parallelQueues; i++) {
+                e = queues[i & parallelQueuesMask].weakPoll();
+                if (e != null) {
+                    return e;
+                }
+            }
+            if (isEmpty()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        for (int i = start; i < start + parallelQueues; i++) {
+            final E e = queues[i & parallelQueuesMask].peek();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each lane is tried once, starting from the home lane of the thread, rather than retrying until all lanes are
+     * found full.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        for (int i = start; i < start + parallelQueues; i++) {
+            if (queues[i & parallelQueuesMask].weakOffer(e) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each lane is tried once, starting from the home lane of the thread, rather than retrying until all lanes are
+     * found empty.
+     */
+    @Override
+    public E relaxedPoll() {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        for (int i = start; i < start + parallelQueues; i++) {
+            final E e = queues[i & parallelQueuesMask].weakPoll();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public E relaxedPeek() {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        for (int i = start; i < start + parallelQueues; i++) {
+            final E e = queues[i & parallelQueuesMask].relaxedPeek();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        int drained = 0;
+        for (int i = start; i < start + parallelQueues && drained < limit; i++) {
+            drained += queues[i & parallelQueuesMask].drain(c, limit - drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
+        int filled = 0;
+        for (int i = start; i < start + parallelQueues && filled < limit; i++) {
+            filled += queues[i & parallelQueuesMask].fill(s, limit - filled);
+        }
+        return filled;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (MpmcArrayQueue<E> lane : queues) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MpmcArrayQueue<E> lane : queues) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+}
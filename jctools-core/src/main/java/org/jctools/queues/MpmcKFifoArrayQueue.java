@@ -0,0 +1,449 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class MpmcKFifoArrayQueueColdField<E> extends ConcurrentSequencedCircularArrayQueue<E> {
+    // the slot sequence is the index shifted left by 2, plus the slot state within the lap
+    protected static final int FREE = 0;
+    protected static final int CLAIMED_BY_PRODUCER = 1;
+    protected static final int FULL = 2;
+    protected static final int CLAIMED_BY_CONSUMER = 3;
+    protected final int segmentShift;
+    protected final int segmentMask;
+
+    public MpmcKFifoArrayQueueColdField(int capacity, int segmentSize) {
+        super(capacity);
+        final int k = Math.min(roundToPowerOfTwo(Math.max(1, segmentSize)), this.capacity);
+        segmentShift = Integer.numberOfTrailingZeros(k);
+        segmentMask = k - 1;
+        for (long i = 0; i < this.capacity; i++) {
+            soSequence(sequenceBuffer, calcSequenceOffset(i), i << 2);
+        }
+    }
+}
+
+abstract class MpmcKFifoArrayQueueL1Pad<E> extends MpmcKFifoArrayQueueColdField<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcKFifoArrayQueueL1Pad(int capacity, int segmentSize) {
+        super(capacity, segmentSize);
+    }
+}
+
+abstract class MpmcKFifoArrayQueueProducerField<E> extends MpmcKFifoArrayQueueL1Pad<E> {
+    private final static long P_SEGMENT_OFFSET;
+    static {
+        try {
+            P_SEGMENT_OFFSET = UNSAFE.objectFieldOffset(MpmcKFifoArrayQueueProducerField.class
+                    .getDeclaredField("producerSegment"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerSegment;
+
+    public MpmcKFifoArrayQueueProducerField(int capacity, int segmentSize) {
+        super(capacity, segmentSize);
+    }
+
+    protected final long lvProducerSegment() {
+        return producerSegment;
+    }
+
+    protected final boolean casProducerSegment(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_SEGMENT_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcKFifoArrayQueueL2Pad<E> extends MpmcKFifoArrayQueueProducerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcKFifoArrayQueueL2Pad(int capacity, int segmentSize) {
+        super(capacity, segmentSize);
+    }
+}
+
+abstract class MpmcKFifoArrayQueueConsumerField<E> extends MpmcKFifoArrayQueueL2Pad<E> {
+    private final static long C_SEGMENT_OFFSET;
+    static {
+        try {
+            C_SEGMENT_OFFSET = UNSAFE.objectFieldOffset(MpmcKFifoArrayQueueConsumerField.class
+                    .getDeclaredField("consumerSegment"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerSegment;
+
+    public MpmcKFifoArrayQueueConsumerField(int capacity, int segmentSize) {
+        super(capacity, segmentSize);
+    }
+
+    protected final long lvConsumerSegment() {
+        return consumerSegment;
+    }
+
+    protected final boolean casConsumerSegment(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_SEGMENT_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcKFifoArrayQueueL3Pad<E> extends MpmcKFifoArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcKFifoArrayQueueL3Pad(int capacity, int segmentSize) {
+        super(capacity, segmentSize);
+    }
+}
+
+/**
+ * A Multi-Producer-Multi-Consumer queue with relaxed k-FIFO ordering, an element may be overtaken by up to k - 1
+ * elements offered after it. The algorithm follows the segmented k-FIFO queue of Kirsch, Lippautz and Payer (see <a
+ * href="http://www.cs.uni-salzburg.at/~ck/content/publications/conferences/PaCT13-kfifo.pdf">Fast and Scalable,
+ * Lock-Free k-FIFO Queues</a>):
+ * <ol>
+ * <li>The buffer is split into segments of k slots. Producers fill any free slot in the tail segment and consumers
+ * empty any full slot in the head segment, each thread starting its search from a different slot.
+ * <li>The segment pointers are only moved once all the slots of the segment have been claimed, so threads contend on
+ * them once per k elements rather than once per element. The slots themselves are claimed with a CAS on their
+ * sequence, which is only contended by threads which picked the same slot.
+ * <li>As in {@link MpmcArrayQueue} each slot has a sequence which is increased through the slot states on each lap,
+ * so a stale thread can never claim a slot from a previous lap.
+ * </ol>
+ * Tradeoffs to keep in mind:
+ * <ol>
+ * <li>Elements within a segment are returned in any order, a k of 1 makes this a strict FIFO queue.
+ * <li>Offer may fail with up to k - 1 free slots, as the head segment may be partially consumed when the tail segment
+ * wraps around to it.
+ * <li>Size and empty checks scan the head and tail segments.
+ * </ol>
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpmcKFifoArrayQueue<E> extends MpmcKFifoArrayQueueL3Pad<E> {
+    private static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger("jctools.kfifo.segment.size", 64);
+
+    public MpmcKFifoArrayQueue(final int capacity) {
+        this(capacity, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param segmentSize the k in k-FIFO, rounded up to the next power of 2 and limited to the capacity
+     */
+    public MpmcKFifoArrayQueue(final int capacity, final int segmentSize) {
+        super(capacity, segmentSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for consumers which are yet to release the slots of the tail segment, returns false if the slots are yet
+     * to be consumed.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long index = claimProducerSlot(true);
+        if (index < 0) {
+            return false;
+        }
+        publish(index, e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #offer(Object)}, but returns false rather than wait for consumers to release the slots.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long index = claimProducerSlot(false);
+        if (index < 0) {
+            return false;
+        }
+        publish(index, e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for producers which have claimed slots of the head segment but are yet to fill them.
+     */
+    @Override
+    public E poll() {
+        final long index = claimConsumerSlot(true);
+        if (index < 0) {
+            return null;
+        }
+        return consume(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #poll()}, but returns null rather than wait for producers to fill the claimed slots.
+     */
+    @Override
+    public E relaxedPoll() {
+        final long index = claimConsumerSlot(false);
+        if (index < 0) {
+            return null;
+        }
+        return consume(index);
+    }
+
+    @Override
+    public E peek() {
+        return peek(true);
+    }
+
+    @Override
+    public E relaxedPeek() {
+        return peek(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Slots are claimed one at a time, so the supplier is only called for a claimed slot.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final long index = claimProducerSlot(false);
+            if (index < 0) {
+                return i;
+            }
+            publish(index, s.get());
+        }
+        return limit;
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final long index = claimConsumerSlot(false);
+            if (index < 0) {
+                return i;
+            }
+            c.accept(consume(index));
+        }
+        return limit;
+    }
+
+    /**
+     * @return the index of a slot claimed in the tail segment, or -1 if the tail segment is still in use
+     */
+    private long claimProducerSlot(final boolean waitForConsumers) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final int start = (int) Thread.currentThread().getId();
+        while (true) {
+            final long segment = lvProducerSegment(); // LoadLoad
+            final long segmentBase = segment << segmentShift;
+            boolean full = false;
+            boolean consumerPending = false;
+            for (int i = 0; i <= segmentMask; i++) {
+                final long index = segmentBase + ((start + i) & segmentMask);
+                final long seqOffset = calcSequenceOffset(index);
+                final long free = index << 2;
+                final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+                if (seq == free) {
+                    if (casSequence(lSequenceBuffer, seqOffset, free, free + CLAIMED_BY_PRODUCER)) {
+                        return index;
+                    }
+                    // another producer claimed the slot
+                } else if (seq < free) {
+                    // the slot is still in use by the previous lap
+                    if ((seq & 3) == CLAIMED_BY_CONSUMER) {
+                        consumerPending = true;
+                    } else {
+                        full = true;
+                    }
+                }
+            }
+            if (full || (consumerPending && !waitForConsumers)) {
+                return -1;
+            }
+            if (!consumerPending) {
+                // all the slots are claimed by producers, move on to the next segment
+                casProducerSegment(segment, segment + 1);
+            }
+        }
+    }
+
+    /**
+     * @return the index of a slot claimed in the head segment, or -1 if the head segment has no full slots
+     */
+    private long claimConsumerSlot(final boolean waitForProducers) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final int start = (int) Thread.currentThread().getId();
+        while (true) {
+            final long segment = lvConsumerSegment(); // LoadLoad
+            final long segmentBase = segment << segmentShift;
+            boolean empty = false;
+            boolean producerPending = false;
+            for (int i = 0; i <= segmentMask; i++) {
+                final long index = segmentBase + ((start + i) & segmentMask);
+                final long seqOffset = calcSequenceOffset(index);
+                final long full = (index << 2) + FULL;
+                final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+                if (seq == full) {
+                    if (casSequence(lSequenceBuffer, seqOffset, full, full + 1)) {
+                        return index;
+                    }
+                    // another consumer claimed the slot
+                } else if (seq < full) {
+                    // the slot is yet to be filled on this lap
+                    if (seq == full - 1) {
+                        producerPending = true;
+                    } else {
+                        empty = true;
+                    }
+                }
+            }
+            if (empty || (producerPending && !waitForProducers)) {
+                return -1;
+            }
+            if (!producerPending) {
+                // all the slots are claimed by consumers, move on to the next segment
+                casConsumerSegment(segment, segment + 1);
+            }
+        }
+    }
+
+    private void publish(final long index, final E e) {
+        spElement(calcElementOffset(index), e);
+        soSequence(sequenceBuffer, calcSequenceOffset(index), (index << 2) + FULL); // StoreStore
+    }
+
+    private E consume(final long index) {
+        final long offset = calcElementOffset(index);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+        // release the slot to the producers of the next lap
+        soSequence(sequenceBuffer, calcSequenceOffset(index), (index + capacity) << 2); // StoreStore
+        return e;
+    }
+
+    private E peek(final boolean waitForProducers) {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final int start = (int) Thread.currentThread().getId();
+        while (true) {
+            final long segment = lvConsumerSegment(); // LoadLoad
+            final long segmentBase = segment << segmentShift;
+            boolean empty = false;
+            boolean producerPending = false;
+            for (int i = 0; i <= segmentMask; i++) {
+                final long index = segmentBase + ((start + i) & segmentMask);
+                final long full = (index << 2) + FULL;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+                if (seq == full) {
+                    final E e = lvElement(calcElementOffset(index));
+                    if (null != e) {
+                        return e;
+                    }
+                    // another consumer took the element
+                } else if (seq < full) {
+                    if (seq == full - 1) {
+                        producerPending = true;
+                    } else {
+                        empty = true;
+                    }
+                }
+            }
+            if (empty || (producerPending && !waitForProducers)) {
+                return null;
+            }
+            if (!producerPending) {
+                casConsumerSegment(segment, segment + 1);
+            }
+        }
+    }
+
+    /**
+     * The iterator walks the segments from head to tail, limited to a single lap.
+     */
+    @Override
+    protected long lvConsumerIndex() {
+        return lvConsumerSegment() << segmentShift;
+    }
+
+    @Override
+    protected long lvProducerIndex() {
+        final long cIndex = lvConsumerIndex();
+        return Math.min((lvProducerSegment() + 1) << segmentShift, cIndex + capacity);
+    }
+
+    @Override
+    public int size() {
+        /*
+         * Only the head and tail segments may be partially filled, the segments between them were filled before the
+         * tail moved on and are only consumed once the head reaches them. The segment pointers are loaded until a
+         * stable head is observed, the slots are not so the result is an estimate under concurrent offers/polls.
+         */
+        long after = lvConsumerSegment();
+        long head;
+        long tail;
+        do {
+            head = after;
+            tail = lvProducerSegment();
+            after = lvConsumerSegment();
+        } while (head != after);
+        if (tail < head) {
+            return 0;
+        }
+        long size = countSegment(head);
+        if (tail > head) {
+            size += ((tail - head - 1) << segmentShift) + countSegment(tail);
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    private int countSegment(final long segment) {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long segmentBase = segment << segmentShift;
+        int count = 0;
+        for (int i = 0; i <= segmentMask; i++) {
+            final long index = segmentBase + i;
+            final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+            if (seq == (index << 2) + CLAIMED_BY_PRODUCER || seq == (index << 2) + FULL) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class MpmcLongArrayQueueL1Pad extends ConcurrentSequencedCircularLongArrayQueue {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcLongArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class MpmcLongArrayQueueProducerField extends MpmcLongArrayQueueL1Pad {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpmcLongArrayQueueProducerField.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    public MpmcLongArrayQueueProducerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcLongArrayQueueL2Pad extends MpmcLongArrayQueueProducerField {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcLongArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class MpmcLongArrayQueueConsumerField extends MpmcLongArrayQueueL2Pad {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpmcLongArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public MpmcLongArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final boolean casConsumerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+/**
+ * A Multi-Producer-Multi-Consumer queue of primitive longs backed by a pre-allocated long[].
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * This is the algorithm used by {@link MpmcArrayQueue} with a long[] element buffer. The sequence buffer marks which
+ * slots hold an element, so no element value is reserved as an empty sentinel.
+ *
+ * @author nitsanw
+ */
+public class MpmcLongArrayQueue extends MpmcLongArrayQueueConsumerField {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcLongArrayQueue(final int capacity) {
+        super(Math.max(2, capacity));
+    }
+
+    @Override
+    public boolean offer(final long e) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        long seqOffset;
+        long cIndex = Long.MAX_VALUE;// start with bogus value, hope we don't need it
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            seqOffset = calcSequenceOffset(currentProducerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            final long delta = seq - currentProducerIndex;
+
+            if (delta == 0) {
+                // this is expected if we see this first time around
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    // Successful CAS: full barrier
+                    break;
+                }
+                // failed cas, retry 1
+            } else if (delta < 0 && // poll has not moved this value forward
+                    currentProducerIndex - capacity <= cIndex && // test against cached cIndex
+                    currentProducerIndex - capacity <= (cIndex = lvConsumerIndex())) { // test against latest cIndex
+                // Extra check required to ensure [offer == false iff queue is full]
+                return false;
+            }
+
+            // another producer has moved the sequence by one, retry 2
+        }
+
+        spElement(buffer, calcElementOffset(currentProducerIndex), e);
+
+        // increment sequence by 1, the value expected by consumer
+        // (seeing this value from a producer will lead to retry 2)
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As there is no null element to signal an empty slot we must test producer index when next element is not
+     * visible.
+     */
+    @Override
+    public boolean poll(final LongConsumer c) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        long seqOffset;
+        long pIndex = -1; // start with bogus value, hope we don't need it
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            seqOffset = calcSequenceOffset(currentConsumerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+            final long delta = seq - (currentConsumerIndex + 1);
+
+            if (delta == 0) {
+                if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+                    // Successful CAS: full barrier
+                    break;
+                }
+                // failed cas, retry 1
+            } else if (delta < 0 && // slot has not been moved by producer
+                    currentConsumerIndex >= pIndex && // test against cached pIndex
+                    currentConsumerIndex == (pIndex = lvProducerIndex())) { // update pIndex if we must
+                // strict empty check, this ensures [poll == false iff isEmpty()]
+                return false;
+            }
+
+            // another consumer beat us and moved sequence ahead, retry 2
+        }
+
+        final long e = lpElement(buffer, calcElementOffset(currentConsumerIndex));
+
+        // Move sequence ahead by capacity, preparing it for next offer
+        // (seeing this value from a consumer will lead to retry 2)
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the consumer
+     * index. The per slot sequence stores are still required to release the slots to the producers.
+     */
+    @Override
+    public int drain(final LongConsumer c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        int batchSize;
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            batchSize = 0;
+            // count the slots which have been filled by the producers
+            while (batchSize < limit) {
+                final long index = currentConsumerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index));// LoadLoad
+                if (seq != index + 1) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentConsumerIndex));
+                if (limit <= 0 || seq < currentConsumerIndex + 1) {
+                    // slot has not been moved by producer, nothing to drain
+                    return 0;
+                }
+                // another consumer beat us and moved sequence ahead, retry
+                continue;
+            }
+            if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentConsumerIndex + i;
+            final long e = lpElement(buffer, calcElementOffset(index));
+            // Move sequence ahead by capacity, preparing it for next offer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + capacity);// StoreStore
+            c.accept(e);
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the producer
+     * index. The per slot sequence stores are still required to publish the elements to the consumers.
+     */
+    @Override
+    public int fill(final LongSupplier s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        int batchSize;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            batchSize = 0;
+            // count the slots which have been released by the consumers
+            while (batchSize < limit) {
+                final long index = currentProducerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+                if (seq != index) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentProducerIndex));
+                if (limit <= 0 || seq < currentProducerIndex) {
+                    // poll has not moved this value forward, queue is full
+                    return 0;
+                }
+                // another producer has moved the sequence by one, retry
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentProducerIndex + i;
+            spElement(buffer, calcElementOffset(index), s.get());
+            // increment sequence by 1, the value expected by consumer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + 1); // StoreStore
+        }
+        return batchSize;
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class MpmcSparseArrayQueueL1Pad<E> extends SparseSequencedCircularArrayQueue<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcSparseArrayQueueL1Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class MpmcSparseArrayQueueProducerField<E> extends MpmcSparseArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpmcSparseArrayQueueProducerField.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    public MpmcSparseArrayQueueProducerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcSparseArrayQueueL2Pad<E> extends MpmcSparseArrayQueueProducerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcSparseArrayQueueL2Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class MpmcSparseArrayQueueConsumerField<E> extends MpmcSparseArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpmcSparseArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public MpmcSparseArrayQueueConsumerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final boolean casConsumerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+/**
+ * A variant of {@link MpmcArrayQueue} which only uses every 2^sparseShift slot of its element and sequence
+ * buffers, trading footprint for less false sharing between neighbouring elements.
+ * <p>
+ * The algorithm and field layout are those of {@link MpmcArrayQueue}, see {@link SparseCircularArrayQueue} for the
+ * buffer layout. The sparse shift is per instance, so computing an offset loads it from the queue. Dense queues are
+ * better served by {@link MpmcArrayQueue}, whose element shift is the static "sparse.shift" constant.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public final class MpmcSparseArrayQueue<E> extends MpmcSparseArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     */
+    public MpmcSparseArrayQueue(final int capacity, final int sparseShift) {
+        super(Math.max(2, capacity), sparseShift);
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        long seqOffset;
+        long cIndex = Long.MAX_VALUE;// start with bogus value, hope we don't need it
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            seqOffset = calcSequenceOffset(currentProducerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            final long delta = seq - currentProducerIndex;
+
+            if (delta == 0) {
+                // this is expected if we see this first time around
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    // Successful CAS: full barrier
+                    break;
+                }
+                // failed cas, retry 1
+            } else if (delta < 0 && // poll has not moved this value forward
+                    currentProducerIndex - capacity <= cIndex && // test against cached cIndex
+                    currentProducerIndex - capacity <= (cIndex = lvConsumerIndex())) { // test against latest cIndex
+                // Extra check required to ensure [Queue.offer == false iff queue is full]
+                return false;
+            }
+
+            // another producer has moved the sequence by one, retry 2
+        }
+
+        // on 64bit(no compressed oops) JVM this is the same as seqOffset
+        final long elementOffset = calcElementOffset(currentProducerIndex);
+        spElement(elementOffset, e);
+
+        // increment sequence by 1, the value expected by consumer
+        // (seeing this value from a producer will lead to retry 2)
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Because return null indicates queue is empty we cannot simply rely on next element visibility for poll
+     * and must test producer index when next element is not visible.
+     */
+    @Override
+    public E poll() {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        long seqOffset;
+        long pIndex = -1; // start with bogus value, hope we don't need it
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            seqOffset = calcSequenceOffset(currentConsumerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+            final long delta = seq - (currentConsumerIndex + 1);
+
+            if (delta == 0) {
+                if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+                    // Successful CAS: full barrier
+                    break;
+                }
+                // failed cas, retry 1
+            } else if (delta < 0 && // slot has not been moved by producer
+                    currentConsumerIndex >= pIndex && // test against cached pIndex
+                    currentConsumerIndex == (pIndex = lvProducerIndex())) { // update pIndex if we must
+                // strict empty check, this ensures [Queue.poll() == null iff isEmpty()]
+                return null;
+            }
+
+            // another consumer beat us and moved sequence ahead, retry 2
+        }
+
+        // on 64bit(no compressed oops) JVM this is the same as seqOffset
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+
+        // Move sequence ahead by capacity, preparing it for next offer
+        // (seeing this value from a consumer will lead to retry 2)
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long currConsumerIndex;
+        E e;
+        do {
+            currConsumerIndex = lvConsumerIndex();
+            // other consumers may have grabbed the element, or queue might be empty
+            e = lpElement(calcElementOffset(currConsumerIndex));
+            // only return null if queue is empty
+        } while (e == null && currConsumerIndex != lvProducerIndex());
+        return e;
+    }
+
+    /**
+     * A wait free alternative to offer which fails on CAS failure.
+     * 
+     * @param e new element, not null
+     * @return 1 if next element cannot be filled, -1 if CAS failed, 0 if successful
+     */
+    public int weakOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentProducerIndex = lvProducerIndex(); // LoadLoad
+        final long seqOffset = calcSequenceOffset(currentProducerIndex);
+        final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+        if (seq < currentProducerIndex) {
+            return 1; // full, or a consumer is yet to release the slot
+        }
+        if (seq > currentProducerIndex || !casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+            return -1; // another producer got there first
+        }
+        spElement(calcElementOffset(currentProducerIndex), e);
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+        return 0;
+    }
+
+    /**
+     * A wait free alternative to poll which fails on CAS failure.
+     * 
+     * @return the next element, or null if the next element is not visible or another consumer claimed it first
+     */
+    public E weakPoll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentConsumerIndex = lvConsumerIndex();// LoadLoad
+        final long seqOffset = calcSequenceOffset(currentConsumerIndex);
+        final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+        if (seq != currentConsumerIndex + 1 || !casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+            return null;
+        }
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #offer(Object)}, but returns false as soon as the slot is not yet released by the consumer which
+     * claimed it, without checking the queue is actually full.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        long seqOffset;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            seqOffset = calcSequenceOffset(currentProducerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            final long delta = seq - currentProducerIndex;
+            if (delta == 0) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    break;
+                }
+            } else if (delta < 0) {
+                // full, or a consumer is yet to release the slot
+                return false;
+            }
+        }
+        spElement(calcElementOffset(currentProducerIndex), e);
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #poll()}, but returns null as soon as the slot is not yet filled by the producer which claimed it,
+     * without checking the queue is actually empty.
+     */
+    @Override
+    public E relaxedPoll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        long seqOffset;
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            seqOffset = calcSequenceOffset(currentConsumerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset);// LoadLoad
+            final long delta = seq - (currentConsumerIndex + 1);
+            if (delta == 0) {
+                if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1)) {
+                    break;
+                }
+            } else if (delta < 0) {
+                // empty, or a producer is yet to fill the slot
+                return null;
+            }
+        }
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E e = lpElement(offset);
+        spElement(offset, null);
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        return e;
+    }
+
+    @Override
+    public E relaxedPeek() {
+        return lvElement(calcElementOffset(lvConsumerIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the consumer
+     * index. The per slot sequence stores are still required to release the slots to the producers.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentConsumerIndex;
+        int batchSize;
+        while (true) {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            batchSize = 0;
+            // count the slots which have been filled by the producers
+            while (batchSize < limit) {
+                final long index = currentConsumerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index));// LoadLoad
+                if (seq != index + 1) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentConsumerIndex));
+                if (limit <= 0 || seq < currentConsumerIndex + 1) {
+                    // slot has not been moved by producer, nothing to drain
+                    return 0;
+                }
+                // another consumer beat us and moved sequence ahead, retry
+                continue;
+            }
+            if (casConsumerIndex(currentConsumerIndex, currentConsumerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentConsumerIndex + i;
+            final long offset = calcElementOffset(index);
+            final E e = lpElement(offset);
+            spElement(offset, null);
+            // Move sequence ahead by capacity, preparing it for next offer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + capacity);// StoreStore
+            c.accept(e);
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the producer
+     * index. The per slot sequence stores are still required to publish the elements to the consumers.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        int batchSize;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            batchSize = 0;
+            // count the slots which have been released by the consumers
+            while (batchSize < limit) {
+                final long index = currentProducerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+                if (seq != index) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentProducerIndex));
+                if (limit <= 0 || seq < currentProducerIndex) {
+                    // poll has not moved this value forward, queue is full
+                    return 0;
+                }
+                // another producer has moved the sequence by one, retry
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentProducerIndex + i;
+            spElement(calcElementOffset(index), s.get());
+            // increment sequence by 1, the value expected by consumer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + 1); // StoreStore
+        }
+        return batchSize;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and
+         * consumer indices, therefore protection is required to ensure size is within valid range. In the
+         * event of concurrent polls/offers to this method the size is OVER estimated as we read consumer
+         * index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        // Order matters!
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures this method is conservative in it's estimate. Note that as this is an MPMC there is
+        // nothing we
+        // can do to make this an exact method.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+}
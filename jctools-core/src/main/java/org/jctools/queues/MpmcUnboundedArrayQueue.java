@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * An unbounded Multi-Producer-Multi-Consumer queue made of linked array segments, see
+ * {@link BaseSegmentedArrayQueue} for the consumer side.
+ * <p>
+ * Producers claim a slot in the producer segment with a fetch-and-add on its enqueue index and CAS the element into
+ * it. A failed CAS means a consumer got to the slot first and the producer claims another. A producer which claims an
+ * index past the end of the segment appends a new segment, holding its element in the first slot, or helps move the
+ * producer segment on to the segment another producer appended.<br>
+ * This implementation is lock free.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpmcUnboundedArrayQueue<E> extends BaseSegmentedArrayQueue<E> {
+
+    /**
+     * @param segmentSize the number of elements held by each segment
+     */
+    public MpmcUnboundedArrayQueue(final int segmentSize) {
+        super(segmentSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for multiple producer threads use.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        while (true) {
+            final ArrayQueueSegment<E> segment = lvProducerSegment();
+            final long index = segment.getAndAddEnqIndex(1);
+            if (index < segmentSize) {
+                if (segment.casItem(index, e)) {
+                    return true;
+                }
+                // a consumer marked the slot as taken, claim another
+            } else if (appendSegment(segment, e)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Append a new segment holding the element, or help move the producer segment on if another producer got there
+     * first.
+     *
+     * @return true if the element was appended
+     */
+    private boolean appendSegment(final ArrayQueueSegment<E> segment, final E e) {
+        if (segment != lvProducerSegment()) {
+            return false;
+        }
+        final ArrayQueueSegment<E> next = segment.lvNext();
+        if (null != next) {
+            casProducerSegment(segment, next);
+            return false;
+        }
+        final ArrayQueueSegment<E> newSegment = new ArrayQueueSegment<E>(segmentSize, e);
+        if (segment.casNext(null, newSegment)) {
+            casProducerSegment(segment, newSegment);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for multiple producer threads use. Runs of slots up to the end of the producer
+     * segment are claimed with a single fetch-and-add. An element which fails to CAS into its slot is carried on to the
+     * next slot in the run, or offered if the run is used up, so elements from a single producer stay in order.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        int i = 0;
+        while (i < limit) {
+            final ArrayQueueSegment<E> segment = lvProducerSegment();
+            final long index = segment.lvEnqIndex();
+            if (index >= segmentSize) {
+                offer(s.get());
+                i++;
+                continue;
+            }
+            final int batchSize = (int) Math.min(segmentSize - index, limit - i);
+            final long claimed = segment.getAndAddEnqIndex(batchSize);
+            final long batchLimit = Math.min(claimed + batchSize, segmentSize);
+            E e = null;
+            for (long j = claimed; j < batchLimit; j++) {
+                if (null == e) {
+                    e = s.get();
+                }
+                if (segment.casItem(j, e)) {
+                    e = null;
+                    i++;
+                }
+            }
+            if (null != e) {
+                offer(e);
+                i++;
+            }
+        }
+        return i;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * A Multi-Producer-Multi-Consumer bounded array queue where both producers and consumers claim indices with
+ * getAndAdd (XADD on x86) rather than a CAS loop, see {@link XaddArrayQueue} for the producer side. With no retry
+ * loop on the indices throughput holds up as the number of threads grows, where the CAS loops of
+ * {@link MpmcArrayQueue} degrade into retry storms.
+ * <p>
+ * A consumer holding an index the producer of which has not claimed the slot yet marks the slot skipped and takes a
+ * new index, so a consumer never waits for a producer which may never arrive. The queue is checked for elements
+ * before an index is taken, but consumers racing on an almost empty queue may still take indices past the producer
+ * index. The consumer which skips such an index moves the producer index past it, so producers do not have to burn
+ * through skipped slots.
+ * <p>
+ * Elements offered by a single producer may be polled out of order by different consumers, as with any MPMC queue,
+ * but a skipped ticket never reorders the elements seen by a single consumer from a single producer.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpmcXaddArrayQueue<E> extends XaddArrayQueue<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpmcXaddArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public E poll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        while (true) {
+            if (lvConsumerIndex() >= lvProducerIndex()) {
+                return null;
+            }
+            final E e = takeIndex(lSequenceBuffer, getAndAddConsumerIndex(1));
+            if (null != e) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * A run of indices is taken with a single getAndAdd, skipped slots are not replaced so this method may drain
+     * less than limit elements from a queue which is not empty.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final int batchSize = (int) Math.min(lvProducerIndex() - lvConsumerIndex(), limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        final long index = getAndAddConsumerIndex(batchSize);
+        int drained = 0;
+        for (int i = 0; i < batchSize; i++) {
+            final E e = takeIndex(lSequenceBuffer, index + i);
+            if (null != e) {
+                c.accept(e);
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return the element for the index, or null if the slot was skipped
+     */
+    private E takeIndex(final long[] lSequenceBuffer, final long index) {
+        final long seqOffset = calcSequenceOffset(index);
+        while (true) {
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            if (seq == index + 1) {
+                return consumeSlot(lSequenceBuffer, seqOffset, index);
+            } else if (seq == index && casSequence(lSequenceBuffer, seqOffset, index, index + capacity)) {
+                // skipped, if this consumer ran past the producers pull the producer index along
+                final long pIndex = lvProducerIndex();
+                if (pIndex <= index) {
+                    casProducerIndex(pIndex, index + 1);
+                }
+                return null;
+            }
+            // seq < index: the consumer holding the index a lap behind is yet to release the slot
+        }
+    }
+}
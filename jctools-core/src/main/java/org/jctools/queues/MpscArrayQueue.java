@@ -206,6 +206,30 @@ public final class MpscArrayQueue<E> extends MpscArrayQueueConsumerField<E> {
         return 0; // AWESOME :)
     }
 
+    /**
+     * Offer a run of elements claiming all the required slots with a single CAS. If there is not enough room for
+     * all of the elements the run is truncated to the available space, so a return value smaller than len is not an
+     * error. Elements are inserted in the order they appear in the source array and no other producer's elements
+     * will be interleaved with them.
+     *
+     * @param src source array, elements in the range [off, off + len) must not be null
+     * @param off offset of the first element in src
+     * @param len number of elements to offer
+     * @return number of elements inserted, 0 iff full (or len is 0, in which case no slot is claimed)
+     */
+    public int offerBatch(final E[] src, final int off, final int len) {
+        if (off < 0 || len < 0 || off > src.length - len) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", src.length=" + src.length);
+        }
+        // check nulls up front, once slots are claimed they must be filled
+        for (int i = off; i < off + len; i++) {
+            if (null == src[i]) {
+                throw new NullPointerException("Null is not a valid element");
+            }
+        }
+        return claimAndStore(src, off, null, len);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -276,6 +300,133 @@ public final class MpscArrayQueue<E> extends MpscArrayQueueConsumerField<E> {
         return e;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #poll()}, but returns null rather than spin when the element is claimed by a producer but not yet
+     * visible.
+     *
+     * @see MessagePassingQueue#relaxedPoll()
+     */
+    @Override
+    public E relaxedPoll() {
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcElementOffset(consumerIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            return null;
+        }
+        spElement(lElementBuffer, offset, null);
+        soConsumerIndex(consumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #peek()}, but returns null rather than spin when the element is claimed by a producer but not yet
+     * visible.
+     *
+     * @see MessagePassingQueue#relaxedPeek()
+     */
+    @Override
+    public E relaxedPeek() {
+        return lvElement(buffer, calcElementOffset(lvConsumerIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Slots are cleared with plain stores and the consumer index is published once for the whole batch. This method
+     * does not wait for elements which are claimed but not yet visible, it returns the count handed over so far.
+     *
+     * @see MessagePassingQueue#drain(Consumer, int)
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        int i = 0;
+        for (; i < limit; i++) {
+            final long offset = calcElementOffset(consumerIndex + i);
+            final E e = lvElement(lElementBuffer, offset); // LoadLoad
+            if (null == e) {
+                break;
+            }
+            spElement(lElementBuffer, offset, null);
+            c.accept(e);
+        }
+        if (i != 0) {
+            soConsumerIndex(consumerIndex + i); // StoreStore
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free fill claiming a run of slots with a single CAS. The run is limited by the space visible to this
+     * producer, so this method may fill less than limit elements on a queue which is not full. Returns 0 without
+     * touching the producer index if limit is not positive.
+     *
+     * @see MessagePassingQueue#fill(Supplier, int)
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        return claimAndStore(null, 0, s, limit);
+    }
+
+    /**
+     * Claim a run of up to max slots with a single CAS and store the elements into them, taken from src[off...] or
+     * from the supplier if src is null. The run is truncated to the space visible to this producer, the consumer
+     * index being re-read if the cached value leaves less than max slots.
+     *
+     * @return number of elements stored, 0 iff full (or max is not positive)
+     */
+    private int claimAndStore(final E[] src, final int off, final Supplier<E> s, final int max) {
+        if (max <= 0) {
+            return 0;
+        }
+        // use a cached view on consumer index (potentially updated in loop)
+        long consumerIndexCache = lvConsumerIndexCache(); // LoadLoad
+        long currentProducerIndex;
+        int batchSize;
+        do {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            long available = capacity - (currentProducerIndex - consumerIndexCache);
+            if (available < max) {
+                // cached value may be stale, refresh before settling for less
+                final long currHead = lvConsumerIndex(); // LoadLoad
+                if (currHead != consumerIndexCache) {
+                    // update shared cached value of the consumerIndex
+                    svConsumerIndexCache(currHead); // StoreLoad
+                    // update on stack copy, we might need this value again if we lose the CAS.
+                    consumerIndexCache = currHead;
+                    available = capacity - (currentProducerIndex - currHead);
+                }
+                if (available <= 0) {
+                    return 0; // FULL :(
+                }
+            }
+            batchSize = (int) Math.min(available, max);
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize));
+
+        // Won CAS, move on to storing
+        final E[] lElementBuffer = buffer;
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currentProducerIndex + i);
+            soElement(lElementBuffer, offset, null == src ? s.get() : src[off + i]); // StoreStore
+        }
+        return batchSize;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -0,0 +1,321 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+
+abstract class MpscBiasedArrayQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpscBiasedArrayQueueColdFields<E> extends MpscBiasedArrayQueueL0Pad<E> {
+    protected final SpscArrayQueue<E> ownerLane;
+    protected final MpscArrayQueue<E> sharedLane;
+
+    public MpscBiasedArrayQueueColdFields(int capacity, int sharedCapacity) {
+        ownerLane = new SpscArrayQueue<E>(capacity);
+        sharedLane = new MpscArrayQueue<E>(sharedCapacity);
+    }
+}
+
+abstract class MpscBiasedArrayQueueL1Pad<E> extends MpscBiasedArrayQueueColdFields<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscBiasedArrayQueueL1Pad(int capacity, int sharedCapacity) {
+        super(capacity, sharedCapacity);
+    }
+}
+
+abstract class MpscBiasedArrayQueueOwnerField<E> extends MpscBiasedArrayQueueL1Pad<E> {
+    private final static long OWNER_OFFSET;
+    static {
+        try {
+            OWNER_OFFSET = UNSAFE.objectFieldOffset(MpscBiasedArrayQueueOwnerField.class.getDeclaredField("owner"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    // only written when the bias is taken, read by every offer
+    private volatile Thread owner;
+
+    public MpscBiasedArrayQueueOwnerField(int capacity, int sharedCapacity) {
+        super(capacity, sharedCapacity);
+    }
+
+    protected final Thread lvOwner() {
+        return owner;
+    }
+
+    protected final void soOwner(Thread newValue) {
+        UNSAFE.putOrderedObject(this, OWNER_OFFSET, newValue);
+    }
+
+    protected final boolean casOwner(Thread expect, Thread newValue) {
+        return UNSAFE.compareAndSwapObject(this, OWNER_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpscBiasedArrayQueueL2Pad<E> extends MpscBiasedArrayQueueOwnerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscBiasedArrayQueueL2Pad(int capacity, int sharedCapacity) {
+        super(capacity, sharedCapacity);
+    }
+}
+
+abstract class MpscBiasedArrayQueueConsumerFields<E> extends MpscBiasedArrayQueueL2Pad<E> {
+    int consumerPollCount;
+
+    public MpscBiasedArrayQueueConsumerFields(int capacity, int sharedCapacity) {
+        super(capacity, sharedCapacity);
+    }
+}
+
+/**
+ * A Multi-Producer-Single-Consumer queue biased towards a single dominant producer. The owner of the bias offers to
+ * an {@link SpscArrayQueue} lane with ordered stores only, other producers share an {@link MpscArrayQueue} lane and
+ * pay for a CAS on offer. This makes the common case as cheap as an SPSC queue while staying correct for occasional
+ * extra producers.
+ * <p>
+ * The owner may be given on construction or moved with {@link #bias(Thread)}, otherwise the first producer to offer
+ * takes the bias. The total capacity is capacity + sharedCapacity, but the owner is limited to the capacity of its
+ * lane and the other producers to the shared capacity.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The bias is revoked when the owner thread terminates, the next producer to find the shared lane empty then takes it
+ * over. An owner which has not been started yet keeps the bias. Confirming termination with {@link Thread#isAlive()}
+ * orders the former owner's last offer before the new owner's first, so the owner lane producer index is handed over
+ * safely. A producer only takes the bias when the shared lane is empty, and a live owner only gives it away when the
+ * owner lane is empty, so no thread moves between lanes while its own elements are pending in the lane it leaves and
+ * elements offered by the same thread are always polled in the order they were offered. There is no ordering between
+ * elements of different producers.
+ * <p>
+ * The consumer polls the owner lane first, but polls the shared lane first every SHARED_LANE_POLL_INTERVAL polls (relaxed
+ * or not) so that a busy owner does not starve the other producers.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpscBiasedArrayQueue<E> extends MpscBiasedArrayQueueConsumerFields<E> {
+    private static final int SHARED_LANE_POLL_INTERVAL = Integer.getInteger("jctools.biased.shared.poll.interval", 64);
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscBiasedArrayQueue(final int capacity) {
+        this(capacity, capacity);
+    }
+
+    /**
+     * The first producer to offer takes the bias.
+     * 
+     * @param capacity the capacity of the owner lane, rounded up to the next power of 2
+     * @param sharedCapacity the capacity of the lane shared by the other producers, rounded up to the next power of 2
+     */
+    public MpscBiasedArrayQueue(final int capacity, final int sharedCapacity) {
+        this(capacity, sharedCapacity, null);
+    }
+
+    /**
+     * @param capacity the capacity of the owner lane, rounded up to the next power of 2
+     * @param sharedCapacity the capacity of the lane shared by the other producers, rounded up to the next power of 2
+     * @param owner the thread holding the bias, other threads use the shared lane until it terminates. The bias is
+     *        kept for the owner until then even if it has not been started yet. If null the first producer to offer
+     *        takes the bias.
+     */
+    public MpscBiasedArrayQueue(final int capacity, final int sharedCapacity, final Thread owner) {
+        super(capacity, sharedCapacity);
+        soOwner(owner);
+    }
+
+    /**
+     * Move the bias to newOwner. The bias may be moved by the current owner, or by any thread once the owner has
+     * terminated, and only while both lanes are empty: newOwner has no elements pending in the shared lane, and the
+     * current owner has none pending in the owner lane which its later offers to the shared lane could overtake.
+     * newOwner must not offer to this queue while the bias is being moved, e.g. call this before starting it.
+     * 
+     * @param newOwner the thread to hold the bias, or null to let the next producer to offer take it
+     * @return true if the bias was moved, false if it is held by another thread which has not terminated or either
+     *         lane is not empty
+     */
+    public boolean bias(final Thread newOwner) {
+        final Thread currentOwner = lvOwner();
+        if (currentOwner != Thread.currentThread() && !isRevoked(currentOwner)) {
+            return false;
+        }
+        return ownerLane.isEmpty() && sharedLane.isEmpty() && casOwner(currentOwner, newOwner);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The owner offers to its lane with no CAS, other producers offer to the shared lane.
+     */
+    @Override
+    public boolean offer(final E e) {
+        final Thread current = Thread.currentThread();
+        if (lvOwner() == current || tryBias(current)) {
+            return ownerLane.offer(e);
+        }
+        return sharedLane.offer(e);
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final Thread current = Thread.currentThread();
+        if (lvOwner() == current || tryBias(current)) {
+            return ownerLane.fill(s, limit);
+        }
+        return sharedLane.fill(s, limit);
+    }
+
+    /**
+     * Take the bias if it is revoked. A thread which has offered to the shared lane may only take the bias once its
+     * elements there have been consumed, so taking the bias requires the shared lane to be empty.
+     */
+    private boolean tryBias(final Thread current) {
+        final Thread currentOwner = lvOwner();
+        if (!isRevoked(currentOwner)) {
+            return false;
+        }
+        return sharedLane.isEmpty() && casOwner(currentOwner, current);
+    }
+
+    /**
+     * @return true if there is no owner or it has terminated. isAlive() is also false for a thread which has not been
+     *         started, so it is only used to confirm termination and order the owner's last offer before ours.
+     */
+    private static boolean isRevoked(final Thread owner) {
+        return null == owner || (Thread.State.TERMINATED == owner.getState() && !owner.isAlive());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The owner lane is polled first, except for every SHARED_LANE_POLL_INTERVAL poll where the shared lane is.
+     */
+    @Override
+    public E poll() {
+        E e;
+        if (++consumerPollCount >= SHARED_LANE_POLL_INTERVAL) {
+            consumerPollCount = 0;
+            if (null != (e = sharedLane.poll())) {
+                return e;
+            }
+            return ownerLane.poll();
+        }
+        if (null != (e = ownerLane.poll())) {
+            return e;
+        }
+        return sharedLane.poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Visits the lanes in the same order the next {@link #poll()} will.
+     */
+    @Override
+    public E peek() {
+        E e;
+        if (consumerPollCount + 1 >= SHARED_LANE_POLL_INTERVAL) {
+            if (null != (e = sharedLane.peek())) {
+                return e;
+            }
+            return ownerLane.peek();
+        }
+        if (null != (e = ownerLane.peek())) {
+            return e;
+        }
+        return sharedLane.peek();
+    }
+
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Visits the lanes in the same order as {@link #poll()}, sharing its poll count.
+     */
+    @Override
+    public E relaxedPoll() {
+        E e;
+        if (++consumerPollCount >= SHARED_LANE_POLL_INTERVAL) {
+            consumerPollCount = 0;
+            if (null != (e = sharedLane.relaxedPoll())) {
+                return e;
+            }
+            return ownerLane.relaxedPoll();
+        }
+        if (null != (e = ownerLane.relaxedPoll())) {
+            return e;
+        }
+        return sharedLane.relaxedPoll();
+    }
+
+    @Override
+    public E relaxedPeek() {
+        E e;
+        if (consumerPollCount + 1 >= SHARED_LANE_POLL_INTERVAL) {
+            if (null != (e = sharedLane.relaxedPeek())) {
+                return e;
+            }
+            return ownerLane.relaxedPeek();
+        }
+        if (null != (e = ownerLane.relaxedPeek())) {
+            return e;
+        }
+        return sharedLane.relaxedPeek();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The shared lane is drained first, it is expected to hold few elements.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final int drained = sharedLane.drain(c, limit);
+        return drained + ownerLane.drain(c, limit - drained);
+    }
+
+    @Override
+    public int size() {
+        return ownerLane.size() + sharedLane.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ownerLane.isEmpty() && sharedLane.isEmpty();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+}
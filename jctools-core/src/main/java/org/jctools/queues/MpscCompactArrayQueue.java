@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * The unpadded counterpart of {@link MpscArrayQueue}, see {@link CompactCircularArrayQueue}. The algorithm is the
+ * same, but as the producer and consumer indices may share a cache line anyway there is no separate consumer index
+ * cache for the producers.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpscCompactArrayQueue<E> extends CompactCircularArrayQueue<E> {
+    private final static long P_INDEX_OFFSET;
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscCompactArrayQueue.class.getDeclaredField("producerIndex"));
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscCompactArrayQueue.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+    private volatile long consumerIndex;
+
+    public MpscCompactArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    private boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+
+    @Override
+    protected long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    private void soConsumerIndex(long l) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, l);
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     *
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free offer using a single CAS. As class name suggests access is permitted to many threads concurrently.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        long consumerIndexCache = lvConsumerIndex(); // LoadLoad
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            final long wrapPoint = currentProducerIndex - capacity;
+            if (consumerIndexCache <= wrapPoint) {
+                consumerIndexCache = lvConsumerIndex(); // LoadLoad
+                if (consumerIndexCache <= wrapPoint) {
+                    return false; // FULL :(
+                }
+            }
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + 1));
+        // Won CAS, move on to storing
+        soElement(buffer, calcOffset(currentProducerIndex), e); // StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free poll using ordered loads/stores. As class name suggests access is limited to a single thread. Spins
+     * if the next element is claimed by a producer but not yet visible, see {@link MpscArrayQueue#poll()}.
+     */
+    @Override
+    public E poll() {
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcOffset(consumerIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        E e = lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            if (consumerIndex != lvProducerIndex()) {
+                while ((e = lvElement(lElementBuffer, offset)) == null);
+            }
+            else {
+                return null;
+            }
+        }
+        spElement(lElementBuffer, offset, null);
+        soConsumerIndex(consumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcOffset(consumerIndex);
+        E e = lvElement(lElementBuffer, offset);
+        if (null == e) {
+            if (consumerIndex != lvProducerIndex()) {
+                while ((e = lvElement(lElementBuffer, offset)) == null);
+            }
+            else {
+                return null;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #poll()}, but returns null rather than spin when the element is claimed by a producer but not yet
+     * visible.
+     */
+    @Override
+    public E relaxedPoll() {
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcOffset(consumerIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            return null;
+        }
+        spElement(lElementBuffer, offset, null);
+        soConsumerIndex(consumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    @Override
+    public E relaxedPeek() {
+        return lvElement(buffer, calcOffset(lvConsumerIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Slots are cleared with plain stores and the consumer index is published once for the whole batch. This method
+     * does not wait for elements which are claimed but not yet visible.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        int i = 0;
+        for (; i < limit; i++) {
+            final long offset = calcOffset(consumerIndex + i);
+            final E e = lvElement(lElementBuffer, offset); // LoadLoad
+            if (null == e) {
+                break;
+            }
+            spElement(lElementBuffer, offset, null);
+            c.accept(e);
+        }
+        if (i != 0) {
+            soConsumerIndex(consumerIndex + i); // StoreStore
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free fill claiming a run of slots with a single CAS.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        long currentProducerIndex;
+        int batchSize;
+        do {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            final long available = capacity - (currentProducerIndex - lvConsumerIndex());
+            if (available <= 0) {
+                return 0; // FULL :(
+            }
+            batchSize = (int) Math.min(available, limit);
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize));
+
+        // Won CAS, move on to storing
+        final E[] lElementBuffer = buffer;
+        for (int i = 0; i < batchSize; i++) {
+            soElement(lElementBuffer, calcOffset(currentProducerIndex + i), s.get()); // StoreStore
+        }
+        return batchSize;
+    }
+}
@@ -15,9 +15,11 @@ package org.jctools.queues;
 
 import java.util.AbstractQueue;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jctools.util.Pow2.isPowerOfTwo;
 import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
 
 /**
  * Use a set number of parallel MPSC queues to diffuse the contention on tail.
@@ -28,21 +30,42 @@ abstract class MpscCompoundQueueL0Pad<E> extends AbstractQueue<E> implements Mes
 }
 
 abstract class MpscCompoundQueueColdFields<E> extends MpscCompoundQueueL0Pad<E> {
+    private final static long ACTIVE_LANES_MASK_OFFSET;
+    static {
+        try {
+            ACTIVE_LANES_MASK_OFFSET = UNSAFE.objectFieldOffset(MpscCompoundQueueColdFields.class
+                    .getDeclaredField("activeLanesMask"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
     // must be power of 2
     protected final int parallelQueues;
     protected final int parallelQueuesMask;
     protected final MpscArrayQueue<E>[] queues;
+    // home lanes are picked from the first activeLanesMask + 1 lanes, grows with producer contention
+    private volatile int activeLanesMask;
 
     @SuppressWarnings("unchecked")
     public MpscCompoundQueueColdFields(int capacity, int queueParallelism) {
-        parallelQueues = isPowerOfTwo(queueParallelism) ? queueParallelism
+        final int lanes = isPowerOfTwo(queueParallelism) ? queueParallelism
                 : roundToPowerOfTwo(queueParallelism) / 2;
+        // lanes hold at least 1 element, more lanes would add to the capacity
+        parallelQueues = Math.min(lanes, roundToPowerOfTwo(capacity));
         parallelQueuesMask = parallelQueues - 1;
         queues = new MpscArrayQueue[parallelQueues];
         for (int i = 0; i < parallelQueues; i++) {
             queues[i] = new MpscArrayQueue<E>(roundToPowerOfTwo(capacity) / parallelQueues);
         }
     }
+
+    protected final int lvActiveLanesMask() {
+        return activeLanesMask;
+    }
+
+    protected final boolean casActiveLanesMask(int expect, int newValue) {
+        return UNSAFE.compareAndSwapInt(this, ACTIVE_LANES_MASK_OFFSET, expect, newValue);
+    }
 }
 
 abstract class MpscCompoundQueueMidPad<E> extends MpscCompoundQueueColdFields<E> {
@@ -62,8 +85,34 @@ abstract class MpscCompoundQueueConsumerQueueIndex<E> extends MpscCompoundQueueM
     }
 }
 
+/**
+ * A Multi-Producer-Single-Consumer queue made of a set number of {@link MpscArrayQueue} lanes. Producers start from a
+ * home lane and the consumer visits the lanes in turn, so elements are not returned in FIFO order.
+ * <p>
+ * By default the home lane is picked by a per thread probe, in the style of {@code LongAdder}:
+ * <ol>
+ * <li>A producer which fails the CAS on its home lane rehashes its probe, so producers which collide on a lane move
+ * apart rather than contend on it for good.
+ * <li>Home lanes are picked from a set of active lanes which starts with a single lane and doubles, up to the number
+ * of lanes, whenever a producer collides again after a rehash.
+ * <li>A producer which finds its home lane full moves on to the other lanes, which may reorder elements offered by the
+ * same producer.
+ * </ol>
+ * Any single producer can fill the whole capacity. Specs which need the order of each producer kept should use a
+ * {@link MpscArrayQueue}.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
 public final class MpscCompoundQueue<E> extends MpscCompoundQueueConsumerQueueIndex<E> {
     private static final int CPUS = Runtime.getRuntime().availableProcessors();
+    private static final ThreadLocal<Probe> PROBE = new ThreadLocal<Probe>() {
+        @Override
+        protected Probe initialValue() {
+            return new Probe();
+        }
+    };
     long p00, p01, p02, p03, p04, p05, p06;
     long p30, p31, p32, p33, p34, p35, p36, p37;
 
@@ -71,32 +120,70 @@ public final class MpscCompoundQueue<E> extends MpscCompoundQueueConsumerQueueIn
         this(capacity, CPUS);
     }
 
+    /**
+     * @param capacity the total capacity, rounded up to the next power of 2 and split evenly between the lanes
+     * @param queueParallelism the number of lanes, rounded down to a power of 2 and capped so that the lanes do not
+     *        hold more than the capacity
+     */
     public MpscCompoundQueue(int capacity, int queueParallelism) {
         super(capacity, queueParallelism);
     }
 
     @Override
     public boolean offer(final E e) {
-        int start = (int) (Thread.currentThread().getId() & parallelQueuesMask);
-        if (queues[start].offer(e)) {
+        final Probe probe = PROBE.get();
+        int start = probe.value & lvActiveLanesMask();
+        final int homeStatus = queues[start].weakOffer(e);
+        if (homeStatus == 0) {
+            probe.collided = false;
             return true;
-        } else {
-            for (;;) {
-                int status = 0;
-                for (int i = start; i < start + parallelQueues; i++) {
-                    int s = queues[i & parallelQueuesMask].weakOffer(e);
-                    if (s == 0) {
-                        return true;
-                    }
-                    status += s;
-                }
-                if (status == parallelQueues) {
-                    return false;
+        } else if (homeStatus < 0) {
+            start = contended(probe);
+        }
+        for (;;) {
+            int status = 0;
+            for (int i = start; i < start + parallelQueues; i++) {
+                int s = queues[i & parallelQueuesMask].weakOffer(e);
+                if (s == 0) {
+                    return true;
                 }
+                status += s;
+            }
+            if (status == parallelQueues) {
+                return false;
             }
         }
     }
 
+    /**
+     * Move the producer to another home lane after a CAS failure on its home lane, and grow the active lanes if the
+     * producer has collided before.
+     * 
+     * @return the new home lane
+     */
+    private int contended(final Probe probe) {
+        int mask = lvActiveLanesMask();
+        if (probe.collided && mask < parallelQueuesMask) {
+            final int newMask = (mask << 1) | 1;
+            casActiveLanesMask(mask, newMask);
+            mask = lvActiveLanesMask();
+            probe.collided = false;
+        } else {
+            probe.collided = true;
+        }
+        probe.rehash();
+        return probe.value & mask;
+    }
+
+    private int homeLane() {
+        return PROBE.get().value & lvActiveLanesMask();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The lanes are polled round robin, the next poll starts from the lane after the one the element was taken from.
+     */
     @Override
     public E poll() {
         int qIndex = consumerQueueIndex & parallelQueuesMask;
@@ -105,11 +192,70 @@ public final class MpscCompoundQueue<E> extends MpscCompoundQueueConsumerQueueIn
         for (; qIndex < limit; qIndex++) {
             e = queues[qIndex & parallelQueuesMask].poll();
             if (e != null) {
-                break;
+                consumerQueueIndex = qIndex + 1;
+                return e;
             }
         }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each lane is tried once, starting from the home lane of the thread, rather than retrying until all lanes are
+     * found full.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        final int start = homeLane();
+        for (int i = start; i < start + parallelQueues; i++) {
+            if (queues[i & parallelQueuesMask].weakOffer(e) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public E relaxedPoll() {
+        int qIndex = consumerQueueIndex & parallelQueuesMask;
+        int limit = qIndex + parallelQueues;
+        E e = null;
+        for (; qIndex < limit; qIndex++) {
+            e = queues[qIndex & parallelQueuesMask].relaxedPoll();
+            if (e != null) {
+                consumerQueueIndex = qIndex + 1;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public E relaxedPeek() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        int qIndex = consumerQueueIndex & parallelQueuesMask;
+        final int qLimit = qIndex + parallelQueues;
+        int drained = 0;
+        for (; qIndex < qLimit && drained < limit; qIndex++) {
+            drained += queues[qIndex & parallelQueuesMask].drain(c, limit - drained);
+        }
         consumerQueueIndex = qIndex;
-        return e;
+        return drained;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final int start = homeLane();
+        int filled = 0;
+        for (int i = start; i < start + parallelQueues && filled < limit; i++) {
+            filled += queues[i & parallelQueuesMask].fill(s, limit - filled);
+        }
+        return filled;
     }
 
     @Override
@@ -130,4 +276,24 @@ public final class MpscCompoundQueue<E> extends MpscCompoundQueueConsumerQueueIn
     public Iterator<E> iterator() {
         throw new UnsupportedOperationException();
     }
+
+    private static final class Probe {
+        private static final AtomicInteger SEEDS = new AtomicInteger();
+        int value;
+        boolean collided;
+
+        Probe() {
+            // spread the initial values, as ThreadLocalRandom does for the thread probe
+            value = SEEDS.addAndGet(0x9e3779b9) | 1;
+        }
+
+        void rehash() {
+            // xorshift, as in Striped64
+            int h = value;
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            value = h;
+        }
+    }
 }
@@ -0,0 +1,412 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+
+import org.jctools.util.UnsafeAccess;
+
+abstract class MpscIntrusiveLinkedQueuePad0<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpscIntrusiveLinkedQueueProducerNodeRef<E> extends MpscIntrusiveLinkedQueuePad0<E> {
+    protected final static long P_NODE_OFFSET;
+    static {
+        try {
+            P_NODE_OFFSET = UNSAFE.objectFieldOffset(MpscIntrusiveLinkedQueueProducerNodeRef.class
+                    .getDeclaredField("producerNode"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected volatile MpscIntrusiveLinkedQueue.Node producerNode;
+
+    protected final MpscIntrusiveLinkedQueue.Node lvProducerNode() {
+        return producerNode;
+    }
+
+    protected final MpscIntrusiveLinkedQueue.Node xchgProducerNode(MpscIntrusiveLinkedQueue.Node newVal) {
+        if (UnsafeAccess.SUPPORTS_GET_AND_SET) {
+            return (MpscIntrusiveLinkedQueue.Node) UNSAFE.getAndSetObject(this, P_NODE_OFFSET, newVal);
+        }
+        Object oldVal;
+        do {
+            oldVal = producerNode;
+        } while (!UNSAFE.compareAndSwapObject(this, P_NODE_OFFSET, oldVal, newVal));
+        return (MpscIntrusiveLinkedQueue.Node) oldVal;
+    }
+}
+
+abstract class MpscIntrusiveLinkedQueuePad1<E> extends MpscIntrusiveLinkedQueueProducerNodeRef<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpscIntrusiveLinkedQueueConsumerNodeRef<E> extends MpscIntrusiveLinkedQueuePad1<E> {
+    protected final static long C_NODE_OFFSET;
+    static {
+        try {
+            C_NODE_OFFSET = UNSAFE.objectFieldOffset(MpscIntrusiveLinkedQueueConsumerNodeRef.class
+                    .getDeclaredField("consumerNode"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected MpscIntrusiveLinkedQueue.Node consumerNode;
+    // the stub has been offered and is linked somewhere after the consumer node
+    protected boolean stubAhead;
+
+    protected final void spConsumerNode(MpscIntrusiveLinkedQueue.Node node) {
+        consumerNode = node;
+    }
+
+    protected final MpscIntrusiveLinkedQueue.Node lvConsumerNode() {
+        return (MpscIntrusiveLinkedQueue.Node) UNSAFE.getObjectVolatile(this, C_NODE_OFFSET);
+    }
+
+    protected final MpscIntrusiveLinkedQueue.Node lpConsumerNode() {
+        return consumerNode;
+    }
+}
+
+/**
+ * An intrusive port of the MPSC algorithm as presented <a
+ * href="http://www.1024cores.net/home/lock-free-algorithms/queues/intrusive-mpsc-node-based-queue"> on 1024
+ * Cores</a> by D. Vyukov. Where {@link MpscLinkedQueue} wraps every element in a new node the elements of this queue
+ * are the nodes, carrying their own next reference, so nothing is allocated on offer. This suits long lived/pooled
+ * messages, which may extend {@link AbstractNode} or implement {@link Node} themselves.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * Producers swap themselves in as the producer node and link the previous producer node to themselves, as in
+ * {@link MpscLinkedQueue}. The queue owns a stub node which takes the place of the consumed node, so an element can be
+ * handed out as soon as it is polled: when the consumer gets to the last element it offers the stub behind it, making
+ * the element the previous node of the stub rather than the consumer node. An element can only be in one queue at a
+ * time and must not be offered again until it has been polled.
+ * <p>
+ * {@link #detachChain()} swaps the stub in as the producer node in one step, handing the consumer the whole chain of
+ * elements offered before it.
+ *
+ * @author nitsanw
+ *
+ * @param <E> the element type, the nodes of the queue
+ */
+public final class MpscIntrusiveLinkedQueue<E extends MpscIntrusiveLinkedQueue.Node> extends
+        MpscIntrusiveLinkedQueueConsumerNodeRef<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    /**
+     * An element of a {@link MpscIntrusiveLinkedQueue}. The next reference is managed by the queue and should only be
+     * read by the consumer, using {@link #lvNext()}, when walking a chain returned by {@link #detachChain()}.
+     */
+    public interface Node {
+        /**
+         * @return the next node, volatile load
+         */
+        Node lvNext();
+
+        /**
+         * Set the next node with an ordered store (or stronger).
+         */
+        void soNext(Node next);
+
+        /**
+         * Set the next node with a plain store (or stronger).
+         */
+        void spNext(Node next);
+    }
+
+    /**
+     * A {@link Node} keeping the next reference in a field of its own, for elements which are free to extend it.
+     */
+    public abstract static class AbstractNode implements Node {
+        private final static long NEXT_OFFSET;
+        static {
+            try {
+                NEXT_OFFSET = UNSAFE.objectFieldOffset(AbstractNode.class.getDeclaredField("next"));
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        private volatile Node next;
+
+        @Override
+        public final Node lvNext() {
+            return next;
+        }
+
+        @Override
+        public final void soNext(Node n) {
+            UNSAFE.putOrderedObject(this, NEXT_OFFSET, n);
+        }
+
+        @Override
+        public final void spNext(Node n) {
+            UNSAFE.putObject(this, NEXT_OFFSET, n);
+        }
+    }
+
+    private static final class StubNode extends AbstractNode {
+    }
+
+    private final Node stub = new StubNode();
+
+    public MpscIntrusiveLinkedQueue() {
+        spConsumerNode(stub);
+        xchgProducerNode(stub);// this ensures correct construction: StoreLoad
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Offer is allowed from multiple threads and allocates nothing, the element is swapped in as the producer node and
+     * linked from the previous one.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        offerNode(e);
+        return true;
+    }
+
+    private void offerNode(final Node n) {
+        n.spNext(null);
+        final Node prevProducerNode = xchgProducerNode(n); // StoreLoad
+        // Should a producer thread get interrupted here the chain WILL be broken until that thread is resumed
+        // and completes the store in prev.next.
+        prevProducerNode.soNext(n); // StoreStore
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Poll is allowed from a SINGLE thread. The polled element no longer references the queue and may be offered
+     * again right away.
+     */
+    @Override
+    public E poll() {
+        Node currConsumerNode = lpConsumerNode();
+        Node nextNode = currConsumerNode.lvNext();
+        if (currConsumerNode == stub) {
+            if (null == nextNode) {
+                if (stub == lvProducerNode()) {
+                    return null;
+                }
+                nextNode = waitNext(stub);
+            }
+            // step over the stub
+            currConsumerNode = nextNode;
+            nextNode = nextNode.lvNext();
+        }
+        if (null == nextNode) {
+            if (currConsumerNode == lvProducerNode()) {
+                // last node, put the stub behind it so it can be handed out
+                offerStub();
+            }
+            nextNode = waitNext(currConsumerNode);
+        }
+        return handOut(currConsumerNode, nextNode);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #poll()}, but returns null rather than spin when a producer is yet to link its element.
+     */
+    @Override
+    public E relaxedPoll() {
+        Node currConsumerNode = lpConsumerNode();
+        Node nextNode = currConsumerNode.lvNext();
+        if (currConsumerNode == stub) {
+            if (null == nextNode) {
+                return null;
+            }
+            // step over the stub
+            spConsumerNode(nextNode);
+            currConsumerNode = nextNode;
+            nextNode = nextNode.lvNext();
+        }
+        if (null == nextNode) {
+            if (currConsumerNode != lvProducerNode()) {
+                return null;
+            }
+            // last node, put the stub behind it so it can be handed out
+            offerStub();
+            if (null == (nextNode = currConsumerNode.lvNext())) {
+                return null;
+            }
+        }
+        return handOut(currConsumerNode, nextNode);
+    }
+
+    private void offerStub() {
+        stubAhead = true;
+        offerNode(stub);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E handOut(final Node currConsumerNode, final Node nextNode) {
+        if (nextNode == stub) {
+            stubAhead = false;
+        }
+        spConsumerNode(nextNode);
+        // the node is the consumer's now, don't keep the rest of the queue reachable from it
+        currConsumerNode.spNext(null);
+        return (E) currConsumerNode;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E peek() {
+        final Node currConsumerNode = lpConsumerNode();
+        if (currConsumerNode != stub) {
+            return (E) currConsumerNode;
+        }
+        Node nextNode = stub.lvNext();
+        if (null == nextNode) {
+            if (stub == lvProducerNode()) {
+                return null;
+            }
+            nextNode = waitNext(stub);
+        }
+        return (E) nextNode;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E relaxedPeek() {
+        final Node currConsumerNode = lpConsumerNode();
+        return (E) (currConsumerNode != stub ? currConsumerNode : stub.lvNext());
+    }
+
+    /**
+     * Remove all the elements offered so far in one step, the consumer may then process them as a batch. The chain
+     * is linked through {@link Node#lvNext()} and terminated by null, all links are in place by the time this method
+     * returns. Elements may be offered again as soon as they have been read from the chain.<br>
+     * This method is for the consumer thread only.
+     *
+     * @return the first element of the chain, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E detachChain() {
+        Node head = null;
+        Node tail = null;
+        if (stubAhead) {
+            // a producer got in between the last element and the stub, cut the chain in front of the stub
+            head = lpConsumerNode();
+            tail = head;
+            Node next;
+            while ((next = waitNext(tail)) != stub) {
+                tail = next;
+            }
+            tail.spNext(null);
+            spConsumerNode(stub);
+            stubAhead = false;
+        }
+        Node first = lpConsumerNode();
+        if (first == stub) {
+            first = stub.lvNext();
+            if (null == first) {
+                if (stub == lvProducerNode()) {
+                    return (E) head;
+                }
+                first = waitNext(stub);
+            }
+        }
+        // swap the stub in as the producer node, producers now link after the stub and the chain ends with last
+        stub.spNext(null);
+        spConsumerNode(stub);
+        final Node last = xchgProducerNode(stub); // StoreLoad
+        // wait for producers which swapped themselves in to link their node
+        for (Node n = first; n != last;) {
+            n = waitNext(n);
+        }
+        if (null == head) {
+            return (E) first;
+        }
+        tail.spNext(first);
+        return (E) head;
+    }
+
+    private static Node waitNext(final Node n) {
+        Node next;
+        // spin, we are no longer wait free
+        while (null == (next = n.lvNext()));
+        return next;
+    }
+
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = relaxedPoll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            offer(s.get());
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * This is an O(n) walk of the queue.
+     */
+    @Override
+    public int size() {
+        Node n = lvConsumerNode();
+        int size = n == stub ? 0 : 1;
+        while ((n = n.lvNext()) != null && size < Integer.MAX_VALUE) {
+            if (n != stub) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        final Node currConsumerNode = lvConsumerNode();
+        return currConsumerNode == stub && stub == lvProducerNode();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+}
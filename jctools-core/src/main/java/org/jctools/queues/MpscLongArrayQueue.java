@@ -0,0 +1,247 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class MpscLongArrayQueueL1Pad extends ConcurrentSequencedCircularLongArrayQueue {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscLongArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class MpscLongArrayQueueProducerField extends MpscLongArrayQueueL1Pad {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscLongArrayQueueProducerField.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    public MpscLongArrayQueueProducerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpscLongArrayQueueL2Pad extends MpscLongArrayQueueProducerField {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscLongArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class MpscLongArrayQueueConsumerField extends MpscLongArrayQueueL2Pad {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscLongArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long consumerIndex;
+
+    public MpscLongArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+
+    protected final void soConsumerIndex(long v) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, v);
+    }
+}
+
+/**
+ * A Multi-Producer-Single-Consumer queue of primitive longs backed by a pre-allocated long[].
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The producers claim a slot with a CAS of the producer index and publish the element written to it with a store to
+ * the sequence buffer, as in {@link MpmcLongArrayQueue}. The single consumer needs no CAS, it releases the slots to
+ * the producers via the sequence buffer and publishes its progress for the size estimate and the producers' strict
+ * full check.
+ *
+ * @author nitsanw
+ */
+public final class MpscLongArrayQueue extends MpscLongArrayQueueConsumerField {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscLongArrayQueue(final int capacity) {
+        super(Math.max(2, capacity));
+    }
+
+    @Override
+    public boolean offer(final long e) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        long seqOffset;
+        long cIndex = Long.MAX_VALUE;// start with bogus value, hope we don't need it
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            seqOffset = calcSequenceOffset(currentProducerIndex);
+            final long seq = lvSequence(lSequenceBuffer, seqOffset); // LoadLoad
+            final long delta = seq - currentProducerIndex;
+
+            if (delta == 0) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    // Successful CAS: full barrier
+                    break;
+                }
+                // failed cas, retry 1
+            } else if (delta < 0 && // poll has not moved this value forward
+                    currentProducerIndex - capacity <= cIndex && // test against cached cIndex
+                    currentProducerIndex - capacity <= (cIndex = lvConsumerIndex())) { // test against latest cIndex
+                // Extra check required to ensure [offer == false iff queue is full]
+                return false;
+            }
+
+            // another producer has moved the sequence by one, retry 2
+        }
+
+        spElement(buffer, calcElementOffset(currentProducerIndex), e);
+
+        // increment sequence by 1, the value expected by consumer
+        soSequence(lSequenceBuffer, seqOffset, currentProducerIndex + 1); // StoreStore
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. If a producer has claimed the next slot but
+     * not yet published the element this method will spin until it does, to ensure [poll == false iff isEmpty()].
+     */
+    @Override
+    public boolean poll(final LongConsumer c) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentConsumerIndex = consumerIndex;
+        final long seqOffset = calcSequenceOffset(currentConsumerIndex);
+        if (lvSequence(lSequenceBuffer, seqOffset) != currentConsumerIndex + 1) {// LoadLoad
+            if (currentConsumerIndex == lvProducerIndex()) {
+                return false;
+            }
+            // a producer has claimed the slot, spin until the element is published
+            while (lvSequence(lSequenceBuffer, seqOffset) != currentConsumerIndex + 1) {
+            }
+        }
+        final long e = lpElement(buffer, calcElementOffset(currentConsumerIndex));
+        // Move sequence ahead by capacity, preparing it for next offer
+        soSequence(lSequenceBuffer, seqOffset, currentConsumerIndex + capacity);// StoreStore
+        soConsumerIndex(currentConsumerIndex + 1);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. The run of published elements is consumed
+     * and the consumer index is published once at the end of it, the per slot sequence stores are still required to
+     * release the slots to the producers. Stops at the first claimed but unpublished slot.
+     */
+    @Override
+    public int drain(final LongConsumer c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final long currentConsumerIndex = consumerIndex;
+        int i = 0;
+        for (; i < limit; i++) {
+            final long index = currentConsumerIndex + i;
+            final long seqOffset = calcSequenceOffset(index);
+            if (lvSequence(lSequenceBuffer, seqOffset) != index + 1) {// LoadLoad
+                break;
+            }
+            final long e = lpElement(buffer, calcElementOffset(index));
+            soSequence(lSequenceBuffer, seqOffset, index + capacity);// StoreStore
+            c.accept(e);
+        }
+        if (i > 0) {
+            soConsumerIndex(currentConsumerIndex + i);// StoreStore
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequence of each slot in the run is checked before the run is claimed with a single CAS on the producer
+     * index. The per slot sequence stores are still required to publish the elements to the consumer.
+     */
+    @Override
+    public int fill(final LongSupplier s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long currentProducerIndex;
+        int batchSize;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            batchSize = 0;
+            // count the slots which have been released by the consumer
+            while (batchSize < limit) {
+                final long index = currentProducerIndex + batchSize;
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(index)); // LoadLoad
+                if (seq != index) {
+                    break;
+                }
+                batchSize++;
+            }
+            if (batchSize == 0) {
+                final long seq = lvSequence(lSequenceBuffer, calcSequenceOffset(currentProducerIndex));
+                if (limit <= 0 || seq < currentProducerIndex) {
+                    // poll has not moved this value forward, queue is full
+                    return 0;
+                }
+                // another producer has moved the sequence by one, retry
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize)) {
+                // Successful CAS: full barrier
+                break;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long index = currentProducerIndex + i;
+            spElement(buffer, calcElementOffset(index), s.get());
+            // increment sequence by 1, the value expected by consumer
+            soSequence(lSequenceBuffer, calcSequenceOffset(index), index + 1); // StoreStore
+        }
+        return batchSize;
+    }
+}
@@ -13,11 +13,14 @@
  */
 package org.jctools.queues;
 
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Queue;
-import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jctools.queues.MessagePassingQueue.Supplier;
 
 /**
  * Use an SPSC per producer.
@@ -27,41 +30,289 @@ abstract class MpscOnSpscL0Pad {
     long p30, p31, p32, p33, p34, p35, p36, p37;
 }
 
-@SuppressWarnings("unchecked")
 abstract class MpscOnSpscFields<E> extends MpscOnSpscL0Pad {
-    private final Queue<E>[] queues = new Queue[Integer.getInteger("producers", 4)];
-    protected final ThreadLocal<Queue<E>> producerQueue;
-    protected int tail;
-    protected Queue<E> currentQ;
+    // lanes are added in groups sharing a non empty bitmap word
+    protected static final int GROUP_SHIFT = 6;
+    protected static final int GROUP_SIZE = 1 << GROUP_SHIFT;
+    protected static final int GROUP_MASK = GROUP_SIZE - 1;
+    private final static long GROUPS_OFFSET;
+    static {
+        try {
+            GROUPS_OFFSET = UNSAFE.objectFieldOffset(MpscOnSpscFields.class.getDeclaredField("groups"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected final int capacity;
+    protected final ThreadLocal<MpscOnSpscQueue.Producer<E>> producerQueue;
+    protected final Object registrationLock = new Object();
+    private volatile MpscOnSpscLaneGroup<E>[] groups;
 
+    @SuppressWarnings("unchecked")
     public MpscOnSpscFields(final int capacity) {
-        producerQueue = new ThreadLocal<Queue<E>>() {
-            final AtomicInteger index = new AtomicInteger();
-
+        this.capacity = capacity;
+        producerQueue = new ThreadLocal<MpscOnSpscQueue.Producer<E>>() {
             @Override
-            protected Queue<E> initialValue() {
-                return queues[index.getAndIncrement() % queues.length];
+            protected MpscOnSpscQueue.Producer<E> initialValue() {
+                return new MpscOnSpscQueue.Producer<E>(claimLane(Thread.currentThread()));
             }
         };
-        for (int i = 0; i < queues.length; i++) {
-            queues[i] = new SpscArrayQueue<E>(capacity);
+        groups = new MpscOnSpscLaneGroup[] { new MpscOnSpscLaneGroup<E>() };
+    }
+
+    protected final MpscOnSpscLaneGroup<E>[] lvGroups() {
+        return groups;
+    }
+
+    private void soGroups(MpscOnSpscLaneGroup<E>[] newGroups) {
+        UNSAFE.putOrderedObject(this, GROUPS_OFFSET, newGroups);
+    }
+
+    /**
+     * Claim a free lane, or the lane of an implicitly registered producer thread which is no longer alive, or failing
+     * that a new lane.
+     */
+    protected final MpscOnSpscLane<E> claimLane(final Object owner) {
+        final MpscOnSpscLaneGroup<E>[] gs = lvGroups();
+        for (MpscOnSpscLaneGroup<E> group : gs) {
+            final int laneCount = group.lvLaneCount();
+            for (int i = 0; i < laneCount; i++) {
+                final MpscOnSpscLane<E> lane = group.lanes[i];
+                if (lane.tryClaim(owner)) {
+                    return lane;
+                }
+            }
         }
-        currentQ = queues[0];
+        synchronized (registrationLock) {
+            MpscOnSpscLaneGroup<E>[] current = lvGroups();
+            MpscOnSpscLaneGroup<E> group = current[current.length - 1];
+            int laneIndex = group.lvLaneCount();
+            if (laneIndex == GROUP_SIZE) {
+                @SuppressWarnings("unchecked")
+                final MpscOnSpscLaneGroup<E>[] newGroups = new MpscOnSpscLaneGroup[current.length + 1];
+                System.arraycopy(current, 0, newGroups, 0, current.length);
+                group = newGroups[current.length] = new MpscOnSpscLaneGroup<E>();
+                soGroups(newGroups);
+                laneIndex = 0;
+            }
+            final MpscOnSpscLane<E> lane = new MpscOnSpscLane<E>(group, laneIndex, capacity, owner);
+            group.lanes[laneIndex] = lane;
+            group.svLaneCount(laneIndex + 1); // StoreLoad, publishes the lane to the consumer
+            return lane;
+        }
+    }
+}
+
+abstract class MpscOnSpscL1Pad<E> extends MpscOnSpscFields<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscOnSpscL1Pad(final int capacity) {
+        super(capacity);
     }
+}
 
-    protected final Queue<E>[] getQueues() {
-        return queues;
+abstract class MpscOnSpscConsumerFields<E> extends MpscOnSpscL1Pad<E> {
+    // the lane to start the next poll from
+    protected int consumerLane;
+
+    public MpscOnSpscConsumerFields(final int capacity) {
+        super(capacity);
     }
 }
 
-public final class MpscOnSpscQueue<E> extends MpscOnSpscFields<E> implements Queue<E> {
+final class MpscOnSpscLaneGroup<E> {
+    private final static long NON_EMPTY_OFFSET;
+    private final static long LANE_COUNT_OFFSET;
+    static {
+        try {
+            NON_EMPTY_OFFSET = UNSAFE.objectFieldOffset(MpscOnSpscLaneGroup.class.getDeclaredField("nonEmpty"));
+            LANE_COUNT_OFFSET = UNSAFE.objectFieldOffset(MpscOnSpscLaneGroup.class.getDeclaredField("laneCount"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    @SuppressWarnings("unchecked")
+    final MpscOnSpscLane<E>[] lanes = new MpscOnSpscLane[MpscOnSpscFields.GROUP_SIZE];
+    private volatile long nonEmpty;
+    private volatile int laneCount;
+
+    long lvNonEmpty() {
+        return nonEmpty;
+    }
+
+    boolean casNonEmpty(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, NON_EMPTY_OFFSET, expect, newValue);
+    }
+
+    int lvLaneCount() {
+        return laneCount;
+    }
+
+    void svLaneCount(int count) {
+        UNSAFE.putIntVolatile(this, LANE_COUNT_OFFSET, count);
+    }
+}
+
+final class MpscOnSpscLane<E> {
+    private final static long OWNER_OFFSET;
+    static {
+        try {
+            OWNER_OFFSET = UNSAFE.objectFieldOffset(MpscOnSpscLane.class.getDeclaredField("owner"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    final MpscOnSpscLaneGroup<E> group;
+    final long bit;
+    final SpscArrayQueue<E> queue;
+    // null if free, the producer handle if registered, or the thread if implicitly registered
+    private volatile Object owner;
+
+    MpscOnSpscLane(MpscOnSpscLaneGroup<E> group, int index, int capacity, Object owner) {
+        this.group = group;
+        this.bit = 1L << index;
+        this.queue = new SpscArrayQueue<E>(capacity);
+        this.owner = owner;
+    }
+
+    boolean tryClaim(Object newOwner) {
+        final Object o = owner;
+        if (o == null || (o instanceof Thread && !((Thread) o).isAlive())) {
+            // Successful CAS: full barrier, the previous owner offers are visible to the new owner
+            return UNSAFE.compareAndSwapObject(this, OWNER_OFFSET, o, newOwner);
+        }
+        return false;
+    }
+
+    void release() {
+        UNSAFE.putOrderedObject(this, OWNER_OFFSET, null);
+    }
+
+    void signalNonEmpty() {
+        long bits;
+        while (((bits = group.lvNonEmpty()) & bit) == 0) {
+            if (group.casNonEmpty(bits, bits | bit)) {
+                return;
+            }
+        }
+    }
+
+    void clearNonEmpty() {
+        long bits;
+        while (((bits = group.lvNonEmpty()) & bit) != 0) {
+            if (group.casNonEmpty(bits, bits & ~bit)) {
+                return;
+            }
+        }
+    }
+}
+
+/**
+ * A Multi-Producer-Single-Consumer queue made of an {@link SpscArrayQueue} lane per producer, so producers never
+ * contend with each other on offer.
+ * <p>
+ * Producers hold a lane for as long as they are registered:
+ * <ol>
+ * <li>{@link #register()} returns a {@link Producer} handle owning a lane until {@link Producer#deregister()} is
+ * called. Lanes of deregistered producers are handed to the next producer to register, elements left in them are
+ * still polled.
+ * <li>{@link #offer(Object)} implicitly registers the calling thread on first use. The lane is only reclaimed once the
+ * thread is no longer alive, so short lived producer threads should use the explicit handles.
+ * </ol>
+ * Lanes are created on demand in groups of 64 which share a non empty bitmap word. A producer sets the lane bit when it
+ * finds it clear after an offer, so the bitmap word is only written when a lane goes from empty to non empty. The
+ * consumer only visits lanes flagged in the bitmap, starting from the lane after the last one it polled from. The
+ * producer fences between the offer and the bitmap check, and the consumer clears a bit with a CAS before checking the
+ * lane is empty, so either the producer finds the bit clear and sets it or the consumer finds the element and restores
+ * the bit. No signal is lost to a concurrent clear.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpscOnSpscQueue<E> extends MpscOnSpscConsumerFields<E> implements Queue<E> {
     long p40, p41, p42, p43, p44, p45, p46;
     long p30, p31, p32, p33, p34, p35, p36, p37;
 
+    /**
+     * @param capacity the capacity of each producer lane
+     */
     public MpscOnSpscQueue(final int capacity) {
         super(capacity);
     }
 
+    /**
+     * A producer lane handle, owned by a single producer thread at a time.
+     */
+    public static final class Producer<E> implements QueueProducer<E> {
+        private MpscOnSpscLane<E> lane;
+        // written after each successful offer for the StoreLoad barrier only, the handle is confined to its thread
+        private volatile int producerFence;
+
+        Producer(MpscOnSpscLane<E> lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Offer to the lane of this producer, see {@link Queue#offer(Object)}.
+         *
+         * @throws IllegalStateException if the producer has been deregistered
+         */
+        @Override
+        public boolean offer(final E e) {
+            final MpscOnSpscLane<E> l = lane;
+            if (null == l) {
+                throw new IllegalStateException("Producer is deregistered");
+            }
+            if (!l.queue.offer(e)) {
+                return false;
+            }
+            producerFence = 0;// StoreLoad
+            l.signalNonEmpty();
+            return true;
+        }
+
+        /**
+         * Fill the lane of this producer, signalling the consumer once for the batch.
+         *
+         * @throws IllegalStateException if the producer has been deregistered
+         */
+        @Override
+        public int fill(final Supplier<E> s, final int limit) {
+            final MpscOnSpscLane<E> l = lane;
+            if (null == l) {
+                throw new IllegalStateException("Producer is deregistered");
+            }
+            final int filled = l.queue.fill(s, limit);
+            if (filled != 0) {
+                producerFence = 0;// StoreLoad
+                l.signalNonEmpty();
+            }
+            return filled;
+        }
+
+        /**
+         * Hand the lane back to the queue, the producer may not offer after this call.
+         */
+        public void deregister() {
+            final MpscOnSpscLane<E> l = lane;
+            if (null != l) {
+                lane = null;
+                l.release();
+            }
+        }
+    }
+
+    /**
+     * @return a new producer handle owning a lane of this queue until deregistered
+     */
+    public Producer<E> register() {
+        final Producer<E> producer = new Producer<E>(null);
+        producer.lane = claimLane(producer);
+        return producer;
+    }
+
     public boolean add(final E e) {
         if (offer(e)) {
             return true;
@@ -69,23 +320,57 @@ public final class MpscOnSpscQueue<E> extends MpscOnSpscFields<E> implements Que
         throw new IllegalStateException("Queue is full");
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Offers to the lane of the calling thread, registering the thread on first use.
+     */
     public boolean offer(final E e) {
         return producerQueue.get().offer(e);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
     public E poll() {
-        // int pCount = getProducerCount();
-        // if(pCount == 0){
-        // return null;
-        // }
-        Queue<E>[] qs = getQueues();
-        // int start = ThreadLocalRandom.current().nextInt(pCount);
-        // tail++;
-
-        for (int i = 0; i < qs.length; i++) {
-            E e = qs[i].poll();
-            if (e != null)
-                return e;
+        final MpscOnSpscLaneGroup<E>[] gs = lvGroups();
+        int start = consumerLane;
+        if (start >= gs.length << GROUP_SHIFT) {
+            start = 0;
+        }
+        final int startGroup = start >>> GROUP_SHIFT;
+        final long startMask = -1L << (start & GROUP_MASK);
+        // visit the start group lanes from the start lane, the other groups, then the start group lanes before it
+        for (int k = 0; k <= gs.length; k++) {
+            final int g = (startGroup + k) % gs.length;
+            final MpscOnSpscLaneGroup<E> group = gs[g];
+            long bits = group.lvNonEmpty(); // LoadLoad
+            if (k == 0) {
+                bits &= startMask;
+            } else if (k == gs.length) {
+                bits &= ~startMask;
+            }
+            while (bits != 0) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                final MpscOnSpscLane<E> lane = group.lanes[i];
+                E e = lane.queue.poll();
+                if (null == e) {
+                    lane.clearNonEmpty();
+                    // an offer may have slipped in before the clear
+                    if (lane.queue.isEmpty()) {
+                        continue;
+                    }
+                    lane.signalNonEmpty();
+                    e = lane.queue.poll();
+                }
+                if (null != e) {
+                    consumerLane = (g << GROUP_SHIFT) + i + 1;
+                    return e;
+                }
+            }
         }
         return null;
     }
@@ -108,16 +393,61 @@ public final class MpscOnSpscQueue<E> extends MpscOnSpscFields<E> implements Que
         return e;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. Returns the element the next poll would
+     * return, unless more elements are offered in the meantime.
+     */
     public E peek() {
-        throw new UnsupportedOperationException();
+        final MpscOnSpscLaneGroup<E>[] gs = lvGroups();
+        int start = consumerLane;
+        if (start >= gs.length << GROUP_SHIFT) {
+            start = 0;
+        }
+        final int startGroup = start >>> GROUP_SHIFT;
+        final long startMask = -1L << (start & GROUP_MASK);
+        for (int k = 0; k <= gs.length; k++) {
+            final MpscOnSpscLaneGroup<E> group = gs[(startGroup + k) % gs.length];
+            long bits = group.lvNonEmpty(); // LoadLoad
+            if (k == 0) {
+                bits &= startMask;
+            } else if (k == gs.length) {
+                bits &= ~startMask;
+            }
+            while (bits != 0) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                final E e = group.lanes[i].queue.peek();
+                if (null != e) {
+                    return e;
+                }
+            }
+        }
+        return null;
     }
 
     public int size() {
-        throw new UnsupportedOperationException();
+        int size = 0;
+        for (MpscOnSpscLaneGroup<E> group : lvGroups()) {
+            final int laneCount = group.lvLaneCount();
+            for (int i = 0; i < laneCount; i++) {
+                size += group.lanes[i].queue.size();
+            }
+        }
+        return size;
     }
 
     public boolean isEmpty() {
-        throw new UnsupportedOperationException();
+        for (MpscOnSpscLaneGroup<E> group : lvGroups()) {
+            final int laneCount = group.lvLaneCount();
+            for (int i = 0; i < laneCount; i++) {
+                if (!group.lanes[i].queue.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     public boolean contains(final Object o) {
@@ -0,0 +1,466 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class MpscSparseArrayQueueL1Pad<E> extends SparseCircularArrayQueue<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscSparseArrayQueueL1Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class MpscSparseArrayQueueTailField<E> extends MpscSparseArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(
+                MpscSparseArrayQueueTailField.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    public MpscSparseArrayQueueTailField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpscSparseArrayQueueMidPad<E> extends MpscSparseArrayQueueTailField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscSparseArrayQueueMidPad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class MpscSparseArrayQueueHeadCacheField<E> extends MpscSparseArrayQueueMidPad<E> {
+    private volatile long headCache;
+
+    public MpscSparseArrayQueueHeadCacheField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvConsumerIndexCache() {
+        return headCache;
+    }
+
+    protected final void svConsumerIndexCache(long v) {
+        headCache = v;
+    }
+}
+
+abstract class MpscSparseArrayQueueL2Pad<E> extends MpscSparseArrayQueueHeadCacheField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscSparseArrayQueueL2Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class MpscSparseArrayQueueConsumerField<E> extends MpscSparseArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscSparseArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public MpscSparseArrayQueueConsumerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected void soConsumerIndex(long l) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, l);
+    }
+}
+
+/**
+ * A variant of {@link MpscArrayQueue} which only uses every 2^sparseShift slot of its element buffer, trading
+ * footprint for less false sharing between neighbouring elements.
+ * <p>
+ * The algorithm and field layout are those of {@link MpscArrayQueue}, see {@link SparseCircularArrayQueue} for the
+ * buffer layout. The sparse shift is per instance, so computing an offset loads it from the queue. Dense queues are
+ * better served by {@link MpscArrayQueue}, whose element shift is the static "sparse.shift" constant.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public final class MpscSparseArrayQueue<E> extends MpscSparseArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     */
+    public MpscSparseArrayQueue(final int capacity, final int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * 
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free offer using a single CAS. As class name suggests access is permitted to many threads concurrently.
+     * 
+     * @see java.util.Queue#offer(java.lang.Object)
+     * @see MessagePassingQueue#offer(Object)
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+
+        // use a cached view on consumer index (potentially updated in loop)
+        long consumerIndexCache = lvConsumerIndexCache(); // LoadLoad
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            final long wrapPoint = currentProducerIndex - capacity;
+            if (consumerIndexCache <= wrapPoint) {
+                final long currHead = lvConsumerIndex(); // LoadLoad
+                if (currHead <= wrapPoint) {
+                    return false; // FULL :(
+                } else {
+                    // update shared cached value of the consumerIndex
+                    svConsumerIndexCache(currHead); // StoreLoad
+                    // update on stack copy, we might need this value again if we lose the CAS.
+                    consumerIndexCache = currHead;
+                }
+            }
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + 1));
+        /*
+         * NOTE: the new producer index value is made visible BEFORE the element in the array. If we relied on the index
+         * visibility to poll() we would need to handle the case where the element is not visible.
+         */
+
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(currentProducerIndex);
+        soElement(offset, e); // StoreStore
+        return true; // AWESOME :)
+    }
+
+    /**
+     * A wait free alternative to offer which fails on CAS failure.
+     * 
+     * @param e new element, not null
+     * @return 1 if next element cannot be filled, -1 if CAS failed, 0 if successful
+     */
+    public int weakOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+
+        final long currentTail = lvProducerIndex(); // LoadLoad
+        final long consumerIndexCache = lvConsumerIndexCache(); // LoadLoad
+        final long wrapPoint = currentTail - capacity;
+        if (consumerIndexCache <= wrapPoint) {
+            long currHead = lvConsumerIndex(); // LoadLoad
+            if (currHead <= wrapPoint) {
+                return 1; // FULL :(
+            } else {
+                svConsumerIndexCache(currHead); // StoreLoad
+            }
+        }
+
+        // look Ma, no loop!
+        if (!casProducerIndex(currentTail, currentTail + 1)) {
+            return -1; // CAS FAIL :(
+        }
+
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(currentTail);
+        soElement(offset, e);
+        return 0; // AWESOME :)
+    }
+
+    /**
+     * Offer a run of elements claiming all the required slots with a single CAS. If there is not enough room for
+     * all of the elements the run is truncated to the available space, so a return value smaller than len is not an
+     * error. Elements are inserted in the order they appear in the source array and no other producer's elements
+     * will be interleaved with them.
+     *
+     * @param src source array, elements in the range [off, off + len) must not be null
+     * @param off offset of the first element in src
+     * @param len number of elements to offer
+     * @return number of elements inserted, 0 iff full (or len is 0, in which case no slot is claimed)
+     */
+    public int offerBatch(final E[] src, final int off, final int len) {
+        if (off < 0 || len < 0 || off > src.length - len) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", src.length=" + src.length);
+        }
+        // check nulls up front, once slots are claimed they must be filled
+        for (int i = off; i < off + len; i++) {
+            if (null == src[i]) {
+                throw new NullPointerException("Null is not a valid element");
+            }
+        }
+        return claimAndStore(src, off, null, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free poll using ordered loads/stores. As class name suggests access is limited to a single thread.
+     * 
+     * @see java.util.Queue#poll()
+     * @see MessagePassingQueue#poll()
+     */
+    @Override
+    public E poll() {
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcElementOffset(consumerIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        
+        // If we can't see the next available element we can't poll
+        E e = lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            /*
+             * NOTE: Queue may not actually be empty in the case of a producer (P1) being interrupted after winning the
+             * CAS on offer but before storing the element in the queue. Other producers may go on to fill up the queue
+             * after this element.
+             */
+            if (consumerIndex != lvProducerIndex()) {
+                while((e = lvElement(lElementBuffer, offset)) == null);
+            }
+            else {
+                return null;
+            }
+        }
+        
+        spElement(lElementBuffer, offset, null);
+        soConsumerIndex(consumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free peek using ordered loads. As class name suggests access is limited to a single thread.
+     * 
+     * @see java.util.Queue#poll()
+     * @see MessagePassingQueue#poll()
+     */
+    @Override
+    public E peek() {
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcElementOffset(consumerIndex);
+        E e = lvElement(lElementBuffer, offset);
+        if (null == e) {
+            /*
+             * NOTE: Queue may not actually be empty in the case of a producer (P1) being interrupted after winning the
+             * CAS on offer but before storing the element in the queue. Other producers may go on to fill up the queue
+             * after this element.
+             */
+            if (consumerIndex != lvProducerIndex()) {
+                while((e = lvElement(lElementBuffer, offset)) == null);
+            }
+            else {
+                return null;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #poll()}, but returns null rather than spin when the element is claimed by a producer but not yet
+     * visible.
+     *
+     * @see MessagePassingQueue#relaxedPoll()
+     */
+    @Override
+    public E relaxedPoll() {
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        final long offset = calcElementOffset(consumerIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            return null;
+        }
+        spElement(lElementBuffer, offset, null);
+        soConsumerIndex(consumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #peek()}, but returns null rather than spin when the element is claimed by a producer but not yet
+     * visible.
+     *
+     * @see MessagePassingQueue#relaxedPeek()
+     */
+    @Override
+    public E relaxedPeek() {
+        return lvElement(buffer, calcElementOffset(lvConsumerIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Slots are cleared with plain stores and the consumer index is published once for the whole batch. This method
+     * does not wait for elements which are claimed but not yet visible, it returns the count handed over so far.
+     *
+     * @see MessagePassingQueue#drain(Consumer, int)
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // Copy field to avoid re-reading after volatile load
+        final E[] lElementBuffer = buffer;
+        final long consumerIndex = lvConsumerIndex(); // LoadLoad
+        int i = 0;
+        for (; i < limit; i++) {
+            final long offset = calcElementOffset(consumerIndex + i);
+            final E e = lvElement(lElementBuffer, offset); // LoadLoad
+            if (null == e) {
+                break;
+            }
+            spElement(lElementBuffer, offset, null);
+            c.accept(e);
+        }
+        if (i != 0) {
+            soConsumerIndex(consumerIndex + i); // StoreStore
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free fill claiming a run of slots with a single CAS. The run is limited by the space visible to this
+     * producer, so this method may fill less than limit elements on a queue which is not full. Returns 0 without
+     * touching the producer index if limit is not positive.
+     *
+     * @see MessagePassingQueue#fill(Supplier, int)
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        return claimAndStore(null, 0, s, limit);
+    }
+
+    /**
+     * Claim a run of up to max slots with a single CAS and store the elements into them, taken from src[off...] or
+     * from the supplier if src is null. The run is truncated to the space visible to this producer, the consumer
+     * index being re-read if the cached value leaves less than max slots.
+     *
+     * @return number of elements stored, 0 iff full (or max is not positive)
+     */
+    private int claimAndStore(final E[] src, final int off, final Supplier<E> s, final int max) {
+        if (max <= 0) {
+            return 0;
+        }
+        // use a cached view on consumer index (potentially updated in loop)
+        long consumerIndexCache = lvConsumerIndexCache(); // LoadLoad
+        long currentProducerIndex;
+        int batchSize;
+        do {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            long available = capacity - (currentProducerIndex - consumerIndexCache);
+            if (available < max) {
+                // cached value may be stale, refresh before settling for less
+                final long currHead = lvConsumerIndex(); // LoadLoad
+                if (currHead != consumerIndexCache) {
+                    // update shared cached value of the consumerIndex
+                    svConsumerIndexCache(currHead); // StoreLoad
+                    // update on stack copy, we might need this value again if we lose the CAS.
+                    consumerIndexCache = currHead;
+                    available = capacity - (currentProducerIndex - currHead);
+                }
+                if (available <= 0) {
+                    return 0; // FULL :(
+                }
+            }
+            batchSize = (int) Math.min(available, max);
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize));
+
+        // Won CAS, move on to storing
+        final E[] lElementBuffer = buffer;
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currentProducerIndex + i);
+            soElement(lElementBuffer, offset, null == src ? s.get() : src[off + i]); // StoreStore
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 
+     */
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        // Order matters! 
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures the correctness of this method at least for the consumer thread. Other threads POV is not really
+        // something we can fix here.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+import static org.jctools.util.UnsafeRefArrayAccess.spElement;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jctools.util.Pow2;
+
+abstract class MpscUnboundedArrayQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class MpscUnboundedArrayQueueColdFields<E> extends MpscUnboundedArrayQueueL0Pad<E> {
+    protected final int chunkSize;
+    protected final long chunkMask;
+    // chunk offered back by the consumer for reuse by the next producer to link a chunk
+    private volatile E[] spareChunk;
+
+    public MpscUnboundedArrayQueueColdFields(int chunkSize) {
+        this.chunkSize = Pow2.roundToPowerOfTwo(Math.max(2, chunkSize));
+        chunkMask = this.chunkSize - 1;
+    }
+
+    protected final E[] lvSpareChunk() {
+        return spareChunk;
+    }
+
+    protected final void svSpareChunk(E[] chunk) {
+        spareChunk = chunk;
+    }
+}
+
+abstract class MpscUnboundedArrayQueueL1Pad<E> extends MpscUnboundedArrayQueueColdFields<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscUnboundedArrayQueueL1Pad(int chunkSize) {
+        super(chunkSize);
+    }
+}
+
+abstract class MpscUnboundedArrayQueueProducerFields<E> extends MpscUnboundedArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscUnboundedArrayQueueProducerFields.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+    // written before producerIndex is published, read after producerIndex is loaded
+    protected long producerLimit;
+    protected E[] producerChunk;
+
+    public MpscUnboundedArrayQueueProducerFields(int chunkSize) {
+        super(chunkSize);
+    }
+
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final void soProducerIndex(long v) {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, v);
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpscUnboundedArrayQueueL2Pad<E> extends MpscUnboundedArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscUnboundedArrayQueueL2Pad(int chunkSize) {
+        super(chunkSize);
+    }
+}
+
+abstract class MpscUnboundedArrayQueueConsumerFields<E> extends MpscUnboundedArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    private final static long C_LIMIT_OFFSET;
+    private final static long C_CHUNK_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(MpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerIndex"));
+            C_LIMIT_OFFSET = UNSAFE.objectFieldOffset(MpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerLimit"));
+            C_CHUNK_OFFSET = UNSAFE.objectFieldOffset(MpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerChunk"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    // consumerLimit while the consumer moves to the next chunk, so iterators never pair a chunk with the wrong limit
+    protected static final long MOVING_CHUNK = Long.MAX_VALUE;
+    private volatile long consumerIndex;
+    protected long consumerLimit;
+    protected E[] consumerChunk;
+
+    public MpscUnboundedArrayQueueConsumerFields(int chunkSize) {
+        super(chunkSize);
+    }
+
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final void soConsumerIndex(long v) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, v);
+    }
+
+    protected final long lvConsumerLimit() {
+        return UNSAFE.getLongVolatile(this, C_LIMIT_OFFSET);
+    }
+
+    protected final void soConsumerLimit(long limit) {
+        UNSAFE.putOrderedLong(this, C_LIMIT_OFFSET, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final E[] lvConsumerChunk() {
+        return (E[]) UNSAFE.getObjectVolatile(this, C_CHUNK_OFFSET);
+    }
+
+    protected final void soConsumerChunk(E[] chunk) {
+        UNSAFE.putOrderedObject(this, C_CHUNK_OFFSET, chunk);
+    }
+}
+
+/**
+ * An unbounded Multi-Producer-Single-Consumer queue made of fixed size array chunks. Producers claim slots with a
+ * CAS on the producer index as in {@link MpscArrayQueue}. The producer which claims the first slot past the end of
+ * the current chunk links in a new chunk, other producers wait for the link to complete. The consumer hands back
+ * each chunk it is done with so that in steady state no allocation is required.
+ * <p>
+ * Chunks are aligned on the index, chunk k holds indices [k * chunkSize, (k + 1) * chunkSize), and carry one extra
+ * slot at the end to hold the reference to the next chunk.<br>
+ * The producer index is kept multiplied by 2, with the lower bit set while a producer links a new chunk. This
+ * allows the link to be done under the same CAS used to claim slots.
+ * <p>
+ * The only allocation made by this queue on offer is a new chunk when the consumer has not made one available.
+ * Compared to {@link MpscLinkedQueue} this removes the per element node allocation and the pointer chase per poll.
+ * The consumer chunk and limit are published with ordered stores when the consumer moves on, so iterators can tell
+ * when a chunk they are reading may have been offered for reuse.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpscUnboundedArrayQueue<E> extends MpscUnboundedArrayQueueConsumerFields<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    /**
+     * @param chunkSize the number of elements held by each chunk, rounded up to the next power of 2
+     */
+    public MpscUnboundedArrayQueue(final int chunkSize) {
+        super(chunkSize);
+        final E[] chunk = newChunk();
+        producerChunk = chunk;
+        producerLimit = (long) this.chunkSize << 1;
+        consumerChunk = chunk;
+        consumerLimit = (long) this.chunkSize << 1;
+        soProducerIndex(0); // this ensures correct construction: StoreStore
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] newChunk() {
+        return (E[]) new Object[chunkSize + 1];
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     *
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free offer using a single CAS, unless the current chunk is full in which case the producer winning the CAS
+     * links a new chunk while other producers spin. As class name suggests access is permitted to many threads
+     * concurrently.
+     *
+     * @see java.util.Queue#offer(java.lang.Object)
+     * @see MessagePassingQueue#offer(Object)
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        long currentProducerIndex;
+        E[] chunk;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            // lower bit is set while a new chunk is linked, wait for it to clear
+            if ((currentProducerIndex & 1) == 1) {
+                continue;
+            }
+            // producerChunk and producerLimit are published with the producer index
+            chunk = producerChunk;
+            if (currentProducerIndex >= producerLimit) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    linkChunk(chunk, currentProducerIndex, e);
+                    return true;
+                }
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + 2)) {
+                break;
+            }
+        }
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(currentProducerIndex >> 1, chunkMask);
+        soElement(chunk, offset, e); // StoreStore
+        return true;
+    }
+
+    /**
+     * Called by the producer holding the resize bit, links a new chunk after the full one and stores the element in
+     * the first slot of the new chunk.
+     */
+    private void linkChunk(final E[] oldChunk, final long currentProducerIndex, final E e) {
+        E[] chunk = lvSpareChunk();
+        if (null == chunk) {
+            chunk = newChunk();
+        } else {
+            // only the consumer makes the spare available and it will not replace it until it is taken
+            svSpareChunk(null);
+        }
+        producerChunk = chunk;
+        producerLimit = currentProducerIndex + ((long) chunkSize << 1);
+        soElement(chunk, calcElementOffset(currentProducerIndex >> 1, chunkMask), e);
+        // link the chunk before the producer index is published, consumer spins on the link while resize bit is set
+        soElement((Object[]) oldChunk, calcElementOffset(chunkSize), chunk); // StoreStore
+        soProducerIndex(currentProducerIndex + 2); // StoreStore
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free fill claiming a run of slots in the current chunk with a single CAS. If the current chunk is full a
+     * single element is offered, linking a new chunk.
+     *
+     * @see MessagePassingQueue#fill(Supplier, int)
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        long currentProducerIndex;
+        E[] chunk;
+        int batchSize;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            if ((currentProducerIndex & 1) == 1) {
+                continue;
+            }
+            chunk = producerChunk;
+            if (currentProducerIndex >= producerLimit) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    linkChunk(chunk, currentProducerIndex, s.get());
+                    return 1;
+                }
+                continue;
+            }
+            batchSize = (int) Math.min((producerLimit - currentProducerIndex) >> 1, limit);
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + (batchSize << 1))) {
+                break;
+            }
+        }
+        final long index = currentProducerIndex >> 1;
+        for (int i = 0; i < batchSize; i++) {
+            soElement(chunk, calcElementOffset(index + i, chunkMask), s.get()); // StoreStore
+        }
+        return batchSize;
+    }
+
+    /**
+     * Move the consumer to the next chunk, returning the old one for reuse.
+     *
+     * @return false if the next chunk is not linked and the queue is empty
+     */
+    private boolean nextConsumerChunk(final long currentConsumerIndex, final boolean spin) {
+        final E[] chunk = consumerChunk;
+        final long linkOffset = calcElementOffset(chunkSize);
+        E[] next;
+        while (null == (next = lvNext(chunk, linkOffset))) {
+            // the producer linking the next chunk has the resize bit set, so the queue is not empty
+            if (!spin || currentConsumerIndex == lvProducerIndex()) {
+                return false;
+            }
+        }
+        // mark the limit while the chunk and limit do not match, iterators retry until they see both
+        soConsumerLimit(MOVING_CHUNK);
+        soConsumerChunk(next);
+        soConsumerLimit(currentConsumerIndex + ((long) chunkSize << 1));
+        // all slots of the old chunk have been nulled by the consumer, clear the link and offer it for reuse once the
+        // new limit is visible
+        soElement((Object[]) chunk, linkOffset, null);
+        if (null == lvSpareChunk()) {
+            svSpareChunk(chunk);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] lvNext(final E[] chunk, final long linkOffset) {
+        return (E[]) lvElement((Object[]) chunk, linkOffset);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free poll using ordered loads/stores. As class name suggests access is limited to a single thread.
+     *
+     * @see java.util.Queue#poll()
+     * @see MessagePassingQueue#poll()
+     */
+    @Override
+    public E poll() {
+        final long currentConsumerIndex = lvConsumerIndex(); // LoadLoad
+        if (currentConsumerIndex >= consumerLimit && !nextConsumerChunk(currentConsumerIndex, true)) {
+            return null;
+        }
+        final E[] chunk = consumerChunk;
+        final long offset = calcElementOffset(currentConsumerIndex >> 1, chunkMask);
+        E e = lvElement(chunk, offset); // LoadLoad
+        if (null == e) {
+            /*
+             * NOTE: Queue may not actually be empty in the case of a producer being interrupted after winning the
+             * CAS on offer but before storing the element in the queue.
+             */
+            if (currentConsumerIndex != lvProducerIndex()) {
+                while ((e = lvElement(chunk, offset)) == null);
+            } else {
+                return null;
+            }
+        }
+        spElement(chunk, offset, null);
+        soConsumerIndex(currentConsumerIndex + 2); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free peek using ordered loads. As class name suggests access is limited to a single thread.
+     *
+     * @see java.util.Queue#peek()
+     * @see MessagePassingQueue#peek()
+     */
+    @Override
+    public E peek() {
+        final long currentConsumerIndex = lvConsumerIndex(); // LoadLoad
+        E[] chunk = consumerChunk;
+        if (currentConsumerIndex >= consumerLimit) {
+            final long linkOffset = calcElementOffset(chunkSize);
+            while (null == (chunk = lvNext(consumerChunk, linkOffset))) {
+                if (currentConsumerIndex == lvProducerIndex()) {
+                    return null;
+                }
+            }
+        }
+        final long offset = calcElementOffset(currentConsumerIndex >> 1, chunkMask);
+        E e = lvElement(chunk, offset); // LoadLoad
+        if (null == e && currentConsumerIndex != lvProducerIndex()) {
+            while ((e = lvElement(chunk, offset)) == null);
+        }
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #offer(Object)}, but returns false rather than spin while another producer is linking a new chunk.
+     *
+     * @see MessagePassingQueue#relaxedOffer(Object)
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        long currentProducerIndex;
+        E[] chunk;
+        while (true) {
+            currentProducerIndex = lvProducerIndex(); // LoadLoad
+            if ((currentProducerIndex & 1) == 1) {
+                return false;
+            }
+            chunk = producerChunk;
+            if (currentProducerIndex >= producerLimit) {
+                if (casProducerIndex(currentProducerIndex, currentProducerIndex + 1)) {
+                    linkChunk(chunk, currentProducerIndex, e);
+                    return true;
+                }
+                continue;
+            }
+            if (casProducerIndex(currentProducerIndex, currentProducerIndex + 2)) {
+                break;
+            }
+        }
+        soElement(chunk, calcElementOffset(currentProducerIndex >> 1, chunkMask), e); // StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #poll()}, but returns null rather than spin when the element, or the next chunk, is claimed by a
+     * producer but not yet visible.
+     *
+     * @see MessagePassingQueue#relaxedPoll()
+     */
+    @Override
+    public E relaxedPoll() {
+        final long currentConsumerIndex = lvConsumerIndex(); // LoadLoad
+        if (currentConsumerIndex >= consumerLimit && !nextConsumerChunk(currentConsumerIndex, false)) {
+            return null;
+        }
+        final E[] chunk = consumerChunk;
+        final long offset = calcElementOffset(currentConsumerIndex >> 1, chunkMask);
+        final E e = lvElement(chunk, offset); // LoadLoad
+        if (null == e) {
+            return null;
+        }
+        spElement(chunk, offset, null);
+        soConsumerIndex(currentConsumerIndex + 2); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * As {@link #peek()}, but returns null rather than spin when the element, or the next chunk, is claimed by a
+     * producer but not yet visible.
+     *
+     * @see MessagePassingQueue#relaxedPeek()
+     */
+    @Override
+    public E relaxedPeek() {
+        final long currentConsumerIndex = lvConsumerIndex(); // LoadLoad
+        E[] chunk = consumerChunk;
+        if (currentConsumerIndex >= consumerLimit && null == (chunk = lvNext(chunk, calcElementOffset(chunkSize)))) {
+            return null;
+        }
+        return lvElement(chunk, calcElementOffset(currentConsumerIndex >> 1, chunkMask));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Slots are cleared with plain stores and the consumer index is published once for the whole batch. This method
+     * does not wait for elements which are claimed but not yet visible, it returns the count handed over so far.
+     *
+     * @see MessagePassingQueue#drain(Consumer, int)
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final long currentConsumerIndex = lvConsumerIndex(); // LoadLoad
+        int i = 0;
+        for (; i < limit; i++) {
+            final long index = currentConsumerIndex + ((long) i << 1);
+            if (index >= consumerLimit && !nextConsumerChunk(index, false)) {
+                break;
+            }
+            final E[] chunk = consumerChunk;
+            final long offset = calcElementOffset(index >> 1, chunkMask);
+            final E e = lvElement(chunk, offset); // LoadLoad
+            if (null == e) {
+                break;
+            }
+            spElement(chunk, offset, null);
+            c.accept(e);
+        }
+        if (i != 0) {
+            soConsumerIndex(currentConsumerIndex + ((long) i << 1)); // StoreStore
+        }
+        return i;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) Math.min((currentProducerIndex - after) >> 1, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        // Order matters!
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures the correctness of this method at least for the consumer thread. Other threads POV is not really
+        // something we can fix here.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking: it walks the chunks from the consumer chunk observed when it
+     * was created up to the producer index observed then, skipping slots consumed since or claimed but not yet
+     * written, without writing to the queue. As chunks are offered for reuse every read is followed by a check that
+     * the consumer has not moved past the chunk, if it has the iterator moves on to the consumer chunk. Elements added
+     * after the iterator was created are not returned. {@link Iterator#remove()} is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new WeakIterator();
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        // indices are kept multiplied by 2, as the producer and consumer indices are
+        private final long pIndex;
+        private E[] chunk;
+        private long chunkLimit;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator() {
+            toConsumerChunk();
+            // the element of a producer linking a new chunk is not included
+            pIndex = lvProducerIndex() & ~1L;
+            nextElement = getNext();
+        }
+
+        /**
+         * Move to the consumer chunk, the limit is read on both sides of the chunk to make sure they match.
+         */
+        private void toConsumerChunk() {
+            long limit;
+            E[] c;
+            long cIndex;
+            do {
+                limit = lvConsumerLimit();
+                c = lvConsumerChunk();
+                cIndex = lvConsumerIndex();
+            } while (MOVING_CHUNK == limit || limit != lvConsumerLimit());
+            chunk = c;
+            chunkLimit = limit;
+            // everything before the consumer chunk is consumed, even if drain has not published the index yet
+            nextIndex = Math.max(nextIndex, Math.max(cIndex, limit - ((long) chunkSize << 1)));
+        }
+
+        private E getNext() {
+            final long linkOffset = calcElementOffset(chunkSize);
+            while (nextIndex < pIndex) {
+                if (nextIndex >= chunkLimit) {
+                    final E[] next = nextIndex == chunkLimit ? lvNext(chunk, linkOffset) : null;// LoadLoad
+                    if (nextIndex > chunkLimit || lvConsumerLimit() > chunkLimit) {
+                        // skipped past the chunk along with the consumer, or the chunk may have been offered for reuse
+                        // and the link is not to be trusted
+                        toConsumerChunk();
+                    } else if (null == next) {
+                        // not linked yet
+                        return null;
+                    } else {
+                        chunk = next;
+                        chunkLimit += (long) chunkSize << 1;
+                    }
+                    continue;
+                }
+                final E e = lvElement(chunk, calcElementOffset(nextIndex >> 1, chunkMask));// LoadLoad
+                if (lvConsumerLimit() > chunkLimit) {
+                    toConsumerChunk();
+                    continue;
+                }
+                if (null != e) {
+                    nextIndex += 2;
+                    return e;
+                }
+                // consumed since, or claimed but not yet written
+                nextIndex = Math.max(nextIndex + 2, lvConsumerIndex());
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * A Multi-Producer-Single-Consumer bounded array queue where producers claim indices with getAndAdd (XADD on x86)
+ * rather than the CAS loop of {@link MpscArrayQueue}, see {@link XaddArrayQueue}. With no retry loop on the producer
+ * index throughput holds up as the number of producers grows.
+ * <p>
+ * The consumer index is only written by the consumer thread. When the consumer finds its slot not yet claimed by the
+ * producer holding the index it marks the slot skipped rather than wait, the producer then takes a new index. Elements
+ * offered by a single producer are polled in the order they were offered.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class MpscXaddArrayQueue<E> extends XaddArrayQueue<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public MpscXaddArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long index = lpConsumerIndex();
+        while (true) {
+            final long seqOffset = calcSequenceOffset(index);
+            if (lvSequence(lSequenceBuffer, seqOffset) == index + 1) { // LoadLoad
+                final E e = consumeSlot(lSequenceBuffer, seqOffset, index);
+                soConsumerIndex(index + 1); // StoreStore
+                return e;
+            }
+            if (index >= lvProducerIndex()) {
+                return null;
+            }
+            // the producer holding the index has not claimed the slot, or gave up on it
+            if (casSequence(lSequenceBuffer, seqOffset, index, index + capacity)) {
+                soConsumerIndex(++index); // StoreStore
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. The consumer index is published once for
+     * the whole batch.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long index = lpConsumerIndex();
+        int i = 0;
+        while (i < limit) {
+            final long seqOffset = calcSequenceOffset(index);
+            if (lvSequence(lSequenceBuffer, seqOffset) == index + 1) { // LoadLoad
+                final E e = consumeSlot(lSequenceBuffer, seqOffset, index++);
+                i++;
+                c.accept(e);
+            } else if (index >= lvProducerIndex()) {
+                break;
+            } else if (casSequence(lSequenceBuffer, seqOffset, index, index + capacity)) {
+                index++;
+            }
+        }
+        soConsumerIndex(index); // StoreStore
+        return i;
+    }
+}
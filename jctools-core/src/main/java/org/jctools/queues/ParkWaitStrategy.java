@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+
+/**
+ * Spin for a number of attempts, then park until signalled. The waiting thread costs no CPU and is woken up as soon as
+ * the other side signals progress, at the cost of a StoreLoad barrier on every signal.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * A thread which is done spinning first announces itself as the waiter and returns without parking, so the caller
+ * checks the queue once more before the next call parks it. A signalling thread makes its progress visible before
+ * looking for a waiter, so either the waiter sees the progress on its last check or the signaller sees the waiter and
+ * unparks it. The signaller clears the waiter it unparks so only the first signal pays for the unpark, a waiter which
+ * wakes up to find nothing announces itself again.<br>
+ * A single instance supports one waiting thread at a time, e.g. the consumer of a single consumer queue. Signals may
+ * otherwise be handed to the wrong thread, leaving another one parked until the next signal.
+ *
+ * @author nitsanw
+ */
+public final class ParkWaitStrategy implements WaitStrategy {
+    private final static long WAITER_OFFSET;
+    static {
+        try {
+            WAITER_OFFSET = UNSAFE.objectFieldOffset(ParkWaitStrategy.class.getDeclaredField("waiter"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private final int maxSpins;
+    private volatile Thread waiter;
+    // written by signalling threads for the StoreLoad barrier only
+    private volatile int signalFence;
+
+    public ParkWaitStrategy() {
+        this(100);
+    }
+
+    /**
+     * @param maxSpins number of attempts before parking
+     */
+    public ParkWaitStrategy(final int maxSpins) {
+        if (maxSpins < 0) {
+            throw new IllegalArgumentException("maxSpins must not be negative");
+        }
+        this.maxSpins = maxSpins;
+    }
+
+    @Override
+    public int idle(final int idleCounter) {
+        if (idleCounter < maxSpins) {
+            return idleCounter + 1;
+        }
+        final Thread current = Thread.currentThread();
+        if (waiter != current) {
+            // caller must check the queue again before parking
+            waiter = current;// StoreLoad
+            return idleCounter + 1;
+        }
+        LockSupport.park(this);
+        return idleCounter;
+    }
+
+    @Override
+    public void signal() {
+        signalFence = 0;// StoreLoad
+        final Thread t = waiter;
+        if (null != t && UNSAFE.compareAndSwapObject(this, WAITER_OFFSET, t, null)) {
+            LockSupport.unpark(t);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.Queue;
+
+import org.jctools.queues.MessagePassingQueue.Consumer;
+
+/**
+ * The consumer side of a queue, for the use of a single thread. Handles are created by {@link QueueHandles} and may
+ * keep a thread local copy of the consumer state of the queue so that polling does not re-read shared fields the
+ * consumer thread owns.
+ *
+ * @author nitsanw
+ *
+ * @param <M> the message type
+ */
+public interface QueueConsumer<M> {
+    /**
+     * See {@link Queue#poll()} for contract.
+     *
+     * @return next message or null if the queue is empty
+     */
+    M poll();
+
+    /**
+     * See {@link Queue#peek()} for contract.
+     *
+     * @return next message or null if the queue is empty
+     */
+    M peek();
+
+    /**
+     * See {@link MessagePassingQueue#drain(Consumer, int)} for contract.
+     *
+     * @return the number of messages removed from the queue
+     */
+    int drain(Consumer<M> c, int limit);
+}
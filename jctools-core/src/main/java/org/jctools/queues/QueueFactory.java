@@ -15,10 +15,11 @@ package org.jctools.queues;
 
 import org.jctools.queues.spec.ConcurrentQueueSpec;
 import org.jctools.queues.spec.Ordering;
+import org.jctools.queues.spec.Preference;
 import org.jctools.util.UnsafeAccess;
 
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * The queue factory produces {@link java.util.Queue} instances based on a best fit to the {@link ConcurrentQueueSpec}.
@@ -29,43 +30,155 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * 
  */
 public class QueueFactory {
+    private static final int UNBOUNDED_CHUNK_SIZE = Integer.getInteger("jctools.unbounded.chunk.size", 1024);
+    private static final int LAZY_CAPACITY = Integer.getInteger("jctools.lazy.capacity", 1024);
+
+    /**
+     * The queue returned is the best fit for the spec:
+     * <ul>
+     * <li>{@link Preference#FOOTPRINT} picks the unpadded SPSC/MPSC queues, except for bounded SPSC with a capacity
+     * above "jctools.lazy.capacity" (1024 by default) which gets a {@link SpscGrowableArrayQueue}, allocating its
+     * buffer on the first offer and growing it as needed.
+     * <li>{@link Preference#THROUGHPUT} picks the consumer batching {@link SpscBatchedArrayQueue} for bounded SPSC,
+     * and where getAndAdd is supported the {@link MpscXaddArrayQueue}/{@link MpmcXaddArrayQueue} for bounded FIFO
+     * MPSC/MPMC, which do not degrade with the number of producers.
+     * <li>{@link Preference#LATENCY} picks linked queues for unbounded SPSC/MPSC, avoiding the chunk allocation
+     * outliers of the unbounded array queues.
+     * <li>{@link Ordering#NONE} picks a {@link MpscCompoundQueue} for bounded MPSC and a {@link MpmcCompoundQueue}
+     * for bounded MPMC. {@link Ordering#PRODUCER_FIFO} gets the FIFO queue for the spec, as a lane per producer would
+     * limit each producer to a fraction of the capacity.
+     * <li>{@link Ordering#KFIFO} picks the segmented {@link MpmcKFifoArrayQueue} for bounded MPMC, other specs get the
+     * FIFO queue for the spec, which is a k-FIFO queue with k = 1.
+     * <li>A {@link ConcurrentQueueSpec#sparseShift} other than the "sparse.shift" default picks the sparse variant of
+     * the bounded FIFO array queue, e.g. {@link MpmcSparseArrayQueue}, in place of the batching/getAndAdd queues.
+     * </ul>
+     */
     public static <E> Queue<E> newQueue(ConcurrentQueueSpec qs) {
+        if (qs.preference == Preference.FOOTPRINT) {
+            // SPSC
+            if (qs.isSpsc()) {
+                if (!qs.isBounded()) {
+                    return new SpscCompactLinkedQueue<E>();
+                }
+                // a large buffer outweighs the padding, only pay for it once it is used
+                return qs.capacity > LAZY_CAPACITY ? new SpscGrowableArrayQueue<E>(qs.capacity)
+                        : new SpscCompactArrayQueue<E>(qs.capacity);
+            }
+            // MPSC
+            else if (qs.isMpsc()) {
+                return qs.isBounded() ? new MpscCompactArrayQueue<E>(qs.capacity) : new MpscCompactLinkedQueue<E>();
+            }
+            // no compact SPMC/MPMC variants, fall through
+        }
         if (qs.isBounded()) {
+            final boolean sparse = qs.sparseShift != ConcurrentCircularArrayQueue.SPARSE_SHIFT;
             // SPSC
             if (qs.isSpsc()) {
+                if (sparse) {
+                    return new SpscSparseArrayQueue<E>(qs.capacity, qs.sparseShift);
+                } else if (qs.preference == Preference.THROUGHPUT) {
+                    return new SpscBatchedArrayQueue<E>(qs.capacity);
+                }
                 return new SpscArrayQueue<E>(qs.capacity);
             }
             // MPSC
             else if (qs.isMpsc()) {
-                if (qs.ordering != Ordering.NONE) {
-                    return new MpscArrayQueue<E>(qs.capacity);
-                } else {
+                if (qs.ordering == Ordering.NONE) {
                     return new MpscCompoundQueue<E>(qs.capacity);
+                } else if (sparse) {
+                    return new MpscSparseArrayQueue<E>(qs.capacity, qs.sparseShift);
+                } else if (qs.preference == Preference.THROUGHPUT && UnsafeAccess.SUPPORTS_GET_AND_ADD) {
+                    return new MpscXaddArrayQueue<E>(qs.capacity);
+                } else {
+                    return new MpscArrayQueue<E>(qs.capacity);
                 }
             }
             // SPMC
             else if (qs.isSpmc()) {
-                return new SpmcArrayQueue<E>(qs.capacity);
+                return sparse ? new SpmcSparseArrayQueue<E>(qs.capacity, qs.sparseShift)
+                        : new SpmcArrayQueue<E>(qs.capacity);
             }
             // MPMC
             else {
+                if (qs.ordering == Ordering.KFIFO) {
+                    return new MpmcKFifoArrayQueue<E>(qs.capacity);
+                } else if (qs.ordering == Ordering.NONE) {
+                    return new MpmcCompoundQueue<E>(qs.capacity);
+                } else if (sparse) {
+                    return new MpmcSparseArrayQueue<E>(qs.capacity, qs.sparseShift);
+                } else if (qs.preference == Preference.THROUGHPUT && UnsafeAccess.SUPPORTS_GET_AND_ADD) {
+                    return new MpmcXaddArrayQueue<E>(qs.capacity);
+                }
                 return new MpmcArrayQueue<E>(qs.capacity);
             }
         } else {
             // SPSC
             if (qs.isSpsc()) {
-                return new SpscLinkedQueue<E>();
+                if (qs.preference == Preference.LATENCY) {
+                    return new SpscLinkedQueue<E>();
+                }
+                return new SpscUnboundedArrayQueue<E>(UNBOUNDED_CHUNK_SIZE);
             }
             // MPSC
             else if (qs.isMpsc()) {
-                if (UnsafeAccess.SUPPORTS_GET_AND_SET) {
-                    return new MpscLinkedQueue8<E>();
-                }
-                else {
-                    return new MpscLinkedQueue7<E>();
+                if (qs.preference == Preference.LATENCY) {
+                    return UnsafeAccess.SUPPORTS_GET_AND_SET ? new MpscLinkedQueue8<E>() : new MpscLinkedQueue7<E>();
                 }
+                return new MpscUnboundedArrayQueue<E>(UNBOUNDED_CHUNK_SIZE);
+            }
+            // SPMC
+            else if (qs.isSpmc()) {
+                return new SpmcUnboundedArrayQueue<E>(UNBOUNDED_CHUNK_SIZE);
+            }
+            // MPMC
+            else {
+                return new MpmcUnboundedArrayQueue<E>(UNBOUNDED_CHUNK_SIZE);
             }
         }
-        return new ConcurrentLinkedQueue<E>();
+    }
+
+    /**
+     * The primitive long queue returned is the best fit for the spec, only bounded specs are supported.
+     */
+    public static LongMessagePassingQueue newLongQueue(ConcurrentQueueSpec qs) {
+        if (!qs.isBounded()) {
+            throw new IllegalArgumentException("Unbounded primitive queues are not supported");
+        }
+        if (qs.isSpsc()) {
+            return new SpscLongArrayQueue(qs.capacity);
+        } else if (qs.isMpsc()) {
+            return new MpscLongArrayQueue(qs.capacity);
+        } else if (qs.isSpmc()) {
+            return new SpmcLongArrayQueue(qs.capacity);
+        } else {
+            return new MpmcLongArrayQueue(qs.capacity);
+        }
+    }
+
+    /**
+     * The primitive int queue returned is the best fit for the spec, only bounded specs are supported.
+     */
+    public static IntMessagePassingQueue newIntQueue(ConcurrentQueueSpec qs) {
+        if (!qs.isBounded()) {
+            throw new IllegalArgumentException("Unbounded primitive queues are not supported");
+        }
+        if (qs.isSpsc()) {
+            return new SpscIntArrayQueue(qs.capacity);
+        } else if (qs.isMpsc()) {
+            return new MpscIntArrayQueue(qs.capacity);
+        } else if (qs.isSpmc()) {
+            return new SpmcIntArrayQueue(qs.capacity);
+        } else {
+            return new MpmcIntArrayQueue(qs.capacity);
+        }
+    }
+
+    /**
+     * The queue returned is the best fit queue for the spec wrapped in a {@link BlockingQueueAdapter}, threads only
+     * block when the queue is empty or full. The thread restrictions expressed by the spec still apply.
+     */
+    public static <E> BlockingQueue<E> newBlockingQueue(ConcurrentQueueSpec qs) {
+        final Queue<E> q = newQueue(qs);
+        return new BlockingQueueAdapter<E>(q, qs.isBounded() ? qs.capacity : Integer.MAX_VALUE);
     }
 }
@@ -0,0 +1,501 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jctools.queues.MessagePassingQueue.Consumer;
+import org.jctools.queues.MessagePassingQueue.Supplier;
+
+/**
+ * Factory methods for the {@link QueueProducer} and {@link QueueConsumer} handles of the queues in this package. The
+ * single producer (consumer) side of {@link SpscArrayQueue}, {@link SpmcArrayQueue} and {@link MpscArrayQueue} gets a
+ * handle which keeps the indices, look ahead and consumer index cache of that side in the handle, so the owning
+ * thread never re-reads them from the queue. The multi producer side of {@link MpscArrayQueue} gets a handle with a
+ * private consumer index cache rather than the cache shared by all producers. {@link MpscOnSpscQueue} producers get a
+ * lane of their own, see {@link MpscOnSpscQueue#register()}. Other queues get handles delegating to the queue.
+ * <p>
+ * A handle is for the use of a single thread. Only one handle may be created for a single producer (consumer) side,
+ * and once it is created the queue methods for that side must not be used as the handle does not see their progress.
+ * Indices are still written back to the queue so that {@link Queue#size()} and {@link Queue#isEmpty()} remain
+ * correct.
+ *
+ * @author nitsanw
+ */
+public final class QueueHandles {
+    private QueueHandles() {
+    }
+
+    /**
+     * @return a producer handle for the calling thread
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> QueueProducer<E> newProducer(final Queue<E> q) {
+        if (q instanceof SpscArrayQueue) {
+            return new SpscArrayQueueProducerHandle<E>((SpscArrayQueue<E>) q);
+        } else if (q instanceof SpmcArrayQueue) {
+            return new SpmcArrayQueueProducerHandle<E>((SpmcArrayQueue<E>) q);
+        } else if (q instanceof MpscArrayQueue) {
+            return new MpscArrayQueueProducerHandle<E>((MpscArrayQueue<E>) q);
+        } else if (q instanceof MpscOnSpscQueue) {
+            return ((MpscOnSpscQueue<E>) q).register();
+        } else if (q instanceof MessagePassingQueue) {
+            return new MessagePassingQueueHandle<E>((MessagePassingQueue<E>) q);
+        }
+        return new QueueHandle<E>(q);
+    }
+
+    /**
+     * @return a consumer handle for the calling thread
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> QueueConsumer<E> newConsumer(final Queue<E> q) {
+        if (q instanceof SpscArrayQueue) {
+            return new SpscArrayQueueConsumerHandle<E>((SpscArrayQueue<E>) q);
+        } else if (q instanceof MpscArrayQueue) {
+            return new MpscArrayQueueConsumerHandle<E>((MpscArrayQueue<E>) q);
+        } else if (q instanceof MessagePassingQueue) {
+            return new MessagePassingQueueHandle<E>((MessagePassingQueue<E>) q);
+        }
+        return new QueueHandle<E>(q);
+    }
+}
+
+abstract class QueueHandleL0Pad {
+    long p00, p01, p02, p03, p04, p05, p06;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+final class SpscArrayQueueProducerHandle<E> extends QueueHandleL0Pad implements QueueProducer<E> {
+    private long producerIndex;
+    private long producerLookAhead;
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    private final SpscArrayQueue<E> queue;
+    private final E[] buffer;
+    private final int lookAheadStep;
+
+    SpscArrayQueueProducerHandle(final SpscArrayQueue<E> queue) {
+        this.queue = queue;
+        this.buffer = queue.buffer;
+        this.lookAheadStep = queue.lookAheadStep;
+        this.producerIndex = queue.lvProducerIndex();
+        this.producerLookAhead = queue.producerLookAhead;
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final SpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currProducerIndex = producerIndex;
+        final long offset = q.calcElementOffset(currProducerIndex);
+        if (currProducerIndex >= producerLookAhead) {
+            if (null == q.lvElement(lElementBuffer, q.calcElementOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                producerLookAhead = currProducerIndex + lookAheadStep;
+            }
+            else if (null != q.lvElement(lElementBuffer, offset)) {
+                return false;
+            }
+        }
+        producerIndex = currProducerIndex + 1;
+        // plain store for size(), the ordered store of the element gives it a barrier
+        q.producerIndex = currProducerIndex + 1;
+        q.soElement(lElementBuffer, offset, e);// StoreStore
+        return true;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final SpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == q.lvElement(lElementBuffer, q.calcElementOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, lookAheadStep);
+                }
+                else if (null == q.lvElement(lElementBuffer, q.calcElementOffset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                q.producerIndex = currProducerIndex + 1;
+                q.soElement(lElementBuffer, q.calcElementOffset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        producerIndex = currProducerIndex;
+        return i;
+    }
+}
+
+final class SpscArrayQueueConsumerHandle<E> extends QueueHandleL0Pad implements QueueConsumer<E> {
+    private long consumerIndex;
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    private final SpscArrayQueue<E> queue;
+    private final E[] buffer;
+
+    SpscArrayQueueConsumerHandle(final SpscArrayQueue<E> queue) {
+        this.queue = queue;
+        this.buffer = queue.buffer;
+        this.consumerIndex = queue.lvConsumerIndex();
+    }
+
+    @Override
+    public E poll() {
+        final SpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        final long offset = q.calcElementOffset(currConsumerIndex);
+        final E e = q.lvElement(lElementBuffer, offset);// LoadLoad
+        if (null == e) {
+            return null;
+        }
+        consumerIndex = currConsumerIndex + 1;
+        // plain store for size(), the ordered store of the slot gives it a barrier
+        q.consumerIndex = currConsumerIndex + 1;
+        q.soElement(lElementBuffer, offset, null);// StoreStore
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        return queue.lvElement(buffer, queue.calcElementOffset(consumerIndex));
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final SpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        int i = 0;
+        for (; i < limit; i++) {
+            final long index = currConsumerIndex + i;
+            final long offset = q.calcElementOffset(index);
+            final E e = q.lvElement(lElementBuffer, offset);// LoadLoad
+            if (null == e) {
+                break;
+            }
+            q.consumerIndex = index + 1;
+            q.soElement(lElementBuffer, offset, null);// StoreStore
+            c.accept(e);
+        }
+        consumerIndex = currConsumerIndex + i;
+        return i;
+    }
+}
+
+final class SpmcArrayQueueProducerHandle<E> extends QueueHandleL0Pad implements QueueProducer<E> {
+    private long producerIndex;
+    private long consumerIndexCache;
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    private final SpmcArrayQueue<E> queue;
+    private final E[] buffer;
+    private final int capacity;
+
+    SpmcArrayQueueProducerHandle(final SpmcArrayQueue<E> queue) {
+        this.queue = queue;
+        this.buffer = queue.buffer;
+        this.capacity = queue.capacity;
+        this.producerIndex = queue.lvProducerIndex();
+        this.consumerIndexCache = queue.lvConsumerIndex();
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final SpmcArrayQueue<E> q = queue;
+        final E[] lb = buffer;
+        final long currProducerIndex = producerIndex;
+        final long offset = q.calcElementOffset(currProducerIndex);
+        if (null != q.lvElement(lb, offset)) {
+            if (currProducerIndex - refreshConsumerIndexCache() == capacity) {
+                return false;
+            }
+            // slot is claimed by a consumer, spin wait for it to clear
+            while (null != q.lvElement(lb, offset));
+        }
+        q.spElement(lb, offset, e);
+        producerIndex = currProducerIndex + 1;
+        // single producer, the ordered store publishes the element
+        q.soTail(currProducerIndex + 1);
+        return true;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final SpmcArrayQueue<E> q = queue;
+        final E[] lb = buffer;
+        final long currProducerIndex = producerIndex;
+        long available = capacity - (currProducerIndex - consumerIndexCache);
+        if (available < limit) {
+            // cached value may be stale, refresh before settling for less
+            available = capacity - (currProducerIndex - refreshConsumerIndexCache());
+        }
+        final int batchSize = (int) Math.min(available, limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = q.calcElementOffset(currProducerIndex + i);
+            // the slot has been claimed by a consumer, spin wait for it to clear
+            while (null != q.lvElement(lb, offset));
+            q.spElement(lb, offset, s.get());
+        }
+        producerIndex = currProducerIndex + batchSize;
+        q.soTail(currProducerIndex + batchSize);
+        return batchSize;
+    }
+
+    private long refreshConsumerIndexCache() {
+        return consumerIndexCache = queue.lvConsumerIndex();
+    }
+}
+
+final class MpscArrayQueueProducerHandle<E> extends QueueHandleL0Pad implements QueueProducer<E> {
+    private long consumerIndexCache;
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    private final MpscArrayQueue<E> queue;
+    private final int capacity;
+
+    MpscArrayQueueProducerHandle(final MpscArrayQueue<E> queue) {
+        this.queue = queue;
+        this.capacity = queue.capacity;
+        this.consumerIndexCache = queue.lvConsumerIndex();
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final MpscArrayQueue<E> q = queue;
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = q.lvProducerIndex(); // LoadLoad
+            final long wrapPoint = currentProducerIndex - capacity;
+            if (consumerIndexCache <= wrapPoint) {
+                // unlike the queue cache, this one is private to the handle and never written by other producers
+                consumerIndexCache = q.lvConsumerIndex(); // LoadLoad
+                if (consumerIndexCache <= wrapPoint) {
+                    return false; // FULL :(
+                }
+            }
+        } while (!q.casProducerIndex(currentProducerIndex, currentProducerIndex + 1));
+        q.soElement(q.calcElementOffset(currentProducerIndex), e); // StoreStore
+        return true;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final MpscArrayQueue<E> q = queue;
+        long currentProducerIndex;
+        int batchSize;
+        do {
+            currentProducerIndex = q.lvProducerIndex(); // LoadLoad
+            long available = capacity - (currentProducerIndex - consumerIndexCache);
+            if (available <= 0) {
+                consumerIndexCache = q.lvConsumerIndex(); // LoadLoad
+                available = capacity - (currentProducerIndex - consumerIndexCache);
+                if (available <= 0) {
+                    return 0; // FULL :(
+                }
+            }
+            batchSize = (int) Math.min(available, limit);
+        } while (!q.casProducerIndex(currentProducerIndex, currentProducerIndex + batchSize));
+
+        final E[] lElementBuffer = q.buffer;
+        for (int i = 0; i < batchSize; i++) {
+            q.soElement(lElementBuffer, q.calcElementOffset(currentProducerIndex + i), s.get()); // StoreStore
+        }
+        return batchSize;
+    }
+}
+
+final class MpscArrayQueueConsumerHandle<E> extends QueueHandleL0Pad implements QueueConsumer<E> {
+    private long consumerIndex;
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    private final MpscArrayQueue<E> queue;
+    private final E[] buffer;
+
+    MpscArrayQueueConsumerHandle(final MpscArrayQueue<E> queue) {
+        this.queue = queue;
+        this.buffer = queue.buffer;
+        this.consumerIndex = queue.lvConsumerIndex();
+    }
+
+    @Override
+    public E poll() {
+        final MpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        final long offset = q.calcElementOffset(currConsumerIndex);
+        E e = q.lvElement(lElementBuffer, offset); // LoadLoad
+        if (null == e) {
+            // a producer may have claimed the slot and not stored the element yet, see MpscArrayQueue#poll()
+            if (currConsumerIndex != q.lvProducerIndex()) {
+                while ((e = q.lvElement(lElementBuffer, offset)) == null);
+            }
+            else {
+                return null;
+            }
+        }
+        q.spElement(lElementBuffer, offset, null);
+        consumerIndex = currConsumerIndex + 1;
+        q.soConsumerIndex(currConsumerIndex + 1); // StoreStore
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        final MpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        final long offset = q.calcElementOffset(currConsumerIndex);
+        E e = q.lvElement(lElementBuffer, offset);
+        if (null == e && currConsumerIndex != q.lvProducerIndex()) {
+            while ((e = q.lvElement(lElementBuffer, offset)) == null);
+        }
+        return e;
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        final MpscArrayQueue<E> q = queue;
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        int i = 0;
+        for (; i < limit; i++) {
+            final long offset = q.calcElementOffset(currConsumerIndex + i);
+            final E e = q.lvElement(lElementBuffer, offset); // LoadLoad
+            if (null == e) {
+                break;
+            }
+            q.spElement(lElementBuffer, offset, null);
+            c.accept(e);
+        }
+        if (i != 0) {
+            consumerIndex = currConsumerIndex + i;
+            q.soConsumerIndex(currConsumerIndex + i); // StoreStore
+        }
+        return i;
+    }
+}
+
+final class MessagePassingQueueHandle<E> implements QueueProducer<E>, QueueConsumer<E> {
+    private final MessagePassingQueue<E> queue;
+
+    MessagePassingQueueHandle(final MessagePassingQueue<E> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        return queue.offer(e);
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        return queue.fill(s, limit);
+    }
+
+    @Override
+    public E poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public E peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        return queue.drain(c, limit);
+    }
+}
+
+final class QueueHandle<E> implements QueueProducer<E>, QueueConsumer<E> {
+    private final Queue<E> queue;
+
+    QueueHandle(final Queue<E> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        return queue.offer(e);
+    }
+
+    /**
+     * A plain queue offers no way to claim a slot before calling the supplier, so this checks for room first (using
+     * {@link BlockingQueue#remainingCapacity()}, other queues are taken to be unbounded) and stops when there is none.
+     * Once it has an element it retries the offer until it succeeds rather than drop it. With other producers racing
+     * for the room the retry waits on the consumer.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (!hasRoom()) {
+                return i;
+            }
+            final E e = s.get();
+            while (!queue.offer(e)) {
+                // another producer took the room seen above, wait for the consumer to make room
+            }
+        }
+        return limit;
+    }
+
+    private boolean hasRoom() {
+        return !(queue instanceof BlockingQueue) || ((BlockingQueue<E>) queue).remainingCapacity() > 0;
+    }
+
+    @Override
+    public E poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public E peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = queue.poll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+}
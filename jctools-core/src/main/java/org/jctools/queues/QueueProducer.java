@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.util.Queue;
+
+import org.jctools.queues.MessagePassingQueue.Supplier;
+
+/**
+ * The producer side of a queue, for the use of a single thread. Handles are created by {@link QueueHandles} and may
+ * keep a thread local copy of the producer state of the queue (indices, look ahead and consumer index caches) so that
+ * offering does not re-read shared fields the producer thread owns.
+ *
+ * @author nitsanw
+ *
+ * @param <M> the message type
+ */
+public interface QueueProducer<M> {
+    /**
+     * See {@link Queue#offer(Object)} for contract.
+     *
+     * @param message not null
+     * @return true if the message was added to the queue, false if the queue is full
+     */
+    boolean offer(M message);
+
+    /**
+     * See {@link MessagePassingQueue#fill(Supplier, int)} for contract.
+     *
+     * @return the number of messages added to the queue
+     */
+    int fill(Supplier<M> s, int limit);
+}
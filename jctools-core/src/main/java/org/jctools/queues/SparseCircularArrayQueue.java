@@ -0,0 +1,320 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.UnsafeAccess;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SparseCircularArrayQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+/**
+ * The counterpart of {@link ConcurrentCircularArrayQueue} for queues which pick their own sparse shift rather than
+ * use the JVM wide "sparse.shift" property: only every 2^sparseShift slot of the buffer is used, reducing false
+ * sharing between producers and consumers working on neighbouring elements at the cost of a larger buffer.
+ * <p>
+ * The element shift is a final field of the instance, so unlike the static shift of
+ * {@link ConcurrentCircularArrayQueue} it is loaded with the mask on each offset computation rather than folded
+ * into the code. The sparse queues (e.g. {@link MpmcSparseArrayQueue}) are final classes of their own, so the dense
+ * queues never share a call site with them.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public abstract class SparseCircularArrayQueue<E> extends SparseCircularArrayQueueL0Pad<E> {
+    protected static final int BUFFER_PAD = ConcurrentCircularArrayQueue.BUFFER_PAD;
+    private static final long REF_ARRAY_BASE;
+    private static final int REF_POINTER_SHIFT;
+    static {
+        final int scale = UnsafeAccess.UNSAFE.arrayIndexScale(Object[].class);
+        if (4 == scale) {
+            REF_POINTER_SHIFT = 2;
+        } else if (8 == scale) {
+            REF_POINTER_SHIFT = 3;
+        } else {
+            throw new IllegalStateException("Unknown pointer size");
+        }
+        // Including the buffer pad in the array base offset
+        REF_ARRAY_BASE = UnsafeAccess.UNSAFE.arrayBaseOffset(Object[].class) + (BUFFER_PAD << REF_POINTER_SHIFT);
+    }
+    protected final int capacity;
+    protected final long mask;
+    protected final int sparseShift;
+    private final int elementShift;
+    // @Stable :(
+    protected final E[] buffer;
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     */
+    @SuppressWarnings("unchecked")
+    public SparseCircularArrayQueue(int capacity, int sparseShift) {
+        if (sparseShift < 0) {
+            throw new IllegalArgumentException("sparseShift(" + sparseShift + ") must not be negative");
+        }
+        this.capacity = Pow2.roundToPowerOfTwo(capacity);
+        mask = this.capacity - 1;
+        this.sparseShift = sparseShift;
+        elementShift = REF_POINTER_SHIFT + sparseShift;
+        // pad data on either end with some empty slots.
+        buffer = (E[]) new Object[(this.capacity << sparseShift) + BUFFER_PAD * 2];
+    }
+
+    /**
+     * @param index desirable element index
+     * @return the offset in bytes within the array for a given index.
+     */
+    protected final long calcElementOffset(long index) {
+        return REF_ARRAY_BASE + ((index & mask) << elementShift);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     * 
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @param e a kitty
+     */
+    protected final void spElement(long offset, E e) {
+        spElement(buffer, offset, e);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     * 
+     * @param buffer this.buffer
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @param e an orderly kitty
+     */
+    protected final void spElement(E[] buffer, long offset, E e) {
+        UNSAFE.putObject(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     * 
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @param e an orderly kitty
+     */
+    protected final void soElement(long offset, E e) {
+        soElement(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     * 
+     * @param buffer this.buffer
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @param e an orderly kitty
+     */
+    protected final void soElement(E[] buffer, long offset, E e) {
+        UNSAFE.putOrderedObject(buffer, offset, e);
+    }
+
+    /**
+     * A plain load (no ordering/fences) of an element from a given offset.
+     * 
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    protected final E lpElement(long offset) {
+        return lpElement(buffer, offset);
+    }
+
+    /**
+     * A plain load (no ordering/fences) of an element from a given offset.
+     * 
+     * @param buffer this.buffer
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    @SuppressWarnings("unchecked")
+    protected final E lpElement(E[] buffer, long offset) {
+        return (E) UNSAFE.getObject(buffer, offset);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     * 
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    protected final E lvElement(long offset) {
+        return lvElement(buffer, offset);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     * 
+     * @param buffer this.buffer
+     * @param offset computed via {@link SparseCircularArrayQueue#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    @SuppressWarnings("unchecked")
+    protected final E lvElement(E[] buffer, long offset) {
+        return (E) UNSAFE.getObjectVolatile(buffer, offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #offer(Object)}, subclasses which may wait for other threads on offer
+     * are expected to override it.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #poll()}, subclasses which may wait for other threads on poll are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation delegates to {@link #peek()}, subclasses which may wait for other threads on peek are
+     * expected to override it.
+     */
+    @Override
+    public E relaxedPeek() {
+        return peek();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #poll()}, subclasses are expected to provide a batched
+     * implementation which publishes the consumer index once per batch.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = poll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a naive implementation on top of {@link #offer(Object)}, subclasses are expected to provide a batched
+     * implementation which claims and publishes the producer index once per batch. Note that this implementation
+     * checks for space before calling the supplier, and once it has an element it retries the offer until it succeeds
+     * rather than drop it. With other producers racing for the space the retry waits on the consumer.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (size() >= capacity) {
+                return i;
+            }
+            final E e = s.get();
+            while (!offer(e)) {
+                // another producer took the space seen above, wait for the consumer to make room
+            }
+        }
+        return limit;
+    }
+
+    protected abstract long lvProducerIndex();
+
+    protected abstract long lvConsumerIndex();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking, see {@link ConcurrentCircularArrayQueue#iterator()}.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final long cIndex = lvConsumerIndex();
+        final long pIndex = lvProducerIndex();
+        return new WeakIterator(cIndex, pIndex);
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private final long pIndex;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator(long cIndex, long pIndex) {
+            this.pIndex = pIndex;
+            nextIndex = cIndex;
+            nextElement = getNext();
+        }
+
+        private E getNext() {
+            while (nextIndex < pIndex) {
+                // skip over anything consumed since
+                final long cIndex = lvConsumerIndex();
+                if (nextIndex < cIndex) {
+                    nextIndex = cIndex;
+                    continue;
+                }
+                final E e = lvElement(calcElementOffset(nextIndex++));// LoadLoad
+                if (null != e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+    @Override
+    public void clear() {
+        // we have to test isEmpty because of the weaker poll() guarantee
+        while (poll() != null || !isEmpty())
+            ;
+    }
+}
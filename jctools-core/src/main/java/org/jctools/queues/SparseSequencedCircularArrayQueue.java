@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.UnsafeAccess;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * The {@link SparseCircularArrayQueue} counterpart of {@link ConcurrentSequencedCircularArrayQueue}, the sequence
+ * buffer is as sparse as the element buffer.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public abstract class SparseSequencedCircularArrayQueue<E> extends SparseCircularArrayQueue<E> {
+    private static final long ARRAY_BASE;
+    private static final int LONG_SHIFT;
+    static {
+        final int scale = UnsafeAccess.UNSAFE.arrayIndexScale(long[].class);
+        if (8 == scale) {
+            LONG_SHIFT = 3;
+        } else {
+            throw new IllegalStateException("Unexpected long[] element size");
+        }
+        // Including the buffer pad in the array base offset
+        ARRAY_BASE = UnsafeAccess.UNSAFE.arrayBaseOffset(long[].class) + (BUFFER_PAD << LONG_SHIFT);
+    }
+    private final int sequenceShift;
+    protected final long[] sequenceBuffer;
+
+    public SparseSequencedCircularArrayQueue(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+        sequenceShift = LONG_SHIFT + sparseShift;
+        // pad data on either end with some empty slots.
+        sequenceBuffer = new long[(this.capacity << sparseShift) + BUFFER_PAD * 2];
+        for (long i = 0; i < this.capacity; i++) {
+            soSequence(sequenceBuffer, calcSequenceOffset(i), i);
+        }
+    }
+
+    protected final long calcSequenceOffset(long index) {
+        return ARRAY_BASE + ((index & mask) << sequenceShift);
+    }
+
+    protected final void soSequence(long[] buffer, long offset, long e) {
+        UNSAFE.putOrderedLong(buffer, offset, e);
+    }
+
+    protected final long lvSequence(long[] buffer, long offset) {
+        return UNSAFE.getLongVolatile(buffer, offset);
+    }
+
+    protected final boolean casSequence(long[] buffer, long offset, long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(buffer, offset, expect, newValue);
+    }
+}
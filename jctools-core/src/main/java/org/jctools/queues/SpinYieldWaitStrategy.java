@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.queues.MessagePassingQueue.WaitStrategy;
+
+/**
+ * Retry straight away for a number of attempts, then yield the CPU on each attempt after that. The thread stays
+ * runnable, so wakeup latency is that of the scheduler rather than that of a timer.
+ *
+ * @author nitsanw
+ */
+public final class SpinYieldWaitStrategy implements WaitStrategy {
+    private final int maxSpins;
+
+    /**
+     * @param maxSpins number of attempts before yielding, 0 to always yield
+     */
+    public SpinYieldWaitStrategy(final int maxSpins) {
+        if (maxSpins < 0) {
+            throw new IllegalArgumentException("maxSpins must not be negative");
+        }
+        this.maxSpins = maxSpins;
+    }
+
+    @Override
+    public int idle(final int idleCounter) {
+        if (idleCounter < maxSpins) {
+            return idleCounter + 1;
+        }
+        Thread.yield();
+        return idleCounter;
+    }
+
+    @Override
+    public void signal() {
+    }
+}
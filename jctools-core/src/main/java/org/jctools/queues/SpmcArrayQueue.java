@@ -195,6 +195,91 @@ public final class SpmcArrayQueue<E> extends SpmcArrayQueueL3Pad<E> {
         return e;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #offer(Object)}, but returns false rather than spin when the slot is claimed by a consumer but not yet
+     * cleared.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final E[] lb = buffer;
+        final long currProducerIndex = lvProducerIndex();
+        final long offset = calcElementOffset(currProducerIndex);
+        if (null != lvElement(lb, offset)) {
+            return false;
+        }
+        spElement(lb, offset, e);
+        soTail(currProducerIndex + 1);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A run of visible elements is claimed with a single CAS on the consumer index.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        long currentConsumerIndex;
+        long currProducerIndexCache = lvProducerIndexCache();
+        int batchSize;
+        do {
+            currentConsumerIndex = lvConsumerIndex();
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return 0;
+                } else {
+                    svProducerIndexCache(currProducerIndex);
+                    currProducerIndexCache = currProducerIndex;
+                }
+            }
+            batchSize = (int) Math.min(currProducerIndexCache - currentConsumerIndex, limit);
+        } while (!casHead(currentConsumerIndex, currentConsumerIndex + batchSize));
+        final E[] lb = buffer;
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currentConsumerIndex + i);
+            // load plain, element happens before it's index becomes visible
+            final E e = lpElement(lb, offset);
+            // store ordered, make sure nulling out is visible. Producer is waiting for this value.
+            soElement(lb, offset, null);
+            c.accept(e);
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are stored with plain stores and the producer index is published once for the whole batch.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final E[] lb = buffer;
+        final long currProducerIndex = lvProducerIndex();
+        final int batchSize = (int) Math.min(capacity - (currProducerIndex - lvConsumerIndex()), limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currProducerIndex + i);
+            // the slot has been claimed by a consumer, spin wait for it to clear
+            while (null != lvElement(lb, offset));
+            spElement(lb, offset, s.get());
+        }
+        // single producer, so store ordered is valid. It is also required to correctly publish the elements
+        // and for the consumers to pick up the tail value.
+        soTail(currProducerIndex + batchSize);
+        return batchSize;
+    }
+
     @Override
     public int size() {
         /*
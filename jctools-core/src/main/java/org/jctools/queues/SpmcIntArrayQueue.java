@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpmcIntArrayQueueL1Pad extends ConcurrentCircularIntArrayQueue {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcIntArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcIntArrayQueueProducerFields extends SpmcIntArrayQueueL1Pad {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpmcIntArrayQueueProducerFields.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long consumerIndexCache;
+
+    public SpmcIntArrayQueueProducerFields(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+
+    protected final void soProducerIndex(long v) {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, v);
+    }
+}
+
+abstract class SpmcIntArrayQueueL2Pad extends SpmcIntArrayQueueProducerFields {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcIntArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcIntArrayQueueConsumerField extends SpmcIntArrayQueueL2Pad {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpmcIntArrayQueueConsumerField.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public SpmcIntArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final boolean casConsumerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class SpmcIntArrayQueueMidPad extends SpmcIntArrayQueueConsumerField {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcIntArrayQueueMidPad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcIntArrayQueueProducerIndexCacheField extends SpmcIntArrayQueueMidPad {
+    // This is separated from the consumerIndex which will be highly contended in the hope that this value spends most
+    // of it's time in a cache line that is Shared(and rarely invalidated)
+    private volatile long producerIndexCache;
+
+    public SpmcIntArrayQueueProducerIndexCacheField(int capacity) {
+        super(capacity);
+    }
+
+    protected final long lvProducerIndexCache() {
+        return producerIndexCache;
+    }
+
+    protected final void svProducerIndexCache(long v) {
+        producerIndexCache = v;
+    }
+}
+
+abstract class SpmcIntArrayQueueL3Pad extends SpmcIntArrayQueueProducerIndexCacheField {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcIntArrayQueueL3Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+/**
+ * A Single-Producer-Multi-Consumer queue of primitive ints backed by a pre-allocated int[].
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The producer publishes elements with the producer index as in {@link SpscIntArrayQueue}. Consumers read the
+ * element at the consumer index <b>before</b> claiming it with a CAS of the consumer index, as the producer may
+ * overwrite a slot as soon as it is claimed. A successful CAS proves the consumer index did not move since it was
+ * loaded and therefore the producer could not have overwritten the element read.
+ *
+ * @author nitsanw
+ */
+public final class SpmcIntArrayQueue extends SpmcIntArrayQueueL3Pad {
+
+    public SpmcIntArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final int e) {
+        final long currProducerIndex = producerIndex;
+        final long wrapPoint = currProducerIndex - capacity;
+        if (consumerIndexCache <= wrapPoint) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            if (consumerIndexCache <= wrapPoint) {
+                return false;
+            }
+        }
+        spElement(buffer, calcElementOffset(currProducerIndex), e);
+        soProducerIndex(currProducerIndex + 1);// StoreStore
+        return true;
+    }
+
+    @Override
+    public boolean poll(final IntConsumer c) {
+        // local load of field to avoid repeated loads after volatile reads
+        final int[] lBuffer = buffer;
+        long currProducerIndexCache = lvProducerIndexCache();
+        long currentConsumerIndex;
+        int e;
+        do {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                final long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return false;
+                }
+                currProducerIndexCache = currProducerIndex;
+                svProducerIndexCache(currProducerIndex);
+            }
+            // read before the CAS, the slot may be overwritten by the producer as soon as it is claimed
+            e = lpElement(lBuffer, calcElementOffset(currentConsumerIndex));
+        } while (!casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1));
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The free slots are filled and the elements
+     * published to the consumers with a single store of the producer index.
+     */
+    @Override
+    public int fill(final IntSupplier s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final int[] lBuffer = buffer;
+        final long currProducerIndex = producerIndex;
+        long free = capacity - (currProducerIndex - consumerIndexCache);
+        if (free < limit) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            free = capacity - (currProducerIndex - consumerIndexCache);
+        }
+        final int batchSize = (int) Math.min(free, limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            spElement(lBuffer, calcElementOffset(currProducerIndex + i), s.get());
+        }
+        soProducerIndex(currProducerIndex + batchSize);// StoreStore
+        return batchSize;
+    }
+}
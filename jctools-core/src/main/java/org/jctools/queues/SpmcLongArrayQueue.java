@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpmcLongArrayQueueL1Pad extends ConcurrentCircularLongArrayQueue {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcLongArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcLongArrayQueueProducerFields extends SpmcLongArrayQueueL1Pad {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpmcLongArrayQueueProducerFields.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long consumerIndexCache;
+
+    public SpmcLongArrayQueueProducerFields(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+
+    protected final void soProducerIndex(long v) {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, v);
+    }
+}
+
+abstract class SpmcLongArrayQueueL2Pad extends SpmcLongArrayQueueProducerFields {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcLongArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcLongArrayQueueConsumerField extends SpmcLongArrayQueueL2Pad {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpmcLongArrayQueueConsumerField.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public SpmcLongArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final boolean casConsumerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class SpmcLongArrayQueueMidPad extends SpmcLongArrayQueueConsumerField {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcLongArrayQueueMidPad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpmcLongArrayQueueProducerIndexCacheField extends SpmcLongArrayQueueMidPad {
+    // This is separated from the consumerIndex which will be highly contended in the hope that this value spends most
+    // of it's time in a cache line that is Shared(and rarely invalidated)
+    private volatile long producerIndexCache;
+
+    public SpmcLongArrayQueueProducerIndexCacheField(int capacity) {
+        super(capacity);
+    }
+
+    protected final long lvProducerIndexCache() {
+        return producerIndexCache;
+    }
+
+    protected final void svProducerIndexCache(long v) {
+        producerIndexCache = v;
+    }
+}
+
+abstract class SpmcLongArrayQueueL3Pad extends SpmcLongArrayQueueProducerIndexCacheField {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcLongArrayQueueL3Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+/**
+ * A Single-Producer-Multi-Consumer queue of primitive longs backed by a pre-allocated long[].
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The producer publishes elements with the producer index as in {@link SpscLongArrayQueue}. Consumers read the
+ * element at the consumer index <b>before</b> claiming it with a CAS of the consumer index, as the producer may
+ * overwrite a slot as soon as it is claimed. A successful CAS proves the consumer index did not move since it was
+ * loaded and therefore the producer could not have overwritten the element read.
+ *
+ * @author nitsanw
+ */
+public final class SpmcLongArrayQueue extends SpmcLongArrayQueueL3Pad {
+
+    public SpmcLongArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final long e) {
+        final long currProducerIndex = producerIndex;
+        final long wrapPoint = currProducerIndex - capacity;
+        if (consumerIndexCache <= wrapPoint) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            if (consumerIndexCache <= wrapPoint) {
+                return false;
+            }
+        }
+        spElement(buffer, calcElementOffset(currProducerIndex), e);
+        soProducerIndex(currProducerIndex + 1);// StoreStore
+        return true;
+    }
+
+    @Override
+    public boolean poll(final LongConsumer c) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lBuffer = buffer;
+        long currProducerIndexCache = lvProducerIndexCache();
+        long currentConsumerIndex;
+        long e;
+        do {
+            currentConsumerIndex = lvConsumerIndex();// LoadLoad
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                final long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return false;
+                }
+                currProducerIndexCache = currProducerIndex;
+                svProducerIndexCache(currProducerIndex);
+            }
+            // read before the CAS, the slot may be overwritten by the producer as soon as it is claimed
+            e = lpElement(lBuffer, calcElementOffset(currentConsumerIndex));
+        } while (!casConsumerIndex(currentConsumerIndex, currentConsumerIndex + 1));
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The free slots are filled and the elements
+     * published to the consumers with a single store of the producer index.
+     */
+    @Override
+    public int fill(final LongSupplier s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final long[] lBuffer = buffer;
+        final long currProducerIndex = producerIndex;
+        long free = capacity - (currProducerIndex - consumerIndexCache);
+        if (free < limit) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            free = capacity - (currProducerIndex - consumerIndexCache);
+        }
+        final int batchSize = (int) Math.min(free, limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            spElement(lBuffer, calcElementOffset(currProducerIndex + i), s.get());
+        }
+        soProducerIndex(currProducerIndex + batchSize);// StoreStore
+        return batchSize;
+    }
+}
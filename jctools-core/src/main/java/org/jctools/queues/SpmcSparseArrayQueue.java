@@ -0,0 +1,325 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpmcSparseArrayQueueL1Pad<E> extends SparseCircularArrayQueue<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcSparseArrayQueueL1Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpmcSparseArrayQueueProducerField<E> extends SpmcSparseArrayQueueL1Pad<E> {
+    protected final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                    UNSAFE.objectFieldOffset(SpmcSparseArrayQueueProducerField.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final void soTail(long v) {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, v);
+    }
+
+    public SpmcSparseArrayQueueProducerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpmcSparseArrayQueueL2Pad<E> extends SpmcSparseArrayQueueProducerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcSparseArrayQueueL2Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpmcSparseArrayQueueConsumerField<E> extends SpmcSparseArrayQueueL2Pad<E> {
+    protected final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                    UNSAFE.objectFieldOffset(SpmcSparseArrayQueueConsumerField.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public SpmcSparseArrayQueueConsumerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final boolean casHead(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, C_INDEX_OFFSET, expect, newValue);
+    }
+}
+
+abstract class SpmcSparseArrayQueueMidPad<E> extends SpmcSparseArrayQueueConsumerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcSparseArrayQueueMidPad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpmcSparseArrayQueueProducerIndexCacheField<E> extends SpmcSparseArrayQueueMidPad<E> {
+    // This is separated from the consumerIndex which will be highly contended in the hope that this value spends most
+    // of it's time in a cache line that is Shared(and rarely invalidated)
+    private volatile long producerIndexCache;
+
+    public SpmcSparseArrayQueueProducerIndexCacheField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvProducerIndexCache() {
+        return producerIndexCache;
+    }
+
+    protected final void svProducerIndexCache(long v) {
+        producerIndexCache = v;
+    }
+}
+
+abstract class SpmcSparseArrayQueueL3Pad<E> extends SpmcSparseArrayQueueProducerIndexCacheField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpmcSparseArrayQueueL3Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+/**
+ * A variant of {@link SpmcArrayQueue} which only uses every 2^sparseShift slot of its element buffer, trading
+ * footprint for less false sharing between neighbouring elements.
+ * <p>
+ * The algorithm and field layout are those of {@link SpmcArrayQueue}, see {@link SparseCircularArrayQueue} for the
+ * buffer layout. The sparse shift is per instance, so computing an offset loads it from the queue. Dense queues are
+ * better served by {@link SpmcArrayQueue}, whose element shift is the static "sparse.shift" constant.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public final class SpmcSparseArrayQueue<E> extends SpmcSparseArrayQueueL3Pad<E> {
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     */
+    public SpmcSparseArrayQueue(final int capacity, final int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final E[] lb = buffer;
+        final long currProducerIndex = lvProducerIndex();
+        final long offset = calcElementOffset(currProducerIndex);
+        if (null != lvElement(lb, offset)) {
+            int size = (int) (currProducerIndex - lvConsumerIndex());
+            if(size == capacity) {
+                return false;
+            }
+            else {
+                // spin wait for slot to clear, buggers wait freedom
+                while(null != lvElement(lb, offset));
+            }
+        }
+        spElement(lb, offset, e);
+        // single producer, so store ordered is valid. It is also required to correctly publish the element
+        // and for the consumers to pick up the tail value.
+        soTail(currProducerIndex + 1);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long currentConsumerIndex;
+        final long currProducerIndexCache = lvProducerIndexCache();
+        do {
+            currentConsumerIndex = lvConsumerIndex();
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return null;
+                } else {
+                    svProducerIndexCache(currProducerIndex);
+                }
+            }
+        } while (!casHead(currentConsumerIndex, currentConsumerIndex + 1));
+        // consumers are gated on latest visible tail, and so can't see a null value in the queue or overtake
+        // and wrap to hit same location.
+        final long offset = calcElementOffset(currentConsumerIndex);
+        final E[] lb = buffer;
+        // load plain, element happens before it's index becomes visible
+        final E e = lpElement(lb, offset);
+        // store ordered, make sure nulling out is visible. Producer is waiting for this value.
+        soElement(lb, offset, null);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long currentConsumerIndex;
+        final long currProducerIndexCache = lvProducerIndexCache();
+        E e;
+        do {
+            currentConsumerIndex = lvConsumerIndex();
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return null;
+                } else {
+                    svProducerIndexCache(currProducerIndex);
+                }
+            }
+        } while (null == (e = lvElement(calcElementOffset(currentConsumerIndex))));
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As {@link #offer(Object)}, but returns false rather than spin when the slot is claimed by a consumer but not yet
+     * cleared.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final E[] lb = buffer;
+        final long currProducerIndex = lvProducerIndex();
+        final long offset = calcElementOffset(currProducerIndex);
+        if (null != lvElement(lb, offset)) {
+            return false;
+        }
+        spElement(lb, offset, e);
+        soTail(currProducerIndex + 1);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A run of visible elements is claimed with a single CAS on the consumer index.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        long currentConsumerIndex;
+        long currProducerIndexCache = lvProducerIndexCache();
+        int batchSize;
+        do {
+            currentConsumerIndex = lvConsumerIndex();
+            if (currentConsumerIndex >= currProducerIndexCache) {
+                long currProducerIndex = lvProducerIndex();
+                if (currentConsumerIndex >= currProducerIndex) {
+                    return 0;
+                } else {
+                    svProducerIndexCache(currProducerIndex);
+                    currProducerIndexCache = currProducerIndex;
+                }
+            }
+            batchSize = (int) Math.min(currProducerIndexCache - currentConsumerIndex, limit);
+        } while (!casHead(currentConsumerIndex, currentConsumerIndex + batchSize));
+        final E[] lb = buffer;
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currentConsumerIndex + i);
+            // load plain, element happens before it's index becomes visible
+            final E e = lpElement(lb, offset);
+            // store ordered, make sure nulling out is visible. Producer is waiting for this value.
+            soElement(lb, offset, null);
+            c.accept(e);
+        }
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are stored with plain stores and the producer index is published once for the whole batch.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final E[] lb = buffer;
+        final long currProducerIndex = lvProducerIndex();
+        final int batchSize = (int) Math.min(capacity - (currProducerIndex - lvConsumerIndex()), limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            final long offset = calcElementOffset(currProducerIndex + i);
+            // the slot has been claimed by a consumer, spin wait for it to clear
+            while (null != lvElement(lb, offset));
+            spElement(lb, offset, s.get());
+        }
+        // single producer, so store ordered is valid. It is also required to correctly publish the elements
+        // and for the consumers to pick up the tail value.
+        soTail(currProducerIndex + batchSize);
+        return batchSize;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        // Order matters! 
+        // Loading consumer before producer allows for producer increments after consumer index is read.
+        // This ensures the correctness of this method at least for the consumer thread. Other threads POV is not really
+        // something we can fix here.
+        return (lvConsumerIndex() == lvProducerIndex());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * An unbounded Single-Producer-Multi-Consumer queue made of linked array segments, see
+ * {@link BaseSegmentedArrayQueue} for the consumer side.
+ * <p>
+ * The single producer owns the enqueue index and the producer segment so needs no fetch-and-add, it writes the element
+ * before publishing the index so consumers rarely get ahead of it. A CAS on the slot is still required as a consumer
+ * which claimed past the published index may have marked the slot as taken, in which case the producer moves on to
+ * the next slot. New segments are appended with an ordered store.<br>
+ * This implementation is lock free.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class SpmcUnboundedArrayQueue<E> extends BaseSegmentedArrayQueue<E> {
+
+    /**
+     * @param segmentSize the number of elements held by each segment
+     */
+    public SpmcUnboundedArrayQueue(final int segmentSize) {
+        super(segmentSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final ArrayQueueSegment<E> segment = lpProducerSegment();
+        long index = segment.lpEnqIndex();
+        while (index < segmentSize) {
+            final boolean written = segment.casItem(index, e);
+            segment.soEnqIndex(++index);
+            if (written) {
+                return true;
+            }
+        }
+        appendSegment(segment, e);
+        return true;
+    }
+
+    private void appendSegment(final ArrayQueueSegment<E> segment, final E e) {
+        final ArrayQueueSegment<E> newSegment = new ArrayQueueSegment<E>(segmentSize, e);
+        spProducerSegment(newSegment);
+        // segment is fully published before consumers can follow the link
+        segment.soNext(newSegment);// StoreStore
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The enqueue index is published once per
+     * run of slots in a segment.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        ArrayQueueSegment<E> segment = lpProducerSegment();
+        long index = segment.lpEnqIndex();
+        E e = null;
+        int i = 0;
+        while (i < limit) {
+            if (null == e) {
+                e = s.get();
+            }
+            if (index >= segmentSize) {
+                segment.soEnqIndex(index);
+                appendSegment(segment, e);
+                segment = lpProducerSegment();
+                index = segment.lpEnqIndex();
+                e = null;
+                i++;
+                continue;
+            }
+            if (segment.casItem(index, e)) {
+                e = null;
+                i++;
+            }
+            index++;
+        }
+        segment.soEnqIndex(index);
+        return i;
+    }
+}
@@ -167,6 +167,65 @@ public final class SpscArrayQueue<E> extends SpscArrayQueueL3Pad<E> {
         return lvElement(calcElementOffset(consumerIndex));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. As the consumer index is not used by the
+     * producer there is no index publication to amortize, but the buffer and index are only loaded once.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        for (int i = 0; i < limit; i++) {
+            final long index = currConsumerIndex + i;
+            final long offset = calcElementOffset(index);
+            final E e = lvElement(lElementBuffer, offset);// LoadLoad
+            if (null == e) {
+                return i;
+            }
+            consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+            soElement(lElementBuffer, offset, null);// StoreStore
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The look ahead step is used to find a run
+     * of free slots which are then filled with no further checks.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, lookAheadStep);
+                }
+                else if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, calcElementOffset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+
     @Override
     public int size() {
         /*
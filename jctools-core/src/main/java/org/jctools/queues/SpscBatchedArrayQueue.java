@@ -0,0 +1,273 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpscBatchedArrayQueueColdField<E> extends ConcurrentCircularArrayQueue<E> {
+    private static final Integer MAX_LOOK_AHEAD_STEP = Integer.getInteger("jctools.spsc.max.lookahead.step", 4096);
+    private static final Integer MAX_POLL_BATCH = Integer.getInteger("jctools.spsc.max.poll.batch", 256);
+    protected final int lookAheadStep;
+    protected final int pollBatch;
+    public SpscBatchedArrayQueueColdField(int capacity) {
+        super(capacity);
+        lookAheadStep = Math.min(capacity/4, MAX_LOOK_AHEAD_STEP);
+        pollBatch = Math.max(1, Math.min(this.capacity/4, MAX_POLL_BATCH));
+    }
+}
+abstract class SpscBatchedArrayQueueL1Pad<E> extends SpscBatchedArrayQueueColdField<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscBatchedArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpscBatchedArrayQueueProducerFields<E> extends SpscBatchedArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscBatchedArrayQueueProducerFields.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long producerLookAhead;
+
+    public SpscBatchedArrayQueueProducerFields(int capacity) {
+        super(capacity);
+    }
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscBatchedArrayQueueL2Pad<E> extends SpscBatchedArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscBatchedArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpscBatchedArrayQueueConsumerField<E> extends SpscBatchedArrayQueueL2Pad<E> {
+    protected long consumerIndex;
+    protected long consumerLookAhead;
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscBatchedArrayQueueConsumerField.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    public SpscBatchedArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscBatchedArrayQueueL3Pad<E> extends SpscBatchedArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscBatchedArrayQueueL3Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+/**
+ * A Single-Producer-Single-Consumer queue backed by a pre-allocated buffer, trading a little latency for throughput.
+ * <p>
+ * The producer side is that of {@link SpscArrayQueue}. The consumer side adds the batching of the <a
+ * href="http://staff.ustc.edu.cn/~bhua/publications/IJPP_draft.pdf">BQueue</a> algorithm: rather than a volatile
+ * load of every slot the consumer probes a slot a batch ahead and, if it is not yet filled, backtracks by halving the
+ * batch until a filled slot is found. All the slots up to the probed slot are known to be filled and are consumed
+ * with plain loads. When the queue is near empty the consumer falls back to single element batches, but an empty
+ * queue costs a few probes rather than one.<br>
+ * For convenience the relevant paper is available in the resources folder:<br>
+ * <i>2012 - Junchang- BQueue- Efﬁcient and Practical Queuing.pdf <br>
+ * </i> This implementation is wait free.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public final class SpscBatchedArrayQueue<E> extends SpscBatchedArrayQueueL3Pad<E> {
+
+    public SpscBatchedArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long offset = calcElementOffset(producerIndex);
+        if (producerIndex >= producerLookAhead) {
+            if (null == lvElement(lElementBuffer, calcElementOffset(producerIndex + lookAheadStep))) {// LoadLoad
+                producerLookAhead = producerIndex + lookAheadStep;
+            }
+            else if (null != lvElement(lElementBuffer, offset)){
+                return false;
+            }
+        }
+        producerIndex++; // do increment here so the ordered store give both a barrier 
+        soElement(lElementBuffer, offset, e);// StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. Slots within the consumer look ahead are
+     * loaded with no barrier, the volatile load of the probed slot already ordered them.
+     */
+    @Override
+    public E poll() {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        if (currConsumerIndex >= consumerLookAhead && !findBatch(lElementBuffer, currConsumerIndex)) {
+            return null;
+        }
+        final long offset = calcElementOffset(currConsumerIndex);
+        final E e = lpElement(lElementBuffer, offset);
+        consumerIndex = currConsumerIndex + 1; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        return lvElement(calcElementOffset(consumerIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. Elements are consumed a batch at a time,
+     * see {@link #poll()}.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currConsumerIndex = consumerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currConsumerIndex >= consumerLookAhead && !findBatch(lElementBuffer, currConsumerIndex)) {
+                break;
+            }
+            // all slots up to the look ahead point are known to be filled
+            final long batchLimit = Math.min(consumerLookAhead, currConsumerIndex + (limit - i));
+            for (; currConsumerIndex < batchLimit; currConsumerIndex++, i++) {
+                final long offset = calcElementOffset(currConsumerIndex);
+                final E e = lpElement(lElementBuffer, offset);
+                consumerIndex = currConsumerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, offset, null);// StoreStore
+                c.accept(e);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only, see {@link SpscArrayQueue#fill}.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, lookAheadStep);
+                }
+                else if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, calcElementOffset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Probe the slot a batch ahead of the consumer index, halving the batch until a filled slot is found. As the batch
+     * is never larger than the capacity a filled slot cannot be left over from the previous lap, so the producer has
+     * filled all the slots up to it.
+     * 
+     * @return true if the consumer look ahead was moved past index
+     */
+    private boolean findBatch(final E[] lElementBuffer, final long index) {
+        for (long batch = pollBatch; batch > 0; batch >>= 1) {
+            if (null != lvElement(lElementBuffer, calcElementOffset(index + batch - 1))) {// LoadLoad
+                consumerLookAhead = index + batch;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+}
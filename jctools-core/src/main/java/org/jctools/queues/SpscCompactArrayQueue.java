@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * The unpadded counterpart of {@link SpscArrayQueue}, see {@link CompactCircularArrayQueue}. The algorithm is the
+ * same, the producer and consumer fields may share a cache line.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class SpscCompactArrayQueue<E> extends CompactCircularArrayQueue<E> {
+    private static final Integer MAX_LOOK_AHEAD_STEP = Integer.getInteger("jctools.spsc.max.lookahead.step", 4096);
+    private final static long P_INDEX_OFFSET;
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscCompactArrayQueue.class.getDeclaredField("producerIndex"));
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscCompactArrayQueue.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private final int lookAheadStep;
+    private long producerIndex;
+    private long producerLookAhead;
+    private long consumerIndex;
+
+    public SpscCompactArrayQueue(final int capacity) {
+        super(capacity);
+        lookAheadStep = Math.min(capacity / 4, MAX_LOOK_AHEAD_STEP);
+    }
+
+    @Override
+    protected long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+
+    @Override
+    protected long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long offset = calcOffset(producerIndex);
+        if (producerIndex >= producerLookAhead) {
+            if (null == lvElement(lElementBuffer, calcOffset(producerIndex + lookAheadStep))) {// LoadLoad
+                producerLookAhead = producerIndex + lookAheadStep;
+            }
+            else if (null != lvElement(lElementBuffer, offset)){
+                return false;
+            }
+        }
+        producerIndex++; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, e);// StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        final long offset = calcOffset(consumerIndex);
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset);// LoadLoad
+        if (null == e) {
+            return null;
+        }
+        consumerIndex++; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        return lvElement(buffer, calcOffset(consumerIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        for (int i = 0; i < limit; i++) {
+            final long index = currConsumerIndex + i;
+            final long offset = calcOffset(index);
+            final E e = lvElement(lElementBuffer, offset);// LoadLoad
+            if (null == e) {
+                return i;
+            }
+            consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+            soElement(lElementBuffer, offset, null);// StoreStore
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only, see {@link SpscArrayQueue#fill}.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == lvElement(lElementBuffer, calcOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, lookAheadStep);
+                }
+                else if (null == lvElement(lElementBuffer, calcOffset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, calcOffset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+}
@@ -0,0 +1,803 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.jctools.util.Pow2;
+
+abstract class SpscGrowableArrayQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class SpscGrowableArrayQueueColdField<E> extends SpscGrowableArrayQueueL0Pad<E> {
+    private static final int MAX_LOOK_AHEAD_STEP = Integer.getInteger("jctools.spsc.max.lookahead.step", 4096);
+    protected final int initialCapacity;
+    protected final int maxCapacity;
+    protected final long idleNanos;
+
+    public SpscGrowableArrayQueueColdField(int initialCapacity, int maxCapacity, long idleNanos) {
+        final int initial = Pow2.roundToPowerOfTwo(initialCapacity);
+        this.maxCapacity = Pow2.roundToPowerOfTwo(maxCapacity);
+        if (initial > this.maxCapacity) {
+            throw new IllegalArgumentException("initialCapacity(" + initialCapacity + ") must not be larger than "
+                    + "maxCapacity(" + maxCapacity + ")");
+        }
+        // a single slot buffer looks ahead at the slot it is about to write, so a resize would put the JUMP marker
+        // over an element the consumer has not taken yet. It is only safe if the queue can never grow.
+        this.initialCapacity = Math.min(Math.max(2, initial), this.maxCapacity);
+        this.idleNanos = idleNanos;
+    }
+
+    protected static int lookAheadStep(int capacity) {
+        return Math.max(1, Math.min(capacity / 4, MAX_LOOK_AHEAD_STEP));
+    }
+}
+
+abstract class SpscGrowableArrayQueueL1Pad<E> extends SpscGrowableArrayQueueColdField<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscGrowableArrayQueueL1Pad(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+}
+
+abstract class SpscGrowableArrayQueueProducerFields<E> extends SpscGrowableArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    private final static long P_SEQUENCE_OFFSET;
+    private final static long P_BUFFER_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueProducerFields.class
+                    .getDeclaredField("producerIndex"));
+            P_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueProducerFields.class
+                    .getDeclaredField("producerSequence"));
+            P_BUFFER_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueProducerFields.class
+                    .getDeclaredField("producerBuffer"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long producerLookAhead;
+    protected int producerLookAheadStep;
+    protected long producerMask;
+    protected E[] producerBuffer;
+    protected long producerIdleSince;
+    // odd while an offer is in progress, only maintained when the queue has an idle timeout
+    protected long producerSequence;
+
+    public SpscGrowableArrayQueueProducerFields(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+
+    protected final long lvProducerSequence() {
+        return UNSAFE.getLongVolatile(this, P_SEQUENCE_OFFSET);
+    }
+
+    protected final void svProducerSequence(long sequence) {
+        UNSAFE.putLongVolatile(this, P_SEQUENCE_OFFSET, sequence);
+    }
+
+    protected final void soProducerSequence(long sequence) {
+        UNSAFE.putOrderedLong(this, P_SEQUENCE_OFFSET, sequence);
+    }
+
+    protected final boolean casProducerBuffer(E[] expect, E[] newValue) {
+        return UNSAFE.compareAndSwapObject(this, P_BUFFER_OFFSET, expect, newValue);
+    }
+}
+
+abstract class SpscGrowableArrayQueueL2Pad<E> extends SpscGrowableArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscGrowableArrayQueueL2Pad(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+}
+
+abstract class SpscGrowableArrayQueueConsumerFields<E> extends SpscGrowableArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    private final static long C_BUFFER_OFFSET;
+    private final static long C_FIRST_BUFFER_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerIndex"));
+            C_BUFFER_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerBuffer"));
+            C_FIRST_BUFFER_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueConsumerFields.class
+                    .getDeclaredField("firstBuffer"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long consumerIndex;
+    protected long consumerMask;
+    protected E[] consumerBuffer;
+    // written once by the producer on the first offer, cleared by the consumer once it takes the buffer over
+    protected E[] firstBuffer;
+
+    public SpscGrowableArrayQueueConsumerFields(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final E[] lvConsumerBuffer() {
+        return (E[]) UNSAFE.getObjectVolatile(this, C_BUFFER_OFFSET);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final E[] lvFirstBuffer() {
+        return (E[]) UNSAFE.getObjectVolatile(this, C_FIRST_BUFFER_OFFSET);
+    }
+
+    protected final void soFirstBuffer(E[] buffer) {
+        UNSAFE.putOrderedObject(this, C_FIRST_BUFFER_OFFSET, buffer);
+    }
+}
+
+abstract class SpscGrowableArrayQueueL3Pad<E> extends SpscGrowableArrayQueueConsumerFields<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscGrowableArrayQueueL3Pad(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+}
+
+abstract class SpscGrowableArrayQueueIdleField<E> extends SpscGrowableArrayQueueL3Pad<E> {
+    private final static long C_IDLE_SINCE_OFFSET;
+    private final static long TRIM_STATE_OFFSET;
+    static {
+        try {
+            C_IDLE_SINCE_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueIdleField.class
+                    .getDeclaredField("consumerIdleSince"));
+            TRIM_STATE_OFFSET = UNSAFE.objectFieldOffset(SpscGrowableArrayQueueIdleField.class
+                    .getDeclaredField("trimState"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected static final long NOT_IDLE = Long.MIN_VALUE;
+    // written by the consumer when it finds the queue empty and when it stops being so, read by the producer
+    protected long consumerIdleSince = NOT_IDLE;
+    protected static final int ACTIVE = 0;
+    protected static final int TRIMMING = 1;
+    protected static final int TRIMMED = 2;
+    // moved from ACTIVE to TRIMMING and on to TRIMMED by the consumer, back to ACTIVE by whichever side wins the race
+    protected int trimState = ACTIVE;
+
+    public SpscGrowableArrayQueueIdleField(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+
+    protected final long lvConsumerIdleSince() {
+        return UNSAFE.getLongVolatile(this, C_IDLE_SINCE_OFFSET);
+    }
+
+    protected final void soConsumerIdleSince(long idleSince) {
+        UNSAFE.putOrderedLong(this, C_IDLE_SINCE_OFFSET, idleSince);
+    }
+
+    protected final int lvTrimState() {
+        return UNSAFE.getIntVolatile(this, TRIM_STATE_OFFSET);
+    }
+
+    protected final void soTrimState(int state) {
+        UNSAFE.putOrderedInt(this, TRIM_STATE_OFFSET, state);
+    }
+
+    protected final boolean casTrimState(int expect, int newValue) {
+        return UNSAFE.compareAndSwapInt(this, TRIM_STATE_OFFSET, expect, newValue);
+    }
+}
+
+abstract class SpscGrowableArrayQueueL4Pad<E> extends SpscGrowableArrayQueueIdleField<E> {
+    long p50, p51, p52, p53, p54, p55, p56;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscGrowableArrayQueueL4Pad(int initialCapacity, int maxCapacity, long idleNanos) {
+        super(initialCapacity, maxCapacity, idleNanos);
+    }
+}
+
+/**
+ * A Single-Producer-Single-Consumer queue which starts with a small buffer and doubles it as required, up to a
+ * maximum capacity.
+ * <p>
+ * Offer follows the {@link SpscArrayQueue} look ahead logic. When the look ahead step is not available and the
+ * buffer has not reached the maximum capacity the producer allocates a buffer of double the size, stores the element
+ * in it, links it from the last slot of the old buffer and marks the element's slot in the old buffer with a JUMP
+ * marker. The consumer follows the link when it finds the marker, so it never waits for the resize.<br>
+ * Elements are not copied, the consumer drains each old buffer before moving on to the next. As each buffer is
+ * at least double the size of all previous buffers the maximum capacity is only enforced by index once the buffer
+ * has reached it.
+ * <p>
+ * No buffer is allocated until the first element is offered, the producer publishes the first buffer to the consumer
+ * which treats the queue as empty until it is visible. When constructed with an idle timeout the queue also gives its
+ * buffer back once it has stayed empty for the timeout:
+ * <ul>
+ * <li>A consumer which keeps polling releases the buffer itself, see {@link #trim()}, and the next offer allocates a
+ * buffer of the initial capacity as the first offer does. Consumers which park when the queue is empty can call
+ * {@link #trim()} before they do.
+ * <li>Otherwise the first offer after the timeout moves the producer to a fresh buffer of the initial capacity using
+ * the same link and JUMP marker used for growing, so the old buffer is garbage once the consumer follows the link.
+ * </ul>
+ * For the consumer to take the buffer away the producer announces each offer with a volatile store, so queues with an
+ * idle timeout pay a StoreLoad barrier per offer/fill call. Without a timeout offers pay nothing extra.
+ * <p>
+ * This is the only array queue which allocates its buffer lazily or gives it back. The queues built on
+ * {@link ConcurrentCircularArrayQueue}, e.g. {@link SpscArrayQueue} and the MPSC/MPMC array queues, allocate their
+ * whole buffer in the constructor, as a lazy buffer would add a null check and a safe publication to their hot path.
+ * {@link QueueFactory} returns this queue for large bounded SPSC specs with {@link org.jctools.queues.spec.Preference#FOOTPRINT}.
+ * <p>
+ * This implementation is wait free.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class SpscGrowableArrayQueue<E> extends SpscGrowableArrayQueueL4Pad<E> {
+    private static final Object JUMP = new Object();
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * @param maxCapacity the maximum capacity of the queue, rounded up to the next power of 2
+     */
+    public SpscGrowableArrayQueue(final int maxCapacity) {
+        this(Math.min(DEFAULT_INITIAL_CAPACITY, maxCapacity), maxCapacity);
+    }
+
+    /**
+     * @param initialCapacity the capacity of the first buffer, rounded up to the next power of 2 and to at least 2
+     *            unless maxCapacity is 1
+     * @param maxCapacity the maximum capacity of the queue, rounded up to the next power of 2
+     */
+    public SpscGrowableArrayQueue(final int initialCapacity, final int maxCapacity) {
+        super(initialCapacity, maxCapacity, 0);
+    }
+
+    /**
+     * @param initialCapacity the capacity of the first buffer, and of the buffer the queue shrinks back to, rounded
+     *            up to the next power of 2 and to at least 2 unless maxCapacity is 1
+     * @param maxCapacity the maximum capacity of the queue, rounded up to the next power of 2
+     * @param idleTimeout how long the queue must stay empty before the buffer is shrunk back to the initial capacity
+     * @param unit the unit of idleTimeout
+     */
+    public SpscGrowableArrayQueue(final int initialCapacity, final int maxCapacity, final long idleTimeout,
+            final TimeUnit unit) {
+        super(initialCapacity, maxCapacity, unit.toNanos(idleTimeout));
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("idleTimeout(" + idleTimeout + ") must be positive");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E[] allocate(final int capacity) {
+        // extra slot holds the link to the next buffer
+        return (E[]) new Object[capacity + 1];
+    }
+
+    private static long nextBufferOffset(final long mask) {
+        return calcElementOffset(mask + 1);
+    }
+
+    /**
+     * Allocate the first buffer on the first offer, or on the first offer after the consumer released the buffer, and
+     * publish it to the consumer.
+     */
+    private E[] allocateProducerBuffer() {
+        final E[] buffer = allocate(initialCapacity);
+        producerBuffer = buffer;
+        producerMask = initialCapacity - 1;
+        producerLookAheadStep = lookAheadStep(initialCapacity);
+        // a look ahead left over from a buffer released by the consumer does not apply to the new one
+        producerLookAhead = producerIndex;
+        soFirstBuffer(buffer);// StoreStore
+        return buffer;
+    }
+
+    /**
+     * @return true if the buffer is larger than the initial capacity and the consumer has found the queue empty at
+     *         least idleNanos ago, with nothing offered since
+     */
+    private boolean shouldShrink(final long mask, final long index) {
+        if (0 == idleNanos || mask + 1 == initialCapacity) {
+            return false;
+        }
+        final long idleSince = lvConsumerIdleSince();// LoadLoad
+        // act on each idle period once, the consumer resets the time stamp once it takes an element
+        if (NOT_IDLE == idleSince || producerIdleSince == idleSince || System.nanoTime() - idleSince < idleNanos) {
+            return false;
+        }
+        // only settle the idle period once it has timed out, an earlier offer must not use up the check
+        producerIdleSince = idleSince;
+        return index == lvConsumerIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        if (0 == idleNanos) {
+            return offerElement(e);
+        }
+        final long sequence = enterOffer();
+        final boolean offered = offerElement(e);
+        soProducerSequence(sequence + 1);// StoreStore
+        return offered;
+    }
+
+    /**
+     * Announce an offer to a consumer which may be releasing the buffer, and drop the buffer if it has done so.
+     *
+     * @return the odd producer sequence marking the offer as in progress
+     */
+    private long enterOffer() {
+        final long sequence = producerSequence + 1;
+        svProducerSequence(sequence);// StoreLoad
+        while (true) {
+            final int state = lvTrimState();
+            if (ACTIVE == state) {
+                return sequence;
+            } else if (TRIMMED == state) {
+                // the consumer has let go of the buffer, the queue is empty so the offer starts a new one
+                producerBuffer = null;
+                soTrimState(ACTIVE);
+                return sequence;
+            } else if (casTrimState(TRIMMING, ACTIVE)) {
+                // the consumer has not released the buffer yet, it will find the sequence changed and back off
+                return sequence;
+            }
+        }
+    }
+
+    private boolean offerElement(final E e) {
+        // local load of field to avoid repeated loads after volatile reads
+        E[] buffer = producerBuffer;
+        if (null == buffer) {
+            buffer = allocateProducerBuffer();
+        }
+        final long index = producerIndex;
+        final long mask = producerMask;
+        final long offset = calcElementOffset(index, mask);
+        if (shouldShrink(mask, index)) {
+            resize(buffer, mask, index, offset, e, initialCapacity);
+            return true;
+        }
+        if (index < producerLookAhead || hasRoom(buffer, mask, index, offset)) {
+            writeToQueue(buffer, e, index, offset);
+            return true;
+        }
+        if (mask + 1 < maxCapacity) {
+            resize(buffer, mask, index, offset, e, (int) (mask + 1) << 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Update the look ahead if a run of free slots is available in the current buffer.
+     *
+     * @return true if the slot at index can be written to
+     */
+    private boolean hasRoom(final E[] buffer, final long mask, final long index, final long offset) {
+        final boolean maxed = mask + 1 == maxCapacity;
+        final long lookAheadIndex = index + producerLookAheadStep;
+        // once at max capacity older buffers may still hold elements, so the index must be checked as well
+        if (null == lvElement(buffer, calcElementOffset(lookAheadIndex, mask)) && // LoadLoad
+                (!maxed || lookAheadIndex - lvConsumerIndex() <= maxCapacity)) {
+            producerLookAhead = lookAheadIndex;
+            return true;
+        }
+        // no run of free slots, settle for the next slot if we are not going to grow
+        return maxed && null == lvElement(buffer, offset) && index - lvConsumerIndex() < maxCapacity;
+    }
+
+    private void writeToQueue(final E[] buffer, final E e, final long index, final long offset) {
+        producerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        soElement(buffer, offset, e);// StoreStore
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(final E[] oldBuffer, final long oldMask, final long index, final long offset, final E e,
+            final int newCapacity) {
+        final E[] newBuffer = allocate(newCapacity);
+        final long newMask = newCapacity - 1;
+        producerBuffer = newBuffer;
+        producerMask = newMask;
+        producerLookAheadStep = lookAheadStep(newCapacity);
+        // force the next offer through the look ahead check on the new buffer
+        producerLookAhead = index + 1;
+        soElement(newBuffer, calcElementOffset(index, newMask), e);
+        soElement((Object[]) oldBuffer, nextBufferOffset(oldMask), newBuffer);
+        producerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        // element and link are visible before the consumer can observe the JUMP
+        soElement(oldBuffer, offset, (E) JUMP);// StoreStore
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] buffer = consumerBuffer();
+        if (null == buffer) {
+            return null;
+        }
+        final long index = consumerIndex;
+        final long mask = consumerMask;
+        final long offset = calcElementOffset(index, mask);
+        final E e = lvElement(buffer, offset);// LoadLoad
+        if (null == e) {
+            markIdle();
+            return null;
+        }
+        if (NOT_IDLE != consumerIdleSince) {
+            soConsumerIdleSince(NOT_IDLE);
+        }
+        if (JUMP == e) {
+            return newBufferPoll(buffer, mask, index);
+        }
+        consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        soElement(buffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * @return the consumer buffer, or null if the producer has not yet allocated the first buffer
+     */
+    private E[] consumerBuffer() {
+        E[] buffer = consumerBuffer;
+        if (null == buffer) {
+            buffer = lvFirstBuffer();// LoadLoad
+            if (null != buffer) {
+                consumerBuffer = buffer;
+                consumerMask = buffer.length - 2;
+                // iterators which find the first buffer cleared must find the consumer buffer set
+                soFirstBuffer(null);
+            }
+        }
+        return buffer;
+    }
+
+    private void markIdle() {
+        if (0 == idleNanos) {
+            return;
+        }
+        final long idleSince = consumerIdleSince;
+        if (NOT_IDLE == idleSince) {
+            soConsumerIdleSince(System.nanoTime());
+        } else if (consumerMask + 1 != initialCapacity && System.nanoTime() - idleSince >= idleNanos) {
+            trim();
+        }
+    }
+
+    /**
+     * Release the buffer if the queue is empty and the buffer is larger than the initial capacity, the next offer
+     * allocates a buffer of the initial capacity. {@link #poll()} calls this once the queue has stayed empty for the
+     * idle timeout, consumers which stop polling when the queue is empty may call it before they do.
+     * <p>
+     * Only queues constructed with an idle timeout can be trimmed, as only their producer announces its offers. This
+     * method fails rather than waits if an offer is in progress.
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     *
+     * @return true if the buffer was released
+     */
+    public boolean trim() {
+        final E[] buffer = consumerBuffer;
+        if (0 == idleNanos || null == buffer || consumerMask + 1 == initialCapacity) {
+            return false;
+        }
+        final long sequence = lvProducerSequence();// LoadLoad
+        // the buffer can only be released if it is empty and no offer is in progress
+        if (0 != (sequence & 1) || consumerIndex != lvProducerIndex() || !casTrimState(ACTIVE, TRIMMING)) {
+            return false;
+        }
+        // an offer which starts after the CAS either finds TRIMMING and takes the buffer back, or is seen here
+        if (sequence != lvProducerSequence() || !casTrimState(TRIMMING, TRIMMED)) {
+            casTrimState(TRIMMING, ACTIVE);
+            return false;
+        }
+        // the producer will not touch the buffer again, the next offer allocates a new one and publishes it as the
+        // first buffer. It may have done so already, in which case the CAS fails.
+        consumerBuffer = null;
+        casProducerBuffer(buffer, null);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] lvNext(final E[] buffer, final long mask) {
+        return (E[]) lvElement((Object[]) buffer, nextBufferOffset(mask));
+    }
+
+    private E newBufferPoll(final E[] oldBuffer, final long oldMask, final long index) {
+        final E[] buffer = lvNext(oldBuffer, oldMask);
+        final long mask = buffer.length - 2;
+        consumerBuffer = buffer;
+        consumerMask = mask;
+        final long offset = calcElementOffset(index, mask);
+        // the element is stored before the JUMP is made visible
+        final E e = lvElement(buffer, offset);// LoadLoad
+        consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        soElement(buffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        final E[] buffer = consumerBuffer();
+        if (null == buffer) {
+            return null;
+        }
+        final long index = consumerIndex;
+        final long mask = consumerMask;
+        final E e = lvElement(buffer, calcElementOffset(index, mask));// LoadLoad
+        if (JUMP == e) {
+            final E[] nextBuffer = lvNext(buffer, mask);
+            return lvElement(nextBuffer, calcElementOffset(index, nextBuffer.length - 2));
+        }
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        for (int i = 0; i < limit; i++) {
+            final E e = poll();
+            if (null == e) {
+                return i;
+            }
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The look ahead step is used to find a run
+     * of free slots which are then filled with no further checks.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        if (0 == idleNanos || limit <= 0) {
+            return fillElements(s, limit);
+        }
+        final long sequence = enterOffer();
+        final int filled = fillElements(s, limit);
+        soProducerSequence(sequence + 1);// StoreStore
+        return filled;
+    }
+
+    private int fillElements(final Supplier<E> s, final int limit) {
+        if (limit > 0 && null == producerBuffer) {
+            allocateProducerBuffer();
+        }
+        int i = 0;
+        if (limit > 0 && shouldShrink(producerMask, producerIndex)) {
+            final long index = producerIndex;
+            final long mask = producerMask;
+            resize(producerBuffer, mask, index, calcElementOffset(index, mask), s.get(), initialCapacity);
+            i++;
+        }
+        while (i < limit) {
+            final E[] buffer = producerBuffer;
+            final long index = producerIndex;
+            final long mask = producerMask;
+            final long offset = calcElementOffset(index, mask);
+            if (index < producerLookAhead || hasRoom(buffer, mask, index, offset)) {
+                // all slots up to the look ahead point are known to be free
+                final long batchLimit = Math.max(index + 1, Math.min(producerLookAhead, index + (limit - i)));
+                for (long j = index; j < batchLimit; j++, i++) {
+                    writeToQueue(buffer, s.get(), j, calcElementOffset(j, mask));
+                }
+            } else if (mask + 1 < maxCapacity) {
+                resize(buffer, mask, index, offset, s.get(), (int) (mask + 1) << 1);
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the consumer, so it is the same as {@link #offer(Object)}.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producer, so it is the same as {@link #poll()}.
+     */
+    @Override
+    public E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producer, so it is the same as {@link #peek()}.
+     */
+    @Override
+    public E relaxedPeek() {
+        return peek();
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lvConsumerIndex() == lvProducerIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking: it walks the buffers from the consumer buffer observed when
+     * it was created up to the producer index observed then, skipping slots consumed since, without writing to the
+     * queue. Buffers are never reused once the producer has moved on, so the iterator follows the JUMP markers and
+     * links as the consumer does. Elements added after the iterator was created are not returned, and the iterator
+     * stops at the first element which is not yet visible as the slots after it may still hold consumed elements of
+     * the previous lap. {@link Iterator#remove()} is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new WeakIterator();
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private final long pIndex;
+        private E[] buffer;
+        private long mask;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator() {
+            // any buffer up to the consumer buffer leads to it through the links
+            E[] b = lvFirstBuffer();// LoadLoad
+            if (null == b) {
+                b = lvConsumerBuffer();
+            }
+            if (null != b) {
+                buffer = b;
+                mask = b.length - 2;
+            }
+            nextIndex = lvConsumerIndex();
+            pIndex = null == b ? nextIndex : lvProducerIndex();
+            nextElement = getNext();
+        }
+
+        private void toBuffer(final E[] b) {
+            buffer = b;
+            mask = b.length - 2;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E getNext() {
+            while (nextIndex < pIndex) {
+                final long offset = calcElementOffset(nextIndex, mask);
+                Object e = lvElement((Object[]) buffer, offset);// LoadLoad
+                E[] next = null;
+                if (null == e && null != (next = lvNext(buffer, mask))) {
+                    // the producer has moved on from this buffer, any element before the resize index was written
+                    // before the link so an empty slot now means the element is in a later buffer
+                    e = lvElement((Object[]) buffer, offset);
+                }
+                final long cIndex = lvConsumerIndex();
+                if (nextIndex < cIndex) {
+                    // consumed since, the slot may have been reused
+                    nextIndex = cIndex;
+                    continue;
+                }
+                if (null == e) {
+                    if (null == next) {
+                        // not yet visible
+                        return null;
+                    }
+                    toBuffer(next);
+                } else if (JUMP == e) {
+                    toBuffer(lvNext(buffer, mask));
+                } else {
+                    nextIndex++;
+                    return (E) e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpscIntArrayQueueL1Pad extends ConcurrentCircularIntArrayQueue {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscIntArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpscIntArrayQueueProducerFields extends SpscIntArrayQueueL1Pad {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscIntArrayQueueProducerFields.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long consumerIndexCache;
+
+    public SpscIntArrayQueueProducerFields(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+
+    protected final void soProducerIndex(long v) {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, v);
+    }
+}
+
+abstract class SpscIntArrayQueueL2Pad extends SpscIntArrayQueueProducerFields {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscIntArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpscIntArrayQueueConsumerFields extends SpscIntArrayQueueL2Pad {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscIntArrayQueueConsumerFields.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long consumerIndex;
+    protected long producerIndexCache;
+
+    public SpscIntArrayQueueConsumerFields(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+
+    protected final void soConsumerIndex(long v) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, v);
+    }
+}
+
+abstract class SpscIntArrayQueueL3Pad extends SpscIntArrayQueueConsumerFields {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscIntArrayQueueL3Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+/**
+ * A Single-Producer-Single-Consumer queue of primitive ints backed by a pre-allocated int[].
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * As there is no null element to mark a free slot this is a Lamport style queue where the producer index publishes the
+ * elements to the consumer and the consumer index releases the slots to the producer. Each side keeps a cached copy of
+ * the other side's index and only reloads it when the cached value suggests the queue is full (or empty), which keeps
+ * the cache line holding the other index mostly in a shared state. This implementation is wait free.
+ *
+ * @author nitsanw
+ */
+public final class SpscIntArrayQueue extends SpscIntArrayQueueL3Pad {
+
+    public SpscIntArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final int e) {
+        final long currProducerIndex = producerIndex;
+        final long wrapPoint = currProducerIndex - capacity;
+        if (consumerIndexCache <= wrapPoint) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            if (consumerIndexCache <= wrapPoint) {
+                return false;
+            }
+        }
+        spElement(buffer, calcElementOffset(currProducerIndex), e);
+        soProducerIndex(currProducerIndex + 1);// StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public boolean poll(final IntConsumer c) {
+        final long currConsumerIndex = consumerIndex;
+        if (currConsumerIndex >= producerIndexCache) {
+            producerIndexCache = lvProducerIndex();// LoadLoad
+            if (currConsumerIndex >= producerIndexCache) {
+                return false;
+            }
+        }
+        final int e = lpElement(buffer, calcElementOffset(currConsumerIndex));
+        soConsumerIndex(currConsumerIndex + 1);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. The available elements are consumed and the
+     * slots released to the producer with a single store of the consumer index.
+     */
+    @Override
+    public int drain(final IntConsumer c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final int[] lBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        long available = producerIndexCache - currConsumerIndex;
+        if (available < limit) {
+            producerIndexCache = lvProducerIndex();// LoadLoad
+            available = producerIndexCache - currConsumerIndex;
+        }
+        final int batchSize = (int) Math.min(available, limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            c.accept(lpElement(lBuffer, calcElementOffset(currConsumerIndex + i)));
+        }
+        soConsumerIndex(currConsumerIndex + batchSize);// StoreStore
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The free slots are filled and the elements
+     * published to the consumer with a single store of the producer index.
+     */
+    @Override
+    public int fill(final IntSupplier s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final int[] lBuffer = buffer;
+        final long currProducerIndex = producerIndex;
+        long free = capacity - (currProducerIndex - consumerIndexCache);
+        if (free < limit) {
+            consumerIndexCache = lvConsumerIndex();// LoadLoad
+            free = capacity - (currProducerIndex - consumerIndexCache);
+        }
+        final int batchSize = (int) Math.min(free, limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < batchSize; i++) {
+            spElement(lBuffer, calcElementOffset(currProducerIndex + i), s.get());
+        }
+        soProducerIndex(currProducerIndex + batchSize);// StoreStore
+        return batchSize;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpscSparseArrayQueueColdField<E> extends SparseCircularArrayQueue<E> {
+    private static final Integer MAX_LOOK_AHEAD_STEP = Integer.getInteger("jctools.spsc.max.lookahead.step", 4096);
+    protected final int lookAheadStep;
+    public SpscSparseArrayQueueColdField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+        lookAheadStep = Math.min(capacity/4, MAX_LOOK_AHEAD_STEP);
+    }
+}
+abstract class SpscSparseArrayQueueL1Pad<E> extends SpscSparseArrayQueueColdField<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscSparseArrayQueueL1Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpscSparseArrayQueueProducerFields<E> extends SpscSparseArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscSparseArrayQueueProducerFields.class.getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long producerLookAhead;
+
+    public SpscSparseArrayQueueProducerFields(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscSparseArrayQueueL2Pad<E> extends SpscSparseArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscSparseArrayQueueL2Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpscSparseArrayQueueConsumerField<E> extends SpscSparseArrayQueueL2Pad<E> {
+    protected long consumerIndex;
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET =
+                UNSAFE.objectFieldOffset(SpscSparseArrayQueueConsumerField.class.getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    public SpscSparseArrayQueueConsumerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscSparseArrayQueueL3Pad<E> extends SpscSparseArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscSparseArrayQueueL3Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+/**
+ * A variant of {@link SpscArrayQueue} which only uses every 2^sparseShift slot of its element buffer, trading
+ * footprint for less false sharing between neighbouring elements.
+ * <p>
+ * The algorithm and field layout are those of {@link SpscArrayQueue}, see {@link SparseCircularArrayQueue} for the
+ * buffer layout. The sparse shift is per instance, so computing an offset loads it from the queue. Dense queues are
+ * better served by {@link SpscArrayQueue}, whose element shift is the static "sparse.shift" constant.
+ * 
+ * @author nitsanw
+ * 
+ * @param <E>
+ */
+public final class SpscSparseArrayQueue<E> extends SpscSparseArrayQueueL3Pad<E> {
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     */
+    public SpscSparseArrayQueue(final int capacity, final int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long offset = calcElementOffset(producerIndex);
+        if (producerIndex >= producerLookAhead) {
+            if (null == lvElement(lElementBuffer, calcElementOffset(producerIndex + lookAheadStep))) {// LoadLoad
+                producerLookAhead = producerIndex + lookAheadStep;
+            }
+            else if (null != lvElement(lElementBuffer, offset)){
+                return false;
+            }
+        }
+        producerIndex++; // do increment here so the ordered store give both a barrier 
+        soElement(lElementBuffer, offset, e);// StoreStore
+        return true;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        final long offset = calcElementOffset(consumerIndex);
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset);// LoadLoad
+        if (null == e) {
+            return null;
+        }
+        consumerIndex++; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        return lvElement(calcElementOffset(consumerIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. As the consumer index is not used by the
+     * producer there is no index publication to amortize, but the buffer and index are only loaded once.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        for (int i = 0; i < limit; i++) {
+            final long index = currConsumerIndex + i;
+            final long offset = calcElementOffset(index);
+            final E e = lvElement(lElementBuffer, offset);// LoadLoad
+            if (null == e) {
+                return i;
+            }
+            consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+            soElement(lElementBuffer, offset, null);// StoreStore
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. The look ahead step is used to find a run
+     * of free slots which are then filled with no further checks.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex + lookAheadStep))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, lookAheadStep);
+                }
+                else if (null == lvElement(lElementBuffer, calcElementOffset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, calcElementOffset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+}
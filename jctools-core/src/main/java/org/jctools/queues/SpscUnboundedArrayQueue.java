@@ -0,0 +1,499 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+import static org.jctools.util.UnsafeRefArrayAccess.spElement;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jctools.util.Pow2;
+
+abstract class SpscUnboundedArrayQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+}
+
+abstract class SpscUnboundedArrayQueueColdFields<E> extends SpscUnboundedArrayQueueL0Pad<E> {
+    protected final int chunkSize;
+    protected final long chunkMask;
+    // chunk handed back by the consumer for reuse by the producer
+    private volatile E[] spareChunk;
+
+    public SpscUnboundedArrayQueueColdFields(int chunkSize) {
+        this.chunkSize = Pow2.roundToPowerOfTwo(Math.max(2, chunkSize));
+        chunkMask = this.chunkSize - 1;
+    }
+
+    protected final E[] lvSpareChunk() {
+        return spareChunk;
+    }
+
+    protected final void svSpareChunk(E[] chunk) {
+        spareChunk = chunk;
+    }
+}
+
+abstract class SpscUnboundedArrayQueueL1Pad<E> extends SpscUnboundedArrayQueueColdFields<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscUnboundedArrayQueueL1Pad(int chunkSize) {
+        super(chunkSize);
+    }
+}
+
+abstract class SpscUnboundedArrayQueueProducerFields<E> extends SpscUnboundedArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscUnboundedArrayQueueProducerFields.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long producerLimit;
+    protected E[] producerChunk;
+
+    public SpscUnboundedArrayQueueProducerFields(int chunkSize) {
+        super(chunkSize);
+    }
+
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscUnboundedArrayQueueL2Pad<E> extends SpscUnboundedArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscUnboundedArrayQueueL2Pad(int chunkSize) {
+        super(chunkSize);
+    }
+}
+
+abstract class SpscUnboundedArrayQueueConsumerFields<E> extends SpscUnboundedArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    private final static long C_LIMIT_OFFSET;
+    private final static long C_CHUNK_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerIndex"));
+            C_LIMIT_OFFSET = UNSAFE.objectFieldOffset(SpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerLimit"));
+            C_CHUNK_OFFSET = UNSAFE.objectFieldOffset(SpscUnboundedArrayQueueConsumerFields.class
+                    .getDeclaredField("consumerChunk"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    // consumerLimit while the consumer moves to the next chunk, so iterators never pair a chunk with the wrong limit
+    protected static final long MOVING_CHUNK = Long.MAX_VALUE;
+    protected long consumerIndex;
+    protected long consumerLimit;
+    protected E[] consumerChunk;
+
+    public SpscUnboundedArrayQueueConsumerFields(int chunkSize) {
+        super(chunkSize);
+    }
+
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+
+    protected final long lvConsumerLimit() {
+        return UNSAFE.getLongVolatile(this, C_LIMIT_OFFSET);
+    }
+
+    protected final void soConsumerLimit(long limit) {
+        UNSAFE.putOrderedLong(this, C_LIMIT_OFFSET, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final E[] lvConsumerChunk() {
+        return (E[]) UNSAFE.getObjectVolatile(this, C_CHUNK_OFFSET);
+    }
+
+    protected final void soConsumerChunk(E[] chunk) {
+        UNSAFE.putOrderedObject(this, C_CHUNK_OFFSET, chunk);
+    }
+}
+
+abstract class SpscUnboundedArrayQueueL3Pad<E> extends SpscUnboundedArrayQueueConsumerFields<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscUnboundedArrayQueueL3Pad(int chunkSize) {
+        super(chunkSize);
+    }
+}
+
+/**
+ * An unbounded Single-Producer-Single-Consumer queue made of fixed size array chunks.
+ * <p>
+ * Chunks are aligned on the index, chunk k holds indices [k * chunkSize, (k + 1) * chunkSize), and carry one extra
+ * slot at the end to hold the reference to the next chunk. As a chunk is only ever handed to the producer when it is
+ * empty the producer never needs to check a slot is free, it only needs to link a new chunk when it reaches the end
+ * of the current one. The consumer finds the chunk boundary by index and follows the link if it is visible, a
+ * missing link means the queue is empty.
+ * <p>
+ * The consumer hands back each chunk it is done with through a single spare slot. As long as the consumer does not
+ * fall more than a chunk behind the producer the queue is garbage free, which is where it improves on
+ * {@link SpscLinkedQueue} which allocates a node per element. The consumer chunk and limit are published with ordered
+ * stores when the consumer moves on, so iterators can tell when a chunk they are reading may have been handed back.<br>
+ * This implementation is wait free.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public final class SpscUnboundedArrayQueue<E> extends SpscUnboundedArrayQueueL3Pad<E> {
+
+    /**
+     * @param chunkSize the number of elements held by each chunk, rounded up to the next power of 2
+     */
+    public SpscUnboundedArrayQueue(final int chunkSize) {
+        super(chunkSize);
+        final E[] chunk = newChunk();
+        producerChunk = chunk;
+        producerLimit = this.chunkSize;
+        consumerChunk = chunk;
+        consumerLimit = this.chunkSize;
+        svSpareChunk(null); // this ensures correct construction: StoreLoad
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] newChunk() {
+        return (E[]) new Object[chunkSize + 1];
+    }
+
+    private long nextChunkOffset() {
+        return calcElementOffset(chunkSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long index = producerIndex;
+        if (index >= producerLimit) {
+            linkChunk(index, e);
+            return true;
+        }
+        producerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        soElement(producerChunk, calcElementOffset(index, chunkMask), e);// StoreStore
+        return true;
+    }
+
+    private void linkChunk(final long index, final E e) {
+        final E[] oldChunk = producerChunk;
+        E[] chunk = lvSpareChunk();
+        if (null == chunk) {
+            chunk = newChunk();
+        } else {
+            // the consumer will not replace the spare until it is taken
+            svSpareChunk(null);
+        }
+        producerChunk = chunk;
+        producerLimit = index + chunkSize;
+        soElement(chunk, calcElementOffset(index, chunkMask), e);
+        producerIndex = index + 1; // do increment here so the ordered store give both a barrier
+        // element is visible before the consumer can follow the link
+        soElement((Object[]) oldChunk, nextChunkOffset(), chunk);// StoreStore
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] lvNext(final E[] chunk) {
+        return (E[]) lvElement((Object[]) chunk, nextChunkOffset());
+    }
+
+    /**
+     * Move the consumer to the next chunk, if linked, and hand the old chunk back to the producer.
+     *
+     * @return the next chunk or null if not yet linked
+     */
+    private E[] nextConsumerChunk(final long index) {
+        final E[] oldChunk = consumerChunk;
+        final E[] chunk = lvNext(oldChunk);// LoadLoad
+        if (null == chunk) {
+            return null;
+        }
+        // mark the limit while the chunk and limit do not match, iterators retry until they see both
+        soConsumerLimit(MOVING_CHUNK);
+        soConsumerChunk(chunk);
+        soConsumerLimit(index + chunkSize);
+        // all slots of the old chunk have been nulled, clear the link and hand it back once the new limit is visible
+        soElement((Object[]) oldChunk, nextChunkOffset(), null);
+        if (null == lvSpareChunk()) {
+            svSpareChunk(oldChunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        final long index = consumerIndex;
+        E[] chunk = consumerChunk;
+        if (index >= consumerLimit && null == (chunk = nextConsumerChunk(index))) {
+            return null;
+        }
+        final long offset = calcElementOffset(index, chunkMask);
+        final E e = lvElement(chunk, offset);// LoadLoad
+        if (null == e) {
+            return null;
+        }
+        // slots are only reused once the chunk is handed back, so a plain store is enough
+        spElement(chunk, offset, null);
+        consumerIndex = index + 1;
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        final long index = consumerIndex;
+        E[] chunk = consumerChunk;
+        if (index >= consumerLimit && null == (chunk = lvNext(chunk))) {
+            return null;
+        }
+        return lvElement(chunk, calcElementOffset(index, chunkMask));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        long index = consumerIndex;
+        E[] chunk = consumerChunk;
+        int i = 0;
+        for (; i < limit; i++, index++) {
+            if (index >= consumerLimit && null == (chunk = nextConsumerChunk(index))) {
+                break;
+            }
+            final long offset = calcElementOffset(index, chunkMask);
+            final E e = lvElement(chunk, offset);// LoadLoad
+            if (null == e) {
+                break;
+            }
+            spElement(chunk, offset, null);
+            consumerIndex = index + 1;
+            c.accept(e);
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only. Slots in the current chunk are always free
+     * so the run to the end of the chunk is filled with no checks.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        int i = 0;
+        while (i < limit) {
+            long index = producerIndex;
+            if (index >= producerLimit) {
+                linkChunk(index, s.get());
+                i++;
+                continue;
+            }
+            final E[] chunk = producerChunk;
+            final long batchLimit = Math.min(producerLimit, index + (limit - i));
+            for (; index < batchLimit; index++, i++) {
+                producerIndex = index + 1; // do increment here so the ordered store give both a barrier
+                soElement(chunk, calcElementOffset(index, chunkMask), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the consumer, so it is the same as {@link #offer(Object)}.
+     */
+    @Override
+    public boolean relaxedOffer(final E e) {
+        return offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producer, so it is the same as {@link #poll()}.
+     */
+    @Override
+    public E relaxedPoll() {
+        return poll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation never waits on the producer, so it is the same as {@link #peek()}.
+     */
+    @Override
+    public E relaxedPeek() {
+        return peek();
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) Math.min(currentProducerIndex - after, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lvConsumerIndex() == lvProducerIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent and non-blocking: it walks the chunks from the consumer chunk observed when it
+     * was created up to the producer index observed then, skipping slots consumed since, without writing to the queue.
+     * As chunks are handed back for reuse every read is followed by a check that the consumer has not moved past the
+     * chunk, if it has the iterator moves on to the consumer chunk. Elements added after the iterator was created are
+     * not returned. {@link Iterator#remove()} is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new WeakIterator();
+    }
+
+    private final class WeakIterator implements Iterator<E> {
+        private final long pIndex;
+        private E[] chunk;
+        private long chunkLimit;
+        private long nextIndex;
+        private E nextElement;
+
+        WeakIterator() {
+            toConsumerChunk();
+            pIndex = lvProducerIndex();
+            nextElement = getNext();
+        }
+
+        /**
+         * Move to the consumer chunk, the limit is read on both sides of the chunk to make sure they match.
+         */
+        private void toConsumerChunk() {
+            long limit;
+            E[] c;
+            long cIndex;
+            do {
+                limit = lvConsumerLimit();
+                c = lvConsumerChunk();
+                cIndex = lvConsumerIndex();
+            } while (MOVING_CHUNK == limit || limit != lvConsumerLimit());
+            chunk = c;
+            chunkLimit = limit;
+            // everything before the consumer chunk is consumed, even if drain has not published the index yet
+            nextIndex = Math.max(nextIndex, Math.max(cIndex, limit - chunkSize));
+        }
+
+        private E getNext() {
+            while (nextIndex < pIndex) {
+                if (nextIndex >= chunkLimit) {
+                    final E[] next = nextIndex == chunkLimit ? lvNext(chunk) : null;// LoadLoad
+                    if (nextIndex > chunkLimit || lvConsumerLimit() > chunkLimit) {
+                        // skipped past the chunk along with the consumer, or the chunk may have been handed back and
+                        // the link is not to be trusted
+                        toConsumerChunk();
+                    } else if (null == next) {
+                        // not linked yet
+                        return null;
+                    } else {
+                        chunk = next;
+                        chunkLimit += chunkSize;
+                    }
+                    continue;
+                }
+                final E e = lvElement(chunk, calcElementOffset(nextIndex, chunkMask));// LoadLoad
+                if (lvConsumerLimit() > chunkLimit) {
+                    toConsumerChunk();
+                    continue;
+                }
+                if (null != e) {
+                    nextIndex++;
+                    return e;
+                }
+                // consumed since, or not yet visible
+                nextIndex = Math.max(nextIndex + 1, lvConsumerIndex());
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != nextElement;
+        }
+
+        @Override
+        public E next() {
+            final E e = nextElement;
+            if (null == e) {
+                throw new NoSuchElementException();
+            }
+            nextElement = getNext();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
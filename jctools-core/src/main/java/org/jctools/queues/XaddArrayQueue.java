@@ -0,0 +1,270 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import org.jctools.util.UnsafeAccess;
+
+abstract class XaddArrayQueueL1Pad<E> extends ConcurrentSequencedCircularArrayQueue<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public XaddArrayQueueL1Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class XaddArrayQueueProducerField<E> extends XaddArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(XaddArrayQueueProducerField.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long producerIndex;
+
+    public XaddArrayQueueProducerField(int capacity) {
+        super(capacity);
+    }
+
+    protected final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    protected final boolean casProducerIndex(long expect, long newValue) {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+
+    protected final long getAndAddProducerIndex(long delta) {
+        return XaddArrayQueue.getAndAdd(this, P_INDEX_OFFSET, delta);
+    }
+}
+
+abstract class XaddArrayQueueL2Pad<E> extends XaddArrayQueueProducerField<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public XaddArrayQueueL2Pad(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class XaddArrayQueueConsumerField<E> extends XaddArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(XaddArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    private volatile long consumerIndex;
+
+    public XaddArrayQueueConsumerField(int capacity) {
+        super(capacity);
+    }
+
+    protected final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    protected final long lpConsumerIndex() {
+        return UNSAFE.getLong(this, C_INDEX_OFFSET);
+    }
+
+    protected final void soConsumerIndex(long v) {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, v);
+    }
+
+    protected final long getAndAddConsumerIndex(long delta) {
+        return XaddArrayQueue.getAndAdd(this, C_INDEX_OFFSET, delta);
+    }
+}
+
+/**
+ * The common producer side of {@link MpscXaddArrayQueue} and {@link MpmcXaddArrayQueue}. Producers claim a ticket
+ * (an index) by atomically incrementing the producer index with getAndAdd (XADD on x86) rather than a CAS loop, so
+ * a producer never retries on contention on the index. Slots use the sequence markers of the {@link MpmcArrayQueue}
+ * (sequence == index when free for the producer holding index, index + 1 once claimed by it and index + capacity once
+ * consumed) and a ticket only turns into a slot once the producer wins a CAS on the slot sequence. This CAS is only
+ * contended by the single consumer holding the same index, which may mark a slot it got to before the producer as
+ * skipped (moving the sequence to index + capacity), in the style of the LCRQ/CRQ algorithm. A producer whose ticket
+ * has been skipped, or whose slot is still held by the previous lap, takes a new ticket. Tickets given up this way
+ * leave holes which consumers skip, so size() may over estimate the number of elements while producers race on a
+ * full queue.
+ * <p>
+ * Holes also count against the capacity until a consumer walks past them. Producers racing on a full queue may take
+ * tickets past consumer index + capacity and give them up, and once the elements are consumed offer() may return
+ * false on a queue holding fewer than capacity (even no) elements, until the next poll() skips the holes. A ticket
+ * given up can not be told apart from one held by a producer which is yet to claim its slot, so producers can not
+ * skip the holes themselves. Use {@link MpscArrayQueue} or {@link MpmcArrayQueue} where an offer must only fail on a
+ * full queue.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+abstract class XaddArrayQueue<E> extends XaddArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    protected XaddArrayQueue(int capacity) {
+        super(Math.max(2, capacity));
+    }
+
+    static long getAndAdd(Object o, long offset, long delta) {
+        if (UnsafeAccess.SUPPORTS_GET_AND_ADD) {
+            return UNSAFE.getAndAddLong(o, offset, delta);
+        }
+        long v;
+        do {
+            v = UNSAFE.getLongVolatile(o, offset);
+        } while (!UNSAFE.compareAndSwapLong(o, offset, v, v + delta));
+        return v;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * The queue is checked for room before a ticket is taken, so tickets are only wasted by producers racing for the
+     * last few slots of the queue. The room is counted in tickets rather than elements, so this method may return
+     * false on a queue which is not full while wasted tickets are yet to be skipped by a consumer, see
+     * {@link XaddArrayQueue}.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        final long[] lSequenceBuffer = sequenceBuffer;
+        while (true) {
+            if (lvProducerIndex() - lvConsumerIndex() >= capacity) {
+                return false; // FULL :(
+            }
+            final long ticket = getAndAddProducerIndex(1);
+            if (claimSlot(lSequenceBuffer, ticket)) {
+                soElement(calcElementOffset(ticket), e); // StoreStore
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * A run of tickets is taken with a single getAndAdd, the supplier is only called for the tickets which turn into
+     * slots, so this method may fill less than limit elements on a queue which is not full.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        final int batchSize = (int) Math.min(capacity - (lvProducerIndex() - lvConsumerIndex()), limit);
+        if (batchSize <= 0) {
+            return 0;
+        }
+        final long ticket = getAndAddProducerIndex(batchSize);
+        int filled = 0;
+        for (int i = 0; i < batchSize; i++) {
+            if (claimSlot(lSequenceBuffer, ticket + i)) {
+                soElement(calcElementOffset(ticket + i), s.get()); // StoreStore
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * @return true if the slot for the ticket is now claimed by this producer, false if the ticket is lost
+     */
+    private boolean claimSlot(final long[] lSequenceBuffer, final long ticket) {
+        final long seqOffset = calcSequenceOffset(ticket);
+        long seq;
+        while ((seq = lvSequence(lSequenceBuffer, seqOffset)) == ticket) { // LoadLoad
+            if (casSequence(lSequenceBuffer, seqOffset, ticket, ticket + 1)) {
+                return true;
+            }
+            // lost to the consumer marking the slot skipped, the sequence has moved on
+        }
+        // seq > ticket: skipped by the consumer holding the ticket
+        // seq < ticket: the previous lap is still in progress, the consumer holding the ticket will skip it
+        return false;
+    }
+
+    /**
+     * Take the element out of a slot claimed by the producer holding the index, waiting for the producer to write
+     * it if need be.
+     */
+    protected final E consumeSlot(final long[] lSequenceBuffer, final long seqOffset, final long index) {
+        final long offset = calcElementOffset(index);
+        E e;
+        // the producer may have claimed the slot but not stored the element yet
+        while (null == (e = lvElement(offset))); // LoadLoad
+        spElement(offset, null);
+        soSequence(lSequenceBuffer, seqOffset, index + capacity); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Returns the first visible element between the consumer and producer indices, skipping over slots of producers
+     * which are yet to claim their ticket.
+     */
+    @Override
+    public E peek() {
+        final long[] lSequenceBuffer = sequenceBuffer;
+        long index = lvConsumerIndex();
+        final long pIndex = lvProducerIndex();
+        for (; index < pIndex; index++) {
+            if (lvSequence(lSequenceBuffer, calcSequenceOffset(index)) == index + 1) {
+                final E e = lvElement(calcElementOffset(index));
+                if (null != e) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. Consumers may take tickets
+         * past the producer index on an empty queue, in which case the size is 0.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) Math.max(0, Math.min(capacity, currentProducerIndex - after));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lvConsumerIndex() >= lvProducerIndex();
+    }
+}
@@ -23,13 +23,18 @@
  * offer which trades the FIFO ordering(re-ordering is not limited) for reduced contention and increased throughput
  * under contention.
  * <li> Bounded SPMC/MPMC queues
+ * <li> Bounded primitive long/int queues for all of the above, see {@link org.jctools.queues.LongMessagePassingQueue}
+ * and {@link org.jctools.queues.IntMessagePassingQueue}. Elements are never boxed.
  * </ol>
  * <p>
  * <b>Limited Queue methods support:</b><br>
  * The queues implement a subset of the {@link java.util.Queue} interface which is documented under the
  * {@link org.jctools.queues.MessagePassingQueue} interface. In particular:
  * <ol>
- * <li> {@link java.util.Queue#iterator()} is not supported
+ * <li> {@link java.util.Queue#iterator()} is supported by the circular array, linked, segmented, chunked and growable
+ * array queues. The iterators are weakly consistent, do not support removal and are intended for
+ * monitoring/diagnostics.
+ * Other queues do not support it.
  * </ol>
  * <p>
  * <b>Memory layout controls and False Sharing:</b><br>
@@ -23,6 +23,11 @@ public final class ConcurrentQueueSpec {
     public final int capacity;
     public final Ordering ordering;
     public final Preference preference;
+    /**
+     * Array based queues only use every 2^sparseShift slot of their buffer, trading footprint for less false sharing
+     * between neighbouring elements. Defaults to the "sparse.shift" system property, 0 (dense) if not set.
+     */
+    public final int sparseShift;
 
     public static ConcurrentQueueSpec createBoundedSpsc(int capacity) {
         return new ConcurrentQueueSpec(1, 1, capacity, Ordering.FIFO, Preference.NONE);
@@ -38,12 +43,18 @@ public final class ConcurrentQueueSpec {
     }
 
     public ConcurrentQueueSpec(int producers, int consumers, int capacity, Ordering ordering, Preference preference) {
+        this(producers, consumers, capacity, ordering, preference, Integer.getInteger("sparse.shift", 0));
+    }
+
+    public ConcurrentQueueSpec(int producers, int consumers, int capacity, Ordering ordering, Preference preference,
+            int sparseShift) {
         super();
         this.producers = producers;
         this.consumers = consumers;
         this.capacity = capacity;
         this.ordering = ordering;
         this.preference = preference;
+        this.sparseShift = sparseShift;
     }
 
     public boolean isSpsc() {
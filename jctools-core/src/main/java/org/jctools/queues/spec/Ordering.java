@@ -14,5 +14,14 @@
 package org.jctools.queues.spec;
 
 public enum Ordering {
-    FIFO, KFIFO, PRODUCER_FIFO, NONE
+    FIFO,
+    /**
+     * An element may be overtaken by at most k - 1 elements offered after it.
+     */
+    KFIFO,
+    /**
+     * Elements offered by the same producer are polled in the order they were offered.
+     */
+    PRODUCER_FIFO,
+    NONE
 }
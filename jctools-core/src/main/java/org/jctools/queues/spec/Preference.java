@@ -14,5 +14,18 @@
 package org.jctools.queues.spec;
 
 public enum Preference {
-    LATENCY, THROUGHPUT, NONE
+    /**
+     * Minimal and predictable latency per element, e.g. no batching and no allocation of large chunks on offer.
+     */
+    LATENCY,
+    /**
+     * Maximal throughput at the cost of latency, e.g. consumers batch their loads.
+     */
+    THROUGHPUT,
+    /**
+     * Minimal memory footprint per instance at the cost of false sharing between producer and consumer fields, for
+     * use cases with a very large number of mostly uncontended queues.
+     */
+    FOOTPRINT,
+    NONE
 }
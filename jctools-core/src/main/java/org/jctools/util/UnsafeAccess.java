@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
  */
 public class UnsafeAccess {
     public static final boolean SUPPORTS_GET_AND_SET;
+    public static final boolean SUPPORTS_GET_AND_ADD;
     public static final Unsafe UNSAFE;
     static {
         try {
@@ -42,6 +43,7 @@ public class UnsafeAccess {
             UNSAFE = (Unsafe) field.get(null);
         } catch (Exception e) {
             SUPPORTS_GET_AND_SET = false;
+            SUPPORTS_GET_AND_ADD = false;
             throw new RuntimeException(e);
         }
         boolean getAndSetSupport = false;
@@ -51,6 +53,13 @@ public class UnsafeAccess {
         } catch (Exception e) {
         }
         SUPPORTS_GET_AND_SET = getAndSetSupport;
+        boolean getAndAddSupport = false;
+        try {
+            Unsafe.class.getMethod("getAndAddLong", Object.class, Long.TYPE, Long.TYPE);
+            getAndAddSupport = true;
+        } catch (Exception e) {
+        }
+        SUPPORTS_GET_AND_ADD = getAndAddSupport;
     }
 
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.util;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * Static offset computation and differently memory fenced load/store methods for reference arrays. This is the
+ * counterpart of the instance methods offered by {@link org.jctools.queues.ConcurrentCircularArrayQueue} for data
+ * structures which do not have a single final buffer, e.g. queues made of linked array chunks.
+ * <p>
+ * Unlike the circular array queues no padding is assumed at either end of the array, the offset of element 0 is
+ * the array base offset.
+ *
+ * @author nitsanw
+ */
+public final class UnsafeRefArrayAccess {
+    public static final long REF_ARRAY_BASE;
+    public static final int REF_ELEMENT_SHIFT;
+    static {
+        final int scale = UNSAFE.arrayIndexScale(Object[].class);
+        if (4 == scale) {
+            REF_ELEMENT_SHIFT = 2;
+        } else if (8 == scale) {
+            REF_ELEMENT_SHIFT = 3;
+        } else {
+            throw new IllegalStateException("Unknown pointer size");
+        }
+        REF_ARRAY_BASE = UNSAFE.arrayBaseOffset(Object[].class);
+    }
+
+    private UnsafeRefArrayAccess() {
+    }
+
+    /**
+     * @param index desirable element index
+     * @return the offset in bytes within the array for a given index.
+     */
+    public static long calcElementOffset(long index) {
+        return REF_ARRAY_BASE + (index << REF_ELEMENT_SHIFT);
+    }
+
+    /**
+     * @param index desirable element index
+     * @param mask (length - 1) for a power of 2 sized array
+     * @return the offset in bytes within the array for a given index, wrapped by mask.
+     */
+    public static long calcElementOffset(long index, long mask) {
+        return REF_ARRAY_BASE + ((index & mask) << REF_ELEMENT_SHIFT);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeRefArrayAccess#calcElementOffset(long, long)}
+     * @param e a kitty
+     */
+    public static <E> void spElement(E[] buffer, long offset, E e) {
+        UNSAFE.putObject(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeRefArrayAccess#calcElementOffset(long, long)}
+     * @param e an orderly kitty
+     */
+    public static <E> void soElement(E[] buffer, long offset, E e) {
+        UNSAFE.putOrderedObject(buffer, offset, e);
+    }
+
+    /**
+     * A plain load (no ordering/fences) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeRefArrayAccess#calcElementOffset(long, long)}
+     * @return the element at the offset
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> E lpElement(E[] buffer, long offset) {
+        return (E) UNSAFE.getObject(buffer, offset);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeRefArrayAccess#calcElementOffset(long, long)}
+     * @return the element at the offset
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> E lvElement(E[] buffer, long offset) {
+        return (E) UNSAFE.getObjectVolatile(buffer, offset);
+    }
+}
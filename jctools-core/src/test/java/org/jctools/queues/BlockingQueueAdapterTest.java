@@ -0,0 +1,80 @@
+package org.jctools.queues;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class BlockingQueueAdapterTest {
+    @Test(timeout = 10000)
+    public void shouldWakeConsumerBlockedOnTake() throws Exception {
+        // Arrange
+        final BlockingQueue<Integer> q = QueueFactory.newBlockingQueue(ConcurrentQueueSpec.createBoundedMpmc(16));
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    q.put(1);
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+
+        // Act
+        producer.start();
+        final Integer e = q.take();
+
+        // Assert
+        assertThat(e, is(1));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldWakeProducerBlockedOnPut() throws Exception {
+        // Arrange
+        final BlockingQueue<Integer> q = QueueFactory.newBlockingQueue(ConcurrentQueueSpec.createBoundedSpsc(2));
+        while (q.offer(0)) {
+        }
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    q.take();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+
+        // Act
+        consumer.start();
+        q.put(1);
+        consumer.join();
+
+        // Assert
+        assertFalse(q.offer(2));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldTimeOutOnEmptyAndFull() throws Exception {
+        // Arrange
+        final BlockingQueue<Integer> q = QueueFactory.newBlockingQueue(ConcurrentQueueSpec.createBoundedMpsc(2));
+
+        // Act
+        final Integer polled = q.poll(10, TimeUnit.MILLISECONDS);
+        while (q.offer(0)) {
+        }
+
+        // Assert
+        assertThat(polled, nullValue());
+        assertFalse(q.offer(1, 10, TimeUnit.MILLISECONDS));
+    }
+}
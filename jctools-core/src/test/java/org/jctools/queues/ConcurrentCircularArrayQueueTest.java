@@ -0,0 +1,242 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrentCircularArrayQueueTest {
+    @Test
+    public void fillShouldNotDropSuppliedElementWhenOfferLosesRace() {
+        // Arrange: the first offers fail as if another producer took the space seen by fill
+        final RacyQueue q = new RacyQueue(4, 3);
+        final int[] supplied = { 0 };
+
+        // Act
+        final int filled = q.fill(new MessagePassingQueue.Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return supplied[0]++;
+            }
+        }, 8);
+
+        // Assert
+        assertThat(filled, is(4));
+        assertThat(supplied[0], is(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat(q.poll(), is(i));
+        }
+    }
+
+    @Test
+    public void longFillShouldNotDropSuppliedElementWhenOfferLosesRace() {
+        // Arrange
+        final RacyLongQueue q = new RacyLongQueue(4, 3);
+        final long[] supplied = { 0 };
+
+        // Act
+        final int filled = q.fill(new LongMessagePassingQueue.LongSupplier() {
+            @Override
+            public long get() {
+                return supplied[0]++;
+            }
+        }, 8);
+
+        // Assert
+        assertThat(filled, is(4));
+        assertThat(supplied[0], is(4L));
+        for (long i = 0; i < 4; i++) {
+            assertThat(q.elements.poll(), is(i));
+        }
+    }
+
+    @Test
+    public void intFillShouldNotDropSuppliedElementWhenOfferLosesRace() {
+        // Arrange
+        final RacyIntQueue q = new RacyIntQueue(4, 3);
+        final int[] supplied = { 0 };
+
+        // Act
+        final int filled = q.fill(new IntMessagePassingQueue.IntSupplier() {
+            @Override
+            public int get() {
+                return supplied[0]++;
+            }
+        }, 8);
+
+        // Assert
+        assertThat(filled, is(4));
+        assertThat(supplied[0], is(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat(q.elements.poll(), is(i));
+        }
+    }
+
+    /**
+     * A fixed capacity queue using the {@link ConcurrentCircularArrayQueue} fallback fill, backed by a deque rather
+     * than the buffer.
+     */
+    private static final class RacyQueue extends ConcurrentCircularArrayQueue<Integer> {
+        private final ArrayDeque<Integer> elements = new ArrayDeque<Integer>();
+        private int failures;
+        private long producerIndex;
+        private long consumerIndex;
+
+        RacyQueue(int capacity, int failures) {
+            super(capacity);
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean offer(Integer e) {
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            if (elements.size() == capacity) {
+                return false;
+            }
+            producerIndex++;
+            return elements.offer(e);
+        }
+
+        @Override
+        public Integer poll() {
+            final Integer e = elements.poll();
+            if (null != e) {
+                consumerIndex++;
+            }
+            return e;
+        }
+
+        @Override
+        public Integer peek() {
+            return elements.peek();
+        }
+
+        @Override
+        public Integer relaxedPoll() {
+            return poll();
+        }
+
+        @Override
+        public Integer relaxedPeek() {
+            return peek();
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        protected long lvProducerIndex() {
+            return producerIndex;
+        }
+
+        @Override
+        protected long lvConsumerIndex() {
+            return consumerIndex;
+        }
+    }
+
+    /**
+     * The {@link ConcurrentCircularLongArrayQueue} counterpart of {@link RacyQueue}.
+     */
+    private static final class RacyLongQueue extends ConcurrentCircularLongArrayQueue {
+        private final ArrayDeque<Long> elements = new ArrayDeque<Long>();
+        private int failures;
+        private long producerIndex;
+        private long consumerIndex;
+
+        RacyLongQueue(int capacity, int failures) {
+            super(capacity);
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean offer(long e) {
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            if (elements.size() == capacity) {
+                return false;
+            }
+            producerIndex++;
+            return elements.offer(e);
+        }
+
+        @Override
+        public boolean poll(LongConsumer c) {
+            final Long e = elements.poll();
+            if (null == e) {
+                return false;
+            }
+            consumerIndex++;
+            c.accept(e);
+            return true;
+        }
+
+        @Override
+        protected long lvProducerIndex() {
+            return producerIndex;
+        }
+
+        @Override
+        protected long lvConsumerIndex() {
+            return consumerIndex;
+        }
+    }
+
+    /**
+     * The {@link ConcurrentCircularIntArrayQueue} counterpart of {@link RacyQueue}.
+     */
+    private static final class RacyIntQueue extends ConcurrentCircularIntArrayQueue {
+        private final ArrayDeque<Integer> elements = new ArrayDeque<Integer>();
+        private int failures;
+        private long producerIndex;
+        private long consumerIndex;
+
+        RacyIntQueue(int capacity, int failures) {
+            super(capacity);
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean offer(int e) {
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            if (elements.size() == capacity) {
+                return false;
+            }
+            producerIndex++;
+            return elements.offer(e);
+        }
+
+        @Override
+        public boolean poll(IntConsumer c) {
+            final Integer e = elements.poll();
+            if (null == e) {
+                return false;
+            }
+            consumerIndex++;
+            c.accept(e);
+            return true;
+        }
+
+        @Override
+        protected long lvProducerIndex() {
+            return producerIndex;
+        }
+
+        @Override
+        protected long lvConsumerIndex() {
+            return consumerIndex;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.jctools.queues;
+
+import org.jctools.queues.LongMessagePassingQueue.LongConsumer;
+import org.jctools.queues.LongMessagePassingQueue.LongSupplier;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.jctools.queues.spec.Preference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class LongQueueSanityTest {
+
+    private static final int SIZE = 8192 * 2;
+
+    @Parameterized.Parameters
+    public static Collection queues() {
+        return Arrays.asList(
+                test(1, 1, 1),
+                test(1, 1, SIZE),
+                test(1, 0, 1),
+                test(1, 0, SIZE),
+                test(0, 1, 1),
+                test(0, 1, SIZE),
+                test(0, 0, 1),
+                test(0, 0, SIZE)
+        );
+    }
+
+    private final LongMessagePassingQueue queue;
+    private final Collector collector = new Collector();
+
+    public LongQueueSanityTest(ConcurrentQueueSpec spec) {
+        queue = QueueFactory.newLongQueue(spec);
+    }
+
+    @Test
+    public void sanity() {
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+        int i = 0;
+        while (i < SIZE && queue.offer(value(i))) {
+            i++;
+        }
+        final int size = i;
+        assertThat(size, is(queue.capacity()));
+        assertThat(queue.size(), is(size));
+
+        for (i = 0; i < size; i++) {
+            assertTrue(queue.poll(collector));
+            assertThat(collector.last, is(value(i)));
+        }
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void whenFillThenDrainAllElementsArePassedThrough() {
+        final LongSupplier s = new LongSupplier() {
+            int i;
+
+            @Override
+            public long get() {
+                return value(i++);
+            }
+        };
+        final int filled = queue.fill(s, SIZE);
+        assertThat(filled, is(Math.min(SIZE, queue.capacity())));
+        assertThat(queue.fill(s, 1), is(0));
+
+        final int drained = queue.drain(collector, SIZE);
+        assertThat(drained, is(filled));
+        assertThat(collector.count, is(filled));
+        assertThat(collector.last, is(value(filled - 1)));
+        assertThat(queue.drain(collector, SIZE), is(0));
+        assertTrue(queue.isEmpty());
+    }
+
+    // cover the values a sentinel based queue could not pass through
+    private static long value(int i) {
+        return Long.MIN_VALUE + i;
+    }
+
+    private static final class Collector implements LongConsumer {
+        long last;
+        int count;
+
+        @Override
+        public void accept(long e) {
+            if (count > 0) {
+                assertThat(e, is(last + 1));
+            }
+            last = e;
+            count++;
+        }
+    }
+
+    private static Object[] test(int producers, int consumers, int capacity) {
+        return new Object[] { new ConcurrentQueueSpec(producers, consumers, capacity, Ordering.FIFO,
+                Preference.NONE) };
+    }
+}
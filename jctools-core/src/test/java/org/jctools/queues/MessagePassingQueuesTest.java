@@ -0,0 +1,65 @@
+package org.jctools.queues;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MessagePassingQueuesTest {
+    @Test(timeout = 10000)
+    public void shouldWakeParkedConsumerOnOffer() throws Exception {
+        // Arrange
+        final SpscArrayQueue<Integer> q = new SpscArrayQueue<Integer>(16);
+        final ParkWaitStrategy w = new ParkWaitStrategy(0);
+        final AtomicReference<Object> polled = new AtomicReference<Object>();
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    polled.set(MessagePassingQueues.poll(q, w));
+                } catch (InterruptedException e) {
+                    polled.set(e);
+                }
+            }
+        };
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+
+        // Act
+        MessagePassingQueues.offer(q, 1, w);
+        consumer.join();
+
+        // Assert
+        assertThat(polled.get(), is((Object) 1));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldThrowWhenInterruptedWhileWaiting() throws Exception {
+        // Arrange
+        final MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(16);
+        final AtomicReference<Object> polled = new AtomicReference<Object>();
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    polled.set(MessagePassingQueues.poll(q, new BackoffWaitStrategy()));
+                } catch (InterruptedException e) {
+                    polled.set(e);
+                }
+            }
+        };
+        consumer.start();
+
+        // Act
+        consumer.interrupt();
+        consumer.join();
+
+        // Assert
+        assertThat(polled.get(), instanceOf(InterruptedException.class));
+    }
+}
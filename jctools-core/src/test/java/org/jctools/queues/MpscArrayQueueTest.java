@@ -0,0 +1,75 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+
+public class MpscArrayQueueTest {
+    @Test
+    public void offerBatchShouldBeTruncatedToAvailableSpace() {
+        // Arrange
+        final MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(8);
+        final Integer[] src = new Integer[12];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = i;
+        }
+
+        // Act
+        final int first = q.offerBatch(src, 0, 6);
+        final int second = q.offerBatch(src, 6, 6);
+        final int third = q.offerBatch(src, 8, 4);
+
+        // Assert
+        assertThat(first, is(6));
+        assertThat(second, is(2));
+        assertThat(third, is(0));
+        assertThat(q, hasSize(8));
+        for (int i = 0; i < 8; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+
+        // space made by the consumer is visible to the next batch
+        assertThat(q.offerBatch(src, 8, 4), is(4));
+        for (int i = 8; i < 12; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offerBatchShouldRejectNullsBeforeClaimingSlots() {
+        final MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(8);
+        try {
+            q.offerBatch(new Integer[] { 1, null, 3 }, 0, 3);
+        } finally {
+            assertThat(q, emptyAndZeroSize());
+        }
+    }
+
+    @Test
+    public void fillShouldNotClaimSlotsForNonPositiveLimit() {
+        // Arrange
+        final MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(8);
+        final MessagePassingQueue.Supplier<Integer> s = new MessagePassingQueue.Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return 1;
+            }
+        };
+
+        // Act
+        final int zero = q.fill(s, 0);
+        final int negative = q.fill(s, -1);
+
+        // Assert
+        assertThat(zero, is(0));
+        assertThat(negative, is(0));
+        assertThat(q, emptyAndZeroSize());
+        assertThat(q.offer(2), is(true));
+        assertThat(q.poll(), is(2));
+    }
+}
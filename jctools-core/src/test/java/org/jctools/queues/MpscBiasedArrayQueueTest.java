@@ -0,0 +1,316 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MpscBiasedArrayQueueTest {
+    @Test
+    public void shouldOfferToOwnerLaneUntilFull() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4, 2);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(q.offer(i));
+        }
+
+        // Act
+        final boolean[] otherOffers = new boolean[3];
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < otherOffers.length; i++) {
+                    otherOffers[i] = q.offer(10 + i);
+                }
+            }
+        };
+        other.start();
+        other.join();
+
+        // Assert
+        assertFalse(q.offer(4));
+        assertThat(otherOffers[0], is(true));
+        assertThat(otherOffers[1], is(true));
+        assertThat(otherOffers[2], is(false));
+        assertThat(q, hasSize(6));
+        for (int i = 0; i < 4; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q.poll(), is(10));
+        assertThat(q.poll(), is(11));
+        assertThat(q.poll(), nullValue());
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldRevokeBiasOfTerminatedOwner() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4);
+        final Thread owner = new Thread() {
+            @Override
+            public void run() {
+                q.offer(0);
+            }
+        };
+        owner.start();
+        owner.join();
+
+        // Act: the owner lane already holds an element, only 3 more fit if this thread took over the bias
+        int offered = 0;
+        while (q.offer(1 + offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(offered, is(3));
+        for (int i = 0; i < 4; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotTakeBiasWhileOwnElementsArePendingInSharedLane() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4);
+        final CountDownLatch offered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread owner = new Thread() {
+            @Override
+            public void run() {
+                q.offer(100);
+                offered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        owner.start();
+        offered.await();
+        assertTrue(q.offer(1));
+        release.countDown();
+        owner.join();
+
+        // Act
+        assertTrue(q.offer(2));
+
+        // Assert
+        assertThat(q.poll(), is(100));
+        assertThat(q.poll(), is(1));
+        assertThat(q.poll(), is(2));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldOnlyBiasTheGivenOwner() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4, 2, Thread.currentThread());
+        final boolean[] otherOffers = new boolean[3];
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < otherOffers.length; i++) {
+                    otherOffers[i] = q.offer(10 + i);
+                }
+            }
+        };
+
+        // Act: the other thread offers first, but is limited to the shared lane
+        other.start();
+        other.join();
+        int offered = 0;
+        while (q.offer(offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(otherOffers[0], is(true));
+        assertThat(otherOffers[1], is(true));
+        assertThat(otherOffers[2], is(false));
+        assertThat(offered, is(4));
+        assertThat(q, hasSize(6));
+    }
+
+    @Test
+    public void shouldMoveBiasToNewOwner() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4, 2);
+        assertTrue(q.offer(0));
+        assertThat(q.poll(), is(0));
+        final boolean[] newOwnerOffers = new boolean[5];
+        final CountDownLatch offered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread newOwner = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < newOwnerOffers.length; i++) {
+                    newOwnerOffers[i] = q.offer(1 + i);
+                }
+                offered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // Act
+        assertTrue(q.bias(newOwner));
+        newOwner.start();
+        offered.await();
+        // the former owner is limited to the shared lane while the new owner is alive
+        final boolean[] formerOwnerOffers = { q.offer(10), q.offer(11), q.offer(12) };
+        final boolean rebiased = q.bias(Thread.currentThread());
+        release.countDown();
+        newOwner.join();
+
+        // Assert
+        assertThat(newOwnerOffers[3], is(true));
+        assertThat(newOwnerOffers[4], is(false));
+        assertThat(formerOwnerOffers[0], is(true));
+        assertThat(formerOwnerOffers[1], is(true));
+        assertThat(formerOwnerOffers[2], is(false));
+        assertThat(rebiased, is(false));
+        for (int i = 1; i < 5; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q.poll(), is(10));
+        assertThat(q.poll(), is(11));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotMoveBiasWhileOwnerElementsArePending() {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4, 2);
+        assertTrue(q.offer(1));
+        assertTrue(q.offer(2));
+
+        // Act: moving the bias would send the next offer to the shared lane, ahead of the pending elements
+        final boolean moved = q.bias(new Thread());
+        assertTrue(q.offer(3));
+
+        // Assert
+        assertThat(moved, is(false));
+        final List<Integer> drained = new ArrayList<Integer>();
+        q.drain(new MessagePassingQueue.Consumer<Integer>() {
+            @Override
+            public void accept(Integer e) {
+                drained.add(e);
+            }
+        }, 8);
+        assertThat(drained, contains(1, 2, 3));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldKeepBiasForOwnerNotStartedYet() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(4, 2);
+        final boolean[] ownerOffers = new boolean[5];
+        final Thread owner = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ownerOffers.length; i++) {
+                    ownerOffers[i] = q.offer(i);
+                }
+            }
+        };
+        assertTrue(q.bias(owner));
+
+        // Act: this thread offers before the owner is started, but must not take the bias over
+        final boolean[] otherOffers = { q.offer(10), q.offer(11), q.offer(12) };
+        owner.start();
+        owner.join();
+
+        // Assert
+        assertThat(otherOffers[1], is(true));
+        assertThat(otherOffers[2], is(false));
+        assertThat(ownerOffers[3], is(true));
+        assertThat(ownerOffers[4], is(false));
+        assertThat(q, hasSize(6));
+    }
+
+    @Test
+    public void shouldNotStarveSharedLaneOnRelaxedPoll() throws InterruptedException {
+        // Arrange
+        final MpscBiasedArrayQueue<Integer> q = new MpscBiasedArrayQueue<Integer>(1024, 2, Thread.currentThread());
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(q.offer(i));
+        }
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                q.offer(-1);
+            }
+        };
+        other.start();
+        other.join();
+
+        // Act
+        int polls = 0;
+        Integer e;
+        while ((e = q.relaxedPoll()) != -1) {
+            assertThat(e, is(polls++));
+        }
+
+        // Assert
+        assertTrue(polls < 1024);
+        assertThat(q, hasSize(1024 - polls));
+    }
+
+    @Test
+    public void shouldKeepOrderPerProducer() throws InterruptedException {
+        // Arrange
+        final int producers = 3;
+        final int messages = 50000;
+        final MpscBiasedArrayQueue<Long> q = new MpscBiasedArrayQueue<Long>(1024, 64);
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < messages; i++) {
+                        while (!q.offer((id << 32) | i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+        }
+
+        // Act
+        for (Thread t : threads) {
+            t.start();
+        }
+        final long[] next = new long[producers];
+        for (int i = 0; i < producers * messages; i++) {
+            Long e;
+            while (null == (e = q.poll())) {
+                Thread.yield();
+            }
+
+            // Assert
+            final int id = (int) (e >>> 32);
+            assertThat(e & 0xFFFFFFFFL, is(next[id]++));
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+}
@@ -0,0 +1,33 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+
+public class MpscCompoundQueueTest {
+    @Test
+    public void whenSingleProducerThenAllLanesAreFilled() {
+        // Arrange
+        final MpscCompoundQueue<Integer> q = new MpscCompoundQueue<Integer>(1024, 8);
+
+        // Act
+        int offered = 0;
+        while (offered < 2048 && q.offer(offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(offered, is(1024));
+        assertThat(q, hasSize(1024));
+        int sum = 0;
+        Integer e;
+        while ((e = q.poll()) != null) {
+            sum += e;
+        }
+        assertThat(sum, is(1023 * 1024 / 2));
+        assertThat(q, emptyAndZeroSize());
+    }
+}
@@ -0,0 +1,157 @@
+package org.jctools.queues;
+
+import org.jctools.queues.MpscIntrusiveLinkedQueue.AbstractNode;
+import org.jctools.queues.MpscIntrusiveLinkedQueue.Node;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MpscIntrusiveLinkedQueueTest {
+    static final class Message extends AbstractNode {
+        long value;
+
+        Message(long value) {
+            this.value = value;
+        }
+    }
+
+    static final class PlainMessage implements Node {
+        private volatile Node next;
+
+        @Override
+        public Node lvNext() {
+            return next;
+        }
+
+        @Override
+        public void soNext(Node n) {
+            next = n;
+        }
+
+        @Override
+        public void spNext(Node n) {
+            next = n;
+        }
+    }
+
+    @Test
+    public void shouldPollMessagesInOrderAndAllowReuse() {
+        // Arrange
+        final MpscIntrusiveLinkedQueue<Message> q = new MpscIntrusiveLinkedQueue<Message>();
+        final Message[] messages = new Message[3];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new Message(i);
+        }
+
+        // Act & Assert
+        for (int round = 0; round < 3; round++) {
+            for (Message m : messages) {
+                assertTrue(q.offer(m));
+            }
+            assertThat(q, hasSize(messages.length));
+            for (Message m : messages) {
+                assertThat(q.peek(), sameInstance(m));
+                final Message polled = q.poll();
+                assertThat(polled, sameInstance(m));
+                assertThat(polled.lvNext(), nullValue());
+            }
+            assertThat(q.poll(), nullValue());
+            assertThat(q, emptyAndZeroSize());
+        }
+    }
+
+    @Test
+    public void shouldAcceptNodesImplementingTheInterface() {
+        // Arrange
+        final MpscIntrusiveLinkedQueue<PlainMessage> q = new MpscIntrusiveLinkedQueue<PlainMessage>();
+        final PlainMessage a = new PlainMessage();
+        final PlainMessage b = new PlainMessage();
+
+        // Act
+        q.offer(a);
+        q.offer(b);
+
+        // Assert
+        assertThat(q.poll(), sameInstance(a));
+        assertThat(q.relaxedPoll(), sameInstance(b));
+        assertThat(q.relaxedPoll(), nullValue());
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldDetachPendingChain() {
+        // Arrange
+        final MpscIntrusiveLinkedQueue<Message> q = new MpscIntrusiveLinkedQueue<Message>();
+        assertThat(q.detachChain(), nullValue());
+        for (int i = 0; i < 5; i++) {
+            q.offer(new Message(i));
+        }
+        assertThat(q.poll().value, is(0L));
+
+        // Act
+        final Message first = q.detachChain();
+
+        // Assert
+        assertThat(q, emptyAndZeroSize());
+        assertThat(q.poll(), nullValue());
+        long expected = 1;
+        for (Node n = first; n != null; n = n.lvNext()) {
+            assertThat(((Message) n).value, is(expected++));
+        }
+        assertThat(expected, is(5L));
+
+        // the queue is usable after the detach, and the detached nodes may be offered again
+        q.offer(first);
+        q.offer(new Message(5));
+        assertThat(q.poll(), sameInstance(first));
+        assertThat(q.poll().value, is(5L));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldKeepOrderPerProducerWithPollAndDetach() throws InterruptedException {
+        // Arrange
+        final int producers = 3;
+        final int messages = 50000;
+        final MpscIntrusiveLinkedQueue<Message> q = new MpscIntrusiveLinkedQueue<Message>();
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < messages; i++) {
+                        q.offer(new Message((id << 32) | i));
+                    }
+                }
+            };
+        }
+
+        // Act
+        for (Thread t : threads) {
+            t.start();
+        }
+        final long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * messages) {
+            Node n = (received & 1) == 0 ? q.poll() : q.detachChain();
+            for (; n != null; n = n.lvNext()) {
+                final long v = ((Message) n).value;
+
+                // Assert
+                assertThat(v & 0xFFFFFFFFL, is(next[(int) (v >>> 32)]++));
+                received++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+}
@@ -0,0 +1,159 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MpscOnSpscQueueTest {
+    @Test
+    public void shouldPollProducerLanesRoundRobin() {
+        // Arrange
+        final MpscOnSpscQueue<Integer> q = new MpscOnSpscQueue<Integer>(16);
+        final MpscOnSpscQueue.Producer<Integer> a = q.register();
+        final MpscOnSpscQueue.Producer<Integer> b = q.register();
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(a.offer(i));
+            assertTrue(b.offer(i * 10));
+        }
+        assertThat(q, hasSize(6));
+
+        // Act & Assert
+        for (int i = 1; i <= 3; i++) {
+            assertThat(q.peek(), is(i));
+            assertThat(q.poll(), is(i));
+            assertThat(q.poll(), is(i * 10));
+        }
+        assertThat(q.poll(), nullValue());
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldKeepElementsOfDeregisteredProducer() {
+        // Arrange
+        final MpscOnSpscQueue<Integer> q = new MpscOnSpscQueue<Integer>(16);
+        final MpscOnSpscQueue.Producer<Integer> a = q.register();
+        assertTrue(a.offer(1));
+        assertTrue(a.offer(2));
+
+        // Act
+        a.deregister();
+        final MpscOnSpscQueue.Producer<Integer> b = q.register();
+        assertTrue(b.offer(3));
+
+        // Assert
+        try {
+            a.offer(4);
+            fail("deregistered producer should not offer");
+        } catch (IllegalStateException expected) {
+        }
+        assertThat(q, hasSize(3));
+        for (int i = 1; i <= 3; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldAddLanesOnDemand() {
+        // Arrange
+        final int producers = 200;
+        final MpscOnSpscQueue<Integer> q = new MpscOnSpscQueue<Integer>(4);
+
+        // Act
+        for (int i = 0; i < producers; i++) {
+            assertTrue(q.register().offer(i));
+        }
+
+        // Assert
+        assertThat(q, hasSize(producers));
+        final boolean[] seen = new boolean[producers];
+        Integer e;
+        while ((e = q.poll()) != null) {
+            assertThat(seen[e], is(false));
+            seen[e] = true;
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldPollElementsOfImplicitProducerAfterItTerminates() throws InterruptedException {
+        // Arrange
+        final MpscOnSpscQueue<Integer> q = new MpscOnSpscQueue<Integer>(4);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                q.offer(1);
+            }
+        };
+
+        // Act
+        producer.start();
+        producer.join();
+        final MpscOnSpscQueue.Producer<Integer> p = q.register();
+        assertTrue(p.offer(2));
+
+        // Assert
+        assertThat(q, hasSize(2));
+        assertThat(q.poll(), is(1));
+        assertThat(q.poll(), is(2));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotLoseNonEmptySignalToConcurrentPoll() throws InterruptedException {
+        // Arrange
+        final int producers = 4;
+        final int messages = 20000;
+        final MpscOnSpscQueue<Integer> q = new MpscOnSpscQueue<Integer>(64);
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    final MpscOnSpscQueue.Producer<Integer> producer = q.register();
+                    for (int i = 0; i < messages; i++) {
+                        while (!producer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+        }
+
+        // Act
+        for (Thread t : threads) {
+            t.start();
+        }
+        int polled = 0;
+        boolean producing = true;
+        while (producing) {
+            producing = false;
+            for (Thread t : threads) {
+                producing |= t.isAlive();
+            }
+            while (null != q.poll()) {
+                polled++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // Assert: all offers are visible once the producers are joined, so no poll may miss an element
+        while (polled < producers * messages) {
+            assertThat(q.poll(), is(notNullValue()));
+            polled++;
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+}
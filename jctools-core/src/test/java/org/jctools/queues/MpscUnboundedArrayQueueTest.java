@@ -0,0 +1,87 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+
+public class MpscUnboundedArrayQueueTest {
+    @Test
+    public void shouldIterateAcrossReusedChunks() {
+        // Arrange
+        final MpscUnboundedArrayQueue<Integer> q = new MpscUnboundedArrayQueue<Integer>(4);
+        for (int i = 0; i < 8; i++) {
+            q.offer(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        // the third chunk is the first one offered back
+        for (int i = 8; i < 14; i++) {
+            q.offer(i);
+        }
+
+        // Act
+        final List<Integer> iterated = new ArrayList<Integer>();
+        for (Integer e : q) {
+            iterated.add(e);
+        }
+
+        // Assert
+        assertThat(iterated, contains(5, 6, 7, 8, 9, 10, 11, 12, 13));
+        assertThat(q.toString(), is("[5, 6, 7, 8, 9, 10, 11, 12, 13]"));
+        assertThat(q.contains(13), is(true));
+        assertThat(q.contains(4), is(false));
+    }
+
+    @Test
+    public void shouldIterateInOrderWhileProducerAndConsumerRun() throws InterruptedException {
+        // Arrange
+        final int messages = 50000;
+        final MpscUnboundedArrayQueue<Integer> q = new MpscUnboundedArrayQueue<Integer>(4);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < messages; i++) {
+                    while (!q.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                int polled = 0;
+                while (polled < messages) {
+                    if (null != q.poll()) {
+                        polled++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+
+        // Act
+        producer.start();
+        consumer.start();
+        while (consumer.isAlive()) {
+            int last = -1;
+            for (Integer e : q) {
+                // Assert: chunks handed back for reuse must not leak other elements into the iteration
+                assertThat(e, greaterThan(last));
+                last = e;
+            }
+        }
+        producer.join();
+        consumer.join();
+        assertThat(q, emptyAndZeroSize());
+    }
+}
@@ -0,0 +1,189 @@
+package org.jctools.queues;
+
+import org.jctools.queues.MessagePassingQueue.Consumer;
+import org.jctools.queues.MessagePassingQueue.Supplier;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.jctools.queues.spec.Preference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Queue;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class QueueHandlesTest {
+
+    private static final int SIZE = 64;
+
+    @Parameterized.Parameters
+    public static Collection queues() {
+        return Arrays.asList(
+                test(1, 1, SIZE),
+                test(1, 0, SIZE),
+                test(0, 1, SIZE),
+                test(0, 0, SIZE),
+                test(1, 1, 0),
+                test(0, 1, 0));
+    }
+
+    private final Queue<Integer> queue;
+    private final ConcurrentQueueSpec spec;
+
+    public QueueHandlesTest(ConcurrentQueueSpec spec) {
+        this.queue = QueueFactory.newQueue(spec);
+        this.spec = spec;
+    }
+
+    @Test
+    public void shouldOfferAndPollThroughHandles() {
+        // Arrange
+        final QueueProducer<Integer> producer = QueueHandles.newProducer(queue);
+        final QueueConsumer<Integer> consumer = QueueHandles.newConsumer(queue);
+
+        // Act
+        int offered = 0;
+        while (offered < SIZE && producer.offer(offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(offered, is(SIZE));
+        if (spec.isBounded()) {
+            assertThat(producer.offer(-1), is(false));
+        }
+        assertThat(queue, hasSize(SIZE));
+        for (int i = 0; i < SIZE; i++) {
+            assertThat(consumer.peek(), is(i));
+            assertThat(consumer.poll(), is(i));
+        }
+        assertThat(consumer.poll(), nullValue());
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldFillAndDrainThroughHandles() {
+        // Arrange
+        final QueueProducer<Integer> producer = QueueHandles.newProducer(queue);
+        final QueueConsumer<Integer> consumer = QueueHandles.newConsumer(queue);
+        final int[] next = new int[2];
+
+        // Act
+        for (int round = 0; round < 4; round++) {
+            final int filled = producer.fill(new Supplier<Integer>() {
+                @Override
+                public Integer get() {
+                    return next[0]++;
+                }
+            }, SIZE);
+            assertThat(filled, is(SIZE));
+            assertThat(queue, hasSize(SIZE));
+            final int drained = consumer.drain(new Consumer<Integer>() {
+                @Override
+                public void accept(Integer e) {
+                    assertThat(e, is(next[1]++));
+                }
+            }, Integer.MAX_VALUE);
+
+            // Assert
+            assertThat(drained, is(SIZE));
+            assertThat(queue, emptyAndZeroSize());
+        }
+    }
+
+    @Test
+    public void shouldFillPlainQueueOnlyWhileItHasRoom() {
+        // Arrange
+        final Queue<Integer> plain = new BlockingQueueAdapter<Integer>(queue,
+                spec.isBounded() ? spec.capacity : Integer.MAX_VALUE);
+        final QueueProducer<Integer> producer = QueueHandles.newProducer(plain);
+        final int[] supplied = new int[1];
+
+        // Act
+        final int filled = producer.fill(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return supplied[0]++;
+            }
+        }, 2 * SIZE);
+
+        // Assert
+        final int expected = spec.isBounded() ? SIZE : 2 * SIZE;
+        assertThat(filled, is(expected));
+        assertThat(supplied[0], is(expected));
+        for (int i = 0; i < expected; i++) {
+            assertThat(plain.poll(), is(i));
+        }
+        assertThat(plain.poll(), nullValue());
+    }
+
+    @Test
+    public void shouldPickUpQueueStateOnCreation() {
+        // Arrange
+        for (int i = 0; i < SIZE / 2; i++) {
+            assertTrue(queue.offer(i));
+        }
+        for (int i = 0; i < SIZE / 4; i++) {
+            assertThat(queue.poll(), is(i));
+        }
+
+        // Act
+        final QueueProducer<Integer> producer = QueueHandles.newProducer(queue);
+        final QueueConsumer<Integer> consumer = QueueHandles.newConsumer(queue);
+        for (int i = SIZE / 2; i < SIZE + SIZE / 4; i++) {
+            assertTrue(producer.offer(i));
+        }
+
+        // Assert
+        assertThat(queue, hasSize(SIZE));
+        for (int i = SIZE / 4; i < SIZE + SIZE / 4; i++) {
+            assertThat(consumer.poll(), is(i));
+        }
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldPassMessagesBetweenThreadsInOrder() throws InterruptedException {
+        // Arrange
+        final int messages = 100000;
+        final Thread producerThread = new Thread() {
+            @Override
+            public void run() {
+                final QueueProducer<Integer> producer = QueueHandles.newProducer(queue);
+                for (int i = 0; i < messages; i++) {
+                    while (!producer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        final QueueConsumer<Integer> consumer = QueueHandles.newConsumer(queue);
+
+        // Act
+        producerThread.start();
+        for (int i = 0; i < messages; i++) {
+            Integer e;
+            while (null == (e = consumer.poll())) {
+                Thread.yield();
+            }
+
+            // Assert
+            assertThat(e, is(i));
+        }
+        producerThread.join();
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    private static Object[] test(int producers, int consumers, int capacity) {
+        return new Object[]{new ConcurrentQueueSpec(producers, consumers, capacity, Ordering.FIFO, Preference.NONE)};
+    }
+}
@@ -3,6 +3,7 @@ package org.jctools.queues;
 import org.jctools.queues.spec.ConcurrentQueueSpec;
 import org.jctools.queues.spec.Ordering;
 import org.jctools.queues.spec.Preference;
+import org.jctools.util.Pow2;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,8 +13,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Queue;
 
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
@@ -33,6 +38,7 @@ public class QueueSanityTest {
                 test(1, 1, 1, Ordering.FIFO),
                 test(1, 1, 0, Ordering.FIFO),
                 test(1, 1, SIZE, Ordering.FIFO),
+                test(1, 0, 0, Ordering.FIFO),
                 test(1, 0, 1, Ordering.FIFO),
                 test(1, 0, SIZE, Ordering.FIFO),
                 test(0, 1, 0, Ordering.FIFO),
@@ -42,16 +48,47 @@ public class QueueSanityTest {
                 test(0, 1, SIZE, Ordering.PRODUCER_FIFO) ,
                 test(0, 1, 1, Ordering.NONE),
                 test(0, 1, SIZE, Ordering.NONE),
+                test(0, 0, 0, Ordering.FIFO),
                 test(0, 0, 1, Ordering.FIFO),
-                test(0, 0, SIZE, Ordering.FIFO)
+                test(0, 0, SIZE, Ordering.FIFO),
+                test(1, 1, 0, Ordering.FIFO, Preference.FOOTPRINT),
+                test(1, 1, 16, Ordering.FIFO, Preference.FOOTPRINT),
+                test(1, 1, SIZE, Ordering.FIFO, Preference.FOOTPRINT),
+                test(0, 1, 0, Ordering.FIFO, Preference.FOOTPRINT),
+                test(0, 1, SIZE, Ordering.FIFO, Preference.FOOTPRINT),
+                test(1, 1, SIZE, Ordering.FIFO, Preference.NONE, 2),
+                test(0, 1, SIZE, Ordering.FIFO, Preference.NONE, 2),
+                test(1, 0, SIZE, Ordering.FIFO, Preference.NONE, 2),
+                test(0, 0, 1, Ordering.FIFO, Preference.NONE, 3),
+                test(0, 0, SIZE, Ordering.FIFO, Preference.NONE, 2),
+                test(1, 1, 1, Ordering.FIFO, Preference.THROUGHPUT),
+                test(1, 1, SIZE, Ordering.FIFO, Preference.THROUGHPUT),
+                test(1, 1, SIZE, Ordering.FIFO, Preference.THROUGHPUT, 2),
+                test(0, 1, 1, Ordering.FIFO, Preference.THROUGHPUT),
+                test(0, 1, SIZE, Ordering.FIFO, Preference.THROUGHPUT),
+                test(0, 0, 1, Ordering.FIFO, Preference.THROUGHPUT),
+                test(0, 0, SIZE, Ordering.FIFO, Preference.THROUGHPUT),
+                test(1, 1, 0, Ordering.FIFO, Preference.LATENCY),
+                test(0, 1, 0, Ordering.FIFO, Preference.LATENCY),
+                test(0, 1, SIZE, Ordering.KFIFO),
+                test(0, 0, SIZE, Ordering.KFIFO),
+                test(0, 0, 1, Ordering.KFIFO),
+                test(0, 0, 100, Ordering.KFIFO),
+                test(0, 0, 1, Ordering.NONE),
+                test(0, 0, SIZE, Ordering.NONE),
+                // explicit lane counts, the default is the number of CPUs
+                test(0, 1, 4, Ordering.NONE, new MpscCompoundQueue<Integer>(4, 8)),
+                test(0, 1, SIZE, Ordering.NONE, new MpscCompoundQueue<Integer>(SIZE, 8)),
+                test(0, 0, 4, Ordering.NONE, new MpmcCompoundQueue<Integer>(4, 8)),
+                test(0, 0, SIZE, Ordering.NONE, new MpmcCompoundQueue<Integer>(SIZE, 8))
         );
     }
 
     private final Queue<Integer> queue;
     private final ConcurrentQueueSpec spec;
 
-    public QueueSanityTest(ConcurrentQueueSpec spec) {
-        queue = QueueFactory.newQueue(spec);
+    public QueueSanityTest(ConcurrentQueueSpec spec, Queue<Integer> queue) {
+        this.queue = queue != null ? queue : QueueFactory.<Integer> newQueue(spec);
         this.spec = spec;
     }
 
@@ -158,6 +195,44 @@ public class QueueSanityTest {
         assertThat(sum, is(0));
     }
 
+    @Test
+    public void whenSingleProducerThenProducerOrderIsKept() {
+        assumeThat(spec.ordering, is(Ordering.PRODUCER_FIFO));
+
+        // Arrange
+        int offered = 0;
+        while (offered < SIZE && queue.offer(offered)) {
+            offered++;
+        }
+
+        // Act
+        int polled = 0;
+        Integer e;
+        while ((e = queue.poll()) != null) {
+            assertThat(e, is(polled++));
+        }
+
+        // Assert
+        assertThat(polled, is(offered));
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void whenSingleProducerThenWholeCapacityIsAvailable() {
+        assumeThat(spec.isBounded(), is(true));
+
+        // Act
+        int offered = 0;
+        while (offered < 2 * SIZE && queue.offer(offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(offered, greaterThanOrEqualTo(spec.capacity));
+        assertThat(offered, lessThanOrEqualTo(Math.max(2, Pow2.roundToPowerOfTwo(spec.capacity))));
+        assertThat(queue, hasSize(offered));
+    }
+
     @Test
     public void whenOfferItemAndPollItemThenSameInstanceReturnedAndQueueIsEmpty() {
         assertThat(queue, emptyAndZeroSize());
@@ -175,8 +250,123 @@ public class QueueSanityTest {
         assertThat(queue, emptyAndZeroSize());
     }
 
+    @Test
+    public void whenFillThenDrainAllElementsArePassedThrough() {
+        assumeThat(queue, instanceOf(MessagePassingQueue.class));
+        @SuppressWarnings("unchecked")
+        final MessagePassingQueue<Integer> mpq = (MessagePassingQueue<Integer>) queue;
+
+        // Arrange
+        final int[] next = {0};
+        int filled = 0;
+        int batch;
+        while (filled < SIZE && (batch = mpq.fill(new MessagePassingQueue.Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return next[0]++;
+            }
+        }, 100)) != 0) {
+            filled += batch;
+        }
+        assertThat(filled, is(next[0]));
+        assertThat(queue, hasSize(filled));
+
+        // Act
+        final int[] sum = {0};
+        int drained = 0;
+        while ((batch = mpq.drain(new MessagePassingQueue.Consumer<Integer>() {
+            @Override
+            public void accept(Integer e) {
+                sum[0] += e;
+            }
+        }, 100)) != 0) {
+            drained += batch;
+        }
+
+        // Assert
+        assertThat(drained, is(filled));
+        assertThat(sum[0], is((filled - 1) * filled / 2));
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void whenRelaxedOfferThenRelaxedPollInOrder() {
+        assumeThat(spec.ordering, is(Ordering.FIFO));
+        assumeThat(queue, instanceOf(MessagePassingQueue.class));
+        @SuppressWarnings("unchecked")
+        final MessagePassingQueue<Integer> mpq = (MessagePassingQueue<Integer>) queue;
+
+        // Arrange
+        int offered = 0;
+        while (offered < SIZE && mpq.relaxedOffer(offered)) {
+            offered++;
+        }
+        assertThat(queue, hasSize(offered));
+
+        // Act
+        int polled = 0;
+        Integer p;
+        while ((p = mpq.relaxedPeek()) != null) {
+            assertThat(mpq.relaxedPoll(), sameInstance(p));
+            assertThat(p, is(polled++));
+        }
+
+        // Assert
+        assertThat(polled, is(offered));
+        assertNull(mpq.relaxedPoll());
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void whenOfferThenIteratorAndToArraySeeElementsInOrder() {
+        assumeThat(spec.ordering, is(Ordering.FIFO));
+        assumeThat(queue, anyOf(instanceOf(ConcurrentCircularArrayQueue.class), instanceOf(BaseLinkedQueue.class),
+                instanceOf(BaseSegmentedArrayQueue.class), instanceOf(CompactCircularArrayQueue.class),
+                instanceOf(BaseCompactLinkedQueue.class), instanceOf(SpscUnboundedArrayQueue.class),
+                instanceOf(MpscUnboundedArrayQueue.class), instanceOf(SpscGrowableArrayQueue.class)));
+
+        // Arrange
+        int offered = 0;
+        while (offered < 10 && queue.offer(offered)) {
+            offered++;
+        }
+        queue.poll();
+
+        // Act
+        final Object[] snapshot = queue.toArray();
+        int expected = 1;
+        for (Integer e : queue) {
+            assertThat(e, is(expected++));
+        }
+
+        // Assert
+        assertThat(expected, is(offered));
+        assertThat(snapshot.length, is(offered - 1));
+        for (int i = 0; i < snapshot.length; i++) {
+            assertThat(snapshot[i], is((Object) (i + 1)));
+        }
+        assertThat(queue.toArray(new Integer[0]).length, is(offered - 1));
+    }
+
     private static Object[] test(int producers, int consumers, int capacity, Ordering ordering) {
-        return new Object[]{new ConcurrentQueueSpec(producers, consumers, capacity, ordering, Preference.NONE)};
+        return test(producers, consumers, capacity, ordering, Preference.NONE);
+    }
+
+    private static Object[] test(int producers, int consumers, int capacity, Ordering ordering,
+            Preference preference) {
+        return new Object[]{new ConcurrentQueueSpec(producers, consumers, capacity, ordering, preference), null};
+    }
+
+    private static Object[] test(int producers, int consumers, int capacity, Ordering ordering,
+            Preference preference, int sparseShift) {
+        return new Object[]{new ConcurrentQueueSpec(producers, consumers, capacity, ordering, preference,
+                sparseShift), null};
+    }
+
+    private static Object[] test(int producers, int consumers, int capacity, Ordering ordering,
+            Queue<Integer> queue) {
+        return new Object[]{new ConcurrentQueueSpec(producers, consumers, capacity, ordering, Preference.NONE),
+                queue};
     }
 
 }
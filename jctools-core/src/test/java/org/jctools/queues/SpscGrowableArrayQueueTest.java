@@ -0,0 +1,402 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SpscGrowableArrayQueueTest {
+    @Test
+    public void shouldGrowUpToMaxCapacity() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64);
+
+        // Act
+        int i = 0;
+        while (q.offer(i)) {
+            i++;
+        }
+
+        // Assert
+        assertThat(i, is(64));
+        assertThat(q, hasSize(64));
+        for (int j = 0; j < 64; j++) {
+            assertThat(q.peek(), is(j));
+            assertThat(q.poll(), is(j));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotLoseElementsWhenGrowingFromSingleSlot() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(1, 64);
+
+        // Act
+        int i = 0;
+        while (q.offer(i)) {
+            i++;
+        }
+
+        // Assert
+        assertThat(i, is(64));
+        assertThat(q, hasSize(64));
+        for (int j = 0; j < 64; j++) {
+            assertThat(q.poll(), is(j));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldKeepSingleSlotWhenMaxCapacityIsOne() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(1, 1);
+
+        // Act
+        assertTrue(q.offer(1));
+        assertFalse(q.offer(2));
+
+        // Assert
+        assertThat(q.poll(), is(1));
+        assertTrue(q.offer(3));
+        assertThat(q.poll(), is(3));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotExceedMaxCapacityWhileOldBuffersAreDrained() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(4, 8);
+        // fill the initial buffer and force a resize to max capacity
+        for (int i = 0; i < 5; i++) {
+            assertTrue(q.offer(i));
+        }
+
+        // Act
+        // consumer is still in the initial buffer
+        assertThat(q.poll(), is(0));
+        int offered = 5;
+        while (q.offer(offered)) {
+            offered++;
+        }
+
+        // Assert
+        assertThat(q, hasSize(8));
+        assertFalse(q.offer(-1));
+        for (int i = 1; i < offered; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotAllocateBeforeFirstOffer() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(4, 8);
+
+        // Act
+        final Integer polled = q.poll();
+
+        // Assert
+        assertThat(polled, is(nullValue()));
+        assertThat(q.peek(), is(nullValue()));
+        assertThat(q, emptyAndZeroSize());
+        assertThat(q.producerBuffer, is(nullValue()));
+        assertTrue(q.offer(1));
+        assertThat(q.peek(), is(1));
+        assertThat(q.poll(), is(1));
+    }
+
+    @Test
+    public void shouldShrinkAfterIdleTimeout() throws InterruptedException {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(q.offer(i));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(producerCapacity(q), is(64));
+
+        // Act
+        // the consumer finds the queue empty and the queue then stays empty for the idle timeout
+        assertThat(q.poll(), is(nullValue()));
+        Thread.sleep(10);
+        assertTrue(q.offer(64));
+
+        // Assert
+        assertThat(producerCapacity(q), is(2));
+        assertThat(q.peek(), is(64));
+        assertThat(q.poll(), is(64));
+        assertThat(q, emptyAndZeroSize());
+        // and can grow back up to max capacity
+        int offered = 0;
+        while (q.offer(offered)) {
+            offered++;
+        }
+        assertThat(offered, is(64));
+        for (int i = 0; i < 64; i++) {
+            assertThat(q.poll(), is(i));
+        }
+    }
+
+    @Test
+    public void shouldShrinkAfterIdleTimeoutWhenOfferedEarlier() throws InterruptedException {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(q.offer(i));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q.poll(), is(nullValue()));
+
+        // Act
+        // offers within the idle timeout do not shrink the buffer
+        assertTrue(q.offer(64));
+        assertThat(producerCapacity(q), is(64));
+        assertThat(q.poll(), is(64));
+        assertThat(q.poll(), is(nullValue()));
+        Thread.sleep(100);
+        assertTrue(q.offer(65));
+
+        // Assert
+        assertThat(producerCapacity(q), is(2));
+        assertThat(q.poll(), is(65));
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldNotShrinkWhileConsumerIsBusy() throws InterruptedException {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(q.offer(i));
+        }
+
+        // Act
+        Thread.sleep(10);
+        assertThat(q.poll(), is(0));
+        assertTrue(q.offer(64));
+
+        // Assert
+        assertThat(producerCapacity(q), is(64));
+    }
+
+    @Test
+    public void shouldReleaseBufferWhenConsumerFindsQueueIdle() throws InterruptedException {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(q.offer(i));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q.poll(), is(nullValue()));
+
+        // Act
+        // no offer follows, the consumer polling past the idle timeout gives the buffer back
+        Thread.sleep(10);
+        assertThat(q.poll(), is(nullValue()));
+
+        // Assert
+        assertThat(q.producerBuffer, is(nullValue()));
+        assertThat(q.consumerBuffer, is(nullValue()));
+        assertThat(q, emptyAndZeroSize());
+        assertThat(q.iterator().hasNext(), is(false));
+        assertTrue(q.offer(64));
+        assertThat(producerCapacity(q), is(2));
+        assertThat(q.peek(), is(64));
+        assertThat(q.poll(), is(64));
+        int offered = 0;
+        while (q.offer(offered)) {
+            offered++;
+        }
+        assertThat(offered, is(64));
+        for (int i = 0; i < 64; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldTrimOnlyEmptyGrownBuffer() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.HOURS);
+        assertFalse(q.trim());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(q.offer(i));
+        }
+
+        // Act & Assert
+        assertFalse(q.trim());
+        for (int i = 0; i < 8; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertTrue(q.trim());
+        assertThat(q.producerBuffer, is(nullValue()));
+        assertFalse(q.trim());
+        assertTrue(q.offer(8));
+        assertThat(producerCapacity(q), is(2));
+        // the initial buffer is not given back
+        assertThat(q.poll(), is(8));
+        assertFalse(q.trim());
+    }
+
+    @Test
+    public void shouldNotTrimWithoutIdleTimeout() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(q.offer(i));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertThat(q.poll(), is(i));
+        }
+
+        // Act & Assert
+        assertFalse(q.trim());
+        assertThat(producerCapacity(q), is(8));
+    }
+
+    @Test
+    public void shouldNotLoseElementsOfferedWhileConsumerTrims() throws InterruptedException {
+        // Arrange
+        final int messages = 100000;
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.HOURS);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < messages; i++) {
+                    while (!q.offer(i)) {
+                        Thread.yield();
+                    }
+                    if (0 == (i & 15)) {
+                        // let the queue run empty now and then
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+
+        // Act
+        producer.start();
+        int expected = 0;
+        int trimmed = 0;
+        while (expected < messages) {
+            final Integer e = q.poll();
+            if (null == e) {
+                if (q.trim()) {
+                    trimmed++;
+                }
+                Thread.yield();
+                continue;
+            }
+            // Assert
+            assertThat(e, is(expected));
+            expected++;
+        }
+        producer.join();
+        assertThat(q, emptyAndZeroSize());
+        assertThat(trimmed, greaterThan(0));
+    }
+
+    @Test
+    public void shouldIterateAcrossGrownBuffers() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(q.offer(i));
+        }
+        assertThat(q.poll(), is(0));
+        // the consumer is still in the first buffer, the producer moves on twice
+        for (int i = 3; i < 10; i++) {
+            assertTrue(q.offer(i));
+        }
+
+        // Act
+        final List<Integer> iterated = new ArrayList<Integer>();
+        for (Integer e : q) {
+            iterated.add(e);
+        }
+
+        // Assert
+        assertThat(iterated, contains(1, 2, 3, 4, 5, 6, 7, 8, 9));
+        assertThat(q.toString(), is("[1, 2, 3, 4, 5, 6, 7, 8, 9]"));
+        assertThat(q.contains(0), is(false));
+    }
+
+    @Test
+    public void shouldIterateEmptyQueueBeforeFirstOffer() {
+        // Arrange
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64);
+
+        // Act & Assert
+        assertThat(q.iterator().hasNext(), is(false));
+        assertThat(q.toString(), is("[]"));
+    }
+
+    @Test
+    public void shouldIterateInOrderWhileProducerAndConsumerRun() throws InterruptedException {
+        // Arrange
+        final int messages = 50000;
+        final SpscGrowableArrayQueue<Integer> q = new SpscGrowableArrayQueue<Integer>(2, 64, 1, TimeUnit.MILLISECONDS);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < messages; i++) {
+                    while (!q.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                int polled = 0;
+                while (polled < messages) {
+                    if (null != q.poll()) {
+                        polled++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+
+        // Act
+        producer.start();
+        consumer.start();
+        while (consumer.isAlive()) {
+            int last = -1;
+            for (Integer e : q) {
+                // Assert: chunks handed back for reuse must not leak other elements into the iteration
+                assertThat(e, greaterThan(last));
+                last = e;
+            }
+        }
+        producer.join();
+        consumer.join();
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    private static int producerCapacity(final SpscGrowableArrayQueue<?> q) {
+        // the extra slot holds the link to the next buffer
+        return q.producerBuffer.length - 1;
+    }
+}
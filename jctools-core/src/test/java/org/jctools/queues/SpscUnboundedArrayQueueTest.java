@@ -0,0 +1,115 @@
+package org.jctools.queues;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertThat;
+
+public class SpscUnboundedArrayQueueTest {
+    @Test
+    public void shouldReuseChunksHandedBackByConsumer() {
+        // Arrange
+        final SpscUnboundedArrayQueue<Integer> q = new SpscUnboundedArrayQueue<Integer>(4);
+        final Object[] firstChunk = q.producerChunk;
+        for (int i = 0; i < 8; i++) {
+            q.offer(i);
+        }
+        final Object[] secondChunk = q.producerChunk;
+
+        // Act
+        // moving into the second chunk hands the first chunk back
+        for (int i = 0; i < 5; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        // crossing into the third chunk takes the spare
+        q.offer(8);
+
+        // Assert
+        assertThat(q.producerChunk, sameInstance(firstChunk));
+        assertThat(q.consumerChunk, sameInstance(secondChunk));
+        for (int i = 5; i < 9; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        assertThat(q, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldIterateAcrossReusedChunks() {
+        // Arrange
+        final SpscUnboundedArrayQueue<Integer> q = new SpscUnboundedArrayQueue<Integer>(4);
+        for (int i = 0; i < 8; i++) {
+            q.offer(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThat(q.poll(), is(i));
+        }
+        // the third chunk is the first one handed back
+        for (int i = 8; i < 14; i++) {
+            q.offer(i);
+        }
+
+        // Act
+        final List<Integer> iterated = new ArrayList<Integer>();
+        for (Integer e : q) {
+            iterated.add(e);
+        }
+
+        // Assert
+        assertThat(iterated, contains(5, 6, 7, 8, 9, 10, 11, 12, 13));
+        assertThat(q.toString(), is("[5, 6, 7, 8, 9, 10, 11, 12, 13]"));
+        assertThat(q.contains(13), is(true));
+        assertThat(q.contains(4), is(false));
+    }
+
+    @Test
+    public void shouldIterateInOrderWhileProducerAndConsumerRun() throws InterruptedException {
+        // Arrange
+        final int messages = 50000;
+        final SpscUnboundedArrayQueue<Integer> q = new SpscUnboundedArrayQueue<Integer>(4);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < messages; i++) {
+                    while (!q.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                int polled = 0;
+                while (polled < messages) {
+                    if (null != q.poll()) {
+                        polled++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+
+        // Act
+        producer.start();
+        consumer.start();
+        while (consumer.isAlive()) {
+            int last = -1;
+            for (Integer e : q) {
+                // Assert: chunks handed back for reuse must not leak other elements into the iteration
+                assertThat(e, greaterThan(last));
+                last = e;
+            }
+        }
+        producer.join();
+        consumer.join();
+        assertThat(q, emptyAndZeroSize());
+    }
+}
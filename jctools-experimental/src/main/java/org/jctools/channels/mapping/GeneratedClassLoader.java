@@ -20,7 +20,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
-class GeneratedClassLoader extends ClassLoader {
+public class GeneratedClassLoader extends ClassLoader {
     
     private static final String DUMP_DIR = System.getProperty("user.home") + File.separator + "channel_debug_files" + File.separator;
     
@@ -29,8 +29,16 @@ class GeneratedClassLoader extends ClassLoader {
     GeneratedClassLoader(final boolean classFileDebugEnabled) {
         this.classFileDebugEnabled = classFileDebugEnabled;
     }
+
+    /**
+     * @param parent the loader of the classes the generated class refers to
+     */
+    public GeneratedClassLoader(final boolean classFileDebugEnabled, final ClassLoader parent) {
+        super(parent);
+        this.classFileDebugEnabled = classFileDebugEnabled;
+    }
     
-	synchronized Class<?> defineClass(final String binaryName, final ClassWriter cw) {
+	public synchronized Class<?> defineClass(final String binaryName, final ClassWriter cw) {
 		final byte[] bytecode = cw.toByteArray();
 		logDebugInfo(binaryName, bytecode);
 		return defineClass(binaryName, bytecode, 0, bytecode.length);
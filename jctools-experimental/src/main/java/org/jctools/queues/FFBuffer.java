@@ -89,6 +89,16 @@ public final class FFBuffer<E> extends FFBufferL3Pad<E> implements Queue<E> {
         return UnsafeAccess.UNSAFE.getLongVolatile(this, TAIL_OFFSET);
     }
 
+    @Override
+    protected long lvProducerIndex() {
+        return getTail();
+    }
+
+    @Override
+    protected long lvConsumerIndex() {
+        return getHead();
+    }
+
     public boolean add(final E e) {
         if (offer(e)) {
             return true;
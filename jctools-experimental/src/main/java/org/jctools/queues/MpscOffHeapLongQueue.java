@@ -0,0 +1,326 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.UnsafeDirectByteBuffer;
+
+import java.nio.ByteBuffer;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeDirectByteBuffer.*;
+
+/**
+ * A Multi-Producer-Single-Consumer queue of primitive longs in a direct {@link ByteBuffer}. Elements are never boxed
+ * and there is no empty sentinel value.
+ * <p>
+ * IMPLEMENTATION NOTES:<br>
+ * The layout is:
+ *
+ * <pre>
+ * | producerIndex, consumerIndexCache | pad | consumerIndex | pad | sequences... | elements... |
+ * </pre>
+ *
+ * Producers claim a run of slots with a CAS of the producer index in the header, checking for space against the
+ * consumer index cache and only loading the consumer index when the cache suggests the queue is full. Each slot is
+ * published to the consumer with an ordered store of index + 1 to its sequence once the element is written, so the
+ * consumer does not mistake a claimed slot for a written one. The consumer publishes its index once per batch to
+ * release the slots to the producers.
+ *
+ * @author nitsanw
+ */
+public final class MpscOffHeapLongQueue implements LongMessagePassingQueue {
+    public final static byte PRODUCER = SpscOffHeapIntQueue.PRODUCER;
+    public final static byte CONSUMER = SpscOffHeapIntQueue.CONSUMER;
+    private static final int ELEMENT_SHIFT = 3;
+    private static final int HEADER_SIZE = 4 * CACHE_LINE_SIZE;
+
+    private final ByteBuffer buffy;
+    private final long producerIndexAddress;
+    private final long consumerIndexCacheAddress;
+    private final long consumerIndexAddress;
+    private final int capacity;
+    private final int mask;
+    private final long sequenceBase;
+    private final long arrayBase;
+
+    public static int getRequiredBufferSize(final int capacity) {
+        return HEADER_SIZE + 2 * (Pow2.roundToPowerOfTwo(capacity) << ELEMENT_SHIFT);
+    }
+
+    public MpscOffHeapLongQueue(final int capacity) {
+        this(allocateAlignedByteBuffer(getRequiredBufferSize(capacity), CACHE_LINE_SIZE), capacity,
+                (byte) (PRODUCER | CONSUMER));
+    }
+
+    /**
+     * This is to be used for an IPC queue with the direct buffer used being a memory mapped file. The queue is
+     * initialized by the {@link #CONSUMER} view, producers attaching to it must pass {@link #PRODUCER} only.
+     *
+     * @param buff at least {@link #getRequiredBufferSize(int)} bytes (plus alignment slack)
+     * @param capacity
+     * @param viewMask {@link #PRODUCER} and/or {@link #CONSUMER}
+     */
+    public MpscOffHeapLongQueue(final ByteBuffer buff, final int capacity, final byte viewMask) {
+        this.capacity = Pow2.roundToPowerOfTwo(capacity);
+        mask = this.capacity - 1;
+        buffy = alignedSlice(HEADER_SIZE + 2 * (this.capacity << ELEMENT_SHIFT), CACHE_LINE_SIZE, buff);
+
+        final long alignedAddress = UnsafeDirectByteBuffer.getAddress(buffy);
+        producerIndexAddress = alignedAddress;
+        consumerIndexCacheAddress = producerIndexAddress + 8;
+        consumerIndexAddress = alignedAddress + 2 * CACHE_LINE_SIZE;
+        sequenceBase = alignedAddress + HEADER_SIZE;
+        arrayBase = sequenceBase + (this.capacity << ELEMENT_SHIFT);
+        if ((viewMask & CONSUMER) == CONSUMER) {
+            // sequence of index i is i + 1 once published, 0 is never a valid value
+            for (long i = 0; i < this.capacity; i++) {
+                UNSAFE.putLong(calcSequenceOffset(i), 0);
+            }
+            UNSAFE.putLong(consumerIndexCacheAddress, 0);
+            UNSAFE.putLong(producerIndexAddress, 0);
+            soConsumerIndex(0);
+        }
+    }
+
+    private long calcSequenceOffset(final long index) {
+        return sequenceBase + ((index & mask) << ELEMENT_SHIFT);
+    }
+
+    private long calcElementOffset(final long index) {
+        return arrayBase + ((index & mask) << ELEMENT_SHIFT);
+    }
+
+    private long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(null, producerIndexAddress);
+    }
+
+    private boolean casProducerIndex(final long expect, final long newValue) {
+        return UNSAFE.compareAndSwapLong(null, producerIndexAddress, expect, newValue);
+    }
+
+    private long lvConsumerIndexCache() {
+        return UNSAFE.getLongVolatile(null, consumerIndexCacheAddress);
+    }
+
+    private void svConsumerIndexCache(final long value) {
+        UNSAFE.putLongVolatile(null, consumerIndexCacheAddress, value);
+    }
+
+    private long lpConsumerIndex() {
+        return UNSAFE.getLong(consumerIndexAddress);
+    }
+
+    private long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(null, consumerIndexAddress);
+    }
+
+    private void soConsumerIndex(final long value) {
+        UNSAFE.putOrderedLong(null, consumerIndexAddress, value);
+    }
+
+    private long lvSequence(final long index) {
+        return UNSAFE.getLongVolatile(null, calcSequenceOffset(index));
+    }
+
+    private void soSequence(final long index, final long value) {
+        UNSAFE.putOrderedLong(null, calcSequenceOffset(index), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Lock free, may be called from any number of producer threads.
+     */
+    @Override
+    public boolean offer(final long e) {
+        final long capacity = this.capacity;
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = lvProducerIndex();
+            final long wrapPoint = currentProducerIndex - capacity;
+            if (lvConsumerIndexCache() <= wrapPoint) {
+                final long currentConsumerIndex = lvConsumerIndex();// LoadLoad
+                if (currentConsumerIndex <= wrapPoint) {
+                    return false;
+                }
+                svConsumerIndexCache(currentConsumerIndex);
+            }
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + 1));
+        UNSAFE.putLong(calcElementOffset(currentProducerIndex), e);
+        soSequence(currentProducerIndex, currentProducerIndex + 1);// StoreStore
+        return true;
+    }
+
+    /**
+     * Offer up to length elements from src, starting at offset. The run is claimed with a single CAS of the producer
+     * index, may be called from any number of producer threads.
+     *
+     * @return the number of elements offered, 0 if length is 0 or the queue is full
+     */
+    public int offer(final long[] src, final int offset, final int length) {
+        if (0 == length) {
+            return 0;
+        }
+        final long capacity = this.capacity;
+        long consumerIndexCache = lvConsumerIndexCache();
+        long currentProducerIndex;
+        int n;
+        do {
+            currentProducerIndex = lvProducerIndex();
+            long free = capacity - (currentProducerIndex - consumerIndexCache);
+            if (free < length) {
+                consumerIndexCache = lvConsumerIndex();// LoadLoad
+                free = capacity - (currentProducerIndex - consumerIndexCache);
+                if (free <= 0) {
+                    return 0;
+                }
+                svConsumerIndexCache(consumerIndexCache);
+            }
+            n = (int) Math.min(free, length);
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + n));
+        for (int i = 0; i < n; i++) {
+            final long index = currentProducerIndex + i;
+            UNSAFE.putLong(calcElementOffset(index), src[offset + i]);
+            soSequence(index, index + 1);// StoreStore
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The run is claimed with a single CAS of the producer index, may be called from any number of producer threads.
+     */
+    @Override
+    public int fill(final LongSupplier s, final int limit) {
+        if (0 == limit) {
+            return 0;
+        }
+        final long capacity = this.capacity;
+        long consumerIndexCache = lvConsumerIndexCache();
+        long currentProducerIndex;
+        int n;
+        do {
+            currentProducerIndex = lvProducerIndex();
+            long free = capacity - (currentProducerIndex - consumerIndexCache);
+            if (free < limit) {
+                consumerIndexCache = lvConsumerIndex();// LoadLoad
+                free = capacity - (currentProducerIndex - consumerIndexCache);
+                if (free <= 0) {
+                    return 0;
+                }
+                svConsumerIndexCache(consumerIndexCache);
+            }
+            n = (int) Math.min(free, limit);
+        } while (!casProducerIndex(currentProducerIndex, currentProducerIndex + n));
+        for (int i = 0; i < n; i++) {
+            final long index = currentProducerIndex + i;
+            UNSAFE.putLong(calcElementOffset(index), s.get());
+            soSequence(index, index + 1);// StoreStore
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. If a producer has claimed the next slot but
+     * not yet published the element this method will spin until it does, to ensure [poll == false iff isEmpty()].
+     */
+    @Override
+    public boolean poll(final LongConsumer c) {
+        final long currentConsumerIndex = lpConsumerIndex();
+        if (lvSequence(currentConsumerIndex) != currentConsumerIndex + 1) {// LoadLoad
+            if (currentConsumerIndex == lvProducerIndex()) {
+                return false;
+            }
+            // a producer has claimed the slot, spin until the element is published
+            while (lvSequence(currentConsumerIndex) != currentConsumerIndex + 1) {
+            }
+        }
+        final long e = UNSAFE.getLong(calcElementOffset(currentConsumerIndex));
+        soConsumerIndex(currentConsumerIndex + 1);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * Poll up to length published elements into dst, starting at offset. Stops at the first claimed but unpublished
+     * slot. Correct for single consumer thread use only.
+     *
+     * @return the number of elements polled, 0 if length is 0 or the next element is not yet published
+     */
+    public int poll(final long[] dst, final int offset, final int length) {
+        final long currentConsumerIndex = lpConsumerIndex();
+        int i = 0;
+        for (; i < length; i++) {
+            final long index = currentConsumerIndex + i;
+            if (lvSequence(index) != index + 1) {// LoadLoad
+                break;
+            }
+            dst[offset + i] = UNSAFE.getLong(calcElementOffset(index));
+        }
+        if (i > 0) {
+            soConsumerIndex(currentConsumerIndex + i);// StoreStore
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only. Stops at the first claimed but unpublished
+     * slot.
+     */
+    @Override
+    public int drain(final LongConsumer c, final int limit) {
+        final long currentConsumerIndex = lpConsumerIndex();
+        int i = 0;
+        for (; i < limit; i++) {
+            final long index = currentConsumerIndex + i;
+            if (lvSequence(index) != index + 1) {// LoadLoad
+                break;
+            }
+            c.accept(UNSAFE.getLong(calcElementOffset(index)));
+        }
+        if (i > 0) {
+            soConsumerIndex(currentConsumerIndex + i);// StoreStore
+        }
+        return i;
+    }
+
+    @Override
+    public int size() {
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lvConsumerIndex() == lvProducerIndex();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
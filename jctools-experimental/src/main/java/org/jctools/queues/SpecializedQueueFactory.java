@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.channels.mapping.GeneratedClassLoader;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Preference;
+import org.jctools.util.Pow2;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * A {@link QueueFactory} which generates a queue class per spec, with the capacity, mask, look ahead step and element
+ * offset computation baked in as static final constants. The JIT can fold these constants the way it cannot fold the
+ * final instance fields of {@link SparseCircularArrayQueue}.
+ * <p>
+ * Only bounded SPSC specs are specialized (see {@link SpscSpecializedArrayQueueTemplate}), other specs are served by
+ * {@link QueueFactory#newQueue(ConcurrentQueueSpec)}. One class is generated per capacity and sparse shift, and is
+ * reused for all queues sharing them.
+ *
+ * @author nitsanw
+ */
+public final class SpecializedQueueFactory {
+    private static final boolean CLASS_FILE_DEBUG_ENABLED = Boolean.getBoolean("jctools.specialized.debug");
+    private static final int MAX_LOOK_AHEAD_STEP = Integer.getInteger("jctools.spsc.max.lookahead.step", 4096);
+    private static final String TEMPLATE_NAME = Type.getInternalName(SpscSpecializedArrayQueueTemplate.class);
+    private static final ConcurrentMap<String, Constructor<?>> SPSC_CONSTRUCTORS =
+            new ConcurrentHashMap<String, Constructor<?>>();
+
+    private SpecializedQueueFactory() {
+    }
+
+    public static <E> Queue<E> newQueue(ConcurrentQueueSpec qs) {
+        if (qs.isSpsc() && qs.isBounded() && qs.preference != Preference.FOOTPRINT) {
+            return newSpscArrayQueue(qs.capacity, qs.sparseShift);
+        }
+        return QueueFactory.newQueue(qs);
+    }
+
+    /**
+     * @param capacity the queue capacity, rounded up to the next power of 2
+     * @param sparseShift only every 2^sparseShift slot of the buffer is used, 0 for a dense buffer
+     * @return a new instance of the SPSC queue class specialized for the capacity and sparse shift
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> SpscSpecializedArrayQueue<E> newSpscArrayQueue(int capacity, int sparseShift) {
+        if (sparseShift < 0) {
+            throw new IllegalArgumentException("sparseShift(" + sparseShift + ") must not be negative");
+        }
+        final int actualCapacity = Pow2.roundToPowerOfTwo(capacity);
+        final String name = TEMPLATE_NAME.replace("Template", "") + "_" + actualCapacity + "_" + sparseShift;
+        Constructor<?> constructor = SPSC_CONSTRUCTORS.get(name);
+        if (null == constructor) {
+            constructor = generateSpsc(name, actualCapacity, sparseShift);
+            final Constructor<?> existing = SPSC_CONSTRUCTORS.putIfAbsent(name, constructor);
+            if (null != existing) {
+                constructor = existing;
+            }
+        }
+        try {
+            return (SpscSpecializedArrayQueue<E>) constructor.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Constructor<?> generateSpsc(String name, int capacity, int sparseShift) {
+        final int refElementShift = UNSAFE.arrayIndexScale(Object[].class) == 4 ? 2 : 3;
+        final Map<String, Object> constants = new HashMap<String, Object>();
+        constants.put("CAPACITY", capacity);
+        constants.put("SPARSE", sparseShift);
+        constants.put("MASK", (long) capacity - 1);
+        constants.put("LOOK_AHEAD_STEP", (long) Math.min(capacity / 4, MAX_LOOK_AHEAD_STEP));
+        // must match the buffer layout of SparseCircularArrayQueue, which pads the buffer on either end
+        constants.put("ARRAY_BASE", UNSAFE.arrayBaseOffset(Object[].class)
+                + ((long) SparseCircularArrayQueue.BUFFER_PAD << refElementShift));
+        constants.put("ELEMENT_SHIFT", refElementShift + sparseShift);
+
+        final ClassWriter out = new ClassWriter(0);
+        final ClassVisitor specializer = new ConstantsSpecializer(out, constants);
+        readTemplate().accept(new RemappingClassAdapter(specializer, new SimpleRemapper(TEMPLATE_NAME, name)),
+                ClassReader.EXPAND_FRAMES);
+        final Class<?> specialized = new GeneratedClassLoader(CLASS_FILE_DEBUG_ENABLED,
+                SpscSpecializedArrayQueue.class.getClassLoader()).defineClass(name.replace('/', '.'), out);
+        try {
+            return specialized.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ClassReader readTemplate() {
+        final InputStream in = SpecializedQueueFactory.class.getResourceAsStream(
+                "/" + TEMPLATE_NAME + ".class");
+        if (null == in) {
+            throw new IllegalStateException("Template class file not found: " + TEMPLATE_NAME);
+        }
+        try {
+            try {
+                return new ClassReader(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gives the template constants their ConstantValue, drops the template class initializer which would otherwise
+     * overwrite them, and makes the class public so it can be instantiated from outside its class loader.
+     */
+    private static final class ConstantsSpecializer extends ClassVisitor implements Opcodes {
+        private final Map<String, Object> constants;
+
+        ConstantsSpecializer(ClassVisitor cv, Map<String, Object> constants) {
+            super(ASM5, cv);
+            this.constants = constants;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                String[] interfaces) {
+            super.visit(version, access | ACC_PUBLIC, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            final Object constant = constants.get(name);
+            if (null != constant) {
+                return super.visitField(access, name, desc, signature, constant);
+            }
+            return super.visitField(access, name, desc, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                String[] exceptions) {
+            if ("<clinit>".equals(name) || "templateConstant".equals(name)) {
+                return null;
+            }
+            return super.visitMethod(access, name, desc, signature, exceptions);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.nio.ByteBuffer;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeDirectByteBuffer.CACHE_LINE_SIZE;
+import static org.jctools.util.UnsafeDirectByteBuffer.allocateAlignedByteBuffer;
+
+/**
+ * A Single-Producer-Single-Consumer queue of primitive doubles in a direct {@link ByteBuffer}, see
+ * {@link SpscOffHeapPrimitiveQueue} for the layout. Elements are never boxed and there is no empty sentinel value.
+ * <p>
+ * The bulk {@link #offer(double[], int, int)} and {@link #poll(double[], int, int)} copy a run of elements between the
+ * queue and a double[] and publish the producer/consumer index once for the run.
+ *
+ * @author nitsanw
+ */
+public final class SpscOffHeapDoubleQueue extends SpscOffHeapPrimitiveQueue {
+
+    /**
+     * A sink of elements for {@link SpscOffHeapDoubleQueue#poll(DoubleConsumer)} and
+     * {@link SpscOffHeapDoubleQueue#drain(DoubleConsumer, int)}, see {@link LongMessagePassingQueue.LongConsumer}.
+     */
+    public interface DoubleConsumer {
+        void accept(double e);
+    }
+
+    public SpscOffHeapDoubleQueue(final int capacity) {
+        this(allocateAlignedByteBuffer(getRequiredBufferSize(capacity), CACHE_LINE_SIZE), capacity,
+                (byte) (PRODUCER | CONSUMER));
+    }
+
+    /**
+     * This is to be used for an IPC queue with the direct buffer used being a memory mapped file.
+     *
+     * @param buff at least {@link #getRequiredBufferSize(int)} bytes (plus alignment slack)
+     * @param capacity
+     * @param viewMask {@link #PRODUCER} and/or {@link #CONSUMER}, the side(s) of the queue this instance initializes
+     */
+    public SpscOffHeapDoubleQueue(final ByteBuffer buff, final int capacity, final byte viewMask) {
+        super(buff, capacity, viewMask);
+    }
+
+    /**
+     * Called from the producer thread only.
+     *
+     * @return true if element was inserted into the queue, false iff full
+     */
+    public boolean offer(final double e) {
+        final long currentTail = lpTail();
+        if (writeAvailable(currentTail, 1) == 0) {
+            return false;
+        }
+        UNSAFE.putDouble(calcElementOffset(currentTail), e);
+        soTail(currentTail + 1);// StoreStore
+        return true;
+    }
+
+    /**
+     * Offer up to length elements from src, starting at offset. Correct for single producer thread use only.
+     *
+     * @return the number of elements offered, 0 if length is 0 or the queue is full
+     */
+    public int offer(final double[] src, final int offset, final int length) {
+        final long currentTail = lpTail();
+        final int n = writeAvailable(currentTail, length);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            UNSAFE.putDouble(calcElementOffset(currentTail + i), src[offset + i]);
+        }
+        soTail(currentTail + n);// StoreStore
+        return n;
+    }
+
+    /**
+     * Called from the consumer thread only.
+     *
+     * @return true if an element was removed and handed to the consumer, false iff empty
+     */
+    public boolean poll(final DoubleConsumer c) {
+        final long currentHead = lpHead();
+        if (readAvailable(currentHead, 1) == 0) {
+            return false;
+        }
+        final double e = UNSAFE.getDouble(calcElementOffset(currentHead));
+        soHead(currentHead + 1);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * Poll up to length elements into dst, starting at offset. Correct for single consumer thread use only.
+     *
+     * @return the number of elements polled, 0 if length is 0 or the queue is empty
+     */
+    public int poll(final double[] dst, final int offset, final int length) {
+        final long currentHead = lpHead();
+        final int n = readAvailable(currentHead, length);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[offset + i] = UNSAFE.getDouble(calcElementOffset(currentHead + i));
+        }
+        soHead(currentHead + n);// StoreStore
+        return n;
+    }
+
+    /**
+     * Remove up to limit elements and hand them to the consumer. Called from the consumer thread only.
+     *
+     * @return the number of elements handed to the consumer
+     */
+    public int drain(final DoubleConsumer c, final int limit) {
+        final long currentHead = lpHead();
+        final int n = readAvailable(currentHead, limit);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            c.accept(UNSAFE.getDouble(calcElementOffset(currentHead + i)));
+        }
+        soHead(currentHead + n);// StoreStore
+        return n;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import java.nio.ByteBuffer;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeDirectByteBuffer.CACHE_LINE_SIZE;
+import static org.jctools.util.UnsafeDirectByteBuffer.allocateAlignedByteBuffer;
+
+/**
+ * A Single-Producer-Single-Consumer queue of primitive longs in a direct {@link ByteBuffer}, see
+ * {@link SpscOffHeapPrimitiveQueue} for the layout. Elements are never boxed and there is no empty sentinel value.
+ * <p>
+ * The bulk {@link #offer(long[], int, int)} and {@link #poll(long[], int, int)} copy a run of elements between the
+ * queue and a long[] and publish the producer/consumer index once for the run.
+ *
+ * @author nitsanw
+ */
+public final class SpscOffHeapLongQueue extends SpscOffHeapPrimitiveQueue implements LongMessagePassingQueue {
+
+    public SpscOffHeapLongQueue(final int capacity) {
+        this(allocateAlignedByteBuffer(getRequiredBufferSize(capacity), CACHE_LINE_SIZE), capacity,
+                (byte) (PRODUCER | CONSUMER));
+    }
+
+    /**
+     * This is to be used for an IPC queue with the direct buffer used being a memory mapped file.
+     *
+     * @param buff at least {@link #getRequiredBufferSize(int)} bytes (plus alignment slack)
+     * @param capacity
+     * @param viewMask {@link #PRODUCER} and/or {@link #CONSUMER}, the side(s) of the queue this instance initializes
+     */
+    public SpscOffHeapLongQueue(final ByteBuffer buff, final int capacity, final byte viewMask) {
+        super(buff, capacity, viewMask);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final long e) {
+        final long currentTail = lpTail();
+        if (writeAvailable(currentTail, 1) == 0) {
+            return false;
+        }
+        UNSAFE.putLong(calcElementOffset(currentTail), e);
+        soTail(currentTail + 1);// StoreStore
+        return true;
+    }
+
+    /**
+     * Offer up to length elements from src, starting at offset. Correct for single producer thread use only.
+     *
+     * @return the number of elements offered, 0 if length is 0 or the queue is full
+     */
+    public int offer(final long[] src, final int offset, final int length) {
+        final long currentTail = lpTail();
+        final int n = writeAvailable(currentTail, length);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            UNSAFE.putLong(calcElementOffset(currentTail + i), src[offset + i]);
+        }
+        soTail(currentTail + n);// StoreStore
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public boolean poll(final LongConsumer c) {
+        final long currentHead = lpHead();
+        if (readAvailable(currentHead, 1) == 0) {
+            return false;
+        }
+        final long e = UNSAFE.getLong(calcElementOffset(currentHead));
+        soHead(currentHead + 1);// StoreStore
+        c.accept(e);
+        return true;
+    }
+
+    /**
+     * Poll up to length elements into dst, starting at offset. Correct for single consumer thread use only.
+     *
+     * @return the number of elements polled, 0 if length is 0 or the queue is empty
+     */
+    public int poll(final long[] dst, final int offset, final int length) {
+        final long currentHead = lpHead();
+        final int n = readAvailable(currentHead, length);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[offset + i] = UNSAFE.getLong(calcElementOffset(currentHead + i));
+        }
+        soHead(currentHead + n);// StoreStore
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public int drain(final LongConsumer c, final int limit) {
+        final long currentHead = lpHead();
+        final int n = readAvailable(currentHead, limit);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            c.accept(UNSAFE.getLong(calcElementOffset(currentHead + i)));
+        }
+        soHead(currentHead + n);// StoreStore
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public int fill(final LongSupplier s, final int limit) {
+        final long currentTail = lpTail();
+        final int n = writeAvailable(currentTail, limit);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            UNSAFE.putLong(calcElementOffset(currentTail + i), s.get());
+        }
+        soTail(currentTail + n);// StoreStore
+        return n;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.UnsafeDirectByteBuffer;
+
+import java.nio.ByteBuffer;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeDirectByteBuffer.*;
+
+/**
+ * The index management shared by the off-heap SPSC queues of 8 byte primitives. The layout follows
+ * {@link SpscOffHeapIntQueue}:
+ *
+ * <pre>
+ * | head, tailCache | pad | tail, headCache | pad | elements... |
+ * </pre>
+ *
+ * The consumer owns head and tailCache, the producer owns tail and headCache. The head/tail are only published once
+ * per call, so the bulk methods of the subclasses pay for a single ordered store per batch.
+ *
+ * @author nitsanw
+ */
+abstract class SpscOffHeapPrimitiveQueue {
+    public final static byte PRODUCER = SpscOffHeapIntQueue.PRODUCER;
+    public final static byte CONSUMER = SpscOffHeapIntQueue.CONSUMER;
+    protected static final int ELEMENT_SHIFT = 3;
+    private static final int HEADER_SIZE = 4 * CACHE_LINE_SIZE;
+
+    private final ByteBuffer buffy;
+    private final long headAddress;
+    private final long tailCacheAddress;
+    private final long tailAddress;
+    private final long headCacheAddress;
+    protected final int capacity;
+    private final int mask;
+    private final long arrayBase;
+
+    public static int getRequiredBufferSize(final int capacity) {
+        return HEADER_SIZE + (Pow2.roundToPowerOfTwo(capacity) << ELEMENT_SHIFT);
+    }
+
+    protected SpscOffHeapPrimitiveQueue(final ByteBuffer buff, final int capacity, final byte viewMask) {
+        this.capacity = Pow2.roundToPowerOfTwo(capacity);
+        mask = this.capacity - 1;
+        buffy = alignedSlice(HEADER_SIZE + (this.capacity << ELEMENT_SHIFT), CACHE_LINE_SIZE, buff);
+
+        final long alignedAddress = UnsafeDirectByteBuffer.getAddress(buffy);
+        headAddress = alignedAddress;
+        tailCacheAddress = headAddress + 8;
+        tailAddress = headAddress + 2 * CACHE_LINE_SIZE;
+        headCacheAddress = tailAddress + 8;
+        arrayBase = alignedAddress + HEADER_SIZE;
+        // producer owns tail and headCache
+        if ((viewMask & PRODUCER) == PRODUCER) {
+            UNSAFE.putLong(headCacheAddress, 0);
+            soTail(0);
+        }
+        // consumer owns head and tailCache
+        if ((viewMask & CONSUMER) == CONSUMER) {
+            UNSAFE.putLong(tailCacheAddress, 0);
+            soHead(0);
+        }
+    }
+
+    protected final long calcElementOffset(final long index) {
+        return arrayBase + ((index & mask) << ELEMENT_SHIFT);
+    }
+
+    /**
+     * Called from the producer thread only.
+     *
+     * @param currentTail the producer index
+     * @param limit the number of slots the producer would like to write
+     * @return the number of free slots the producer may write to, up to limit
+     */
+    protected final int writeAvailable(final long currentTail, final int limit) {
+        long headCache = UNSAFE.getLong(headCacheAddress);
+        long free = capacity - (currentTail - headCache);
+        if (free < limit) {
+            headCache = lvHead();// LoadLoad
+            UNSAFE.putLong(headCacheAddress, headCache);
+            free = capacity - (currentTail - headCache);
+        }
+        return (int) Math.min(free, limit);
+    }
+
+    /**
+     * Called from the consumer thread only.
+     *
+     * @param currentHead the consumer index
+     * @param limit the number of elements the consumer would like to read
+     * @return the number of elements the consumer may read, up to limit
+     */
+    protected final int readAvailable(final long currentHead, final int limit) {
+        long tailCache = UNSAFE.getLong(tailCacheAddress);
+        long available = tailCache - currentHead;
+        if (available < limit) {
+            tailCache = lvTail();// LoadLoad
+            UNSAFE.putLong(tailCacheAddress, tailCache);
+            available = tailCache - currentHead;
+        }
+        return (int) Math.min(available, limit);
+    }
+
+    protected final long lpHead() {
+        return UNSAFE.getLong(headAddress);
+    }
+
+    protected final long lvHead() {
+        return UNSAFE.getLongVolatile(null, headAddress);
+    }
+
+    protected final void soHead(final long value) {
+        UNSAFE.putOrderedLong(null, headAddress, value);
+    }
+
+    protected final long lpTail() {
+        return UNSAFE.getLong(tailAddress);
+    }
+
+    protected final long lvTail() {
+        return UNSAFE.getLongVolatile(null, tailAddress);
+    }
+
+    protected final void soTail(final long value) {
+        UNSAFE.putOrderedLong(null, tailAddress, value);
+    }
+
+    public final int size() {
+        long after = lvHead();
+        while (true) {
+            final long before = after;
+            final long currentTail = lvTail();
+            after = lvHead();
+            if (before == after) {
+                return (int) (currentTail - after);
+            }
+        }
+    }
+
+    public final boolean isEmpty() {
+        return lvHead() == lvTail();
+    }
+
+    public final int capacity() {
+        return capacity;
+    }
+}
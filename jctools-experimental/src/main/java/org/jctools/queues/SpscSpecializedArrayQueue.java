@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+abstract class SpscSpecializedArrayQueueL1Pad<E> extends SparseCircularArrayQueue<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscSpecializedArrayQueueL1Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpscSpecializedArrayQueueProducerFields<E> extends SpscSpecializedArrayQueueL1Pad<E> {
+    private final static long P_INDEX_OFFSET;
+    static {
+        try {
+            P_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscSpecializedArrayQueueProducerFields.class
+                    .getDeclaredField("producerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long producerIndex;
+    protected long producerLookAhead;
+
+    public SpscSpecializedArrayQueueProducerFields(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvProducerIndex() {
+        return UNSAFE.getLongVolatile(this, P_INDEX_OFFSET);
+    }
+}
+
+abstract class SpscSpecializedArrayQueueL2Pad<E> extends SpscSpecializedArrayQueueProducerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    public SpscSpecializedArrayQueueL2Pad(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+}
+
+abstract class SpscSpecializedArrayQueueConsumerField<E> extends SpscSpecializedArrayQueueL2Pad<E> {
+    private final static long C_INDEX_OFFSET;
+    static {
+        try {
+            C_INDEX_OFFSET = UNSAFE.objectFieldOffset(SpscSpecializedArrayQueueConsumerField.class
+                    .getDeclaredField("consumerIndex"));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    protected long consumerIndex;
+
+    public SpscSpecializedArrayQueueConsumerField(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    protected final long lvConsumerIndex() {
+        return UNSAFE.getLongVolatile(this, C_INDEX_OFFSET);
+    }
+}
+
+/**
+ * The padded field layout shared by the Single-Producer-Single-Consumer queue classes generated by
+ * {@link SpecializedQueueFactory}. The algorithm is that of {@link SpscArrayQueue} and lives in
+ * {@link SpscSpecializedArrayQueueTemplate}, which is copied into a new class per capacity and sparse shift with the
+ * capacity, mask, look ahead step and element offset computation baked in as static final constants.
+ * <p>
+ * This class is public as the generated classes are defined by their own class loader, and so do not share a runtime
+ * package with it.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+public abstract class SpscSpecializedArrayQueue<E> extends SpscSpecializedArrayQueueConsumerField<E> {
+    long p40, p41, p42, p43, p44, p45, p46;
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+
+    protected SpscSpecializedArrayQueue(int capacity, int sparseShift) {
+        super(capacity, sparseShift);
+    }
+
+    @Override
+    public final int size() {
+        /*
+         * It is possible for a thread to be interrupted or reschedule between the read of the producer and consumer
+         * indices, therefore protection is required to ensure size is within valid range. In the event of concurrent
+         * polls/offers to this method the size is OVER estimated as we read consumer index BEFORE the producer index.
+         */
+        long after = lvConsumerIndex();
+        while (true) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                return (int) (currentProducerIndex - after);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+/**
+ * The {@link SpscArrayQueue} algorithm written against static final constants rather than instance fields. This
+ * class is never loaded: {@link SpecializedQueueFactory} reads its class file and copies it into a new class, giving
+ * each constant a ConstantValue and dropping the class initializer below, so the JIT compiles the copy with the
+ * capacity, mask, look ahead step and offset computation folded in.
+ *
+ * @author nitsanw
+ *
+ * @param <E>
+ */
+final class SpscSpecializedArrayQueueTemplate<E> extends SpscSpecializedArrayQueue<E> {
+    static final int CAPACITY = templateConstant();
+    static final int SPARSE = templateConstant();
+    static final long MASK = templateConstant();
+    static final long LOOK_AHEAD_STEP = templateConstant();
+    static final long ARRAY_BASE = templateConstant();
+    static final int ELEMENT_SHIFT = templateConstant();
+
+    private static int templateConstant() {
+        throw new UnsupportedOperationException("Template class, see SpecializedQueueFactory");
+    }
+
+    public SpscSpecializedArrayQueueTemplate() {
+        super(CAPACITY, SPARSE);
+    }
+
+    private static long offset(final long index) {
+        return ARRAY_BASE + ((index & MASK) << ELEMENT_SHIFT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("Null is not a valid element");
+        }
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currProducerIndex = producerIndex;
+        final long offset = offset(currProducerIndex);
+        if (currProducerIndex >= producerLookAhead) {
+            if (null == lvElement(lElementBuffer, offset(currProducerIndex + LOOK_AHEAD_STEP))) {// LoadLoad
+                producerLookAhead = currProducerIndex + LOOK_AHEAD_STEP;
+            }
+            else if (null != lvElement(lElementBuffer, offset)) {
+                return false;
+            }
+        }
+        producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, e);// StoreStore
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll() {
+        final long currConsumerIndex = consumerIndex;
+        final long offset = offset(currConsumerIndex);
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final E e = lvElement(lElementBuffer, offset);// LoadLoad
+        if (null == e) {
+            return null;
+        }
+        consumerIndex = currConsumerIndex + 1; // do increment here so the ordered store give both a barrier
+        soElement(lElementBuffer, offset, null);// StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek() {
+        return lvElement(buffer, offset(consumerIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public int drain(final Consumer<E> c, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        final long currConsumerIndex = consumerIndex;
+        for (int i = 0; i < limit; i++) {
+            final long index = currConsumerIndex + i;
+            final long offset = offset(index);
+            final E e = lvElement(lElementBuffer, offset);// LoadLoad
+            if (null == e) {
+                return i;
+            }
+            consumerIndex = index + 1; // do increment here so the ordered store give both a barrier
+            soElement(lElementBuffer, offset, null);// StoreStore
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only, see {@link SpscArrayQueue#fill}.
+     */
+    @Override
+    public int fill(final Supplier<E> s, final int limit) {
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] lElementBuffer = buffer;
+        long currProducerIndex = producerIndex;
+        int i = 0;
+        while (i < limit) {
+            if (currProducerIndex >= producerLookAhead) {
+                if (null == lvElement(lElementBuffer, offset(currProducerIndex + LOOK_AHEAD_STEP))) {// LoadLoad
+                    producerLookAhead = currProducerIndex + Math.max(1, LOOK_AHEAD_STEP);
+                }
+                else if (null == lvElement(lElementBuffer, offset(currProducerIndex))) {
+                    producerLookAhead = currProducerIndex + 1;
+                }
+                else {
+                    break;
+                }
+            }
+            // all slots up to the look ahead point are known to be free
+            final long batchLimit = Math.min(producerLookAhead, currProducerIndex + (limit - i));
+            for (; currProducerIndex < batchLimit; currProducerIndex++, i++) {
+                producerIndex = currProducerIndex + 1; // do increment here so the ordered store give both a barrier
+                soElement(lElementBuffer, offset(currProducerIndex), s.get());// StoreStore
+            }
+        }
+        return i;
+    }
+}
@@ -1,5 +1,7 @@
 package org.jctools.queues.alt;
 
+import org.jctools.queues.QueueFactory;
+import org.jctools.queues.QueueHandles;
 import org.jctools.queues.spec.ConcurrentQueueSpec;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -8,41 +10,16 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * The queue factory produces {@link ConcurrentQueue} instances based on a best fit to the {@link ConcurrentQueueSpec}.
  * This allows minimal dependencies between user code and the queue implementations and gives users a way to express
  * their requirements on a higher level.
+ * <p>
+ * All specs are served by the queues of {@link QueueFactory}, accessed through the producer/consumer handles of
+ * {@link QueueHandles} so that the single threaded side of a queue keeps its state local to the handle.
  * 
  * @author nitsanw
  * 
  */
 public class ConcurrentQueueFactory {
     public static <E> ConcurrentQueue<E> newQueue(ConcurrentQueueSpec qs) {
-        if (qs.isBounded()) {
-            // SPSC
-            if (qs.consumers == 1 && qs.producers == 1) {
-
-                return new SpscArrayConcurrentQueue<E>(qs.capacity);
-            }
-            // In flux, for now it is correct to return MPMC...
-            // MPSC
-            // else if (qs.consumers == 1) {
-            // if (qs.ordering != Ordering.NONE) {
-            // return new MpscArrayQueue<E>(qs.capacity);
-            // } else {
-            // return new MpscCompoundQueue<E>(qs.capacity);
-            // }
-            // }
-            // // SPMC
-            // else if (qs.producers == 1) {
-            // return new SpmcArrayQueue<E>(qs.capacity);
-            // }
-            // MPMC
-            else {
-                return new MpmcArrayConcurrentQueue<E>(qs.capacity);
-            }
-        } else {
-            // if (qs.consumers == 1 && qs.producers == 1) {
-            // return new SpscLinkedQueue<E>();
-            // }
-        }
-        return new GenericQueue<E>();
+        return new HandleConcurrentQueue<E>(qs);
     }
 
     // generic queue solution to fill gaps for now
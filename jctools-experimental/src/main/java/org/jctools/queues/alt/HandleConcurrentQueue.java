@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues.alt;
+
+import java.util.Queue;
+
+import org.jctools.queues.QueueConsumer;
+import org.jctools.queues.QueueFactory;
+import org.jctools.queues.QueueHandles;
+import org.jctools.queues.QueueProducer;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+
+/**
+ * A {@link ConcurrentQueue} on top of the queue picked by {@link QueueFactory} for the spec, with producers and
+ * consumers backed by the {@link QueueHandles} of that queue. The single producer (consumer) side of a spec has a
+ * single handle created up front and returned on every call, the multi producer (consumer) side gets a new handle per
+ * call so each thread should call {@link #producer()} ({@link #consumer()}) once and keep the result.
+ *
+ * @author nitsanw
+ *
+ * @param <E> element type
+ */
+final class HandleConcurrentQueue<E> implements ConcurrentQueue<E> {
+    private final Queue<E> queue;
+    private final int capacity;
+    private final ConcurrentQueueProducer<E> producer;
+    private final ConcurrentQueueConsumer<E> consumer;
+
+    HandleConcurrentQueue(ConcurrentQueueSpec qs) {
+        this.queue = QueueFactory.newQueue(qs);
+        this.capacity = qs.isBounded() ? qs.capacity : Integer.MAX_VALUE;
+        this.producer = qs.producers == 1 ? newProducer() : null;
+        this.consumer = qs.consumers == 1 ? newConsumer() : null;
+    }
+
+    @Override
+    public ConcurrentQueueConsumer<E> consumer() {
+        return null != consumer ? consumer : newConsumer();
+    }
+
+    @Override
+    public ConcurrentQueueProducer<E> producer() {
+        return null != producer ? producer : newProducer();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private ConcurrentQueueProducer<E> newProducer() {
+        return new HandleProducer<E>(QueueHandles.newProducer(queue));
+    }
+
+    private ConcurrentQueueConsumer<E> newConsumer() {
+        return new HandleConsumer<E>(QueueHandles.newConsumer(queue));
+    }
+
+    static final class HandleProducer<E> implements ConcurrentQueueProducer<E> {
+        private final QueueProducer<E> handle;
+
+        HandleProducer(QueueProducer<E> handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public boolean offer(E e) {
+            return handle.offer(e);
+        }
+    }
+
+    static final class HandleConsumer<E> implements ConcurrentQueueConsumer<E> {
+        private final QueueConsumer<E> handle;
+
+        HandleConsumer(QueueConsumer<E> handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public E poll() {
+            return handle.poll();
+        }
+
+        @Override
+        public E peek() {
+            return handle.peek();
+        }
+
+        @Override
+        public void clear() {
+            while (null != handle.poll());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.jctools.queues;
+
+import org.jctools.queues.LongMessagePassingQueue.LongConsumer;
+import org.jctools.queues.LongMessagePassingQueue.LongSupplier;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(Parameterized.class)
+public class OffHeapLongQueueSanityTest {
+
+    private static final int SIZE = 8192 * 2;
+
+    @Parameterized.Parameters
+    public static Collection queues() {
+        return Arrays.asList(
+                new Object[] { new SpscOffHeapLongQueue(1) },
+                new Object[] { new SpscOffHeapLongQueue(100) },
+                new Object[] { new SpscOffHeapLongQueue(SIZE) },
+                new Object[] { new MpscOffHeapLongQueue(1) },
+                new Object[] { new MpscOffHeapLongQueue(100) },
+                new Object[] { new MpscOffHeapLongQueue(SIZE) }
+        );
+    }
+
+    private final LongMessagePassingQueue queue;
+    private final Collector collector = new Collector();
+
+    public OffHeapLongQueueSanityTest(LongMessagePassingQueue queue) {
+        this.queue = queue;
+        // the queue instances are shared by the tests
+        while (queue.poll(collector)) {
+        }
+    }
+
+    @Test
+    public void whenOfferThenPollSameElement() {
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+
+        assertTrue(queue.offer(-7L));
+        assertFalse(queue.isEmpty());
+        assertThat(queue.size(), is(1));
+
+        assertTrue(queue.poll(collector));
+        assertThat(collector.last, is(-7L));
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void whenFullThenOfferFailsUntilPolled() {
+        int i = 0;
+        while (i < 2 * SIZE && queue.offer(value(i))) {
+            i++;
+        }
+        final int size = i;
+        assertThat(size, is(queue.capacity()));
+        assertThat(queue.size(), is(size));
+        assertFalse(queue.offer(-1L));
+
+        // space made by the consumer is visible to the producer, across the wrap
+        assertTrue(queue.poll(collector));
+        assertThat(collector.last, is(value(0)));
+        assertTrue(queue.offer(value(size)));
+        assertFalse(queue.offer(-1L));
+
+        for (i = 1; i <= size; i++) {
+            assertTrue(queue.poll(collector));
+            assertThat(collector.last, is(value(i)));
+        }
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void whenBulkOfferThenBulkPollInOrderWithPartialRuns() {
+        final int capacity = queue.capacity();
+        final long[] src = new long[capacity + 3];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = value(i);
+        }
+        assertThat(offer(src, 0, 0), is(0));
+        assertTrue(queue.isEmpty());
+
+        // the run is truncated to the available space
+        final int first = offer(src, 0, (capacity + 1) / 2);
+        final int second = offer(src, first, capacity + 3 - first);
+        assertThat(first + second, is(capacity));
+        assertThat(offer(src, capacity, 3), is(0));
+        assertThat(queue.size(), is(capacity));
+
+        // the poll is truncated to the available elements
+        final long[] dst = new long[capacity + 3];
+        assertThat(poll(dst, 0, 0), is(0));
+        final int polled = poll(dst, 0, 1);
+        assertThat(polled, is(1));
+        assertThat(offer(src, capacity, 3), is(1));
+        assertThat(poll(dst, polled, capacity + 2), is(capacity));
+        for (int i = 0; i <= capacity; i++) {
+            assertThat(dst[i], is(value(i)));
+        }
+        assertThat(poll(dst, 0, 1), is(0));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void whenFillThenDrainAllElementsArePassedThrough() {
+        final LongSupplier s = new LongSupplier() {
+            int i;
+
+            @Override
+            public long get() {
+                return value(i++);
+            }
+        };
+        assertThat(queue.fill(s, 0), is(0));
+        final int filled = queue.fill(s, 2 * SIZE);
+        assertThat(filled, is(queue.capacity()));
+        assertThat(queue.fill(s, 1), is(0));
+        assertThat(queue.size(), is(filled));
+
+        final int[] drained = { 0 };
+        final LongConsumer c = new LongConsumer() {
+            @Override
+            public void accept(long e) {
+                assertThat(e, is(value(drained[0]++)));
+            }
+        };
+        assertThat(queue.drain(c, 0), is(0));
+        assertThat(queue.drain(c, 2 * SIZE), is(filled));
+        assertThat(drained[0], is(filled));
+        assertThat(queue.drain(c, 1), is(0));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void whenMultipleProducersThenNothingIsLostAndProducerOrderIsKept() throws Exception {
+        assumeTrue(queue instanceof MpscOffHeapLongQueue);
+        final MpscOffHeapLongQueue q = (MpscOffHeapLongQueue) queue;
+        final int producers = 4;
+        final int perProducer = 20000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final long producer = p;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    final long[] batch = new long[7];
+                    int sent = 0;
+                    while (sent < perProducer) {
+                        if ((sent & 1) == 0) {
+                            if (q.offer(producer << 32 | sent)) {
+                                sent++;
+                            }
+                        } else {
+                            final int n = Math.min(batch.length, perProducer - sent);
+                            for (int i = 0; i < n; i++) {
+                                batch[i] = producer << 32 | (sent + i);
+                            }
+                            sent += q.offer(batch, 0, n);
+                        }
+                        if (failure.get() != null) {
+                            return;
+                        }
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        final int[] next = new int[producers];
+        final long[] dst = new long[5];
+        int received = 0;
+        final long deadline = System.currentTimeMillis() + 60000;
+        try {
+            while (received < producers * perProducer) {
+                final int n = q.poll(dst, 0, dst.length);
+                for (int i = 0; i < n; i++) {
+                    final int producer = (int) (dst[i] >>> 32);
+                    assertThat((int) dst[i], is(next[producer]++));
+                }
+                received += n;
+                if (n == 0) {
+                    assertTrue("timed out", System.currentTimeMillis() < deadline);
+                    Thread.yield();
+                }
+            }
+        } catch (Throwable t) {
+            failure.set(t);
+            throw new AssertionError(t);
+        } finally {
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+        assertThat(failure.get(), is(nullValue()));
+        for (int p = 0; p < producers; p++) {
+            assertThat(next[p], is(perProducer));
+        }
+        assertTrue(q.isEmpty());
+    }
+
+    private int offer(long[] src, int offset, int length) {
+        if (queue instanceof SpscOffHeapLongQueue) {
+            return ((SpscOffHeapLongQueue) queue).offer(src, offset, length);
+        }
+        return ((MpscOffHeapLongQueue) queue).offer(src, offset, length);
+    }
+
+    private int poll(long[] dst, int offset, int length) {
+        if (queue instanceof SpscOffHeapLongQueue) {
+            return ((SpscOffHeapLongQueue) queue).poll(dst, offset, length);
+        }
+        return ((MpscOffHeapLongQueue) queue).poll(dst, offset, length);
+    }
+
+    private static long value(int i) {
+        // exercise the high bits as well
+        return ((long) i << 33) | i;
+    }
+
+    private static final class Collector implements LongConsumer {
+        long last;
+
+        @Override
+        public void accept(long e) {
+            last = e;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.jctools.queues;
+
+import org.jctools.channels.mapping.GeneratedClassLoader;
+import org.jctools.queues.MessagePassingQueue.Consumer;
+import org.jctools.queues.MessagePassingQueue.Supplier;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.jctools.queues.spec.Preference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.jctools.queues.matchers.Matchers.emptyAndZeroSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class SpecializedQueueFactoryTest {
+
+    @Parameterized.Parameters
+    public static Collection specializations() {
+        return Arrays.asList(
+                new Object[] { 8, 0 },
+                new Object[] { 1000, 0 },
+                new Object[] { 8, 2 },
+                new Object[] { 1000, 2 }
+        );
+    }
+
+    private final int capacity;
+    private final int sparseShift;
+    private final SpscSpecializedArrayQueue<Integer> queue;
+
+    public SpecializedQueueFactoryTest(int capacity, int sparseShift) {
+        this.capacity = capacity;
+        this.sparseShift = sparseShift;
+        queue = SpecializedQueueFactory.newSpscArrayQueue(capacity, sparseShift);
+    }
+
+    @Test
+    public void shouldGenerateOneClassPerCapacityAndSparseShift() {
+        final Class<?> generated = queue.getClass();
+        assertThat(generated.getClassLoader(), instanceOf(GeneratedClassLoader.class));
+        assertThat(generated.getSimpleName(), is("SpscSpecializedArrayQueue_" + roundedCapacity() + "_" + sparseShift));
+
+        // the class is reused for the same capacity, rounded or not, and the same sparse shift
+        assertThat(SpecializedQueueFactory.newSpscArrayQueue(roundedCapacity(), sparseShift).getClass(),
+                sameInstance((Object) generated));
+        assertThat(SpecializedQueueFactory.newSpscArrayQueue(2 * roundedCapacity(), sparseShift).getClass(),
+                not(sameInstance((Object) generated)));
+        assertThat(SpecializedQueueFactory.newSpscArrayQueue(capacity, sparseShift + 1).getClass(),
+                not(sameInstance((Object) generated)));
+
+        // bounded SPSC specs are specialized
+        final ConcurrentQueueSpec spec = new ConcurrentQueueSpec(1, 1, capacity, Ordering.FIFO, Preference.NONE,
+                sparseShift);
+        assertThat(SpecializedQueueFactory.<Integer> newQueue(spec).getClass(), sameInstance((Object) generated));
+    }
+
+    @Test
+    public void shouldFillToCapacityAndPollInOrder() {
+        assertThat(queue.poll(), nullValue());
+        assertThat(queue, emptyAndZeroSize());
+
+        int offered = 0;
+        while (offered < 4 * capacity && queue.offer(offered)) {
+            offered++;
+        }
+
+        assertThat(offered, is(roundedCapacity()));
+        assertThat(queue.size(), is(offered));
+        // the iterator walks the buffer with the inherited offset computation
+        final Iterator<Integer> it = queue.iterator();
+        for (int i = 0; i < offered; i++) {
+            assertThat(it.next(), is(i));
+        }
+        assertFalse(it.hasNext());
+        for (int i = 0; i < offered; i++) {
+            assertThat(queue.peek(), is(i));
+            assertThat(queue.poll(), is(i));
+        }
+        assertThat(queue.poll(), nullValue());
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldWrapAroundTheBuffer() {
+        final int half = roundedCapacity() / 2;
+        int offered = 0;
+        int polled = 0;
+        // keep the queue half full so the indices wrap many times over a buffer which is never drained
+        for (int i = 0; i < half; i++) {
+            assertTrue(queue.offer(offered++));
+        }
+        for (int round = 0; round < 10 * roundedCapacity(); round++) {
+            assertTrue(queue.offer(offered++));
+            assertThat(queue.poll(), is(polled++));
+            assertThat(queue.size(), is(half));
+        }
+        while (polled < offered) {
+            assertThat(queue.poll(), is(polled++));
+        }
+        assertThat(queue, emptyAndZeroSize());
+    }
+
+    @Test
+    public void shouldFillThenDrainAcrossTheWrap() {
+        final int[] next = { 0 };
+        final Supplier<Integer> s = new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return next[0]++;
+            }
+        };
+        final int[] expected = { 0 };
+        final Consumer<Integer> c = new Consumer<Integer>() {
+            @Override
+            public void accept(Integer e) {
+                assertThat(e, is(expected[0]++));
+            }
+        };
+        for (int round = 0; round < 5; round++) {
+            final int filled = queue.fill(s, 3 * capacity);
+            assertThat(filled, is(roundedCapacity()));
+            assertThat(queue.fill(s, 1), is(0));
+            assertThat(queue.drain(c, roundedCapacity() / 2 + 1), is(roundedCapacity() / 2 + 1));
+            assertThat(queue.drain(c, 3 * capacity), is(roundedCapacity() / 2 - 1));
+            assertThat(expected[0], is(next[0]));
+            assertThat(queue, emptyAndZeroSize());
+        }
+    }
+
+    private int roundedCapacity() {
+        return capacity == 1000 ? 1024 : capacity;
+    }
+}
@@ -0,0 +1,137 @@
+package org.jctools.queues;
+
+import org.jctools.queues.SpscOffHeapDoubleQueue.DoubleConsumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class SpscOffHeapDoubleQueueTest {
+
+    private static final int SIZE = 8192 * 2;
+
+    @Parameterized.Parameters
+    public static Collection queues() {
+        return Arrays.asList(new Object[] { 1 }, new Object[] { 100 }, new Object[] { SIZE });
+    }
+
+    private final SpscOffHeapDoubleQueue queue;
+    private final Collector collector = new Collector();
+
+    public SpscOffHeapDoubleQueueTest(int capacity) {
+        queue = new SpscOffHeapDoubleQueue(capacity);
+    }
+
+    @Test
+    public void whenOfferThenPollSameElement() {
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+
+        // no value is reserved as an empty marker
+        for (double e : new double[] { Double.NaN, -0.0d, 0.0d, Double.NEGATIVE_INFINITY }) {
+            assertTrue(queue.offer(e));
+            assertThat(queue.size(), is(1));
+            assertTrue(queue.poll(collector));
+            assertThat(Double.doubleToRawLongBits(collector.last), is(Double.doubleToRawLongBits(e)));
+            assertFalse(queue.poll(collector));
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void whenFullThenOfferFailsUntilPolled() {
+        int i = 0;
+        while (i < 2 * SIZE && queue.offer(value(i))) {
+            i++;
+        }
+        final int size = i;
+        assertThat(size, is(queue.capacity()));
+        assertThat(queue.size(), is(size));
+        assertFalse(queue.offer(-1d));
+
+        assertTrue(queue.poll(collector));
+        assertThat(collector.last, is(value(0)));
+        assertTrue(queue.offer(value(size)));
+        assertFalse(queue.offer(-1d));
+
+        for (i = 1; i <= size; i++) {
+            assertTrue(queue.poll(collector));
+            assertThat(collector.last, is(value(i)));
+        }
+        assertFalse(queue.poll(collector));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void whenBulkOfferThenBulkPollInOrderWithPartialRuns() {
+        final int capacity = queue.capacity();
+        final double[] src = new double[capacity + 3];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = value(i);
+        }
+        assertThat(queue.offer(src, 0, 0), is(0));
+        assertTrue(queue.isEmpty());
+
+        final int first = queue.offer(src, 0, (capacity + 1) / 2);
+        final int second = queue.offer(src, first, capacity + 3 - first);
+        assertThat(first + second, is(capacity));
+        assertThat(queue.offer(src, capacity, 3), is(0));
+
+        final double[] dst = new double[capacity + 3];
+        assertThat(queue.poll(dst, 0, 0), is(0));
+        assertThat(queue.poll(dst, 0, 1), is(1));
+        assertThat(queue.offer(src, capacity, 3), is(1));
+        assertThat(queue.poll(dst, 1, capacity + 2), is(capacity));
+        for (int i = 0; i <= capacity; i++) {
+            assertThat(dst[i], is(value(i)));
+        }
+        assertThat(queue.poll(dst, 0, 1), is(0));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void whenOfferThenDrainAllElementsArePassedThrough() {
+        int offered = 0;
+        for (int round = 0; round < 3; round++) {
+            final int start = offered;
+            while (queue.offer(value(offered))) {
+                offered++;
+            }
+            assertThat(offered - start, is(queue.capacity()));
+
+            final int[] drained = { start };
+            final DoubleConsumer c = new DoubleConsumer() {
+                @Override
+                public void accept(double e) {
+                    assertThat(e, is(value(drained[0]++)));
+                }
+            };
+            assertThat(queue.drain(c, 0), is(0));
+            assertThat(queue.drain(c, 2 * SIZE), is(offered - start));
+            assertThat(drained[0], is(offered));
+            assertThat(queue.drain(c, 1), is(0));
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    private static double value(int i) {
+        return i + 0.5d;
+    }
+
+    private static final class Collector implements DoubleConsumer {
+        double last;
+
+        @Override
+        public void accept(double e) {
+            last = e;
+        }
+    }
+}